@@ -0,0 +1,68 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import org.javarosa.benchmarks.utils.SyntheticFormGenerator;
+import org.javarosa.core.model.CoreModelModule;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.data.IntegerData;
+import org.javarosa.core.model.instance.InstanceInitializationFactory;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.core.services.PrototypeManager;
+import org.javarosa.core.util.JavaRosaCoreModule;
+import org.javarosa.debug.EventNotifierSilent;
+import org.javarosa.model.xform.XFormsModule;
+import org.javarosa.model.xform.XPathReference;
+import org.javarosa.xform.parse.FormParserHelper;
+import org.javarosa.xform.parse.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures answering a question that a chain of calculates depends on, with the default silent event notifier and
+ * with one that listens to the events. Run with {@code -prof gc} to see what building the events costs.
+ */
+public class EventNotifierBenchmark {
+    public static void main(String[] args) {
+        dryRun(EventNotifierBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class EventNotifierState {
+        @Param({"silent", "listening"})
+        public String notifier = "silent";
+
+        FormDef formDef;
+        TreeReference driverQuestionRef;
+        int answer;
+        int events;
+
+        @Setup(Level.Trial)
+        public void initialize() throws IOException, ParseException {
+            PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+            PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+            new XFormsModule().registerModule();
+
+            SyntheticFormGenerator generator = new SyntheticFormGenerator()
+                .questionCount(200)
+                .repeatCount(0)
+                .calculateChainLength(200)
+                .secondaryInstanceRows(0);
+            formDef = FormParserHelper.parse(generator.writeTo(Files.createTempDirectory("javarosa_benchmarks_events")));
+            formDef.setEventNotifier(notifier.equals("silent") ? new EventNotifierSilent() : event -> events++);
+            formDef.initialize(true, new InstanceInitializationFactory());
+            driverQuestionRef = (TreeReference) new XPathReference(generator.getDriverQuestionRef()).getReference();
+        }
+    }
+
+    @Benchmark
+    public void answerDriverQuestion(EventNotifierState state) {
+        state.formDef.setValue(new IntegerData(state.answer++ % 20), state.driverQuestionRef, true);
+    }
+}
@@ -0,0 +1,55 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+import static org.javarosa.benchmarks.BenchmarkUtils.prepareAssets;
+
+import java.io.IOException;
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.form.api.FormEntryController;
+import org.javarosa.form.api.FormEntryModel;
+import org.javarosa.xform.parse.FormParserHelper;
+import org.javarosa.xform.parse.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures stepping through every relevant index of the eIMCI form, which is large and mostly irrelevant until it's
+ * filled in, from the beginning to the end and back.
+ */
+public class FormEntryNavigationBenchmark {
+    public static void main(String[] args) {
+        dryRun(FormEntryNavigationBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class FormEntryNavigationState {
+        FormEntryController formEntryController;
+
+        @Setup(Level.Trial)
+        public void initialize() throws IOException, ParseException {
+            FormEntryModel formEntryModel = new FormEntryModel(FormParserHelper.parse(
+                prepareAssets("eIMCI-by-D-Tree.xml").resolve("eIMCI-by-D-Tree.xml")));
+            formEntryController = new FormEntryController(formEntryModel);
+        }
+    }
+
+    @Benchmark
+    public void stepFromBeginningToEnd(FormEntryNavigationState state, Blackhole bh) {
+        FormEntryController formEntryController = state.formEntryController;
+        formEntryController.jumpToIndex(FormIndex.createBeginningOfFormIndex());
+        while (formEntryController.stepToNextEvent() != FormEntryController.EVENT_END_OF_FORM)
+            bh.consume(formEntryController.getModel().getFormIndex());
+    }
+
+    @Benchmark
+    public void stepFromEndToBeginning(FormEntryNavigationState state, Blackhole bh) {
+        FormEntryController formEntryController = state.formEntryController;
+        formEntryController.jumpToIndex(FormIndex.createEndOfFormIndex());
+        while (formEntryController.stepToPreviousEvent() != FormEntryController.EVENT_BEGINNING_OF_FORM)
+            bh.consume(formEntryController.getModel().getFormIndex());
+    }
+}
@@ -0,0 +1,75 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+import static org.javarosa.benchmarks.BenchmarkUtils.prepareAssets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.form.api.FormEntryModel;
+import org.javarosa.xform.parse.FormParserHelper;
+import org.javarosa.xform.parse.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures what a hierarchy view of the eIMCI form does with the indexes of the form: working out the levels above
+ * each index and comparing each index with the one before it.
+ */
+public class FormIndexBenchmark {
+    public static void main(String[] args) {
+        dryRun(FormIndexBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class FormIndexState {
+        FormEntryModel formEntryModel;
+        List<FormIndex> indexes = new ArrayList<>();
+
+        @Setup(Level.Trial)
+        public void initialize() throws IOException, ParseException {
+            formEntryModel = new FormEntryModel(FormParserHelper.parse(
+                prepareAssets("eIMCI-by-D-Tree.xml").resolve("eIMCI-by-D-Tree.xml")));
+            FormIndex index = formEntryModel.incrementIndex(FormIndex.createBeginningOfFormIndex());
+            while (!index.isEndOfFormIndex()) {
+                indexes.add(index);
+                index = formEntryModel.incrementIndex(index);
+            }
+        }
+    }
+
+    @Benchmark
+    public void walkUpEveryIndex(FormIndexState state, Blackhole bh) {
+        for (FormIndex index : state.indexes) {
+            FormIndex remaining = index;
+            while (remaining != null) {
+                remaining = remaining.getNextLevel();
+                bh.consume(index.diff(remaining));
+            }
+            for (FormIndex level = index; level != null; level = level.getPreviousLevel())
+                bh.consume(level.getTerminal());
+        }
+    }
+
+    @Benchmark
+    public void compareEveryIndexWithThePreviousOne(FormIndexState state, Blackhole bh) {
+        FormIndex previous = FormIndex.createBeginningOfFormIndex();
+        for (FormIndex index : state.indexes) {
+            bh.consume(index.compareTo(previous));
+            bh.consume(FormIndex.isSubElement(previous, index));
+            bh.consume(index.hashCode());
+            previous = index;
+        }
+    }
+
+    @Benchmark
+    public void getCaptionHierarchyOfEveryIndex(FormIndexState state, Blackhole bh) {
+        for (FormIndex index : state.indexes)
+            bh.consume(state.formEntryModel.getCaptionHierarchy(index));
+    }
+}
@@ -0,0 +1,149 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringJoiner;
+import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.core.model.data.GeoTraceData;
+import org.javarosa.core.model.data.UncastData;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.GeoUtils;
+import org.javarosa.core.util.GeoUtils.LatLong;
+import org.javarosa.xform.parse.ParseException;
+import org.javarosa.xpath.XPathParseTool;
+import org.javarosa.xpath.expr.XPathExpression;
+import org.javarosa.xpath.parser.XPathSyntaxException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures area() and distance() over a long trace, both from an answered geotrace, whose coordinates are parsed
+ * once and cached on the answer, and from a string, which is parsed on every evaluation.
+ */
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 2, time = 1)
+public class GeoTraceBenchmark {
+    public static void main(String[] args) {
+        dryRun(GeoTraceBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class GeoTraceState {
+        @Param({"10000"})
+        int pointCount;
+
+        FormInstance mainInstance;
+        EvaluationContext evaluationContext;
+        XPathExpression traceArea;
+        XPathExpression traceDistance;
+        XPathExpression stringArea;
+        XPathExpression stringDistance;
+        List<LatLong> latLongs;
+        double[] coordinates;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, ParseException, XPathSyntaxException {
+            Random random = new Random(42);
+            latLongs = new ArrayList<>(pointCount);
+            coordinates = new double[2 * pointCount];
+            StringJoiner trace = new StringJoiner("; ");
+            double latitude = 0, longitude = 30;
+            for (int i = 0; i < pointCount; i++) {
+                latitude += (random.nextDouble() - 0.5) * 1e-3;
+                longitude += random.nextDouble() * 1e-3;
+                latLongs.add(new LatLong(latitude, longitude));
+                coordinates[2 * i] = latitude;
+                coordinates[2 * i + 1] = longitude;
+                trace.add(latitude + " " + longitude + " 0 5");
+            }
+
+            Scenario scenario = Scenario.init("Geotrace", html(
+                head(
+                    title("Geotrace"),
+                    model(
+                        mainInstance(t("data id=\"geotrace\"",
+                            t("trace"),
+                            t("text")
+                        )),
+                        bind("/data/trace").type("geotrace"),
+                        bind("/data/text").type("string")
+                    )
+                ),
+                body(
+                    input("/data/trace"),
+                    input("/data/text")
+                )
+            ));
+            scenario.answer("/data/trace", new GeoTraceData().cast(new UncastData(trace.toString())));
+            scenario.answer("/data/text", trace.toString());
+
+            mainInstance = scenario.getFormDef().getMainInstance();
+            evaluationContext = scenario.getEvaluationContext();
+            traceArea = XPathParseTool.parseXPath("area(/data/trace)");
+            traceDistance = XPathParseTool.parseXPath("distance(/data/trace)");
+            stringArea = XPathParseTool.parseXPath("area(/data/text)");
+            stringDistance = XPathParseTool.parseXPath("distance(/data/text)");
+        }
+    }
+
+    @Benchmark
+    public void area_ofAnsweredGeotrace(GeoTraceState state, Blackhole bh) {
+        bh.consume(state.traceArea.eval(state.mainInstance, state.evaluationContext));
+    }
+
+    @Benchmark
+    public void distance_ofAnsweredGeotrace(GeoTraceState state, Blackhole bh) {
+        bh.consume(state.traceDistance.eval(state.mainInstance, state.evaluationContext));
+    }
+
+    @Benchmark
+    public void area_ofString(GeoTraceState state, Blackhole bh) {
+        bh.consume(state.stringArea.eval(state.mainInstance, state.evaluationContext));
+    }
+
+    @Benchmark
+    public void distance_ofString(GeoTraceState state, Blackhole bh) {
+        bh.consume(state.stringDistance.eval(state.mainInstance, state.evaluationContext));
+    }
+
+    @Benchmark
+    public void calculateArea_ofPackedCoordinates(GeoTraceState state, Blackhole bh) {
+        bh.consume(GeoUtils.calculateAreaOfGPSPolygonOnEarthInSquareMeters(state.coordinates));
+    }
+
+    @Benchmark
+    public void calculateArea_ofLatLongs(GeoTraceState state, Blackhole bh) {
+        bh.consume(GeoUtils.calculateAreaOfGPSPolygonOnEarthInSquareMeters(state.latLongs));
+    }
+
+    @Benchmark
+    public void calculateDistance_ofPackedCoordinates(GeoTraceState state, Blackhole bh) {
+        bh.consume(GeoUtils.calculateDistance(state.coordinates));
+    }
+
+    @Benchmark
+    public void calculateDistance_ofLatLongs(GeoTraceState state, Blackhole bh) {
+        bh.consume(GeoUtils.calculateDistance(state.latLongs));
+    }
+}
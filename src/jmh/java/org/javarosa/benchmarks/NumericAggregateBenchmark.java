@@ -0,0 +1,93 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.XFormsElement;
+import org.javarosa.xform.parse.ParseException;
+import org.javarosa.xpath.XPathParseTool;
+import org.javarosa.xpath.expr.XPathExpression;
+import org.javarosa.xpath.parser.XPathSyntaxException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures sum() and max() over a few thousand int and decimal answers, as recomputing a form with large repeats
+ * does. Run with {@code -prof gc} to see what reading the answers allocates.
+ */
+public class NumericAggregateBenchmark {
+    public static void main(String[] args) {
+        dryRun(NumericAggregateBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class NumericAggregateState {
+        @Param({"5000"})
+        int itemCount;
+
+        FormInstance mainInstance;
+        EvaluationContext evaluationContext;
+        XPathExpression sumOfInts;
+        XPathExpression maxOfInts;
+        XPathExpression sumOfDecimals;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, ParseException, XPathSyntaxException {
+            List<XFormsElement> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++)
+                items.add(t("item", t("count", String.valueOf(1000 + i)), t("amount", (i % 97) + ".25")));
+
+            Scenario scenario = Scenario.init("Numeric aggregates", html(
+                head(
+                    title("Numeric aggregates"),
+                    model(
+                        mainInstance(t("data id=\"numeric-aggregates\"", items.toArray(new XFormsElement[0]))),
+                        bind("/data/item/count").type("int"),
+                        bind("/data/item/amount").type("decimal")
+                    )
+                ),
+                body(input("/data/item/count"))
+            ));
+
+            mainInstance = scenario.getFormDef().getMainInstance();
+            evaluationContext = scenario.getEvaluationContext();
+            sumOfInts = XPathParseTool.parseXPath("sum(/data/item/count)");
+            maxOfInts = XPathParseTool.parseXPath("max(/data/item/count)");
+            sumOfDecimals = XPathParseTool.parseXPath("sum(/data/item/amount)");
+        }
+    }
+
+    @Benchmark
+    public void sum_ofInts(NumericAggregateState state, Blackhole bh) {
+        bh.consume(state.sumOfInts.eval(state.mainInstance, state.evaluationContext));
+    }
+
+    @Benchmark
+    public void max_ofInts(NumericAggregateState state, Blackhole bh) {
+        bh.consume(state.maxOfInts.eval(state.mainInstance, state.evaluationContext));
+    }
+
+    @Benchmark
+    public void sum_ofDecimals(NumericAggregateState state, Blackhole bh) {
+        bh.consume(state.sumOfDecimals.eval(state.mainInstance, state.evaluationContext));
+    }
+}
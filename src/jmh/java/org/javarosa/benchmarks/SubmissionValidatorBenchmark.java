@@ -0,0 +1,80 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.ItemsetBinding;
+import org.javarosa.core.model.QuestionDef;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.form.api.FormEntryController;
+import org.javarosa.form.api.FormEntryModel;
+import org.javarosa.form.api.SubmissionValidator;
+import org.javarosa.model.xform.XFormSerializingVisitor;
+import org.javarosa.xform.parse.FormParserHelper;
+import org.javarosa.xform.parse.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+public class SubmissionValidatorBenchmark {
+    public static void main(String[] args) {
+        dryRun(SubmissionValidatorBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class SubmissionValidatorState {
+        @Param({"1", "2", "4", "8"})
+        public int threadCount;
+
+        SubmissionValidator validator;
+        List<byte[]> submissions;
+
+        @Setup(Level.Trial)
+        public void initialize() throws IOException, ParseException {
+            Path resourcePath = BenchmarkUtils.getNigeriaWardsXMLWithInternal2ndryInstance();
+
+            FormDef filledFormDef = FormParserHelper.parse(resourcePath);
+            FormEntryModel formEntryModel = new FormEntryModel(filledFormDef);
+            FormEntryController formEntryController = new FormEntryController(formEntryModel);
+            formEntryController.stepToNextEvent();
+            while (formEntryModel.getFormIndex().isInForm()) {
+                FormIndex questionIndex = formEntryModel.getFormIndex();
+                QuestionDef question = formEntryModel.getQuestionPrompt(questionIndex).getQuestion();
+                ItemsetBinding itemsetBinding = question.getDynamicChoices();
+                if (itemsetBinding != null) {
+                    itemsetBinding.getChoices(filledFormDef, (TreeReference) question.getBind().getReference());
+                }
+                formEntryController.answerQuestion(questionIndex, BenchmarkUtils.getStubAnswer(question), true);
+                formEntryController.stepToNextEvent();
+            }
+            byte[] submission = new XFormSerializingVisitor().serializeInstance(filledFormDef.getMainInstance());
+
+            submissions = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                submissions.add(submission);
+            }
+
+            validator = new SubmissionValidator(FormParserHelper.parse(resourcePath), threadCount, true);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            validator.close();
+        }
+    }
+
+    @Benchmark
+    public void benchmarkValidateAll(SubmissionValidatorState state, Blackhole bh) throws InterruptedException {
+        bh.consume(state.validator.validateAll(state.submissions));
+    }
+}
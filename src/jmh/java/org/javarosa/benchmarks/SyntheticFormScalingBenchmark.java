@@ -0,0 +1,147 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+import static org.javarosa.benchmarks.BenchmarkUtils.getCachePath;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.javarosa.benchmarks.utils.FormDefCache;
+import org.javarosa.benchmarks.utils.SyntheticFormGenerator;
+import org.javarosa.core.model.CoreModelModule;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.data.IntegerData;
+import org.javarosa.core.model.instance.InstanceInitializationFactory;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.core.services.PrototypeManager;
+import org.javarosa.core.util.JavaRosaCoreModule;
+import org.javarosa.model.xform.XFormSerializingVisitor;
+import org.javarosa.model.xform.XFormsModule;
+import org.javarosa.model.xform.XPathReference;
+import org.javarosa.xform.parse.FormParserHelper;
+import org.javarosa.xform.parse.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how the main costs of a form grow with its shape, using forms from {@link SyntheticFormGenerator}.
+ * <p>
+ * Only the dimensions that usually matter most are varied by default, to keep the number of combinations
+ * manageable. The others can be varied from the command line, e.g. {@code -p calculateChainLength=10,100,1000}.
+ */
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class SyntheticFormScalingBenchmark {
+    public static void main(String[] args) {
+        dryRun(SyntheticFormScalingBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class SyntheticFormState {
+        @Param({"100", "1000", "5000"})
+        public int questionCount = 100;
+
+        @Param({"3"})
+        public int groupDepth = 3;
+
+        @Param({"0", "500"})
+        public int repeatCount = 500;
+
+        @Param({"50"})
+        public int calculateChainLength = 50;
+
+        @Param({"0.1"})
+        public double predicateDensity = 0.1;
+
+        @Param({"0", "10000"})
+        public int secondaryInstanceRows = 10000;
+
+        Path formPath;
+        String cachePath;
+        FormDef formDef;
+        TreeReference driverQuestionRef;
+        int answer;
+
+        @Setup(Level.Trial)
+        public void initialize() throws IOException, ParseException {
+            PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+            PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+            new XFormsModule().registerModule();
+
+            SyntheticFormGenerator generator = new SyntheticFormGenerator()
+                .questionCount(questionCount)
+                .groupDepth(groupDepth)
+                .repeatCount(repeatCount)
+                .calculateChainLength(calculateChainLength)
+                .predicateDensity(predicateDensity)
+                .secondaryInstanceRows(secondaryInstanceRows);
+            formPath = generator.writeTo(Files.createTempDirectory("javarosa_benchmarks_synthetic"));
+            cachePath = getCachePath().toString();
+
+            formDef = FormParserHelper.parse(formPath);
+            formDef.initialize(true, new InstanceInitializationFactory());
+            driverQuestionRef = (TreeReference) new XPathReference(generator.getDriverQuestionRef()).getReference();
+            checkPredicates(generator);
+
+            // Make sure there's something to read from the cache
+            FormDefCache.writeCache(formDef, formPath.toString(), cachePath);
+        }
+
+        /**
+         * Checks that the predicates give the results they're generated for, and so that they aren't all answered the
+         * same way, e.g. from a single cache entry.
+         */
+        private void checkPredicates(SyntheticFormGenerator generator) {
+            List<String> predicateQuestionRefs = generator.getPredicateQuestionRefs();
+            for (int driverValue = 0; driverValue < 2; driverValue++) {
+                formDef.setValue(new IntegerData(driverValue), driverQuestionRef, true);
+                for (int predicate = 0; predicate < predicateQuestionRefs.size(); predicate++) {
+                    TreeReference ref = (TreeReference) new XPathReference(predicateQuestionRefs.get(predicate)).getReference();
+                    boolean relevant = formDef.getMainInstance().resolveReference(ref).isRelevant();
+                    if (relevant != generator.isPredicateRelevant(predicate, driverValue))
+                        throw new IllegalStateException("Predicate " + predicate + " should " + (relevant ? "not " : "") + "be relevant for " + driverValue);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void parse(SyntheticFormState state, Blackhole bh) throws IOException, ParseException {
+        bh.consume(FormParserHelper.parse(state.formPath));
+    }
+
+    @Benchmark
+    public void writeCache(SyntheticFormState state) throws IOException {
+        FormDefCache.writeCache(state.formDef, state.formPath.toString(), state.cachePath);
+    }
+
+    @Benchmark
+    public void readCache(SyntheticFormState state, Blackhole bh) {
+        bh.consume(FormDefCache.readCache(state.formPath.toFile(), state.cachePath));
+    }
+
+    @Benchmark
+    // Evaluates every triggerable of the form, which is what happens when a new or saved instance is loaded
+    public void initializeDag(SyntheticFormState state) {
+        state.formDef.initialize(false, new InstanceInitializationFactory());
+    }
+
+    @Benchmark
+    // Answers the question that the calculate chain and all predicates depend on
+    public void answerDriverQuestion(SyntheticFormState state) {
+        state.formDef.setValue(new IntegerData(state.answer++ % 20), state.driverQuestionRef, true);
+    }
+
+    @Benchmark
+    public void serializeInstance(SyntheticFormState state, Blackhole bh) throws IOException {
+        bh.consume(new XFormSerializingVisitor().serializeInstance(state.formDef.getMainInstance()));
+    }
+}
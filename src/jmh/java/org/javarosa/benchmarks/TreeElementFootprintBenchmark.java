@@ -0,0 +1,105 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+import static org.javarosa.benchmarks.BenchmarkUtils.prepareAssets;
+import static org.javarosa.core.reference.ReferenceManagerTestUtils.setUpSimpleReferenceManager;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.javarosa.core.model.data.StringData;
+import org.javarosa.core.model.instance.ExternalDataInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the heap retained per node by secondary instances: one built node by node like a CSV instance of
+ * items with three values each, and the wards XML instance. The bytesPerNode counter is the result; the time is only
+ * how long building took. The counter is summed over iterations, so there's one measurement iteration, which is
+ * enough as the footprint is the same every time.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 1)
+public class TreeElementFootprintBenchmark {
+    public static void main(String[] args) {
+        dryRun(TreeElementFootprintBenchmark.class);
+    }
+
+    private static final int ITEM_COUNT = 50_000;
+
+    @State(Scope.Thread)
+    public static class TreeElementFootprintState {
+        @Param({"csv", "xml"})
+        String instance = "csv";
+
+        @Setup(Level.Trial)
+        public void initialize() {
+            Path assetsPath = prepareAssets("wards.xml");
+            setUpSimpleReferenceManager(assetsPath, "file");
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double bytesPerNode;
+    }
+
+    @Benchmark
+    public Object measureRetainedBytesPerNode(TreeElementFootprintState state, Footprint footprint) throws Exception {
+        long before = usedHeap();
+        TreeElement root = state.instance.equals("csv")
+            ? csvInstance()
+            : (TreeElement) ExternalDataInstance.build("jr://file/wards.xml", "wards").getRoot();
+        long after = usedHeap();
+        footprint.bytesPerNode = (after - before) / (double) countNodes(root);
+        return root;
+    }
+
+    private static TreeElement csvInstance() {
+        TreeElement root = new TreeElement("root");
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            TreeElement item = new TreeElement("item", i);
+            item.addChild(leaf("name", "item" + i));
+            item.addChild(leaf("label", "Item " + i));
+            item.addChild(leaf("group", "group" + (i % 100)));
+            root.addChild(item);
+        }
+        return root;
+    }
+
+    private static TreeElement leaf(String name, String value) {
+        TreeElement leaf = new TreeElement(name);
+        leaf.setValue(new StringData(value));
+        return leaf;
+    }
+
+    private static int countNodes(TreeElement node) {
+        int count = 1 + node.getAttributeCount();
+        for (int i = 0; i < node.getNumChildren(); i++)
+            count += countNodes(node.getChildAt(i));
+        return count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // A few collections in a row so that garbage from before the measurement doesn't count
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,67 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+
+import org.javarosa.core.model.instance.TreeElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures toggling the relevance of a group holding many repeat instances, with and without asking for the relevance
+ * of a few of the nodes in it after each toggle.
+ */
+public class TreeElementRelevanceBenchmark {
+    public static void main(String[] args) {
+        dryRun(TreeElementRelevanceBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class TreeElementRelevanceState {
+        @Param({"100", "5000"})
+        public int repeatCount = 100;
+
+        TreeElement group;
+        TreeElement[] questions;
+        boolean relevant = true;
+
+        @Setup(Level.Trial)
+        public void initialize() {
+            TreeElement root = new TreeElement("data");
+            group = new TreeElement("group");
+            root.addChild(group);
+            for (int i = 0; i < repeatCount; i++) {
+                TreeElement repeat = new TreeElement("repeat", i);
+                for (int j = 0; j < 5; j++) {
+                    TreeElement question = new TreeElement("question" + j);
+                    question.setAttribute(null, "attr", "value");
+                    repeat.addChild(question);
+                }
+                group.addChild(repeat);
+            }
+            questions = new TreeElement[]{
+                group.getChildAt(0).getChildAt(0),
+                group.getChildAt(repeatCount / 2).getChildAt(2),
+                group.getChildAt(repeatCount - 1).getChildAt(4)
+            };
+        }
+    }
+
+    @Benchmark
+    public void toggleGroupRelevance(TreeElementRelevanceState state) {
+        state.relevant = !state.relevant;
+        state.group.setRelevant(state.relevant);
+    }
+
+    @Benchmark
+    public void toggleGroupRelevanceAndCheckQuestions(TreeElementRelevanceState state, Blackhole bh) {
+        state.relevant = !state.relevant;
+        state.group.setRelevant(state.relevant);
+        for (TreeElement question : state.questions)
+            bh.consume(question.isRelevant());
+    }
+}
@@ -0,0 +1,118 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import org.javarosa.core.model.CoreModelModule;
+import org.javarosa.core.model.data.StringData;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.services.PrototypeManager;
+import org.javarosa.core.services.storage.TaggedSerializationWrapper;
+import org.javarosa.core.services.storage.WrappingStorageUtility;
+import org.javarosa.core.services.storage.util.FileStorageFactory;
+import org.javarosa.core.util.JavaRosaCoreModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures writes and reads of form instances from several threads through a wrapping storage over file storage,
+ * with a single serialization wrapper shared by all threads and with a wrapper per thread.
+ */
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 2, time = 1)
+public class WrappingStorageUtilityBenchmark {
+    public static void main(String[] args) {
+        dryRun(WrappingStorageUtilityBenchmark.class);
+    }
+
+    private static final int RECORD_COUNT = 1000;
+    private static final int FIELD_COUNT = 100;
+
+    @State(Scope.Benchmark)
+    public static class StorageState {
+        @Param({"shared", "perThread"})
+        String wrappers = "perThread";
+
+        WrappingStorageUtility storage;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+            PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+            FileStorageFactory storageFactory = new FileStorageFactory(Files.createTempDirectory("javarosa_storage").toFile(),
+                PrototypeManager.getDefault());
+            storage = wrappers.equals("shared")
+                ? new WrappingStorageUtility("FORMDATA", new TaggedSerializationWrapper(), storageFactory)
+                : new WrappingStorageUtility("FORMDATA", TaggedSerializationWrapper::new, storageFactory);
+
+            for (int i = 0; i < RECORD_COUNT; i++)
+                storage.write(instance());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            storage.destroy();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class InstanceState {
+        FormInstance instance;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            instance = instance();
+        }
+    }
+
+    private static FormInstance instance() {
+        TreeElement root = new TreeElement("data");
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            TreeElement field = new TreeElement("field" + i);
+            field.setValue(new StringData("value of field " + i));
+            root.addChild(field);
+        }
+        return new FormInstance(root, "uuid:" + ThreadLocalRandom.current().nextLong());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void write(StorageState state, InstanceState instanceState) {
+        instanceState.instance.setID(-1);
+        state.storage.write(instanceState.instance);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void read(StorageState state, Blackhole bh) {
+        bh.consume(state.storage.read(ThreadLocalRandom.current().nextInt(RECORD_COUNT)));
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public void readWhileWriting_read(StorageState state, Blackhole bh) {
+        read(state, bh);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public void readWhileWriting_write(StorageState state, InstanceState instanceState) {
+        write(state, instanceState);
+    }
+}
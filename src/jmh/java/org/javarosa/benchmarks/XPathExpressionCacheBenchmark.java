@@ -0,0 +1,51 @@
+package org.javarosa.benchmarks;
+
+import static org.javarosa.benchmarks.BenchmarkUtils.dryRun;
+import static org.javarosa.benchmarks.BenchmarkUtils.prepareAssets;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.javarosa.xform.parse.FormParserHelper;
+import org.javarosa.xform.parse.ParseException;
+import org.javarosa.xpath.XPathExpressionCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures parsing the eIMCI form, which repeats many of its expressions, when the expressions parsed for the
+ * previous form are forgotten and when they're kept.
+ */
+public class XPathExpressionCacheBenchmark {
+    public static void main(String[] args) {
+        dryRun(XPathExpressionCacheBenchmark.class);
+    }
+
+    @State(Scope.Thread)
+    public static class XPathExpressionCacheState {
+        @Param({"cleared", "kept"})
+        String expressions = "kept";
+
+        Path form;
+
+        @Setup(Level.Trial)
+        public void initialize() {
+            form = prepareAssets("eIMCI-by-D-Tree.xml").resolve("eIMCI-by-D-Tree.xml");
+        }
+
+        @Setup(Level.Invocation)
+        public void forgetExpressions() {
+            if (expressions.equals("cleared"))
+                XPathExpressionCache.clear();
+        }
+    }
+
+    @Benchmark
+    public void parseForm(XPathExpressionCacheState state, Blackhole bh) throws IOException, ParseException {
+        bh.consume(FormParserHelper.parse(state.form));
+    }
+}
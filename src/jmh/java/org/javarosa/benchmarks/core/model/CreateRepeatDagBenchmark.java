@@ -35,7 +35,7 @@ public class CreateRepeatDagBenchmark {
 
     @State(Scope.Thread)
     public static class ExecutionPlan {
-        @Param({"250", "500", "1000"})
+        @Param({"250", "500", "1000", "2000", "4000"})
         int repeatCount;
 
         Scenario expressionInsideScenario;
@@ -44,6 +44,8 @@ public class CreateRepeatDagBenchmark {
 
         Scenario sumExpressionOutsideScenario;
 
+        Scenario countExpressionOutsideScenario;
+
         Scenario expressionInsideWithPositionCallScenario;
 
         @Setup(Level.Invocation)
@@ -51,6 +53,7 @@ public class CreateRepeatDagBenchmark {
             expressionInsideScenario = getExpressionInsideScenario();
             expressionInsideWithRefOutsideScenario = getExpressionInsideWithRefOutsideScenario();
             sumExpressionOutsideScenario = getSumExpressionOutsideScenario();
+            countExpressionOutsideScenario = getCountExpressionOutsideScenario();
 
             expressionInsideWithPositionCallScenario = getExpressionInsideWithPositionCallScenario();
         }
@@ -77,7 +80,8 @@ public class CreateRepeatDagBenchmark {
     }
 
     @Benchmark
-    // Expect results to be identical to the case where a sibling is referenced.
+    // Expect results to be identical to the case where a sibling is referenced because the sum is maintained
+    // incrementally instead of being recomputed over every instance.
     public void createRepeat_withSumExpressionOutside(ExecutionPlan plan, Blackhole bh) {
         range(0, plan.repeatCount).forEach(n -> {
             bh.consume(plan.sumExpressionOutsideScenario.next());
@@ -86,6 +90,16 @@ public class CreateRepeatDagBenchmark {
         });
     }
 
+    @Benchmark
+    // Expect results to be identical to the sum case.
+    public void createRepeat_withCountExpressionOutside(ExecutionPlan plan, Blackhole bh) {
+        range(0, plan.repeatCount).forEach(n -> {
+            bh.consume(plan.countExpressionOutsideScenario.next());
+            bh.consume(plan.countExpressionOutsideScenario.createNewRepeat());
+            bh.consume(plan.countExpressionOutsideScenario.next());
+        });
+    }
+
     @Benchmark
     // Expect throughput to go down as repeat instance count goes up because position is recomputed for every instance.
     public void createRepeat_withPositionExpression(ExecutionPlan plan, Blackhole bh) {
@@ -96,6 +110,21 @@ public class CreateRepeatDagBenchmark {
         });
     }
 
+    @Benchmark
+    // Expect throughput to be linearly related to the number of repeats because triggerables that affect all
+    // instances are evaluated once for the whole batch instead of once per created instance.
+    public void createRepeats_withPositionExpression(ExecutionPlan plan, Blackhole bh) {
+        bh.consume(plan.expressionInsideWithPositionCallScenario.next());
+        bh.consume(plan.expressionInsideWithPositionCallScenario.createNewRepeats(plan.repeatCount));
+    }
+
+    @Benchmark
+    // Expect results to be identical to the bulk position case.
+    public void createRepeats_withSumExpressionOutside(ExecutionPlan plan, Blackhole bh) {
+        bh.consume(plan.sumExpressionOutsideScenario.next());
+        bh.consume(plan.sumExpressionOutsideScenario.createNewRepeats(plan.repeatCount));
+    }
+
     static Scenario getExpressionInsideScenario() throws IOException, ParseException {
         return Scenario.init("Repeat with expression inside", html(
             head(
@@ -162,6 +191,26 @@ public class CreateRepeatDagBenchmark {
             )));
     }
 
+    static Scenario getCountExpressionOutsideScenario() throws IOException, ParseException {
+        return Scenario.init("Repeat with count expression outside", html(
+            head(
+                title("Repeat with count expression outside"),
+                model(
+                    mainInstance(t("data id=\"outside-count\"",
+                        t("count"),
+
+                        t("repeat jr:template=\"\"",
+                            t("random")
+                        ))),
+                    bind("/data/count").type("int").calculate("count(/data/repeat)"),
+                    bind("/data/repeat/random").type("int").calculate("random()"))),
+            body(
+                repeat("/data/repeat",
+                    input("/data/repeat/random")
+                )
+            )));
+    }
+
     static Scenario getExpressionInsideWithPositionCallScenario() throws IOException, ParseException {
         return Scenario.init("Repeat with expression inside referencing outside", html(
             head(
@@ -0,0 +1,244 @@
+package org.javarosa.benchmarks.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.group;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.instance;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.repeat;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.javarosa.core.util.BindBuilderXFormsElement;
+import org.javarosa.core.util.XFormsElement;
+
+/**
+ * Generates XForms of arbitrary size so that benchmarks can show how a cost grows with the shape of a form instead of
+ * measuring a single fixed form.
+ * <p>
+ * The generated form has:
+ * <ul>
+ * <li>{@code questionCount} integer questions nested in {@code groupDepth} levels of groups. The first one is the
+ * question that every other generated expression depends on (see {@link #getDriverQuestionRef()}).</li>
+ * <li>a chain of {@code calculateChainLength} calculates, each one depending on the previous one.</li>
+ * <li>a repeat with {@code repeatCount} instances in the main instance and a calculate summing their values.</li>
+ * <li>a secondary instance with {@code secondaryInstanceRows} items. A {@code predicateDensity} share of the
+ * questions is only relevant if an item of that instance matches the driver question, which is what a cascading
+ * select would do. Each of these questions has its own predicate, so that they're distinct entries in predicate
+ * caches and indexes, and which of them are relevant depends on the driver question's value (see
+ * {@link #isPredicateRelevant(int, int)}).</li>
+ * </ul>
+ */
+public class SyntheticFormGenerator {
+    private static final int ROW_GROUPS = 10;
+
+    private int questionCount = 10;
+    private int groupDepth;
+    private int repeatCount;
+    private int calculateChainLength;
+    private double predicateDensity;
+    private int secondaryInstanceRows;
+
+    public SyntheticFormGenerator questionCount(int questionCount) {
+        if (questionCount < 1)
+            throw new IllegalArgumentException("A form needs at least one question");
+        this.questionCount = questionCount;
+        return this;
+    }
+
+    public SyntheticFormGenerator groupDepth(int groupDepth) {
+        this.groupDepth = groupDepth;
+        return this;
+    }
+
+    public SyntheticFormGenerator repeatCount(int repeatCount) {
+        this.repeatCount = repeatCount;
+        return this;
+    }
+
+    public SyntheticFormGenerator calculateChainLength(int calculateChainLength) {
+        this.calculateChainLength = calculateChainLength;
+        return this;
+    }
+
+    /**
+     * @param predicateDensity the share of questions, between 0 and 1, whose relevance filters the secondary instance.
+     *                         Ignored if the form has no secondary instance rows.
+     */
+    public SyntheticFormGenerator predicateDensity(double predicateDensity) {
+        if (predicateDensity < 0 || predicateDensity > 1)
+            throw new IllegalArgumentException("Predicate density must be between 0 and 1 but was " + predicateDensity);
+        this.predicateDensity = predicateDensity;
+        return this;
+    }
+
+    public SyntheticFormGenerator secondaryInstanceRows(int secondaryInstanceRows) {
+        this.secondaryInstanceRows = secondaryInstanceRows;
+        return this;
+    }
+
+    /**
+     * Returns the reference of the question that the calculate chain and the predicates depend on. Answering it
+     * triggers the biggest recomputation the form has.
+     */
+    public String getDriverQuestionRef() {
+        return getQuestionRef(0);
+    }
+
+    public String getQuestionRef(int question) {
+        return getQuestionsRef() + "/q" + question;
+    }
+
+    /**
+     * Returns the references of the questions whose relevance filters the secondary instance, in the order of their
+     * predicates.
+     */
+    public List<String> getPredicateQuestionRefs() {
+        List<String> refs = new ArrayList<>();
+        for (int question : getPredicateQuestions())
+            refs.add(getQuestionRef(question));
+        return refs;
+    }
+
+    /**
+     * Returns whether the question with the given predicate is relevant when the driver question has the given
+     * value. Predicate {@code k} matches the items whose group is {@code (driver + k) mod (2 * ROW_GROUPS)}, so about
+     * half of the predicates match some items for any value.
+     */
+    public boolean isPredicateRelevant(int predicate, int driverValue) {
+        // Only groups below the number of rows have items
+        return (driverValue + predicate) % (2 * ROW_GROUPS) < Math.min(secondaryInstanceRows, ROW_GROUPS);
+    }
+
+    public String getRepeatRef() {
+        return "/data/r";
+    }
+
+    public XFormsElement generate() {
+        List<XFormsElement> modelChildren = new ArrayList<>();
+        modelChildren.add(mainInstance(t("data id=\"synthetic\"", getMainInstanceChildren())));
+        if (secondaryInstanceRows > 0)
+            modelChildren.add(instance("rows", getRows()));
+        modelChildren.addAll(getBinds());
+
+        return html(
+            head(
+                title("Synthetic form"),
+                model(toArray(modelChildren))),
+            body(
+                getQuestionsBody(1),
+                repeat(getRepeatRef(),
+                    input(getRepeatRef() + "/value")))
+        );
+    }
+
+    /**
+     * Writes the generated form to a new file in the given directory and returns its path.
+     */
+    public Path writeTo(Path directory) throws IOException {
+        Path formFile = Files.createTempFile(directory, "synthetic", ".xml");
+        Files.write(formFile, generate().asXml().getBytes(UTF_8));
+        return formFile;
+    }
+
+    private XFormsElement[] getMainInstanceChildren() {
+        List<XFormsElement> children = new ArrayList<>();
+        children.add(getQuestionsInstance(1));
+        for (int i = 0; i < calculateChainLength; i++)
+            children.add(t("c" + i));
+        children.add(t("total"));
+        children.add(t("r jr:template=\"\"", t("value")));
+        for (int i = 0; i < repeatCount; i++)
+            children.add(t("r", t("value", String.valueOf(i % 7))));
+        return toArray(children);
+    }
+
+    private XFormsElement getQuestionsInstance(int level) {
+        if (level <= groupDepth)
+            return t("g" + level, getQuestionsInstance(level + 1));
+
+        List<XFormsElement> questions = new ArrayList<>();
+        for (int i = 0; i < questionCount; i++)
+            questions.add(t("q" + i));
+        return t("questions", toArray(questions));
+    }
+
+    private XFormsElement getQuestionsBody(int level) {
+        if (level <= groupDepth)
+            return group(getGroupRef(level), getQuestionsBody(level + 1));
+
+        List<XFormsElement> inputs = new ArrayList<>();
+        for (int i = 0; i < questionCount; i++)
+            inputs.add(input(getQuestionRef(i)));
+        return group(getQuestionsRef(), toArray(inputs));
+    }
+
+    private XFormsElement[] getRows() {
+        XFormsElement[] rows = new XFormsElement[secondaryInstanceRows];
+        for (int i = 0; i < secondaryInstanceRows; i++)
+            rows[i] = t("item",
+                t("id", String.valueOf(i)),
+                t("label", "Row " + i),
+                t("group", String.valueOf(i % ROW_GROUPS)));
+        return rows;
+    }
+
+    private List<XFormsElement> getBinds() {
+        List<XFormsElement> binds = new ArrayList<>();
+
+        List<Integer> predicateQuestions = getPredicateQuestions();
+        int nextPredicate = 0;
+        for (int i = 0; i < questionCount; i++) {
+            BindBuilderXFormsElement questionBind = bind(getQuestionRef(i)).type("int");
+            if (nextPredicate < predicateQuestions.size() && predicateQuestions.get(nextPredicate) == i) {
+                questionBind.relevant("count(instance('rows')/root/item[group = (" + getDriverQuestionRef() + " + " + nextPredicate + ") mod " + 2 * ROW_GROUPS + "]) > 0");
+                nextPredicate++;
+            }
+            binds.add(questionBind);
+        }
+
+        for (int i = 0; i < calculateChainLength; i++)
+            binds.add(bind("/data/c" + i).type("int").calculate((i == 0 ? "coalesce(" + getDriverQuestionRef() + ", 0)" : "/data/c" + (i - 1)) + " + 1"));
+
+        binds.add(bind("/data/total").type("int").calculate("sum(" + getRepeatRef() + "/value)"));
+        binds.add(bind(getRepeatRef() + "/value").type("int"));
+        return binds;
+    }
+
+    private List<Integer> getPredicateQuestions() {
+        int predicateCount = secondaryInstanceRows > 0 ? (int) Math.round((questionCount - 1) * predicateDensity) : 0;
+        // Spreads the predicates evenly over the questions other than the driver
+        double predicateSpacing = predicateCount > 0 ? (double) (questionCount - 1) / predicateCount : 0;
+        List<Integer> questions = new ArrayList<>(predicateCount);
+        for (int i = 1; i < questionCount && questions.size() < predicateCount; i++) {
+            if (i >= 1 + Math.round(questions.size() * predicateSpacing))
+                questions.add(i);
+        }
+        return questions;
+    }
+
+    private String getGroupRef(int level) {
+        StringBuilder ref = new StringBuilder("/data");
+        for (int i = 1; i <= level; i++)
+            ref.append("/g").append(i);
+        return ref.toString();
+    }
+
+    private String getQuestionsRef() {
+        return getGroupRef(groupDepth) + "/questions";
+    }
+
+    private static XFormsElement[] toArray(List<XFormsElement> elements) {
+        return elements.toArray(new XFormsElement[0]);
+    }
+}
@@ -4,6 +4,7 @@ import org.javarosa.core.model.condition.EvaluationContext;
 import org.javarosa.core.model.condition.PredicateFilter;
 import org.javarosa.core.model.instance.DataInstance;
 import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.measure.Metrics;
 import org.javarosa.xpath.expr.XPathCmpExpr;
 import org.javarosa.xpath.expr.XPathEqExpr;
 import org.javarosa.xpath.expr.XPathExpression;
@@ -19,6 +20,8 @@ import java.util.function.Supplier;
  * {@link XPathCmpExpr} and {@link XPathEqExpr}. Repeated evaluations are fetched in O(1) time.
  */
 public class CompareChildToAbsoluteExpressionFilter implements PredicateFilter {
+    private static final String HITS = Metrics.predicateFilterHits(CompareChildToAbsoluteExpressionFilter.class);
+    private static final String MISSES = Metrics.predicateFilterMisses(CompareChildToAbsoluteExpressionFilter.class);
 
     private final Map<String, List<TreeReference>> cachedEvaluations = new HashMap<>();
 
@@ -26,6 +29,7 @@ public class CompareChildToAbsoluteExpressionFilter implements PredicateFilter {
     @Override
     public List<TreeReference> filter(@NotNull DataInstance sourceInstance, @NotNull TreeReference nodeSet, @NotNull XPathExpression predicate, @NotNull List<TreeReference> children, @NotNull EvaluationContext evaluationContext, @NotNull Supplier<List<TreeReference>> next) {
         if (sourceInstance.getInstanceId() == null) {
+            Metrics.increment(MISSES);
             return next.get();
         }
 
@@ -35,13 +39,16 @@ public class CompareChildToAbsoluteExpressionFilter implements PredicateFilter {
             String key = nodeSet.toString() + predicate + candidate.getRelativeSide() + absoluteValue.toString();
 
             if (cachedEvaluations.containsKey(key)) {
+                Metrics.increment(HITS);
                 return cachedEvaluations.get(key);
             } else {
+                Metrics.increment(MISSES);
                 List<TreeReference> filtered = next.get();
                 cachedEvaluations.put(key, filtered);
                 return filtered;
             }
         } else {
+            Metrics.increment(MISSES);
             return next.get();
         }
     }
@@ -51,6 +51,7 @@ import org.javarosa.core.util.externalizable.ExtWrapNullable;
 import org.javarosa.core.util.externalizable.ExtWrapTagged;
 import org.javarosa.core.util.externalizable.Externalizable;
 import org.javarosa.core.util.externalizable.ExternalizableExtras;
+import org.javarosa.core.util.externalizable.LazySection;
 import org.javarosa.core.util.externalizable.PrototypeFactory;
 import org.javarosa.debug.EvaluationResult;
 import org.javarosa.debug.Event;
@@ -58,6 +59,7 @@ import org.javarosa.debug.EventNotifier;
 import org.javarosa.debug.EventNotifierSilent;
 import org.javarosa.form.api.FormEntryController;
 import org.javarosa.form.api.FormEntryModel;
+import org.javarosa.measure.Metrics;
 import org.javarosa.model.xform.XPathReference;
 import org.javarosa.xform.util.XFormAnswerDataSerializer;
 import org.javarosa.xml.InternalDataInstanceParser;
@@ -94,6 +96,19 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     public static final int TEMPLATING_RECURSION_LIMIT = 10;
 
     private static final EventNotifier defaultEventNotifier = new EventNotifierSilent();
+
+    /**
+     * Written first by {@link #writeExternal}. Form definitions serialized before there was a header start with the
+     * form ID, which always fits in an int, so they can't be mistaken for one that has it.
+     */
+    private static final long SERIALIZATION_HEADER = 0x4a52464f524d4445L;
+
+    /**
+     * Version of the layout written by {@link #writeExternal}, including that of the {@link Localizer} and
+     * {@link TriggerableDag} sections. It must be incremented whenever that layout changes so that a form definition
+     * serialized by another version is rejected as a whole rather than misread.
+     */
+    private static final int SERIALIZATION_VERSION = 1;
     private ExternalizableExtras extras = new ExternalizableExtras();
 
     /**
@@ -151,6 +166,9 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 
     private EvaluationContext exprEvalContext;
 
+    private final Map<String, OutputTemplate> outputTemplates = new HashMap<>();
+    private final OutputFragmentCache outputFragmentCache = new OutputFragmentCache();
+
     private final QuestionPreloader preloader = new QuestionPreloader();
 
     // XML ID's cannot start with numbers, so this should never conflict
@@ -161,6 +179,13 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     private final HashMap<String, DataInstance> formInstances;
     private FormInstance mainInstance = null;
 
+    // Sections of a serialized form that haven't been needed since it was read, see readExternal
+    private LazySection<Localizer> unreadLocalizer;
+    private LazySection<HashMap<String, SubmissionProfile>> unreadSubmissionProfiles;
+    private LazySection<List<XFormExtension>> unreadExtensions;
+    private LazySection<ActionController> unreadActionController;
+    private boolean internalInstancesUnparsed;
+
     //region Actions
     private ActionController actionController;
     /**
@@ -217,6 +242,7 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
      * Getters and setters for the lists
      */
     public void addNonMainInstance(DataInstance instance) {
+        parseInternalInstances();
         formInstances.put(instance.getName(), instance);
         resetEvaluationContext();
     }
@@ -242,6 +268,8 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
         mainInstance = fi;
         fi.setFormId(getID());
         resetEvaluationContext();
+        dagImpl.invalidateAggregates();
+        outputFragmentCache.clear();
 
         // construct the references in all the question itemsets
         // now so that the entire main instance is available
@@ -344,6 +372,7 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     }
 
     public void setLocalizer(Localizer l) {
+        unreadLocalizer = null;
         if (this.localizer != null) {
             this.localizer.unregisterLocalizable(this);
         }
@@ -383,6 +412,59 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
         // TODO: pre-populate fix-count repeats here?
     }
 
+    /**
+     * Sets several values and runs the DAG cascade once for all of them instead of once per value. The values are set
+     * in iteration order and the result is the same as calling {@link #setValue(IAnswerData, TreeReference, boolean)}
+     * for each of them in that order. Like in {@link org.javarosa.form.api.FormEntryController}, null values on nodes
+     * that are already empty are ignored.
+     * <p>
+     * The pending changes are cascaded early before setting a calculated node, so that the calculate doesn't overwrite
+     * the value, and before running value changed actions, so that they see the instance as it was right after the
+     * value that triggered them was set.
+     *
+     * @param values the values to set keyed by the full contextualized reference of the node to set them on.
+     */
+    public void setValues(Map<TreeReference, IAnswerData> values) {
+        IAnswerDataSerializer answerDataSerializer = new XFormAnswerDataSerializer();
+
+        List<TreeReference> pendingRefs = new ArrayList<>();
+        for (Map.Entry<TreeReference, IAnswerData> entry : values.entrySet()) {
+            TreeReference ref = entry.getKey();
+            IAnswerData data = entry.getValue();
+
+            if (!pendingRefs.isEmpty() && dagImpl.isCalculated(ref)) {
+                triggerTriggerables(pendingRefs);
+                pendingRefs.clear();
+            }
+
+            TreeElement node = mainInstance.resolveReference(ref);
+            if (data == null && node.getValue() == null)
+                continue;
+
+            boolean valueChanged = !objectEquals(answerDataSerializer.serializeAnswerData(node.getValue()), answerDataSerializer.serializeAnswerData(data));
+
+            setAnswer(data, node);
+            pendingRefs.add(ref);
+
+            QuestionDef currentQuestion = findQuestionByRef(ref, this);
+            if (valueChanged && currentQuestion != null
+                && !currentQuestion.getActionController().getListenersForEvent(Actions.EVENT_QUESTION_VALUE_CHANGED).isEmpty()) {
+                triggerTriggerables(pendingRefs);
+                pendingRefs.clear();
+                currentQuestion.getActionController().triggerActionsFromEvent(Actions.EVENT_QUESTION_VALUE_CHANGED, this, ref.getParentRef(), null);
+            }
+        }
+
+        if (!pendingRefs.isEmpty())
+            triggerTriggerables(pendingRefs);
+    }
+
+    private void triggerTriggerables(List<TreeReference> changedRefs) {
+        Collection<QuickTriggerable> qts = dagImpl.triggerTriggerables(getMainInstance(), getEvaluationContext(), changedRefs);
+        if (dagImpl.isPublishing())
+            dagImpl.publishSummary("New values (" + changedRefs.size() + ")", null, qts);
+    }
+
     /**
      * Copied from commons-lang 2.6: For reviewing purposes only.
      * <p/>
@@ -479,6 +561,65 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 
     public void createNewRepeat(FormIndex index) throws InvalidReferenceException {
         TreeReference repeatContextRef = getChildInstanceRef(index);
+        TreeElement newNode = insertRepeatInstance(index, repeatContextRef);
+
+        dagImpl.createRepeatInstance(getMainInstance(), getEvaluationContext(), repeatContextRef, newNode);
+    }
+
+    /**
+     * Creates {@code count} consecutive instances of the repeat at the given index, the first one at the index's
+     * multiplicity, and then updates the form with a single consolidated DAG pass instead of one per instance. Meant
+     * for creating many instances programmatically, e.g. when importing a roster.
+     * <p>
+     * If the form has actions that run when a repeat instance is created, e.g. on {@code odk-new-repeat}, the instances
+     * are created and updated one at a time instead so that each action sees the form as it would after creating the
+     * instances before it with {@link #createNewRepeat(FormIndex)}.
+     *
+     * @throws IllegalArgumentException if count is negative
+     */
+    public void createNewRepeats(FormIndex index, int count) throws InvalidReferenceException {
+        if (count < 0)
+            throw new IllegalArgumentException("Repeat instance count must not be negative but was " + count);
+        if (count == 0)
+            return;
+        if (count == 1) {
+            createNewRepeat(index);
+            return;
+        }
+
+        TreeReference firstRef = getChildInstanceRef(index);
+        int level = firstRef.size() - 1;
+
+        boolean oneAtATime = hasRepeatCreationActions(index);
+        List<TreeReference> createdRefs = new ArrayList<>(count);
+        List<TreeElement> createdElements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TreeReference repeatContextRef = firstRef.clone();
+            repeatContextRef.setMultiplicity(level, firstRef.getMultiplicity(level) + i);
+            TreeElement newNode = insertRepeatInstance(index, repeatContextRef);
+            if (oneAtATime) {
+                dagImpl.createRepeatInstance(getMainInstance(), getEvaluationContext(), repeatContextRef, newNode);
+            } else {
+                createdElements.add(newNode);
+                createdRefs.add(repeatContextRef);
+            }
+        }
+
+        if (!oneAtATime)
+            dagImpl.createRepeatInstances(getMainInstance(), getEvaluationContext(), createdRefs, createdElements);
+    }
+
+    /**
+     * Returns whether creating an instance of the repeat at the given index runs any of the actions fired by
+     * {@link #insertRepeatInstance}.
+     */
+    private boolean hasRepeatCreationActions(FormIndex index) {
+        return !getActionController().getListenersForEvent(Actions.EVENT_JR_INSERT).isEmpty()
+            || !getActionController().getListenersForEvent(Actions.EVENT_ODK_NEW_REPEAT).isEmpty()
+            || !getChild(index).getActionController().getListenersForEvent(Actions.EVENT_ODK_NEW_REPEAT).isEmpty();
+    }
+
+    private TreeElement insertRepeatInstance(FormIndex index, TreeReference repeatContextRef) throws InvalidReferenceException {
         TreeElement template = mainInstance.getTemplate(repeatContextRef);
 
         mainInstance.copyNode(template, repeatContextRef);
@@ -488,12 +629,12 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 
         // Fire events before form re-computation (calculates, relevance, etc). First trigger actions defined in the
         // model and then trigger actions defined in the body
-        actionController.triggerActionsFromEvent(Actions.EVENT_JR_INSERT, this, repeatContextRef, this);
-        actionController.triggerActionsFromEvent(Actions.EVENT_ODK_NEW_REPEAT, this, repeatContextRef, this);
+        getActionController().triggerActionsFromEvent(Actions.EVENT_JR_INSERT, this, repeatContextRef, this);
+        getActionController().triggerActionsFromEvent(Actions.EVENT_ODK_NEW_REPEAT, this, repeatContextRef, this);
         // Trigger actions nested in the new repeat
         getChild(index).getActionController().triggerActionsFromEvent(Actions.EVENT_ODK_NEW_REPEAT, this, repeatContextRef, this);
 
-        dagImpl.createRepeatInstance(getMainInstance(), getEvaluationContext(), repeatContextRef, newNode);
+        return newNode;
     }
 
     @Override
@@ -506,7 +647,7 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 
         QuickTriggerable qc = dagImpl.getRelevanceForRepeat(repeatRef.genericize());
         if (qc != null) {
-            relev = (boolean) qc.eval(mainInstance, new EvaluationContext(exprEvalContext, repeatRef));
+            relev = (boolean) qc.eval(mainInstance, new EvaluationContext(getEvaluationContext(), repeatRef));
         }
 
         if (relev) {
@@ -582,12 +723,12 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 
         // delete existing dest nodes that are not in the answer selection
         HashMap<String, TreeElement> existingValues = new HashMap<>();
-        List<TreeReference> existingNodes = exprEvalContext.expandReference(destRef);
+        List<TreeReference> existingNodes = getEvaluationContext().expandReference(destRef);
         for (TreeReference existingNode : existingNodes) {
             TreeElement node = getMainInstance().resolveReference(existingNode);
 
             if (itemset.valueRef != null) {
-                String value = itemset.getRelativeValue().evalReadable(this.getMainInstance(), new EvaluationContext(exprEvalContext, node.getRef()));
+                String value = itemset.getRelativeValue().evalReadable(this.getMainInstance(), new EvaluationContext(getEvaluationContext(), node.getRef()));
                 if (selectedValues.contains(value)) {
                     existingValues.put(value, node); // cache node if in selection
                     // and already exists
@@ -673,6 +814,13 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
         return dagImpl.triggerTriggerables(getMainInstance(), getEvaluationContext(), ref);
     }
 
+    /**
+     * Lets the DAG know about a value that was changed in the model without triggering the cascade.
+     */
+    void recordUntriggeredChange(TreeReference ref) {
+        dagImpl.recordChange(getEvaluationContext(), ref);
+    }
+
     public ValidateOutcome validate(boolean markCompleted) {
 
         FormEntryModel formEntryModelToBeValidated = new FormEntryModel(this);
@@ -692,13 +840,14 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
         if (c == null) {
             return true;
         }
-        EvaluationContext ec = new EvaluationContext(exprEvalContext, ref);
+        EvaluationContext ec = new EvaluationContext(getEvaluationContext(), ref);
         ec.isConstraint = true;
         ec.candidateValue = data;
 
         boolean result = c.constraint.eval(mainInstance, ec);
 
-        getEventNotifier().publishEvent(new Event("Constraint", new EvaluationResult(ref, result)));
+        if (getEventNotifier().isEnabled())
+            getEventNotifier().publishEvent(new Event("Constraint", new EvaluationResult(ref, result)));
 
         return result;
     }
@@ -708,11 +857,20 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     }
 
     public EvaluationContext getEvaluationContext() {
+        parseInternalInstances();
         return this.exprEvalContext;
     }
 
+    /**
+     * Returns the evaluation context for itemset nodesets, which answers distance predicates from the DAG's spatial
+     * index.
+     */
+    EvaluationContext getItemsetEvaluationContext() {
+        return dagImpl.withItemsetPredicateFilters(getEvaluationContext());
+    }
+
     private EvaluationContext initEvalContext() {
-        EvaluationContext ec = new EvaluationContext(mainInstance, getFormInstances(), new EvaluationContext(null));
+        EvaluationContext ec = new EvaluationContext(mainInstance, formInstances, new EvaluationContext(null));
 
         if (!ec.getFunctionHandlers().containsKey("jr:itext")) {
             final FormDef f = this;
@@ -875,7 +1033,49 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
         return fillTemplateString(template, contextRef, new HashMap<>());
     }
 
+    /**
+     * Returns the template with its references to output fragments (${0}, ${1}...) replaced by the values of the
+     * fragments in the given context. Templates are compiled the first time they are filled and fragment values are
+     * reused for as long as their triggers don't change, see {@link OutputFragmentCache}.
+     */
     public String fillTemplateString(String template, TreeReference contextRef, HashMap<String, ?> variables) {
+        if (!template.contains("${"))
+            return template;
+
+        OutputTemplate compiled = outputTemplates.computeIfAbsent(template, OutputTemplate::compile);
+        String[] values = new String[compiled.getReferenceCount()];
+        for (int i = 0; i < values.length; i++) {
+            int ix = compiled.getOutputFragmentIndex(i);
+            // References that can't be filled are left for the general algorithm to report
+            if (ix < 0 || ix >= outputFragments.size())
+                return fillTemplateStringIteratively(template, contextRef, variables);
+
+            values[i] = getOutputFragmentValue(ix, contextRef, variables);
+        }
+
+        // An output's value can itself contain references, which are filled in turn
+        String filled = compiled.fill(values);
+        return filled.contains("${") ? fillTemplateStringIteratively(filled, contextRef, variables) : filled;
+    }
+
+    private String getOutputFragmentValue(int ix, TreeReference contextRef, HashMap<String, ?> variables) {
+        IConditionExpr expr = outputFragments.get(ix);
+        if (!OutputFragmentCache.isCacheable(expr, contextRef, variables))
+            return evaluateOutputFragment(expr, contextRef, variables);
+
+        return outputFragmentCache.getValue(ix, expr, contextRef, mainInstance, getEvaluationContext(),
+            () -> evaluateOutputFragment(expr, contextRef, variables));
+    }
+
+    private String evaluateOutputFragment(IConditionExpr expr, TreeReference contextRef, HashMap<String, ?> variables) {
+        Metrics.increment(Metrics.OUTPUT_FRAGMENT_EVALUATIONS);
+        EvaluationContext ec = new EvaluationContext(getEvaluationContext(), contextRef);
+        ec.setOriginalContext(contextRef);
+        ec.setVariables(variables);
+        return expr.evalReadable(this.getMainInstance(), ec);
+    }
+
+    private String fillTemplateStringIteratively(String template, TreeReference contextRef, HashMap<String, ?> variables) {
         HashMap<String, String> args = new HashMap<>();
 
         int depth = 0;
@@ -892,12 +1092,7 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 
                     if (ix < 0 || ix >= outputFragments.size()) continue;
 
-                    IConditionExpr expr = outputFragments.get(ix);
-                    EvaluationContext ec = new EvaluationContext(exprEvalContext, contextRef);
-                    ec.setOriginalContext(contextRef);
-                    ec.setVariables(variables);
-                    String value = expr.evalReadable(this.getMainInstance(), ec);
-                    args.put(argName, value);
+                    args.put(argName, getOutputFragmentValue(ix, contextRef, variables));
                 }
             }
 
@@ -952,7 +1147,7 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     }
 
     public void postProcessInstance() {
-        actionController.triggerActionsFromEvent(Actions.EVENT_XFORMS_REVALIDATE, elementsWithActionTriggeredByToplevelEvent, this);
+        getActionController().triggerActionsFromEvent(Actions.EVENT_XFORMS_REVALIDATE, elementsWithActionTriggeredByToplevelEvent, this);
         postProcessInstance(mainInstance.getRoot());
     }
 
@@ -1002,6 +1197,10 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
      * <p/>
      * Requires that the instance has been set to a prototype of the instance
      * that should be used for deserialization.
+     * <p/>
+     * A form definition serialized by a version of JavaRosa with a different layout, including one from before the
+     * layout was versioned, is rejected with a {@link DeserializationException} before anything else is read. A cached
+     * form definition has to be discarded and the form parsed again in that case.
      *
      * @param dis - the stream to read from
      * @throw IOException
@@ -1010,6 +1209,13 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
      */
     @Override
     public void readExternal(DataInputStream dis, PrototypeFactory pf) throws IOException, DeserializationException {
+        long startTime = Metrics.startTimer();
+        if (ExtUtil.readNumeric(dis) != SERIALIZATION_HEADER)
+            throw new DeserializationException("Form definition was serialized by an older version without a format version");
+        int version = ExtUtil.readInt(dis);
+        if (version != SERIALIZATION_VERSION)
+            throw new DeserializationException("Form definition was serialized with format version " + version + " instead of " + SERIALIZATION_VERSION);
+
         setID(ExtUtil.readInt(dis));
         setName(ExtUtil.nullIfEmpty(ExtUtil.readString(dis)));
         setTitle((String) ExtUtil.read(dis, new ExtWrapNullable(String.class), pf));
@@ -1022,15 +1228,16 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
         // instance not having a name. Evaluation context must be reset after this.
         mainInstance.getBase().setInstanceName(null);
 
-        setLocalizer((Localizer) ExtUtil.read(dis, new ExtWrapNullable(Localizer.class), pf));
+        // The localizer, submission profiles, extensions and action controller are read as bytes and only
+        // deserialized when they're first needed
+        setLocalizer(null);
+        unreadLocalizer = LazySection.read(dis, pf, (in, f) -> (Localizer) ExtUtil.read(in, new ExtWrapNullable(Localizer.class), f));
 
-        for (Triggerable condition : TriggerableDag.readExternalTriggerables(dis, pf))
-            addTriggerable(condition);
-        finalizeTriggerables();
+        dagImpl.readExternalTriggerables(dis, pf, getMainInstance(), getEvaluationContext());
 
         outputFragments = (List<IConditionExpr>) ExtUtil.read(dis, new ExtWrapListPoly(), pf);
 
-        submissionProfiles = (HashMap<String, SubmissionProfile>) ExtUtil.read(dis, new ExtWrapMap(String.class, SubmissionProfile.class));
+        unreadSubmissionProfiles = LazySection.read(dis, pf, (in, f) -> (HashMap<String, SubmissionProfile>) ExtUtil.read(in, new ExtWrapMap(String.class, SubmissionProfile.class), f));
 
         // For backwards compatibility
         if (formXmlPath == null) {
@@ -1040,23 +1247,24 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
                 addNonMainInstance(formInstanceEntry.getValue());
             }
         } else {
+            // External secondary instances are still read right away so that a missing file fails deserialization
             HashMap<String, DataInstance> externalFormInstances = (HashMap<String, DataInstance>) ExtUtil.read(dis, new ExtWrapMap(String.class, new ExtWrapTagged()), pf);
-            // Parse internal secondary instances from the formXML file
-            HashMap<String, DataInstance> internalFormInstances = InternalDataInstanceParser.buildInstances(getFormXmlPath());
             formInstances.putAll(externalFormInstances);
-            formInstances.putAll(internalFormInstances);
+            // Internal secondary instances are parsed from the formXML file when first needed
+            internalInstancesUnparsed = true;
         }
 
-        extensions = (List<XFormExtension>) ExtUtil.read(dis, new ExtWrapListPoly(), pf);
+        unreadExtensions = LazySection.read(dis, pf, (in, f) -> (List<XFormExtension>) ExtUtil.read(in, new ExtWrapListPoly(), f));
 
         resetEvaluationContext();
-        actionController = (ActionController) ExtUtil.read(dis, new ExtWrapNullable(ActionController.class), pf);
+        unreadActionController = LazySection.read(dis, pf, (in, f) -> (ActionController) ExtUtil.read(in, new ExtWrapNullable(ActionController.class), f));
         actions = new HashSet<>((List<String>) ExtUtil.read(dis, new ExtWrapListPoly(), pf));
 
         List<TreeReference> treeReferencesWithActions = (List<TreeReference>) ExtUtil.read(dis, new ExtWrapListPoly(), pf);
         elementsWithActionTriggeredByToplevelEvent = getElementsFromReferences(treeReferencesWithActions);
 
         extras = (ExternalizableExtras) ExtUtil.read(dis, ExternalizableExtras.class);
+        Metrics.stopTimer(Metrics.FORM_DESERIALIZATION_TIME, startTime);
     }
 
     /**
@@ -1110,14 +1318,14 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
         }
 
         if (newInstance) {
-            actionController.triggerActionsFromEvent(Actions.EVENT_ODK_INSTANCE_FIRST_LOAD, elementsWithActionTriggeredByToplevelEvent, this);
+            getActionController().triggerActionsFromEvent(Actions.EVENT_ODK_INSTANCE_FIRST_LOAD, elementsWithActionTriggeredByToplevelEvent, this);
 
             // xforms-ready is marked as deprecated as of JavaRosa 2.14.0 but is still dispatched for compatibility with
             // old form definitions
-            actionController.triggerActionsFromEvent(Actions.EVENT_XFORMS_READY, elementsWithActionTriggeredByToplevelEvent, this);
+            getActionController().triggerActionsFromEvent(Actions.EVENT_XFORMS_READY, elementsWithActionTriggeredByToplevelEvent, this);
         }
 
-        actionController.triggerActionsFromEvent(Actions.EVENT_ODK_INSTANCE_LOAD, elementsWithActionTriggeredByToplevelEvent, this);
+        getActionController().triggerActionsFromEvent(Actions.EVENT_ODK_INSTANCE_LOAD, elementsWithActionTriggeredByToplevelEvent, this);
 
         Collection<QuickTriggerable> qts = initializeTriggerables(TreeReference.rootRef());
         dagImpl.publishSummary("Form initialized", null, qts);
@@ -1131,18 +1339,20 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
      */
     @Override
     public void writeExternal(DataOutputStream dos) throws IOException {
+        ExtUtil.writeNumeric(dos, SERIALIZATION_HEADER);
+        ExtUtil.writeNumeric(dos, SERIALIZATION_VERSION);
         ExtUtil.writeNumeric(dos, getID());
         ExtUtil.writeString(dos, ExtUtil.emptyIfNull(getName()));
         ExtUtil.write(dos, new ExtWrapNullable(getTitle()));
         ExtUtil.write(dos, new ExtWrapListPoly(getChildren()));
         ExtUtil.writeString(dos, ExtUtil.emptyIfNull(getFormXmlPath()));
         ExtUtil.write(dos, getMainInstance());
-        ExtUtil.write(dos, new ExtWrapNullable(localizer));
+        LazySection.write(dos, unreadLocalizer, localizer, (out, l) -> ExtUtil.write(out, new ExtWrapNullable(l)));
 
         dagImpl.writeExternalTriggerables(dos);
 
         ExtUtil.write(dos, new ExtWrapListPoly(outputFragments));
-        ExtUtil.write(dos, new ExtWrapMap(submissionProfiles));
+        LazySection.write(dos, unreadSubmissionProfiles, submissionProfiles, (out, profiles) -> ExtUtil.write(out, new ExtWrapMap(profiles)));
 
         // for support of multi-instance forms
         if (formXmlPath == null) {
@@ -1153,8 +1363,8 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
             ExtUtil.write(dos, new ExtWrapMap(getExternalInstances(), new ExtWrapTagged()));
         }
 
-        ExtUtil.write(dos, new ExtWrapListPoly(extensions));
-        ExtUtil.write(dos, new ExtWrapNullable(actionController));
+        LazySection.write(dos, unreadExtensions, extensions, (out, e) -> ExtUtil.write(out, new ExtWrapListPoly(e)));
+        LazySection.write(dos, unreadActionController, actionController, (out, a) -> ExtUtil.write(out, new ExtWrapNullable(a)));
         ExtUtil.write(dos, new ExtWrapListPoly(new ArrayList<>(actions)));
         ExtUtil.write(dos, new ExtWrapListPoly(getReferencesFromElements(elementsWithActionTriggeredByToplevelEvent)));
 
@@ -1193,23 +1403,21 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     }
 
     public FormIndex buildIndex(List<Integer> indexes, List<Integer> multiplicities, List<IFormElement> elements) {
-        FormIndex cur = null;
-        List<Integer> curMultiplicities = new ArrayList<>(multiplicities);
-        List<IFormElement> curElements = new ArrayList<>(elements);
-
-        for (int i = indexes.size() - 1; i >= 0; i--) {
-            int ix = indexes.get(i);
-            int mult = multiplicities.get(i);
-
-            if (!(elements.get(i) instanceof GroupDef && ((GroupDef) elements.get(i)).getRepeat())) {
-                mult = -1;
-            }
+        if (indexes.isEmpty())
+            return null;
 
-            cur = new FormIndex(cur, ix, mult, getChildInstanceRef(curElements, curMultiplicities));
-            curMultiplicities.remove(curMultiplicities.size() - 1);
-            curElements.remove(curElements.size() - 1);
+        int[] levels = new int[2 * indexes.size()];
+        for (int i = 0; i < indexes.size(); i++) {
+            levels[2 * i] = indexes.get(i);
+            levels[2 * i + 1] = elements.get(i) instanceof GroupDef && ((GroupDef) elements.get(i)).getRepeat()
+                ? multiplicities.get(i)
+                : -1;
         }
-        return cur;
+
+        List<Integer> indexMultiplicities = new ArrayList<>(multiplicities);
+        List<IFormElement> indexElements = new ArrayList<>(elements);
+        return FormIndex.fromLevels(levels,
+            level -> getChildInstanceRef(indexElements.subList(0, level + 1), indexMultiplicities.subList(0, level + 1)));
     }
 
     public int getNumRepetitions(FormIndex index) {
@@ -1312,6 +1520,8 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     }
 
     public Localizer getLocalizer() {
+        if (unreadLocalizer != null)
+            setLocalizer(unreadLocalizer.get());
         return localizer;
     }
 
@@ -1460,6 +1670,10 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
 
     @Override
     public ActionController getActionController() {
+        if (unreadActionController != null) {
+            actionController = unreadActionController.get();
+            unreadActionController = null;
+        }
         return actionController;
     }
 
@@ -1497,11 +1711,11 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     }
 
     public void setDefaultSubmission(SubmissionProfile profile) {
-        submissionProfiles.put(DEFAULT_SUBMISSION_PROFILE, profile);
+        getSubmissionProfiles().put(DEFAULT_SUBMISSION_PROFILE, profile);
     }
 
     public void addSubmissionProfile(String submissionId, SubmissionProfile profile) {
-        submissionProfiles.put(submissionId, profile);
+        getSubmissionProfiles().put(submissionId, profile);
     }
 
     public SubmissionProfile getSubmissionProfile() {
@@ -1510,7 +1724,15 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
         // In the mean time, though, we can only promise that the default one will
         // be used.
 
-        return submissionProfiles.get(DEFAULT_SUBMISSION_PROFILE);
+        return getSubmissionProfiles().get(DEFAULT_SUBMISSION_PROFILE);
+    }
+
+    private HashMap<String, SubmissionProfile> getSubmissionProfiles() {
+        if (unreadSubmissionProfiles != null) {
+            submissionProfiles = unreadSubmissionProfiles.get();
+            unreadSubmissionProfiles = null;
+        }
+        return submissionProfiles;
     }
 
     @Override
@@ -1531,6 +1753,11 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     }
 
     public <X extends XFormExtension> X getExtension(Class<X> extension) {
+        if (unreadExtensions != null) {
+            extensions = unreadExtensions.get();
+            unreadExtensions = null;
+        }
+
         for (XFormExtension ex : extensions) {
             if (ex.getClass().isAssignableFrom(extension)) {
                 return (X) ex;
@@ -1600,9 +1827,22 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     }
 
     public HashMap<String, DataInstance> getFormInstances() {
+        parseInternalInstances();
         return formInstances;
     }
 
+    /**
+     * Parses the internal secondary instances of a deserialized form from its XML file the first time they're
+     * needed. The evaluation context shares {@link #formInstances} so it doesn't need to be reset.
+     */
+    private void parseInternalInstances() {
+        if (!internalInstancesUnparsed)
+            return;
+
+        internalInstancesUnparsed = false;
+        formInstances.putAll(InternalDataInstanceParser.buildInstances(getFormXmlPath()));
+    }
+
     public Extras<Externalizable> getExtras() {
         return extras;
     }
@@ -1614,4 +1854,16 @@ public class FormDef implements IFormElement, Localizable, Persistable, IMetaDat
     public void addPredicateFilter(PredicateFilter predicateFilter) {
         dagImpl.addPredicateFilter(predicateFilter);
     }
+
+    /**
+     * Installs a profiler that records the cost of every bind expression evaluated from now on, or stops profiling if
+     * it is null.
+     */
+    public void setProfiler(TriggerableProfiler profiler) {
+        dagImpl.setProfiler(profiler);
+    }
+
+    public TriggerableProfiler getProfiler() {
+        return dagImpl.getProfiler();
+    }
 }
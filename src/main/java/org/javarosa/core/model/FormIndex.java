@@ -18,8 +18,10 @@ package org.javarosa.core.model;
 
 import org.javarosa.core.model.instance.TreeReference;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Objects;
+import java.util.function.IntFunction;
 
 /**
  * {@code FormIndex} is an immutable index which is structured to provide quick access to a specific node in a
@@ -28,17 +30,21 @@ import java.util.Objects;
  * {@link org.javarosa.core.model.instance.TreeElement TreeElement} representing a form instance that can be filled). 
  * It also includes a {@link TreeReference} representing the XPath path of that node.
  *
- * The XML node referred to by a FormIndex can correspond to either a question or a group. The index is constructed as a
- * linked list of levels.
+ * The XML node referred to by a FormIndex can correspond to either a question or a group. The index is a list of
+ * levels from the top of the form down, each with a local index and an instance index.
  *
  * A FormIndex can refer to:
- * - a node at the top level of the form (only {@link #localIndex} is used)
- * - a node nested in a group hierarchy ({@link #localIndex} and {@link #nextLevel} are used)
- * - a node nested in a repeat ({@link #localIndex}, {@link #nextLevel} and {@link #instanceIndex} are all used)
+ * - a node at the top level of the form (only {@link #getLocalIndex()} is used)
+ * - a node nested in a group hierarchy ({@link #getLocalIndex()} and {@link #getNextLevel()} are used)
+ * - a node nested in a repeat ({@link #getLocalIndex()}, {@link #getNextLevel()} and {@link #getInstanceIndex()} are
+ * all used)
  *
- * When a FormIndex list refers to a nested node, that root FormIndex represents the path root and links to subsequent
- * levels using the {@link #nextLevel} field. The @{link #getReference} method returns the reference of the FormIndex at
- * the end of the list.
+ * When a FormIndex refers to a nested node, it represents the path root and {@link #getNextLevel()} gives the
+ * subsequent levels. The @{link #getReference} method returns the reference of the last level.
+ *
+ * The levels are kept as (local index, instance index) pairs in a single array which the index's next levels, previous
+ * levels and parts share, so moving between levels, comparing indexes and checking whether one is part of another
+ * don't build chains of objects. The reference of each level can be worked out the first time it's asked for.
  *
  * Consider the following instance from a blank form with {@code friends} as a repeat group and {@code school_info} as a
  * non-repeat group:
@@ -91,48 +97,111 @@ import java.util.Objects;
  */
 public class FormIndex implements Serializable {
 
-    private boolean beginningOfForm = false;
-
-    private boolean endOfForm = false;
-
     /**
-     * The 0-based index of the group or question in its parent.
+     * The 0-based index of the group or question in its parent followed by the 0-based index of the current instance
+     * of a repeated node (or -1), for each level of the chain this index is part of, top level first.
      */
-    private final int localIndex;
+    private final int[] levels;
 
     /**
-     * The 0-based index of the current instance of a repeated node.
+     * What the indexes sharing the chain have in common.
      */
-    private int instanceIndex = -1;
+    private final Chain chain;
 
     /**
-     * The next level of this index. A {@code FormIndex} chain starts at the root and is linked to deeper nodes in the
-     * tree it indexes into.
+     * The levels of the chain that this index covers, from {@code start} up to but not including {@code end}.
      */
-    private FormIndex nextLevel;
+    private final int start;
+    private final int end;
+
+    private transient FormIndex nextLevel;
 
     /**
-     * The XPath reference this index refers to. Warning: these are mutable and could conceivably get out of sync with
-     * the index.
+     * Whether the indexes sharing a chain of levels are before the start or after the end of the form, and the XPath
+     * reference each level of the chain refers to. Warning: the references are mutable and could conceivably get out of
+     * sync with the index.
      */
-    private final TreeReference reference;
+    private static final class Chain implements Serializable {
+        final boolean beginningOfForm;
+        final boolean endOfForm;
+        final TreeReference[] references;
+
+        /**
+         * Works out the references that haven't been filled in yet, if they're worked out when they're first needed.
+         */
+        transient IntFunction<TreeReference> referenceSource;
+
+        Chain(boolean beginningOfForm, boolean endOfForm, TreeReference[] references, IntFunction<TreeReference> referenceSource) {
+            this.beginningOfForm = beginningOfForm;
+            this.endOfForm = endOfForm;
+            this.references = references;
+            this.referenceSource = referenceSource;
+        }
+
+        /**
+         * The same levels, neither before the start nor after the end of the form.
+         */
+        Chain inForm() {
+            return beginningOfForm || endOfForm ? new Chain(false, false, references, referenceSource) : this;
+        }
+
+        TreeReference getReference(int level) {
+            TreeReference reference = references[level];
+            if (reference == null && referenceSource != null) {
+                reference = referenceSource.apply(level);
+                references[level] = reference;
+            }
+            return reference;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            for (int i = 0; i < references.length; i++)
+                getReference(i);
+            out.defaultWriteObject();
+        }
+    }
 
     /**
      * Returns an index before the start of the form
      */
     public static FormIndex createBeginningOfFormIndex() {
-        FormIndex begin = new FormIndex(-1, null);
-        begin.beginningOfForm = true;
-        return begin;
+        return new FormIndex(new int[]{-1, -1}, new Chain(true, false, new TreeReference[1], null), 0, 1);
     }
 
     /**
      * Returns an index after the end of the form
      */
     public static FormIndex createEndOfFormIndex() {
-        FormIndex end = new FormIndex(-1,null);
-        end.endOfForm = true;
-        return end;
+        return new FormIndex(new int[]{-1, -1}, new Chain(false, true, new TreeReference[1], null), 0, 1);
+    }
+
+    /**
+     * Returns an index with the given levels, top level first, without asking for their references until they're
+     * needed.
+     *
+     * @param levels The local index followed by the instance index (or -1) of each level. The array is kept by the
+     *               index, so it must not be changed afterwards.
+     * @param references Gives the reference of the level with the given 0-based depth
+     */
+    public static FormIndex fromLevels(int[] levels, IntFunction<TreeReference> references) {
+        if (levels.length == 0 || levels.length % 2 != 0)
+            throw new IllegalArgumentException("An index needs a local and instance index for each of its levels");
+
+        return new FormIndex(levels, new Chain(false, false, new TreeReference[levels.length / 2], references), 0, levels.length / 2);
+    }
+
+    private FormIndex(int[] levels, Chain chain, int start, int end) {
+        this.levels = levels;
+        this.chain = chain;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * The same levels as the given index, neither before the start nor after the end of the form.
+     */
+    private FormIndex(FormIndex index) {
+        this(index.levels, index.chain.inForm(), index.start, index.end);
     }
 
     /**
@@ -142,10 +211,9 @@ public class FormIndex implements Serializable {
      * @param reference A reference to the instance element identified by this index
      */
     public FormIndex(int localIndex, TreeReference reference) {
-        this.localIndex = localIndex;
-        this.reference = reference;
-
+        this(localIndex, -1, reference);
     }
+
     /**
      * Constructs a @{code FormIndex} for a node that does not have any children but that may have repeat instances in a
      * filled form. The {@code instanceIndex} identifies which of these instances should be referred to.
@@ -156,9 +224,7 @@ public class FormIndex implements Serializable {
      *
      */
     public FormIndex(int localIndex, int instanceIndex, TreeReference reference) {
-        this.localIndex = localIndex;
-        this.instanceIndex = instanceIndex;
-        this.reference = reference;
+        this(new int[]{localIndex, instanceIndex}, new Chain(false, false, new TreeReference[]{reference}, null), 0, 1);
     }
 
     /**
@@ -170,8 +236,7 @@ public class FormIndex implements Serializable {
      * @param reference A reference to the instance element identified by this index;
      */
     public FormIndex(FormIndex nextLevel, int localIndex, TreeReference reference) {
-        this(localIndex, reference);
-        this.nextLevel = nextLevel;
+        this(nextLevel, localIndex, -1, reference);
     }
 
     /**
@@ -185,8 +250,7 @@ public class FormIndex implements Serializable {
      * @param reference A reference to the instance element identified by this index;
      */
     public FormIndex(FormIndex nextLevel, int localIndex, int instanceIndex, TreeReference reference) {
-        this(nextLevel, localIndex, reference);
-        this.instanceIndex = instanceIndex;
+        this(prepend(nextLevel, localIndex, instanceIndex, reference));
     }
 
     /**
@@ -196,17 +260,32 @@ public class FormIndex implements Serializable {
      * (currentLevel, (nextLevel...))
      */
     public FormIndex(FormIndex nextLevel, FormIndex currentLevel) {
-        if(currentLevel == null) {
-            this.nextLevel = nextLevel.nextLevel;
-            this.localIndex = nextLevel.localIndex;
-            this.instanceIndex = nextLevel.instanceIndex;
-            this.reference = nextLevel.reference;
-        } else {
-            this.nextLevel = nextLevel;
-            this.localIndex = currentLevel.getLocalIndex();
-            this.instanceIndex = currentLevel.getInstanceIndex();
-            this.reference = currentLevel.reference;
+        this(currentLevel == null
+            ? nextLevel
+            : prepend(nextLevel, currentLevel.getLocalIndex(), currentLevel.getInstanceIndex(), currentLevel.chain.getReference(currentLevel.start)));
+    }
+
+    private static FormIndex prepend(FormIndex nextLevel, int localIndex, int instanceIndex, TreeReference reference) {
+        int depth = nextLevel == null ? 0 : nextLevel.getDepth();
+
+        int[] levels = new int[2 * (depth + 1)];
+        levels[0] = localIndex;
+        levels[1] = instanceIndex;
+        TreeReference[] references = new TreeReference[depth + 1];
+        references[0] = reference;
+        if (nextLevel != null) {
+            System.arraycopy(nextLevel.levels, 2 * nextLevel.start, levels, 2, 2 * depth);
+            for (int i = 0; i < depth; i++)
+                references[i + 1] = nextLevel.chain.getReference(nextLevel.start + i);
         }
+        return new FormIndex(levels, new Chain(false, false, references, null), 0, depth + 1);
+    }
+
+    /**
+     * An index sharing this one's chain, covering the given levels of it.
+     */
+    private FormIndex view(int start, int end) {
+        return new FormIndex(levels, chain.inForm(), start, end);
     }
 
     /**
@@ -214,21 +293,21 @@ public class FormIndex implements Serializable {
      * @return true if the index is neither before the start or after the end of the form
      */
     public boolean isInForm () {
-        return !beginningOfForm && !endOfForm;
+        return !chain.beginningOfForm && !chain.endOfForm;
     }
 
     /**
      * @return The index of the element in the current context
      */
     public int getLocalIndex() {
-        return localIndex;
+        return levels[2 * start];
     }
 
     /**
      * @return The multiplicity of the current instance of a repeated question or group
      */
     public int getInstanceIndex() {
-        return instanceIndex;
+        return levels[2 * start + 1];
     }
 
     /**
@@ -236,7 +315,7 @@ public class FormIndex implements Serializable {
      * @return The terminal element (fully qualified)'s instance index
      */
     public int getElementMultiplicity() {
-        return getTerminal().instanceIndex;
+        return levels[2 * end - 1];
     }
 
     /**
@@ -245,6 +324,11 @@ public class FormIndex implements Serializable {
      * by the local index.
      */
     public FormIndex getNextLevel() {
+        if (isTerminal())
+            return null;
+
+        if (nextLevel == null)
+            nextLevel = view(start + 1, end);
         return nextLevel;
     }
 
@@ -253,13 +337,13 @@ public class FormIndex implements Serializable {
      * FormIndex.
      */
     public TreeReference getReference() {
-        return getTerminal().reference;
+        return chain.getReference(end - 1);
     }
 
     public FormIndex getTerminal() {
         FormIndex walker = this;
-        while(walker.nextLevel != null) {
-            walker = walker.nextLevel;
+        while (!walker.isTerminal()) {
+            walker = walker.getNextLevel();
         }
         return walker;
     }
@@ -269,7 +353,7 @@ public class FormIndex implements Serializable {
      * index references with more specificity than the current context
      */
     public boolean isTerminal() {
-        return nextLevel == null;
+        return end - start == 1;
     }
 
     /**
@@ -277,7 +361,7 @@ public class FormIndex implements Serializable {
      * @return true if we are after the end of the form
      */
     public boolean isEndOfFormIndex() {
-        return endOfForm;
+        return chain.endOfForm;
     }
 
     /**
@@ -285,7 +369,7 @@ public class FormIndex implements Serializable {
      * @return true if we are before the start of the form
      */
     public boolean isBeginningOfFormIndex() {
-        return beginningOfForm;
+        return chain.beginningOfForm;
     }
 
     @Override
@@ -301,9 +385,12 @@ public class FormIndex implements Serializable {
 
     @Override
     public int hashCode() {
-        // The reference field is not included. This matches the equals(Object) implementation. TreeReferences are
+        // The references are not included. This matches the equals(Object) implementation. TreeReferences are
         // mutable and are provided as a way to convert between FormIndex and other types.
-        return Objects.hash(beginningOfForm, endOfForm, localIndex, instanceIndex, nextLevel);
+        int result = 31 * Boolean.hashCode(chain.beginningOfForm) + Boolean.hashCode(chain.endOfForm);
+        for (int i = 2 * start; i < 2 * end; i++)
+            result = 31 * result + levels[i];
+        return result;
     }
 
     public int compareTo(Object o) {
@@ -313,29 +400,33 @@ public class FormIndex implements Serializable {
         FormIndex a = this;
         FormIndex b = (FormIndex)o;
 
-        if (a.beginningOfForm) {
-            return (b.beginningOfForm ? 0 : -1);
-        } else if (a.endOfForm) {
-            return (b.endOfForm ? 0 : 1);
+        if (a.isBeginningOfFormIndex()) {
+            return (b.isBeginningOfFormIndex() ? 0 : -1);
+        } else if (a.isEndOfFormIndex()) {
+            return (b.isEndOfFormIndex() ? 0 : 1);
         } else {
             //a is in form
-            if (b.beginningOfForm) {
+            if (b.isBeginningOfFormIndex()) {
                 return 1;
-            } else if (b.endOfForm) {
+            } else if (b.isEndOfFormIndex()) {
                 return -1;
             }
         }
 
-        if (a.localIndex != b.localIndex) {
-            return (a.localIndex < b.localIndex ? -1 : 1);
-        } else if (a.instanceIndex != b.instanceIndex) {
-            return (a.instanceIndex < b.instanceIndex ? -1 : 1);
-        } else if ((a.getNextLevel() == null) != (b.getNextLevel() == null)) {
-            return (a.getNextLevel() == null ? -1 : 1);
-        } else if (a.getNextLevel() != null) {
-            return a.getNextLevel().compareTo(b.getNextLevel());
-        } else {
-            return 0;
+        for (int i = 2 * a.start, j = 2 * b.start; ; i += 2, j += 2) {
+            if (a.levels[i] != b.levels[j]) {
+                return (a.levels[i] < b.levels[j] ? -1 : 1);
+            } else if (a.levels[i + 1] != b.levels[j + 1]) {
+                return (a.levels[i + 1] < b.levels[j + 1] ? -1 : 1);
+            }
+
+            boolean aIsTerminal = i + 2 == 2 * a.end;
+            boolean bIsTerminal = j + 2 == 2 * b.end;
+            if (aIsTerminal != bIsTerminal) {
+                return (aIsTerminal ? -1 : 1);
+            } else if (aIsTerminal) {
+                return 0;
+            }
         }
     }
 
@@ -343,7 +434,7 @@ public class FormIndex implements Serializable {
      * @return Only the local component of this Form Index.
      */
     public FormIndex snip() {
-        return new FormIndex(localIndex, instanceIndex,reference);
+        return view(start, start + 1);
     }
 
     /**
@@ -367,25 +458,44 @@ public class FormIndex implements Serializable {
         if(subIndex == null) {
             return this;
         }
-        if(!isSubIndex(this,subIndex)) {
+        int subIndexStart = findSubIndex(subIndex);
+        if (subIndexStart <= start) {
             return null;
         }
-        if(subIndex.equals(this)) {
-            return null;
+        return view(start, subIndexStart);
+    }
+
+    /**
+     * @return the level at which the given index makes up the rest of this one, or -1 if it doesn't
+     */
+    private int findSubIndex(FormIndex subIndex) {
+        if (subIndex.equals(this))
+            return start;
+        if (!subIndex.isInForm())
+            return -1;
+
+        int level = end - subIndex.getDepth();
+        return level > start && regionMatches(levels, 2 * level, subIndex.levels, 2 * subIndex.start, 2 * subIndex.getDepth())
+            ? level
+            : -1;
+    }
+
+    private static boolean regionMatches(int[] a, int aFrom, int[] b, int bFrom, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aFrom + i] != b[bFrom + i])
+                return false;
         }
-        return new FormIndex(nextLevel.diff(subIndex),this.snip());
+        return true;
     }
 
     public String toString() {
         StringBuilder b = new StringBuilder();
-        FormIndex ref = this;
-        while (ref != null) {
-            b.append(ref.getLocalIndex());
-            if ( ref.getInstanceIndex() != -1) {
-                b.append("_").append(ref.getInstanceIndex());
+        for (int i = 2 * start; i < 2 * end; i += 2) {
+            b.append(levels[i]);
+            if (levels[i + 1] != -1) {
+                b.append("_").append(levels[i + 1]);
             }
             b.append(", ");
-            ref = ref.nextLevel;
         }
         return b.toString();
     }
@@ -394,51 +504,43 @@ public class FormIndex implements Serializable {
      * @return the level of this index relative to the top level of the form
      */
     public int getDepth() {
-
-        int depth = 0;
-        FormIndex ref = this;
-        while (ref != null) {
-            ref = ref.nextLevel;
-            depth++;
-        }
-        return depth;
-
+        return end - start;
     }
 
     public static boolean isSubIndex(FormIndex parent, FormIndex child) {
-        if(child.equals(parent)) {
-            return true;
-        } else {
-            if(parent == null) {
-                return false;
-            }
-            return isSubIndex(parent.nextLevel, child);
+        if (parent == null) {
+            return false;
         }
+        return parent.findSubIndex(child) != -1;
     }
 
     public static boolean isSubElement(FormIndex parent, FormIndex child) {
-        while(!parent.isTerminal() && !child.isTerminal()) {
-            if(parent.getLocalIndex() != child.getLocalIndex()) {
+        int p = 2 * parent.start;
+        int c = 2 * child.start;
+        int parentTerminal = 2 * parent.end - 2;
+        int childTerminal = 2 * child.end - 2;
+        while(p != parentTerminal && c != childTerminal) {
+            if(parent.levels[p] != child.levels[c]) {
                 return false;
             }
-            if(parent.getInstanceIndex() != child.getInstanceIndex()) {
+            if(parent.levels[p + 1] != child.levels[c + 1]) {
                 return false;
             }
-            parent = parent.nextLevel;
-            child = child.nextLevel;
+            p += 2;
+            c += 2;
         }
         //If we've gotten this far, at least one of the two is terminal
-        if(!parent.isTerminal() && child.isTerminal()) {
+        if(p != parentTerminal) {
             //can't be the parent if the child is earlier on
             return false;
         }
-        else if(parent.getLocalIndex() != child.getLocalIndex()) {
+        else if(parent.levels[p] != child.levels[c]) {
             //Either they're at the same level, in which case only
             //identical indices should match, or they should have
             //the same root
             return false;
         }
-        else return parent.getInstanceIndex() == -1 || (parent.getInstanceIndex() == child.getInstanceIndex());
+        else return parent.levels[p + 1] == -1 || (parent.levels[p + 1] == child.levels[c + 1]);
         //Barring all of these cases, it should be true.
     }
 
@@ -451,7 +553,7 @@ public class FormIndex implements Serializable {
         if (isTerminal()) {
             return null;
         } else {
-            return new FormIndex(nextLevel.getPreviousLevel(), this);
+            return view(start, end - 1);
         }
     }
 }
@@ -0,0 +1,200 @@
+package org.javarosa.core.model;
+
+import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.core.model.condition.PredicateFilter;
+import org.javarosa.core.model.data.GeoPointData;
+import org.javarosa.core.model.data.UncastData;
+import org.javarosa.core.model.instance.DataInstance;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.core.util.GeoUtils.LatLong;
+import org.javarosa.measure.Metrics;
+import org.javarosa.xpath.expr.XPathCmpExpr;
+import org.javarosa.xpath.expr.XPathExpression;
+import org.javarosa.xpath.expr.XPathFuncExpr;
+import org.javarosa.xpath.expr.XPathNumericLiteral;
+import org.javarosa.xpath.expr.XPathPathExpr;
+import org.javarosa.xpath.expr.XPathStringLiteral;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Uses a (lazily constructed) spatial index to evaluate predicates that keep the instance children within a distance
+ * of a point, e.g. {@code distance(geometry, /data/location) < 1000}, as used to filter GeoJSON features. One side of
+ * the comparison must be a two argument {@code distance()} between a geopoint relative to the child and an absolute
+ * path or literal, and the other an absolute path or numeric literal.
+ * <p>
+ * The DAG and itemsets (see {@link ItemsetBinding}) share the filter, and so the index.
+ * <p>
+ * The index is built the first time a relative side is evaluated for a nodeset. If any child's value isn't a single
+ * geopoint, e.g. because it's a GeoJSON line or polygon, the predicates on that nodeset are passed down the filter
+ * chain instead.
+ */
+public class GeoDistancePredicateFilter implements PredicateFilter {
+    private static final String HITS = Metrics.predicateFilterHits(GeoDistancePredicateFilter.class);
+    private static final String MISSES = Metrics.predicateFilterMisses(GeoDistancePredicateFilter.class);
+
+    // A null index means the children can't be indexed
+    private final Map<String, IndexedChildren> indexes = new HashMap<>();
+
+    // Predicates are parsed once per expression, with null for those that aren't distance comparisons
+    private final Map<XPathExpression, DistanceComparison> comparisons = new IdentityHashMap<>();
+
+    @NotNull
+    @Override
+    public List<TreeReference> filter(@NotNull DataInstance sourceInstance, @NotNull TreeReference nodeSet, @NotNull XPathExpression predicate, @NotNull List<TreeReference> children, @NotNull EvaluationContext evaluationContext, @NotNull Supplier<List<TreeReference>> next) {
+        if (!comparisons.containsKey(predicate))
+            comparisons.put(predicate, DistanceComparison.parse(predicate));
+        DistanceComparison comparison = sourceInstance.getInstanceId() != null ? comparisons.get(predicate) : null;
+        if (comparison == null) {
+            Metrics.increment(MISSES);
+            return next.get();
+        }
+
+        IndexedChildren indexed = getIndex(comparison, sourceInstance, nodeSet, children, evaluationContext);
+        LatLong point = indexed != null ? toLatLong(comparison.absolutePoint.eval(sourceInstance, evaluationContext)) : null;
+        if (point == null) {
+            // Let the predicate be evaluated so that it fails the way it usually would
+            Metrics.increment(MISSES);
+            return next.get();
+        }
+
+        Metrics.increment(HITS);
+        double distance = XPathFuncExpr.toNumeric(comparison.distance.eval(sourceInstance, evaluationContext));
+        int[] within = indexed.index.getPointsWithin(point, distance, comparison.inclusive, comparison.relativePointFirst);
+
+        List<TreeReference> filtered = new ArrayList<>(within.length);
+        for (int i : within)
+            filtered.add(indexed.children.get(i));
+        return filtered;
+    }
+
+    /**
+     * Returns the index for the nodeset, remembering it on the comparison so that the key is only built when the
+     * comparison is first used on a nodeset.
+     */
+    @Nullable
+    private IndexedChildren getIndex(DistanceComparison comparison, DataInstance sourceInstance, TreeReference nodeSet, List<TreeReference> children, EvaluationContext evaluationContext) {
+        if (!sourceInstance.getInstanceId().equals(comparison.instanceId) || !nodeSet.equals(comparison.nodeSet)) {
+            String section = sourceInstance.getInstanceId() + nodeSet + comparison.relativePoint;
+            if (!indexes.containsKey(section))
+                indexes.put(section, buildIndex(sourceInstance, comparison.relativePoint, children, evaluationContext));
+
+            comparison.instanceId = sourceInstance.getInstanceId();
+            comparison.nodeSet = nodeSet;
+            comparison.indexed = indexes.get(section);
+        }
+
+        return comparison.indexed;
+    }
+
+    @Nullable
+    private static IndexedChildren buildIndex(DataInstance sourceInstance, XPathPathExpr relativePoint, List<TreeReference> children, EvaluationContext evaluationContext) {
+        LatLong[] points = new LatLong[children.size()];
+        for (int i = 0; i < points.length; i++) {
+            Metrics.increment(Metrics.PREDICATE_INDEX_EVALUATIONS);
+            EvaluationContext rescopedContext = evaluationContext.rescope(children.get(i), i);
+            points[i] = toLatLong(relativePoint.eval(sourceInstance, rescopedContext));
+            if (points[i] == null)
+                return null;
+        }
+
+        return new IndexedChildren(new ArrayList<>(children), new GeoPointIndex(points));
+    }
+
+    /**
+     * Returns the coordinates of a value in the same way distance() reads its arguments or null if the value isn't a
+     * single geopoint.
+     */
+    @Nullable
+    private static LatLong toLatLong(Object value) {
+        try {
+            GeoPointData geoPointData = new GeoPointData().cast(new UncastData(XPathFuncExpr.toString(value)));
+            return new LatLong(geoPointData.getPart(0), geoPointData.getPart(1));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class IndexedChildren {
+        final List<TreeReference> children;
+        final GeoPointIndex index;
+
+        IndexedChildren(List<TreeReference> children, GeoPointIndex index) {
+            this.children = children;
+            this.index = index;
+        }
+    }
+
+    /**
+     * A predicate of the form {@code distance(relative, absolute) < distance} or any equivalent variation: arguments
+     * in the other order, {@code <=} or the comparison written the other way around.
+     */
+    private static class DistanceComparison {
+        final XPathPathExpr relativePoint;
+        final XPathExpression absolutePoint;
+        final boolean relativePointFirst;
+        final XPathExpression distance;
+        final boolean inclusive;
+
+        // The nodeset the comparison was last used on and its index
+        String instanceId;
+        TreeReference nodeSet;
+        IndexedChildren indexed;
+
+        private DistanceComparison(XPathPathExpr relativePoint, XPathExpression absolutePoint, boolean relativePointFirst, XPathExpression distance, boolean inclusive) {
+            this.relativePoint = relativePoint;
+            this.absolutePoint = absolutePoint;
+            this.relativePointFirst = relativePointFirst;
+            this.distance = distance;
+            this.inclusive = inclusive;
+        }
+
+        @Nullable
+        static DistanceComparison parse(XPathExpression expression) {
+            if (!(expression instanceof XPathCmpExpr))
+                return null;
+
+            XPathCmpExpr comparison = (XPathCmpExpr) expression;
+            if ((comparison.op == XPathCmpExpr.LT || comparison.op == XPathCmpExpr.LTE) && isDistance(comparison.a) && isAbsolute(comparison.b))
+                return parse((XPathFuncExpr) comparison.a, comparison.b, comparison.op == XPathCmpExpr.LTE);
+            else if ((comparison.op == XPathCmpExpr.GT || comparison.op == XPathCmpExpr.GTE) && isDistance(comparison.b) && isAbsolute(comparison.a))
+                return parse((XPathFuncExpr) comparison.b, comparison.a, comparison.op == XPathCmpExpr.GTE);
+            else
+                return null;
+        }
+
+        @Nullable
+        private static DistanceComparison parse(XPathFuncExpr distanceFunction, XPathExpression distance, boolean inclusive) {
+            XPathExpression first = distanceFunction.args[0];
+            XPathExpression second = distanceFunction.args[1];
+            if (isRelative(first) && isAbsolute(second))
+                return new DistanceComparison((XPathPathExpr) first, second, true, distance, inclusive);
+            else if (isAbsolute(first) && isRelative(second))
+                return new DistanceComparison((XPathPathExpr) second, first, false, distance, inclusive);
+            else
+                return null;
+        }
+
+        private static boolean isDistance(XPathExpression expression) {
+            return expression instanceof XPathFuncExpr
+                && ((XPathFuncExpr) expression).id.toString().equals("distance")
+                && ((XPathFuncExpr) expression).args.length == 2;
+        }
+
+        private static boolean isRelative(XPathExpression expression) {
+            return expression instanceof XPathPathExpr && ((XPathPathExpr) expression).init_context == XPathPathExpr.INIT_CONTEXT_RELATIVE;
+        }
+
+        private static boolean isAbsolute(XPathExpression expression) {
+            return (expression instanceof XPathPathExpr && ((XPathPathExpr) expression).init_context == XPathPathExpr.INIT_CONTEXT_ROOT)
+                || expression instanceof XPathNumericLiteral || expression instanceof XPathStringLiteral;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.javarosa.core.model;
+
+import org.javarosa.core.util.GeoUtils;
+import org.javarosa.core.util.GeoUtils.LatLong;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.asin;
+import static java.lang.Math.ceil;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toDegrees;
+import static java.lang.Math.toRadians;
+import static org.javarosa.core.util.GeoUtils.EARTH_EQUATORIAL_RADIUS_METERS;
+
+/**
+ * A uniform grid over a fixed list of geopoints, used to find the points within a distance of another point without
+ * computing the distance to every point.
+ * <p>
+ * The grid only narrows down the candidates: distances are still computed with
+ * {@link GeoUtils#distanceBetween(LatLong, LatLong)}, in the same argument order as the expression being answered, so
+ * that the points found are exactly those for which {@code distance()} would be within the distance. Queries the grid
+ * can't narrow down safely, e.g. around a pole or across the antimeridian, check every point.
+ */
+class GeoPointIndex {
+    // Average number of points per non-empty cell the grid is sized for
+    private static final int POINTS_PER_CELL = 4;
+
+    // Keeps the number of cells along a parallel well below 2^32 so that cell keys are unique
+    private static final double MIN_CELL_SIZE_DEGREES = 1e-6;
+
+    // Added to the angular radius of queries so that rounding in the distance computation can't exclude a point
+    private static final double RADIUS_MARGIN_RADIANS = 1e-6;
+
+    private final LatLong[] points;
+    private final boolean allPointsInRange;
+    private final double cellSize;
+    private final Map<Long, int[]> cells = new HashMap<>();
+
+    GeoPointIndex(LatLong[] points) {
+        this.points = points;
+
+        double minLatitude = Double.POSITIVE_INFINITY, maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY, maxLongitude = Double.NEGATIVE_INFINITY;
+        boolean allPointsInRange = true;
+        for (LatLong point : points) {
+            minLatitude = Math.min(minLatitude, point.getLatitude());
+            maxLatitude = Math.max(maxLatitude, point.getLatitude());
+            minLongitude = Math.min(minLongitude, point.getLongitude());
+            maxLongitude = Math.max(maxLongitude, point.getLongitude());
+            allPointsInRange &= Math.abs(point.getLatitude()) <= 90 && Math.abs(point.getLongitude()) <= 180;
+        }
+        this.allPointsInRange = allPointsInRange;
+        cellSize = getCellSize(points.length, maxLatitude - minLatitude, maxLongitude - minLongitude);
+
+        Map<Long, List<Integer>> pointsByCell = new HashMap<>();
+        for (int i = 0; i < points.length; i++)
+            pointsByCell.computeIfAbsent(getCell(points[i].getLatitude(), points[i].getLongitude()), key -> new ArrayList<>()).add(i);
+        for (Map.Entry<Long, List<Integer>> cell : pointsByCell.entrySet())
+            cells.put(cell.getKey(), cell.getValue().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static double getCellSize(int pointCount, double latitudeSpan, double longitudeSpan) {
+        double cellSize = sqrt(latitudeSpan * longitudeSpan * POINTS_PER_CELL / Math.max(pointCount, 1));
+        if (!(cellSize > 0)) {
+            // The points are on a line or all the same
+            double span = Math.max(latitudeSpan, longitudeSpan);
+            cellSize = span > 0 ? span * POINTS_PER_CELL / pointCount : 1;
+        }
+        return Math.max(cellSize, MIN_CELL_SIZE_DEGREES);
+    }
+
+    private long getCell(double latitude, double longitude) {
+        return getCell((long) floor(latitude / cellSize), (long) floor(longitude / cellSize));
+    }
+
+    private static long getCell(long latitudeCell, long longitudeCell) {
+        return latitudeCell * 0x1_0000_0000L + longitudeCell;
+    }
+
+    int size() {
+        return points.length;
+    }
+
+    /**
+     * Returns the indexes, in ascending order, of the points whose distance to the given point is less than the
+     * given distance in meters, or less than or equal to it if {@code inclusive}.
+     *
+     * @param indexedPointFirst whether the distance is computed from the indexed point to the given point or the
+     *                          other way around
+     */
+    int[] getPointsWithin(LatLong point, double distance, boolean inclusive, boolean indexedPointFirst) {
+        if (Double.isNaN(distance))
+            return new int[0];
+
+        int[] candidates = getCandidates(point, distance);
+        int[] within = new int[candidates.length];
+        int count = 0;
+        for (int candidate : candidates) {
+            double candidateDistance = indexedPointFirst
+                ? GeoUtils.distanceBetween(points[candidate], point)
+                : GeoUtils.distanceBetween(point, points[candidate]);
+            if (inclusive ? candidateDistance <= distance : candidateDistance < distance)
+                within[count++] = candidate;
+        }
+        return Arrays.copyOf(within, count);
+    }
+
+    private int[] getCandidates(LatLong point, double distance) {
+        double radius = distance / EARTH_EQUATORIAL_RADIUS_METERS + RADIUS_MARGIN_RADIANS;
+        double latitude = toRadians(point.getLatitude());
+        if (!allPointsInRange || Math.abs(point.getLatitude()) > 90 || Math.abs(point.getLongitude()) > 180
+            || latitude + radius >= PI / 2 || latitude - radius <= -PI / 2)
+            return getAllPoints();
+
+        double sinLongitudeRadius = sin(radius) / cos(latitude);
+        if (radius >= PI / 2 || sinLongitudeRadius >= 1)
+            return getAllPoints();
+
+        double latitudeRadius = toDegrees(radius);
+        double longitudeRadius = toDegrees(asin(sinLongitudeRadius));
+        double minLongitude = point.getLongitude() - longitudeRadius;
+        double maxLongitude = point.getLongitude() + longitudeRadius;
+        if (minLongitude < -180 || maxLongitude > 180)
+            return getAllPoints();
+
+        long minLatitudeCell = (long) floor((point.getLatitude() - latitudeRadius) / cellSize);
+        long maxLatitudeCell = (long) ceil((point.getLatitude() + latitudeRadius) / cellSize);
+        long minLongitudeCell = (long) floor(minLongitude / cellSize);
+        long maxLongitudeCell = (long) ceil(maxLongitude / cellSize);
+        if ((maxLatitudeCell - minLatitudeCell + 1.0) * (maxLongitudeCell - minLongitudeCell + 1.0) > cells.size())
+            return getAllPoints();
+
+        int[] candidates = new int[0];
+        int count = 0;
+        for (long latitudeCell = minLatitudeCell; latitudeCell <= maxLatitudeCell; latitudeCell++) {
+            for (long longitudeCell = minLongitudeCell; longitudeCell <= maxLongitudeCell; longitudeCell++) {
+                int[] cell = cells.get(getCell(latitudeCell, longitudeCell));
+                if (cell != null) {
+                    if (count + cell.length > candidates.length)
+                        candidates = Arrays.copyOf(candidates, Math.max(2 * candidates.length, count + cell.length));
+                    System.arraycopy(cell, 0, candidates, count, cell.length);
+                    count += cell.length;
+                }
+            }
+        }
+
+        candidates = Arrays.copyOf(candidates, count);
+        Arrays.sort(candidates);
+        return candidates;
+    }
+
+    private int[] getAllPoints() {
+        int[] all = new int[points.length];
+        for (int i = 0; i < all.length; i++)
+            all[i] = i;
+        return all;
+    }
+}
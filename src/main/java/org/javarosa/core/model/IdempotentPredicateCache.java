@@ -4,6 +4,7 @@ import org.javarosa.core.model.condition.EvaluationContext;
 import org.javarosa.core.model.condition.PredicateFilter;
 import org.javarosa.core.model.instance.DataInstance;
 import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.measure.Metrics;
 import org.javarosa.xpath.expr.XPathExpression;
 import org.jetbrains.annotations.NotNull;
 
@@ -18,6 +19,8 @@ import java.util.function.Supplier;
  * clashes otherwise. Repeated evaluations are fetched in O(1) time.
  */
 public class IdempotentPredicateCache implements PredicateFilter {
+    private static final String HITS = Metrics.predicateFilterHits(IdempotentPredicateCache.class);
+    private static final String MISSES = Metrics.predicateFilterMisses(IdempotentPredicateCache.class);
 
     private final Map<String, List<TreeReference>> cachedEvaluations = new HashMap<>();
 
@@ -27,8 +30,10 @@ public class IdempotentPredicateCache implements PredicateFilter {
         String key = getKey(nodeSet, predicate);
 
         if (cachedEvaluations.containsKey(key)) {
+            Metrics.increment(HITS);
             return cachedEvaluations.get(key);
         } else {
+            Metrics.increment(MISSES);
             List<TreeReference> filtered = next.get();
             if (isCacheable(predicate)) {
                 cachedEvaluations.put(key, filtered);
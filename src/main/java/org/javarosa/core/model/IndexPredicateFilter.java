@@ -4,7 +4,7 @@ import org.javarosa.core.model.condition.EvaluationContext;
 import org.javarosa.core.model.condition.PredicateFilter;
 import org.javarosa.core.model.instance.DataInstance;
 import org.javarosa.core.model.instance.TreeReference;
-import org.javarosa.measure.Measure;
+import org.javarosa.measure.Metrics;
 import org.javarosa.xpath.expr.XPathEqExpr;
 import org.javarosa.xpath.expr.XPathExpression;
 import org.jetbrains.annotations.NotNull;
@@ -23,6 +23,8 @@ import static java.util.Collections.emptyList;
  * O(1) time with O(n) expression evaluations only being required the first time a relative side is evaluated.
  */
 public class IndexPredicateFilter implements PredicateFilter {
+    private static final String HITS = Metrics.predicateFilterHits(IndexPredicateFilter.class);
+    private static final String MISSES = Metrics.predicateFilterMisses(IndexPredicateFilter.class);
 
     private final InMemTreeReferenceIndex index = new InMemTreeReferenceIndex();
 
@@ -30,6 +32,7 @@ public class IndexPredicateFilter implements PredicateFilter {
     @Override
     public List<TreeReference> filter(@NotNull DataInstance sourceInstance, @NotNull TreeReference nodeSet, @NotNull XPathExpression predicate, @NotNull List<TreeReference> children, @NotNull EvaluationContext evaluationContext, @NotNull Supplier<List<TreeReference>> next) {
         if (sourceInstance.getInstanceId() == null || !(predicate instanceof XPathEqExpr)) {
+            Metrics.increment(MISSES);
             return next.get();
         }
 
@@ -42,12 +45,15 @@ public class IndexPredicateFilter implements PredicateFilter {
                     buildIndex(sourceInstance, candidate, children, evaluationContext, section);
                 }
 
+                Metrics.increment(HITS);
                 Object absoluteValue = candidate.evalAbsolute(sourceInstance, evaluationContext);
                 return index.lookup(section, absoluteValue.toString());
             } else {
+                Metrics.increment(MISSES);
                 return next.get();
             }
         } else {
+            Metrics.increment(MISSES);
             return next.get();
         }
     }
@@ -56,7 +62,7 @@ public class IndexPredicateFilter implements PredicateFilter {
         for (int i = 0; i < children.size(); i++) {
             TreeReference child = children.get(i);
 
-            Measure.log("IndexEvaluation");
+            Metrics.increment(Metrics.PREDICATE_INDEX_EVALUATIONS);
             String relativeValue = predicate.evalRelative(sourceInstance, evaluationContext, child, i).toString();
             index.add(section, relativeValue, child);
         }
@@ -19,6 +19,7 @@ import org.javarosa.core.util.externalizable.Externalizable;
 import org.javarosa.core.util.externalizable.PrototypeFactory;
 import org.javarosa.debug.EvaluationResult;
 import org.javarosa.debug.Event;
+import org.javarosa.measure.Metrics;
 import org.javarosa.model.xform.XPathReference;
 import org.javarosa.xpath.XPathConditional;
 import org.javarosa.xpath.XPathException;
@@ -110,7 +111,9 @@ public class ItemsetBinding implements Externalizable, Localizable {
             return randomize && cachedRandomizeSeed == null ? shuffle(cachedFilteredChoiceList) : cachedFilteredChoiceList;
         }
 
-        formDef.getEventNotifier().publishEvent(new Event("Dynamic choices", new EvaluationResult(curQRef, null)));
+        if (formDef.getEventNotifier().isEnabled())
+            formDef.getEventNotifier().publishEvent(new Event("Dynamic choices", new EvaluationResult(curQRef, null)));
+        long startTime = Metrics.startTimer();
 
         DataInstance formInstance;
         if (nodesetRef.getInstanceName() != null) { // the itemset is defined in a secondary instance
@@ -123,7 +126,7 @@ public class ItemsetBinding implements Externalizable, Localizable {
         }
 
         List<TreeReference> filteredItemReferences = nodesetExpr.evalNodeset(formDef.getMainInstance(),
-            new EvaluationContext(formDef.getEvaluationContext(), contextRef.contextualize(curQRef)));
+            new EvaluationContext(formDef.getItemsetEvaluationContext(), contextRef.contextualize(curQRef)));
 
         if (filteredItemReferences == null) {
             throw new XPathException("Could not find references depended on by" + nodesetRef.getInstanceName());
@@ -164,6 +167,7 @@ public class ItemsetBinding implements Externalizable, Localizable {
         cachedTriggerValues = currentTriggerValues;
         cachedRandomizeSeed = currentRandomizeSeed;
 
+        Metrics.stopTimer(Metrics.ITEMSET_EVALUATION_TIME, startTime);
         return cachedFilteredChoiceList;
     }
 
@@ -268,6 +272,7 @@ public class ItemsetBinding implements Externalizable, Localizable {
             }
 
             formDef.getMainInstance().resolveReference(curQRef).setAnswer(boundAndFilteredValue);
+            formDef.recordUntriggeredChange(curQRef);
         }
     }
 
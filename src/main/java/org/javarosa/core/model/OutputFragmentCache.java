@@ -0,0 +1,118 @@
+package org.javarosa.core.model;
+
+import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.core.model.condition.IConditionExpr;
+import org.javarosa.core.model.data.IAnswerData;
+import org.javarosa.core.model.instance.AbstractTreeElement;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.xpath.XPathConditional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Caches the values of output fragments by fragment and context, together with the nodes the fragment's triggers
+ * matched and their values at the time. A cached value is reused for as long as the triggers still match the same
+ * nodes with the same values, so rendering a label whose outputs didn't change doesn't evaluate any XPath.
+ * <p>
+ * Only idempotent fragments whose triggers can be fully qualified from the context are cached: anything else, e.g.
+ * a fragment that calls now(), reads a secondary instance or depends on the current language, is evaluated every time.
+ */
+class OutputFragmentCache {
+    private final Map<Integer, Map<TreeReference, CachedValue>> values = new HashMap<>();
+
+    static boolean isCacheable(IConditionExpr fragment, TreeReference contextRef, Map<String, ?> variables) {
+        return contextRef != null && contextRef.isAbsolute()
+            && (variables == null || variables.isEmpty())
+            && fragment instanceof XPathConditional
+            && ((XPathConditional) fragment).getExpr().isIdempotent();
+    }
+
+    String getValue(int fragmentIndex, IConditionExpr fragment, TreeReference contextRef, FormInstance mainInstance,
+                    EvaluationContext evaluationContext, Supplier<String> evaluate) {
+        Map<TreeReference, CachedValue> byContext = values.computeIfAbsent(fragmentIndex, key -> new HashMap<>());
+
+        CachedValue cached = byContext.get(contextRef);
+        if (cached != null && cached.isCurrent(mainInstance, evaluationContext))
+            return cached.value;
+
+        List<TreeReference> triggers = cached != null ? cached.triggers : getTriggers(fragment, contextRef);
+        if (triggers == null)
+            return evaluate.get();
+
+        String value = evaluate.get();
+        byContext.put(contextRef, new CachedValue(triggers, snapshot(triggers, mainInstance, evaluationContext), value));
+        return value;
+    }
+
+    void clear() {
+        values.clear();
+    }
+
+    /**
+     * Returns the fragment's triggers or null if some can't be resolved without evaluating the fragment.
+     */
+    private static List<TreeReference> getTriggers(IConditionExpr fragment, TreeReference contextRef) {
+        List<TreeReference> triggers = new ArrayList<>(fragment.getTriggers(contextRef));
+        for (TreeReference trigger : triggers) {
+            if (!trigger.isAbsolute() || trigger.getInstanceName() != null)
+                return null;
+        }
+        return triggers;
+    }
+
+    /**
+     * Returns each node matched by the triggers followed by the answer the fragment would read from it and that
+     * answer's value, which changes if the answer is modified in place.
+     */
+    private static Object[] snapshot(List<TreeReference> triggers, FormInstance mainInstance, EvaluationContext evaluationContext) {
+        List<Object> snapshot = new ArrayList<>();
+        for (TreeReference trigger : triggers) {
+            for (TreeReference ref : evaluationContext.expandReference(trigger)) {
+                AbstractTreeElement node = mainInstance.resolveReference(ref);
+                IAnswerData answer = getAnswer(node);
+                snapshot.add(node);
+                snapshot.add(answer);
+                snapshot.add(answer != null ? answer.getValue() : null);
+            }
+        }
+        return snapshot.toArray();
+    }
+
+    private static IAnswerData getAnswer(AbstractTreeElement node) {
+        return node != null && node.isRelevant() ? node.getValue() : null;
+    }
+
+    private static class CachedValue {
+        final List<TreeReference> triggers;
+        final Object[] snapshot;
+        final String value;
+
+        CachedValue(List<TreeReference> triggers, Object[] snapshot, String value) {
+            this.triggers = triggers;
+            this.snapshot = snapshot;
+            this.value = value;
+        }
+
+        boolean isCurrent(FormInstance mainInstance, EvaluationContext evaluationContext) {
+            int i = 0;
+            for (TreeReference trigger : triggers) {
+                for (TreeReference ref : evaluationContext.expandReference(trigger)) {
+                    if (i + 2 >= snapshot.length)
+                        return false;
+
+                    AbstractTreeElement node = mainInstance.resolveReference(ref);
+                    IAnswerData answer = getAnswer(node);
+                    if (snapshot[i++] != node || snapshot[i++] != answer || !Objects.equals(snapshot[i++], answer != null ? answer.getValue() : null))
+                        return false;
+                }
+            }
+            return i == snapshot.length;
+        }
+    }
+}
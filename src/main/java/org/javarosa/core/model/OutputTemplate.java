@@ -0,0 +1,80 @@
+package org.javarosa.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A label or hint template with references to the form's output fragments (${0}, ${1}...), split once into the
+ * literal text between the references and the references themselves so that it can be filled without scanning it
+ * again. References are found the same way as {@link org.javarosa.core.services.locale.Localizer#getArgs(String)}
+ * does: an unterminated reference and anything after it are literal text.
+ */
+final class OutputTemplate {
+    private final String[] literals;
+    private final int[] outputFragmentIndexes;
+
+    private OutputTemplate(String[] literals, int[] outputFragmentIndexes) {
+        this.literals = literals;
+        this.outputFragmentIndexes = outputFragmentIndexes;
+    }
+
+    static OutputTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> outputFragmentIndexes = new ArrayList<>();
+
+        int literalStart = 0;
+        int i = template.indexOf("${");
+        while (i != -1) {
+            int j = template.indexOf("}", i);
+            if (j == -1)
+                break;
+
+            literals.add(template.substring(literalStart, i));
+            outputFragmentIndexes.add(parseIndex(template.substring(i + 2, j)));
+            literalStart = j + 1;
+            i = template.indexOf("${", literalStart);
+        }
+        literals.add(template.substring(literalStart));
+
+        int[] indexes = new int[outputFragmentIndexes.size()];
+        for (int k = 0; k < indexes.length; k++)
+            indexes[k] = outputFragmentIndexes.get(k);
+        return new OutputTemplate(literals.toArray(new String[0]), indexes);
+    }
+
+    private static int parseIndex(String argName) {
+        try {
+            return Integer.parseInt(argName);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    int getReferenceCount() {
+        return outputFragmentIndexes.length;
+    }
+
+    /**
+     * Returns the index of the output fragment the reference at the given position refers to, or -1 if the reference
+     * isn't numeric.
+     */
+    int getOutputFragmentIndex(int reference) {
+        return outputFragmentIndexes[reference];
+    }
+
+    /**
+     * Returns the template with each reference replaced by the value at the same position.
+     */
+    String fill(String[] values) {
+        int length = 0;
+        for (String literal : literals)
+            length += literal.length();
+        for (String value : values)
+            length += value.length();
+
+        StringBuilder filled = new StringBuilder(length);
+        for (int i = 0; i < values.length; i++)
+            filled.append(literals[i]).append(values[i]);
+        return filled.append(literals[values.length]).toString();
+    }
+}
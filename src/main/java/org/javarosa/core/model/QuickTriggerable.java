@@ -41,6 +41,14 @@ public final class QuickTriggerable {
         return triggerable.apply(mainInstance, ec, qualified);
     }
 
+    void applyCollecting(FormInstance mainInstance, EvaluationContext ec, TreeReference qualified, List<EvaluationResult> affectedNodes) {
+        triggerable.applyCollecting(mainInstance, ec, qualified, affectedNodes);
+    }
+
+    void applyCollecting(FormInstance mainInstance, EvaluationContext ec, TreeReference qualified, Object result, List<EvaluationResult> affectedNodes) {
+        triggerable.applyCollecting(mainInstance, ec, qualified, result, affectedNodes);
+    }
+
     Set<TreeReference> getTargets() {
         return triggerable.getTargets();
     }
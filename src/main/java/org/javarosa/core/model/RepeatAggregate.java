@@ -0,0 +1,280 @@
+package org.javarosa.core.model;
+
+import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.core.model.condition.Recalculate;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.xpath.XPathConditional;
+import org.javarosa.xpath.expr.XPathExpression;
+import org.javarosa.xpath.expr.XPathFuncExpr;
+import org.javarosa.xpath.expr.XPathPathExpr;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.lang.Double.NaN;
+
+/**
+ * A running sum(), count(), max() or min() over the instances of a repeat that is maintained incrementally as the
+ * DAG learns about changes to the main instance, so that the calculate using it doesn't have to expand and read the
+ * whole nodeset every time one repeat instance is added, removed or changed.
+ * <p>
+ * Only calculates whose whole expression is one of those functions applied to an absolute, predicate-free path
+ * that goes through a repeat are supported, and only if the calculate isn't itself inside that repeat (in which case
+ * the path would be contextualized to a single repeat instance). Everything else keeps using the full evaluation.
+ * <p>
+ * Contributions are kept per {@link TreeElement} rather than per {@link TreeReference} because deleting a repeat
+ * instance shifts the multiplicities of its following siblings. The DAG is responsible for calling
+ * {@link #recordChange} for every reference whose value, relevance or structure changed and {@link #removeSubtree}
+ * for every deleted repeat instance.
+ */
+final class RepeatAggregate {
+    enum Function {
+        SUM, COUNT, MAX, MIN
+    }
+
+    /**
+     * Contributions bigger than this are not guaranteed to add up to exactly the same double in any order.
+     */
+    private static final double MAX_EXACT_CONTRIBUTION = 1 << 30;
+
+    private final Function function;
+    private final TreeReference nodeset;
+
+    /**
+     * The level of the outermost repeat in {@link #nodeset}. Changes above it may affect every member.
+     */
+    private final int repeatLevel;
+
+    private final Map<TreeElement, Double> contributions = new IdentityHashMap<>();
+    private final TreeMap<Double, Integer> sortedValues = new TreeMap<>();
+    private double exactSum;
+    private int inexactCount;
+    private boolean valid;
+
+    private RepeatAggregate(Function function, TreeReference nodeset, int repeatLevel) {
+        this.function = function;
+        this.nodeset = nodeset;
+        this.repeatLevel = repeatLevel;
+    }
+
+    /**
+     * Returns an aggregate for the given triggerable or null if its expression can't be maintained incrementally.
+     */
+    static RepeatAggregate from(QuickTriggerable qt, FormInstance mainInstance) {
+        if (!(qt.getTriggerable() instanceof Recalculate) || !(qt.getTriggerable().getExpr() instanceof XPathConditional))
+            return null;
+
+        XPathExpression expr = ((XPathConditional) qt.getTriggerable().getExpr()).getExpr();
+        if (!(expr instanceof XPathFuncExpr))
+            return null;
+
+        XPathFuncExpr funcExpr = (XPathFuncExpr) expr;
+        Function function = getFunction(funcExpr.id.toString());
+        if (function == null || funcExpr.args.length != 1 || !(funcExpr.args[0] instanceof XPathPathExpr))
+            return null;
+
+        XPathPathExpr pathExpr = (XPathPathExpr) funcExpr.args[0];
+        if (pathExpr.init_context != XPathPathExpr.INIT_CONTEXT_ROOT)
+            return null;
+
+        TreeReference nodeset = pathExpr.getReference();
+        if (!isPlainAbsolutePath(nodeset))
+            return null;
+
+        int repeatLevel = getOutermostRepeatLevel(nodeset, mainInstance);
+        if (repeatLevel == -1
+            || sharesLevels(qt.getContext(), nodeset, repeatLevel)
+            || sharesLevels(qt.getOriginalContext(), nodeset, repeatLevel))
+            return null;
+
+        return new RepeatAggregate(function, nodeset, repeatLevel);
+    }
+
+    private static Function getFunction(String name) {
+        switch (name) {
+            case "sum":
+                return Function.SUM;
+            case "count":
+                return Function.COUNT;
+            case "max":
+                return Function.MAX;
+            case "min":
+                return Function.MIN;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isPlainAbsolutePath(TreeReference ref) {
+        if (!ref.isAbsolute() || ref.getInstanceName() != null || ref.getContextType() != TreeReference.CONTEXT_ABSOLUTE
+            || ref.size() == 0 || ref.hasPredicates())
+            return false;
+
+        for (int i = 0; i < ref.size(); i++)
+            if (ref.getMultiplicity(i) != TreeReference.INDEX_UNBOUND || TreeReference.NAME_WILDCARD.equals(ref.getName(i)))
+                return false;
+
+        return true;
+    }
+
+    private static int getOutermostRepeatLevel(TreeReference nodeset, FormInstance mainInstance) {
+        for (int i = 1; i < nodeset.size(); i++)
+            if (mainInstance.getTemplate(nodeset.getSubReference(i)) != null)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns true if the given reference has the same names as the nodeset up to and including the given level.
+     */
+    private static boolean sharesLevels(TreeReference ref, TreeReference nodeset, int level) {
+        if (ref == null)
+            return false;
+        if (ref.size() <= level)
+            return false;
+        for (int i = 0; i <= level; i++)
+            if (!ref.getName(i).equals(nodeset.getName(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the current value of the aggregate, exactly as the XPath function would compute it over the expanded
+     * nodeset, or null if it can't be produced exactly from the running totals. In that case, the caller should
+     * evaluate the expression.
+     */
+    Object getValue(EvaluationContext evalContext) {
+        if (!valid && !rebuild(evalContext))
+            return null;
+
+        switch (function) {
+            case SUM:
+                return inexactCount == 0 ? exactSum : null;
+            case COUNT:
+                return exactSum;
+            case MAX:
+                return sortedValues.isEmpty() ? NaN : sortedValues.lastKey();
+            case MIN:
+                return sortedValues.isEmpty() ? NaN : sortedValues.firstKey();
+            default:
+                throw new IllegalStateException("Unknown aggregate function " + function);
+        }
+    }
+
+    /**
+     * Updates the contributions of every member of the nodeset that could have been affected by a change to the
+     * value, relevance or children of the node at the given reference.
+     */
+    void recordChange(EvaluationContext evalContext, TreeReference changedRef) {
+        if (!valid || !isAncestorOrSelfOfNodeset(changedRef))
+            return;
+
+        if (changedRef.size() <= repeatLevel) {
+            // Every member may have changed and some may be gone, rebuild lazily the next time the value is needed
+            valid = false;
+            return;
+        }
+
+        List<TreeReference> members = evalContext.expandReference(nodeset.contextualize(changedRef));
+        if (members == null)
+            return;
+
+        try {
+            for (TreeReference member : members)
+                put((TreeElement) evalContext.resolveReference(member));
+        } catch (RuntimeException e) {
+            // Leave it to the full evaluation to report the problem when the calculate is evaluated
+            valid = false;
+        }
+    }
+
+    /**
+     * Removes the members of the nodeset that are in the given (already detached) subtree.
+     */
+    void removeSubtree(TreeElement root) {
+        if (!valid)
+            return;
+
+        remove(root);
+        for (int i = 0; i < root.getNumChildren(); i++)
+            removeSubtree(root.getChildAt(i));
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    private boolean isAncestorOrSelfOfNodeset(TreeReference ref) {
+        if (!ref.isAbsolute() || ref.getInstanceName() != null || ref.size() > nodeset.size())
+            return false;
+
+        for (int i = 0; i < ref.size(); i++) {
+            int mult = ref.getMultiplicity(i);
+            if (mult == TreeReference.INDEX_TEMPLATE || mult == TreeReference.INDEX_ATTRIBUTE || !ref.getName(i).equals(nodeset.getName(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean rebuild(EvaluationContext evalContext) {
+        contributions.clear();
+        sortedValues.clear();
+        exactSum = 0;
+        inexactCount = 0;
+
+        try {
+            for (TreeReference member : evalContext.expandReference(nodeset))
+                put((TreeElement) evalContext.resolveReference(member));
+            valid = true;
+        } catch (RuntimeException e) {
+            valid = false;
+        }
+        return valid;
+    }
+
+    private void put(TreeElement member) {
+        remove(member);
+
+        // Mirrors XPathPathExprEval.removeIrrelevantNodesets, which leaves non-relevant nodes (including those in a
+        // non-relevant repeat instance) out of the nodeset, so they're neither counted nor read as blank values.
+        double contribution = !member.isRelevant() ? NaN
+            : function == Function.COUNT ? 1 : XPathPathExpr.unpackNumericValue(member.getValue());
+
+        contributions.put(member, contribution);
+        if (!Double.isNaN(contribution)) {
+            if (isExact(contribution))
+                exactSum += contribution;
+            else
+                inexactCount++;
+            if (function == Function.MAX || function == Function.MIN)
+                sortedValues.merge(contribution, 1, Integer::sum);
+        }
+    }
+
+    private void remove(TreeElement member) {
+        Double contribution = contributions.remove(member);
+        if (contribution == null)
+            return;
+
+        if (!Double.isNaN(contribution)) {
+            if (isExact(contribution))
+                exactSum -= contribution;
+            else
+                inexactCount--;
+            if (function == Function.MAX || function == Function.MIN)
+                sortedValues.computeIfPresent(contribution, (value, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Integers of bounded magnitude add up to the same double in any order, which is what makes it possible to
+     * subtract a contribution from the running sum and still get the result of a fresh, in-order sum.
+     */
+    private static boolean isExact(double contribution) {
+        return contribution == Math.rint(contribution) && Math.abs(contribution) <= MAX_EXACT_CONTRIBUTION;
+    }
+}
@@ -33,9 +33,12 @@ import org.javarosa.debug.EvaluationResult;
 import org.javarosa.debug.Event;
 import org.javarosa.debug.EventNotifier;
 import org.javarosa.form.api.FormEntryController;
+import org.javarosa.measure.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -53,6 +56,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
 
 public class TriggerableDag {
     private static final Logger logger = LoggerFactory.getLogger(TriggerableDag.class);
@@ -100,10 +104,22 @@ public class TriggerableDag {
      */
     private Map<TreeReference, QuickTriggerable> relevancePerRepeat = new HashMap<>();
 
+    /**
+     * Incrementally maintained sum(), count(), max() and min() calculates over repeats. See {@link RepeatAggregate}.
+     */
+    private Map<QuickTriggerable, RepeatAggregate> aggregates = new HashMap<>();
+
+    /**
+     * Generic references of the nodes whose value is set by a calculate.
+     */
+    private Set<TreeReference> calculatedRefs = new HashSet<>();
+
     private boolean predicateCaching = true;
     private final PredicateFilter cachingPredicateFilter = new CompareChildToAbsoluteExpressionFilter();
     private final PredicateFilter indexPredicateFilter = new IndexPredicateFilter();
+    private final PredicateFilter geoDistancePredicateFilter = new GeoDistancePredicateFilter();
     private final Queue<PredicateFilter> customPredicateFilters = new LinkedList<>();
+    private TriggerableProfiler profiler;
 
     TriggerableDag(EventNotifierAccessor accessor) {
         this.accessor = accessor;
@@ -163,8 +179,11 @@ public class TriggerableDag {
      * conditions will be evaluated in the appropriate orders.
      */
     void finalizeTriggerables(FormInstance mainInstance, EvaluationContext ec) throws IllegalStateException {
+        Metrics.increment(Metrics.DAG_BUILDS);
         triggerablesDAG = buildDag(allTriggerables, getDagEdges(mainInstance, ec));
         relevancePerRepeat = buildRelevancePerRepeat(mainInstance, triggerablesDAG);
+        aggregates = buildAggregates(mainInstance, triggerablesDAG);
+        calculatedRefs = buildCalculatedRefs(triggerablesDAG);
     }
 
     /**
@@ -443,12 +462,19 @@ public class TriggerableDag {
      * current context.
      */
     Collection<QuickTriggerable> initializeTriggerables(FormInstance mainInstance, EvaluationContext evalContext, TreeReference rootRef) {
-        return initializeTriggerables(mainInstance, evalContext, rootRef, new HashSet<>());
+        long startTime = Metrics.startTimer();
+        recordChange(evalContext, rootRef);
+        Set<QuickTriggerable> evaluated = initializeTriggerables(mainInstance, evalContext, rootRef, new HashSet<>());
+        Metrics.stopTimer(Metrics.DAG_INITIALIZATION_TIME, startTime);
+        return evaluated;
     }
 
     private Set<QuickTriggerable> initializeTriggerables(FormInstance mainInstance, EvaluationContext evalContext, TreeReference rootRef, Set<QuickTriggerable> alreadyEvaluated) {
-        TreeReference genericRoot = rootRef.genericize();
+        Set<QuickTriggerable> toTrigger = getAllToTrigger(getTriggerablesTargetingDescendantsOf(rootRef.genericize()));
+        return doEvaluateTriggerables(mainInstance, evalContext, toTrigger, rootRef, new HashSet<>(), alreadyEvaluated);
+    }
 
+    private Set<QuickTriggerable> getTriggerablesTargetingDescendantsOf(TreeReference genericRoot) {
         Set<QuickTriggerable> applicable = new HashSet<>();
         for (QuickTriggerable qt : triggerablesDAG) {
             for (TreeReference target : qt.getTargets()) {
@@ -458,9 +484,7 @@ public class TriggerableDag {
                 }
             }
         }
-
-        Set<QuickTriggerable> toTrigger = getAllToTrigger(applicable);
-        return doEvaluateTriggerables(mainInstance, evalContext, toTrigger, rootRef, new HashSet<>(), alreadyEvaluated);
+        return applicable;
     }
     //endregion
 
@@ -473,7 +497,69 @@ public class TriggerableDag {
      *            that was changed.
      */
     Collection<QuickTriggerable> triggerTriggerables(FormInstance mainInstance, EvaluationContext evalContext, TreeReference changedRef) {
-        return triggerTriggerables(mainInstance, evalContext, changedRef, new HashSet<>(), new HashSet<>());
+        long startTime = Metrics.startTimer();
+        recordChange(evalContext, changedRef);
+        Set<QuickTriggerable> evaluated = triggerTriggerables(mainInstance, evalContext, changedRef, new HashSet<>(), new HashSet<>());
+        recordCascade(startTime, evaluated);
+        return evaluated;
+    }
+
+    /**
+     * The entry point for the DAG cascade after several values are changed in the model at once. The cascades of all
+     * the changed values are combined and every triggerable in them is evaluated once, in DAG order, for the union of
+     * the contexts that the individual cascades would have evaluated it in. The resulting state is the same as the one
+     * reached by calling {@link #triggerTriggerables(FormInstance, EvaluationContext, TreeReference)} after each change.
+     *
+     * @param changedRefs The full contextualized unambiguous references of the values that were changed.
+     */
+    Collection<QuickTriggerable> triggerTriggerables(FormInstance mainInstance, EvaluationContext evalContext, Collection<TreeReference> changedRefs) {
+        long startTime = Metrics.startTimer();
+        for (TreeReference changedRef : changedRefs)
+            recordChange(evalContext, changedRef);
+
+        Set<QuickTriggerable> evaluated = triggerTriggerables(mainInstance, evalContext, changedRefs, emptySet(), emptySet());
+        recordCascade(startTime, evaluated);
+        return evaluated;
+    }
+
+    private static void recordCascade(long startTime, Set<QuickTriggerable> evaluated) {
+        Metrics.stopTimer(Metrics.DAG_CASCADE_TIME, startTime);
+        Metrics.record(Metrics.DAG_CASCADE_SIZE, evaluated.size());
+    }
+
+    private Set<QuickTriggerable> triggerTriggerables(FormInstance mainInstance, EvaluationContext evalContext, Collection<TreeReference> changedRefs, Set<QuickTriggerable> affectAllRepeatInstances, Set<QuickTriggerable> alreadyEvaluated) {
+        Map<QuickTriggerable, Set<TreeReference>> contextRefsPerTriggerable = new HashMap<>();
+        for (TreeReference changedRef : changedRefs) {
+            Set<QuickTriggerable> cascadeRoots = triggerablesPerTrigger.get(changedRef.genericize());
+            if (cascadeRoots == null)
+                continue;
+
+            for (QuickTriggerable qt : getAllToTrigger(cascadeRoots))
+                addContextRef(contextRefsPerTriggerable, qt, affectAllRepeatInstances.contains(qt) ? qt.getContext() : qt.getContext().contextualize(changedRef));
+        }
+
+        return doEvaluateTriggerables(mainInstance, evalContext, contextRefsPerTriggerable, alreadyEvaluated);
+    }
+
+    private static void addContextRef(Map<QuickTriggerable, Set<TreeReference>> contextRefsPerTriggerable, QuickTriggerable qt, TreeReference contextRef) {
+        contextRefsPerTriggerable.computeIfAbsent(qt, key -> new LinkedHashSet<>()).add(contextRef);
+    }
+
+    /**
+     * Evaluates every triggerable in the given map once, in DAG order, for all of its context references.
+     */
+    private Set<QuickTriggerable> doEvaluateTriggerables(FormInstance mainInstance, EvaluationContext evalContext, Map<QuickTriggerable, Set<TreeReference>> contextRefsPerTriggerable, Set<QuickTriggerable> alreadyEvaluated) {
+        EvaluationContext context = withPredicateFilters(evalContext);
+
+        Set<QuickTriggerable> evaluated = new HashSet<>();
+        for (QuickTriggerable qt : triggerablesDAG) {
+            Set<TreeReference> contextRefs = contextRefsPerTriggerable.get(qt);
+            if (contextRefs != null && !alreadyEvaluated.contains(qt)) {
+                evaluateTriggerableInContexts(mainInstance, context, qt, contextRefs);
+                evaluated.add(qt);
+            }
+        }
+        return evaluated;
     }
 
     /**
@@ -524,17 +610,7 @@ public class TriggerableDag {
                                                          TreeReference changedRef, Set<QuickTriggerable> affectAllRepeatInstances, Set<QuickTriggerable> alreadyEvaluated) {
         Set<QuickTriggerable> evaluated = new HashSet<>();
 
-        EvaluationContext context;
-        if (predicateCaching) {
-            List<PredicateFilter> filters = Stream.concat(
-                customPredicateFilters.stream(),
-                Stream.of(indexPredicateFilter, cachingPredicateFilter, new IdempotentPredicateCache())
-            ).collect(Collectors.toList());
-
-            context = new EvaluationContext(evalContext, filters);
-        } else {
-            context = evalContext;
-        }
+        EvaluationContext context = withPredicateFilters(evalContext);
 
         // Evaluate the provided set of triggerables in the order they appear
         // in the sorted DAG to ensure the correct sequence of evaluations
@@ -548,6 +624,28 @@ public class TriggerableDag {
         return evaluated;
     }
 
+    /**
+     * Returns a context in which distance predicates, e.g. an itemset of the features near the current location, are
+     * answered from the same spatial index as in the DAG.
+     */
+    EvaluationContext withItemsetPredicateFilters(EvaluationContext evalContext) {
+        return predicateCaching ? new EvaluationContext(evalContext, singletonList(geoDistancePredicateFilter)) : evalContext;
+    }
+
+    private EvaluationContext withPredicateFilters(EvaluationContext evalContext) {
+        EvaluationContext context = evalContext;
+        if (predicateCaching) {
+            List<PredicateFilter> filters = Stream.concat(
+                customPredicateFilters.stream(),
+                Stream.of(geoDistancePredicateFilter, indexPredicateFilter, cachingPredicateFilter, new IdempotentPredicateCache())
+            ).collect(Collectors.toList());
+
+            context = new EvaluationContext(evalContext, filters);
+        }
+
+        return profiler != null ? context.withPredicateFilterObserver(profiler) : context;
+    }
+
     /**
      * Step 3 in DAG cascade. Evaluate the individual triggerable expressions.
      */
@@ -558,20 +656,69 @@ public class TriggerableDag {
 
         // In general, expansion will have no effect. It only makes a difference if affectsAllRepeatInstances is true in
         // which case the triggerable will be applied for every repeat instance.
-        List<TreeReference> qualifiedReferences = evalContext.expandReference(contextRef);
+        evaluateTriggerable(mainInstance, evalContext, toTrigger, evalContext.expandReference(contextRef));
+    }
+
+    /**
+     * Evaluates the triggerable once for every qualified reference that the given context references expand to.
+     */
+    private void evaluateTriggerableInContexts(FormInstance mainInstance, EvaluationContext evalContext, QuickTriggerable toTrigger, Set<TreeReference> contextRefs) {
+        if (contextRefs.size() == 1) {
+            evaluateTriggerable(mainInstance, evalContext, toTrigger, evalContext.expandReference(contextRefs.iterator().next()));
+            return;
+        }
+
+        // Contexts from different changes may expand to the same nodes, which only need to be evaluated once
+        Set<TreeReference> qualifiedReferences = new LinkedHashSet<>();
+        for (TreeReference contextRef : contextRefs)
+            qualifiedReferences.addAll(evalContext.expandReference(contextRef));
+        evaluateTriggerable(mainInstance, evalContext, toTrigger, qualifiedReferences);
+    }
+
+    private void evaluateTriggerable(FormInstance mainInstance, EvaluationContext evalContext, QuickTriggerable toTrigger, Collection<TreeReference> qualifiedReferences) {
+        if (profiler == null) {
+            doEvaluateTriggerable(mainInstance, evalContext, toTrigger, qualifiedReferences);
+            return;
+        }
+
+        profiler.startEvaluation(toTrigger);
+        long startTime = System.nanoTime();
+        try {
+            doEvaluateTriggerable(mainInstance, evalContext, toTrigger, qualifiedReferences);
+        } finally {
+            profiler.endEvaluation(System.nanoTime() - startTime, qualifiedReferences.size());
+        }
+    }
+
+    private void doEvaluateTriggerable(FormInstance mainInstance, EvaluationContext evalContext, QuickTriggerable toTrigger, Collection<TreeReference> qualifiedReferences) {
+
+        // Aggregates over repeats don't depend on the context so their value can be computed once for all contexts
+        RepeatAggregate aggregate = aggregates.get(toTrigger);
+        Object aggregateValue = aggregate != null && !qualifiedReferences.isEmpty() ? aggregate.getValue(evalContext) : null;
 
-        List<EvaluationResult> evaluationResults = new ArrayList<>(0);
+        // The affected nodes are only needed for the aggregates and for events
+        EventNotifier eventNotifier = accessor.getEventNotifier();
+        List<EvaluationResult> evaluationResults = eventNotifier.isEnabled() || !aggregates.isEmpty() ? new ArrayList<>() : null;
         for (TreeReference qualified : qualifiedReferences) {
             try {
                 // apply evaluates the expression in the given context and saves the result in the contextualized target(s).
-                evaluationResults.addAll(toTrigger.apply(mainInstance, new EvaluationContext(evalContext, qualified), qualified));
+                if (aggregateValue != null)
+                    toTrigger.applyCollecting(mainInstance, new EvaluationContext(evalContext, qualified), qualified, aggregateValue, evaluationResults);
+                else
+                    toTrigger.applyCollecting(mainInstance, new EvaluationContext(evalContext, qualified), qualified, evaluationResults);
             } catch (Exception e) {
-                throw new RuntimeException("Error evaluating field '" + contextRef.getNameLast() + "' (" + qualified + "): " + e.getMessage(), e);
+                throw new RuntimeException("Error evaluating field '" + toTrigger.getContext().getNameLast() + "' (" + qualified + "): " + e.getMessage(), e);
             }
         }
 
-        if (evaluationResults.size() > 0) {
-            accessor.getEventNotifier().publishEvent(new Event(toTrigger.isCondition() ? "Condition" : "Recalculate", evaluationResults));
+        if (evaluationResults == null)
+            return;
+
+        for (EvaluationResult evaluationResult : evaluationResults)
+            recordChange(evalContext, evaluationResult.getAffectedRef());
+
+        if (evaluationResults.size() > 0 && eventNotifier.isEnabled()) {
+            eventNotifier.publishEvent(new Event(toTrigger.isCondition() ? "Condition" : "Recalculate", evaluationResults));
         }
     }
 
@@ -589,6 +736,8 @@ public class TriggerableDag {
 
     //region Repeat instance creation and deletion
     void createRepeatInstance(FormInstance mainInstance, EvaluationContext evalContext, TreeReference createdRef, TreeElement createdElement) {
+        recordChange(evalContext, createdRef);
+
         Set<QuickTriggerable> affectAllInstances = getTriggerablesAffectingAllInstances(createdRef.genericize());
 
         // trigger conditions that depend on the creation of this new node
@@ -606,7 +755,49 @@ public class TriggerableDag {
         evaluateChildrenTriggerables(mainInstance, evalContext, createdElement, true, alreadyEvaluated);
     }
 
+    /**
+     * Consolidated version of {@link #createRepeatInstance} for several instances of the same repeat that were created
+     * at once. Each phase is run once for all the instances, so triggerables that affect all the repeat instances are
+     * evaluated once instead of once per created instance.
+     */
+    void createRepeatInstances(FormInstance mainInstance, EvaluationContext evalContext, List<TreeReference> createdRefs, List<TreeElement> createdElements) {
+        for (TreeReference createdRef : createdRefs)
+            recordChange(evalContext, createdRef);
+
+        TreeReference genericRef = createdRefs.get(0).genericize();
+        Set<QuickTriggerable> affectAllInstances = getTriggerablesAffectingAllInstances(genericRef);
+
+        // trigger conditions that depend on the creation of the new nodes
+        Set<QuickTriggerable> qtSet1 = triggerTriggerables(mainInstance, evalContext, createdRefs, affectAllInstances, emptySet());
+        if (isPublishing())
+            publishSummary("Created " + createdRefs.size() + " (phase 1)", genericRef, qtSet1);
+
+        // initialize conditions for the nodes (and sub-nodes)
+        Set<QuickTriggerable> applicable = getTriggerablesTargetingDescendantsOf(genericRef);
+        Map<QuickTriggerable, Set<TreeReference>> contextRefsPerTriggerable = new HashMap<>();
+        for (QuickTriggerable qt : getAllToTrigger(applicable))
+            for (TreeReference createdRef : createdRefs)
+                addContextRef(contextRefsPerTriggerable, qt, qt.getContext().contextualize(createdRef));
+        Set<QuickTriggerable> qtSet2 = doEvaluateTriggerables(mainInstance, evalContext, contextRefsPerTriggerable, emptySet());
+        if (isPublishing())
+            publishSummary("Created " + createdRefs.size() + " (phase 2)", genericRef, qtSet2);
+
+        Set<QuickTriggerable> alreadyEvaluated = new HashSet<>(qtSet1);
+        alreadyEvaluated.addAll(qtSet2);
+
+        List<TreeReference> childRefs = new ArrayList<>();
+        for (TreeElement createdElement : createdElements)
+            for (int i = 0; i < createdElement.getNumChildren(); i++)
+                childRefs.add(createdElement.getChildAt(i).getRef());
+        Set<QuickTriggerable> childTriggerables = triggerTriggerables(mainInstance, evalContext, childRefs, emptySet(), alreadyEvaluated);
+        if (isPublishing())
+            publishSummary("Created " + createdRefs.size(), genericRef, childTriggerables);
+    }
+
     void deleteRepeatInstance(FormInstance mainInstance, EvaluationContext evalContext, TreeReference deleteRef, TreeElement deletedElement) {
+        for (RepeatAggregate aggregate : aggregates.values())
+            aggregate.removeSubtree(deletedElement);
+
         Set<QuickTriggerable> affectAllInstances = getTriggerablesAffectingAllInstances(deleteRef.genericize());
 
         Set<QuickTriggerable> alreadyEvaluated = triggerTriggerables(mainInstance, evalContext, deleteRef, affectAllInstances, new HashSet<>());
@@ -689,9 +880,52 @@ public class TriggerableDag {
         return relevancePerRepeat.get(genericRepeatRef);
     }
 
+    private static Set<TreeReference> buildCalculatedRefs(Set<QuickTriggerable> triggerables) {
+        Set<TreeReference> calculatedRefs = new HashSet<>();
+        for (QuickTriggerable triggerable : triggerables)
+            if (!triggerable.isCondition())
+                calculatedRefs.addAll(triggerable.getTargets());
+        return calculatedRefs;
+    }
+
+    boolean isCalculated(TreeReference ref) {
+        return calculatedRefs.contains(ref.genericize());
+    }
+
+    private static Map<QuickTriggerable, RepeatAggregate> buildAggregates(FormInstance mainInstance, Set<QuickTriggerable> triggerables) {
+        Map<QuickTriggerable, RepeatAggregate> aggregates = new HashMap<>();
+        for (QuickTriggerable triggerable : triggerables) {
+            RepeatAggregate aggregate = RepeatAggregate.from(triggerable, mainInstance);
+            if (aggregate != null)
+                aggregates.put(triggerable, aggregate);
+        }
+        return aggregates;
+    }
+
+    /**
+     * Lets the incrementally maintained aggregates know that the value, relevance or children of the node at the given
+     * reference changed. Must be called for every change to the main instance that isn't made by the DAG itself or
+     * passed to one of its entry points.
+     */
+    void recordChange(EvaluationContext evalContext, TreeReference changedRef) {
+        for (RepeatAggregate aggregate : aggregates.values())
+            aggregate.recordChange(evalContext, changedRef);
+    }
+
+    /**
+     * Forces the aggregates to be rebuilt from the main instance the next time they are needed.
+     */
+    void invalidateAggregates() {
+        for (RepeatAggregate aggregate : aggregates.values())
+            aggregate.invalidate();
+    }
+
     void copyItemsetAnswer(FormInstance mainInstance, EvaluationContext evalContext, TreeReference copyRef, TreeElement copyToElement) {
         TreeReference targetRef = copyToElement.getRef();
 
+        // Nodes were removed and added without going through repeat creation and deletion
+        invalidateAggregates();
+
         // trigger conditions that depend on the creation of these new nodes
         Set<QuickTriggerable> qtSet1 = triggerTriggerables(mainInstance, evalContext, copyRef, new HashSet<>(), new HashSet<>());
 
@@ -704,7 +938,17 @@ public class TriggerableDag {
         // step, but i think it's supposed to work
     }
 
+    /**
+     * Whether events are used, so that callers of {@link #publishSummary} can skip building their leads when they're not.
+     */
+    final boolean isPublishing() {
+        return accessor.getEventNotifier().isEnabled();
+    }
+
     final void publishSummary(String lead, TreeReference ref, Collection<QuickTriggerable> quickTriggerables) {
+        if (!isPublishing())
+            return;
+
         accessor.getEventNotifier().publishEvent(new Event(lead + ": " + (ref != null ? ref.toShortString() + ": " : "") + quickTriggerables.size() + " triggerables were fired."));
     }
 
@@ -712,17 +956,129 @@ public class TriggerableDag {
 
     void writeExternalTriggerables(DataOutputStream dos) throws IOException {
         // Order of writes must match order of reads in readExternalTriggerables
-        ExtUtil.write(dos, new ExtWrapList(getConditions()));
-        ExtUtil.write(dos, new ExtWrapList(getRecalculates()));
+        List<Condition> conditions = getConditions();
+        List<Recalculate> recalculates = getRecalculates();
+        ExtUtil.write(dos, new ExtWrapList(conditions));
+        ExtUtil.write(dos, new ExtWrapList(recalculates));
+
+        // The DAG refers to the triggerables by their position in the lists above
+        List<QuickTriggerable> triggerables = new ArrayList<>(allTriggerables.size());
+        for (Condition condition : conditions)
+            triggerables.add(QuickTriggerable.of(condition));
+        for (Recalculate recalculate : recalculates)
+            triggerables.add(QuickTriggerable.of(recalculate));
+
+        // Not written if the triggerables haven't been finalized
+        boolean finalized = triggerablesDAG.size() == allTriggerables.size();
+        ExtUtil.writeBool(dos, finalized);
+        if (finalized)
+            ExtUtil.writeBytes(dos, writeExternalDag(triggerables));
+    }
+
+    /**
+     * Returns the sorted DAG, immediate cascades, triggerables per trigger and relevance per repeat with each
+     * triggerable written as its position in the given list.
+     */
+    private byte[] writeExternalDag(List<QuickTriggerable> triggerables) throws IOException {
+        Map<QuickTriggerable, Integer> positions = new HashMap<>();
+        for (int i = 0; i < triggerables.size(); i++)
+            positions.put(triggerables.get(i), i);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        ExtUtil.writeNumeric(dos, triggerables.size());
+
+        writePositions(dos, triggerablesDAG, positions);
+        for (QuickTriggerable triggerable : triggerables)
+            writePositions(dos, triggerable.getImmediateCascades(), positions);
+
+        ExtUtil.writeNumeric(dos, triggerablesPerTrigger.size());
+        for (Map.Entry<TreeReference, Set<QuickTriggerable>> entry : triggerablesPerTrigger.entrySet()) {
+            ExtUtil.write(dos, entry.getKey());
+            writePositions(dos, entry.getValue(), positions);
+        }
+
+        ExtUtil.writeNumeric(dos, relevancePerRepeat.size());
+        for (Map.Entry<TreeReference, QuickTriggerable> entry : relevancePerRepeat.entrySet()) {
+            ExtUtil.write(dos, entry.getKey());
+            ExtUtil.writeNumeric(dos, positions.get(entry.getValue()));
+        }
+
+        dos.flush();
+        return bytes.toByteArray();
     }
 
+    private static void writePositions(DataOutputStream dos, Collection<QuickTriggerable> triggerables, Map<QuickTriggerable, Integer> positions) throws IOException {
+        ExtUtil.writeNumeric(dos, triggerables.size());
+        for (QuickTriggerable triggerable : triggerables)
+            ExtUtil.writeNumeric(dos, positions.get(triggerable));
+    }
+
+    /**
+     * Reads the triggerables and the DAG written by {@link #writeExternalTriggerables} and restores the DAG, or builds
+     * it from the triggerables if it wasn't written. The layout isn't checked here: {@link FormDef#readExternal} rejects
+     * a form definition serialized in any other format before getting to this section.
+     */
     @SuppressWarnings("unchecked")
-    static List<Triggerable> readExternalTriggerables(DataInputStream dis, PrototypeFactory pf) throws IOException, DeserializationException {
+    void readExternalTriggerables(DataInputStream dis, PrototypeFactory pf, FormInstance mainInstance, EvaluationContext ec) throws IOException, DeserializationException {
         // Order of reads must match order of writes in writeExternalTriggerables
-        List<Triggerable> triggerables = new LinkedList<>();
+        List<Triggerable> triggerables = new ArrayList<>();
         triggerables.addAll((List<Triggerable>) ExtUtil.read(dis, new ExtWrapList(Condition.class), pf));
         triggerables.addAll((List<Triggerable>) ExtUtil.read(dis, new ExtWrapList(Recalculate.class), pf));
-        return triggerables;
+
+        if (ExtUtil.readBool(dis)) {
+            restoreDag(new DataInputStream(new ByteArrayInputStream(ExtUtil.readBytes(dis))), pf, triggerables, mainInstance);
+            return;
+        }
+
+        for (Triggerable triggerable : triggerables)
+            addTriggerable(triggerable);
+        finalizeTriggerables(mainInstance, ec);
+    }
+
+    private void restoreDag(DataInputStream dis, PrototypeFactory pf, List<Triggerable> triggerables, FormInstance mainInstance) throws IOException, DeserializationException {
+        if (ExtUtil.readInt(dis) != triggerables.size())
+            throw new DeserializationException("The serialized DAG doesn't match the serialized triggerables");
+
+        // The triggerables were distinct when written so there's no need to look for similar ones
+        List<QuickTriggerable> quickTriggerables = new ArrayList<>(triggerables.size());
+        for (Triggerable triggerable : triggerables)
+            quickTriggerables.add(QuickTriggerable.of(triggerable));
+        allTriggerables.addAll(quickTriggerables);
+
+        Set<QuickTriggerable> dag = new LinkedHashSet<>();
+        readPositions(dis, quickTriggerables, dag);
+        for (QuickTriggerable triggerable : quickTriggerables) {
+            Set<QuickTriggerable> immediateCascades = new LinkedHashSet<>();
+            readPositions(dis, quickTriggerables, immediateCascades);
+            triggerable.setImmediateCascades(immediateCascades);
+        }
+
+        int triggerCount = ExtUtil.readInt(dis);
+        for (int i = 0; i < triggerCount; i++) {
+            TreeReference trigger = (TreeReference) ExtUtil.read(dis, TreeReference.class, pf);
+            Set<QuickTriggerable> triggered = new HashSet<>();
+            readPositions(dis, quickTriggerables, triggered);
+            triggerablesPerTrigger.put(trigger, triggered);
+        }
+
+        Map<TreeReference, QuickTriggerable> relevancePerRepeat = new HashMap<>();
+        int repeatCount = ExtUtil.readInt(dis);
+        for (int i = 0; i < repeatCount; i++) {
+            TreeReference repeat = (TreeReference) ExtUtil.read(dis, TreeReference.class, pf);
+            relevancePerRepeat.put(repeat, quickTriggerables.get(ExtUtil.readInt(dis)));
+        }
+
+        triggerablesDAG = dag;
+        this.relevancePerRepeat = relevancePerRepeat;
+        aggregates = buildAggregates(mainInstance, triggerablesDAG);
+        calculatedRefs = buildCalculatedRefs(triggerablesDAG);
+    }
+
+    private static void readPositions(DataInputStream dis, List<QuickTriggerable> triggerables, Set<QuickTriggerable> into) throws IOException {
+        int count = ExtUtil.readInt(dis);
+        for (int i = 0; i < count; i++)
+            into.add(triggerables.get(ExtUtil.readInt(dis)));
     }
 
     private List<Condition> getConditions() {
@@ -751,6 +1107,18 @@ public class TriggerableDag {
         this.predicateCaching = false;
     }
 
+    /**
+     * Installs the profiler that will record the cost of every triggerable evaluated from now on, or stops profiling
+     * if it is null.
+     */
+    public void setProfiler(TriggerableProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public TriggerableProfiler getProfiler() {
+        return profiler;
+    }
+
     public void addPredicateFilter(PredicateFilter predicateFilter) {
         customPredicateFilters.add(predicateFilter);
     }
@@ -0,0 +1,169 @@
+package org.javarosa.core.model;
+
+import org.javarosa.core.model.condition.PredicateFilter;
+import org.javarosa.core.model.condition.PredicateFilterObserver;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.debug.Event;
+import org.javarosa.debug.EventNotifier;
+import org.javarosa.xpath.expr.XPathExpression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records what each bind's expression costs when the DAG evaluates it, so that the binds responsible for a slow form
+ * can be found. Install it with {@link FormDef#setProfiler(TriggerableProfiler)}, use the form and then read
+ * {@link #getProfiles()} or {@link #explain()}.
+ * <p>
+ * For every triggerable, the profiler keeps the number of evaluations, their cumulative and maximum time, the number
+ * of qualified references it was evaluated for and, for every {@link PredicateFilter} that served one of its
+ * predicates, how many predicates it served and how many nodes they were applied to. A predicate served by the last
+ * filter of the chain was evaluated against every one of those nodes.
+ * <p>
+ * Like the {@link FormDef} it's installed on, a profiler must only be used from one thread at a time.
+ */
+public class TriggerableProfiler implements PredicateFilterObserver {
+    private final Map<QuickTriggerable, Profile> profiles = new LinkedHashMap<>();
+    private Profile current;
+
+    void startEvaluation(QuickTriggerable qt) {
+        current = profiles.computeIfAbsent(qt, key -> new Profile(key.toString()));
+    }
+
+    void endEvaluation(long nanos, int qualifiedReferenceCount) {
+        current.evaluationCount++;
+        current.totalNanos += nanos;
+        current.maxNanos = Math.max(current.maxNanos, nanos);
+        current.qualifiedReferenceCount += qualifiedReferenceCount;
+        current = null;
+    }
+
+    @Override
+    public void onPredicateFiltered(PredicateFilter servedBy, TreeReference nodeSet, XPathExpression predicate, int candidateCount) {
+        // Predicates evaluated outside of the DAG (e.g. for itemsets) aren't attributed to a bind
+        if (current == null)
+            return;
+
+        PredicateFilterProfile filterProfile = current.predicateFilters.computeIfAbsent(servedBy.getClass().getSimpleName(), key -> new PredicateFilterProfile());
+        filterProfile.predicateCount++;
+        filterProfile.candidateCount += candidateCount;
+    }
+
+    /**
+     * Returns the profile of every triggerable evaluated so far, the most expensive first.
+     */
+    public List<Profile> getProfiles() {
+        List<Profile> sorted = new ArrayList<>(profiles.values());
+        sorted.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        return sorted;
+    }
+
+    /**
+     * Returns a human-readable report of {@link #getProfiles()}.
+     */
+    public String explain() {
+        StringBuilder report = new StringBuilder();
+        for (Profile profile : getProfiles())
+            report.append(profile).append('\n');
+        return report.toString();
+    }
+
+    /**
+     * Publishes one event per profile, the most expensive first.
+     */
+    public void publish(EventNotifier eventNotifier) {
+        if (!eventNotifier.isEnabled())
+            return;
+
+        for (Profile profile : getProfiles())
+            eventNotifier.publishEvent(new Event(profile.toString()));
+    }
+
+    public void reset() {
+        profiles.clear();
+        current = null;
+    }
+
+    public static class Profile {
+        private final String triggerable;
+        private int evaluationCount;
+        private long totalNanos;
+        private long maxNanos;
+        private long qualifiedReferenceCount;
+        private final Map<String, PredicateFilterProfile> predicateFilters = new LinkedHashMap<>();
+
+        Profile(String triggerable) {
+            this.triggerable = triggerable;
+        }
+
+        /**
+         * Returns a description of the triggerable, e.g. "Recalculate /data/total with (sum(/data/item))".
+         */
+        public String getTriggerable() {
+            return triggerable;
+        }
+
+        public int getEvaluationCount() {
+            return evaluationCount;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Returns the total number of qualified references the triggerable was evaluated for, which is more than the
+         * number of evaluations if it was evaluated for several repeat instances at once.
+         */
+        public long getQualifiedReferenceCount() {
+            return qualifiedReferenceCount;
+        }
+
+        /**
+         * Returns the profile of each filter that served the triggerable's predicates by filter class simple name.
+         */
+        public Map<String, PredicateFilterProfile> getPredicateFilters() {
+            return Collections.unmodifiableMap(predicateFilters);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder description = new StringBuilder(String.format("%s: %d evaluations for %d references, %.3f ms total, %.3f ms max",
+                triggerable, evaluationCount, qualifiedReferenceCount, totalNanos / 1e6, maxNanos / 1e6));
+            for (Map.Entry<String, PredicateFilterProfile> filter : predicateFilters.entrySet())
+                description.append("\n    ").append(filter.getKey()).append(": ").append(filter.getValue());
+            return description.toString();
+        }
+    }
+
+    public static class PredicateFilterProfile {
+        private int predicateCount;
+        private long candidateCount;
+
+        /**
+         * Returns the number of predicates the filter served.
+         */
+        public int getPredicateCount() {
+            return predicateCount;
+        }
+
+        /**
+         * Returns the total number of nodes the predicates the filter served were applied to.
+         */
+        public long getCandidateCount() {
+            return candidateCount;
+        }
+
+        @Override
+        public String toString() {
+            return predicateCount + " predicates over " + candidateCount + " nodes";
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.javarosa.core.util.externalizable.ExtUtil;
 import org.javarosa.core.util.externalizable.ExtWrapTagged;
 import org.javarosa.core.util.externalizable.PrototypeFactory;
 import org.javarosa.xform.parse.IElementHandler;
+import org.javarosa.xpath.XPathExpressionCache;
 import org.javarosa.xpath.XPathTypeMismatchException;
 import org.javarosa.xpath.expr.XPathExpression;
 import org.javarosa.xpath.expr.XPathFuncExpr;
@@ -114,7 +115,7 @@ public class SetValueAction extends Action {
         target = (TreeReference)ExtUtil.read(in, TreeReference.class, pf);
         explicitValue = ExtUtil.nullIfEmpty(ExtUtil.readString(in));
         if(explicitValue == null) {
-            value = (XPathExpression)ExtUtil.read(in, new ExtWrapTagged(), pf);
+            value = XPathExpressionCache.intern((XPathExpression)ExtUtil.read(in, new ExtWrapTagged(), pf));
         }
 
     }
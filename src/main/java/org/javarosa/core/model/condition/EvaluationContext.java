@@ -21,6 +21,7 @@ import org.javarosa.core.model.instance.AbstractTreeElement;
 import org.javarosa.core.model.instance.DataInstance;
 import org.javarosa.core.model.instance.TreeElement;
 import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.measure.Metrics;
 import org.javarosa.xpath.IExprDataType;
 import org.javarosa.xpath.expr.XPathExpression;
 import org.jetbrains.annotations.NotNull;
@@ -68,6 +69,7 @@ public class EvaluationContext {
 
     private static final List<PredicateFilter> DEFAULT_PREDICATE_FILTER_CHAIN = singletonList(new XPathEvalPredicateFilter());
     private List<PredicateFilter> predicateFilterChain = DEFAULT_PREDICATE_FILTER_CHAIN;
+    private PredicateFilterObserver predicateFilterObserver;
 
     /**
      * Copy Constructor
@@ -95,6 +97,7 @@ public class EvaluationContext {
         currentContextPosition = base.currentContextPosition;
 
         predicateFilterChain = base.predicateFilterChain;
+        predicateFilterObserver = base.predicateFilterObserver;
     }
 
     public EvaluationContext(EvaluationContext base, List<PredicateFilter> aroundPredicateFilterChain) {
@@ -105,6 +108,16 @@ public class EvaluationContext {
         ).collect(Collectors.toList());
     }
 
+    /**
+     * Returns a copy of this context that tells the given observer how every predicate evaluated in it, or in the
+     * contexts derived from it, is filtered.
+     */
+    public EvaluationContext withPredicateFilterObserver(PredicateFilterObserver predicateFilterObserver) {
+        EvaluationContext ec = new EvaluationContext(this);
+        ec.predicateFilterObserver = predicateFilterObserver;
+        return ec;
+    }
+
     public EvaluationContext(EvaluationContext base, TreeReference context) {
         this(base);
         this.contextNode = context;
@@ -244,6 +257,7 @@ public class EvaluationContext {
                 ", no appropriate instance in evaluation context");
         }
 
+        Metrics.increment(Metrics.REFERENCE_EXPANSIONS);
         List<TreeReference> treeReferences = new ArrayList<>(1);
         TreeReference workingRef = baseInstance.getRoot().getRef();
         expandReferenceAccumulator(ref, baseInstance, workingRef, treeReferences, includeTemplates);
@@ -364,13 +378,23 @@ public class EvaluationContext {
 
     @NotNull
     private List<TreeReference> filterWithPredicate(DataInstance sourceInstance, TreeReference treeReference, XPathExpression predicate, List<TreeReference> children, List<PredicateFilter> filterChain) {
-        return filterWithPredicate(sourceInstance, treeReference, predicate, children, 0, filterChain);
+        if (predicateFilterObserver == null)
+            return filterWithPredicate(sourceInstance, treeReference, predicate, children, 0, filterChain, null);
+
+        // The filter that served the predicate is the last one it was passed down to
+        int[] deepestFilter = {0};
+        List<TreeReference> filtered = filterWithPredicate(sourceInstance, treeReference, predicate, children, 0, filterChain, deepestFilter);
+        predicateFilterObserver.onPredicateFiltered(filterChain.get(deepestFilter[0]), treeReference, predicate, children.size());
+        return filtered;
     }
 
     @NotNull
-    private List<TreeReference> filterWithPredicate(DataInstance sourceInstance, TreeReference treeReference, XPathExpression predicate, List<TreeReference> children, int i, List<PredicateFilter> filterChain) {
+    private List<TreeReference> filterWithPredicate(DataInstance sourceInstance, TreeReference treeReference, XPathExpression predicate, List<TreeReference> children, int i, List<PredicateFilter> filterChain, int[] deepestFilter) {
+        if (deepestFilter != null && i > deepestFilter[0])
+            deepestFilter[0] = i;
+
         return filterChain.get(i).filter(sourceInstance, treeReference, predicate, children, this, ()
-                -> filterWithPredicate(sourceInstance, treeReference, predicate, children, i + 1, filterChain));
+                -> filterWithPredicate(sourceInstance, treeReference, predicate, children, i + 1, filterChain, deepestFilter));
     }
 
     public EvaluationContext rescope(TreeReference treeRef, int currentContextPosition) {
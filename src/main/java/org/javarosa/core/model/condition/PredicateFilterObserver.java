@@ -0,0 +1,19 @@
+package org.javarosa.core.model.condition;
+
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.xpath.expr.XPathExpression;
+
+/**
+ * Is told which {@link PredicateFilter} of an {@link EvaluationContext}'s chain produced the result of each predicate
+ * evaluated in that context, e.g. to find out which predicates end up being evaluated against every node.
+ */
+public interface PredicateFilterObserver {
+
+    /**
+     * @param servedBy       the filter that returned the result without passing the predicate down the chain.
+     * @param nodeSet        the nodeset the predicate filtered.
+     * @param predicate      the predicate.
+     * @param candidateCount the number of nodes the predicate was applied to.
+     */
+    void onPredicateFiltered(PredicateFilter servedBy, TreeReference nodeSet, XPathExpression predicate, int candidateCount);
+}
@@ -111,14 +111,37 @@ public abstract class Triggerable implements Externalizable {
      * Dispatches all of the evaluation
      */
     public final List<EvaluationResult> apply(FormInstance mainInstance, EvaluationContext parentContext, TreeReference context) {
+        List<EvaluationResult> affectedNodes = new ArrayList<>(0);
+        applyCollecting(mainInstance, parentContext, context, affectedNodes);
+        return affectedNodes;
+    }
+
+    /**
+     * Dispatches all of the evaluation, adding the affected nodes to the given list, or not keeping track of them if
+     * it's null.
+     */
+    public final void applyCollecting(FormInstance mainInstance, EvaluationContext parentContext, TreeReference context, List<EvaluationResult> affectedNodes) {
+        EvaluationContext ec = getEvaluationContext(parentContext, context);
+        applyResult(mainInstance, ec, eval(mainInstance, ec), affectedNodes);
+    }
+
+    /**
+     * Dispatches a result that was computed without evaluating the expression (e.g. from an incrementally maintained
+     * aggregate) to all of the targets, adding the affected nodes to the given list, or not keeping track of them if
+     * it's null.
+     */
+    public final void applyCollecting(FormInstance mainInstance, EvaluationContext parentContext, TreeReference context, Object result, List<EvaluationResult> affectedNodes) {
+        applyResult(mainInstance, getEvaluationContext(parentContext, context), result, affectedNodes);
+    }
+
+    private EvaluationContext getEvaluationContext(EvaluationContext parentContext, TreeReference context) {
         //The triggeringRoot is the highest level of actual data we can inquire about, but it _isn't_ necessarily the basis
         //for the actual expressions, so we need genericize that ref against the current context
         TreeReference ungenericised = originalContextRef.contextualize(context);
-        EvaluationContext ec = new EvaluationContext(parentContext, ungenericised);
-
-        Object result = eval(mainInstance, ec);
+        return new EvaluationContext(parentContext, ungenericised);
+    }
 
-        List<EvaluationResult> affectedNodes = new ArrayList<>(0);
+    private void applyResult(FormInstance mainInstance, EvaluationContext ec, Object result, List<EvaluationResult> affectedNodes) {
         for (TreeReference target : targets) {
             TreeReference targetRef = target.contextualize(ec.getContextRef());
             List<TreeReference> v = ec.expandReference(targetRef);
@@ -126,11 +149,10 @@ public abstract class Triggerable implements Externalizable {
             for (TreeReference affectedRef : v) {
                 apply(affectedRef, result, mainInstance);
 
-                affectedNodes.add(new EvaluationResult(affectedRef, result));
+                if (affectedNodes != null)
+                    affectedNodes.add(new EvaluationResult(affectedRef, result));
             }
         }
-
-        return affectedNodes;
     }
 
     public Set<TreeReference> getTargets() {
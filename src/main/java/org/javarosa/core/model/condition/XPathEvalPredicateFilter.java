@@ -2,7 +2,7 @@ package org.javarosa.core.model.condition;
 
 import org.javarosa.core.model.instance.DataInstance;
 import org.javarosa.core.model.instance.TreeReference;
-import org.javarosa.measure.Measure;
+import org.javarosa.measure.Metrics;
 import org.javarosa.xpath.expr.XPathExpression;
 import org.jetbrains.annotations.NotNull;
 
@@ -28,7 +28,7 @@ class XPathEvalPredicateFilter implements PredicateFilter {
             //test the predicate on the treeElement
             EvaluationContext evalContext = evaluationContext.rescope(treeRef, i);
 
-            Measure.log("PredicateEvaluation");
+            Metrics.increment(Metrics.PREDICATE_EVALUATIONS);
             Object o = predicate.eval(sourceInstance, evalContext);
 
             if (o instanceof Boolean) {
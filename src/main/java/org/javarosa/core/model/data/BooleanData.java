@@ -57,6 +57,10 @@ public class BooleanData implements IAnswerData {
         return data;
     }
 
+    public boolean getBoolean() {
+        return data;
+    }
+
 
     @Override
     public void setValue(Object o) {
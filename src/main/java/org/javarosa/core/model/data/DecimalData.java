@@ -64,6 +64,11 @@ public class DecimalData implements IAnswerData {
         return d;
     }
 
+    /** Returns the value as is, where {@link #getValue()} boxes it */
+    public double getDouble() {
+        return d;
+    }
+
     @Override
     public void setValue(Object o) {
         if(o == null) {
@@ -84,7 +89,7 @@ public class DecimalData implements IAnswerData {
 
     @Override
     public UncastData uncast() {
-        return new UncastData(getValue().toString());
+        return new UncastData(String.valueOf(d));
     }
 
     @Override
@@ -191,6 +191,32 @@ public class GeoPointData implements IAnswerData, IExprDataType {
     }
 
 
+    /**
+     * Returns the latitude, which is {@link #MISSING_VALUE} if it hasn't been set.
+     */
+    public double getLatitude() {
+        return len > 0 ? gp[0] : MISSING_VALUE;
+    }
+
+    /**
+     * Returns the longitude, which is {@link #MISSING_VALUE} if it hasn't been set.
+     */
+    public double getLongitude() {
+        return len > 1 ? gp[1] : MISSING_VALUE;
+    }
+
+    /**
+     * Returns the latitude and longitude of each point packed into one array: [lat0, lon0, lat1, lon1...].
+     */
+    static double[] packCoordinates(List<GeoPointData> points) {
+        double[] coordinates = new double[2 * points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            coordinates[2 * i] = points.get(i).getLatitude();
+            coordinates[2 * i + 1] = points.get(i).getLongitude();
+        }
+        return coordinates;
+    }
+
     public double getPart(int i) {
         if (i < len) {
             return gp[i];
@@ -0,0 +1,31 @@
+package org.javarosa.core.model.data;
+
+import java.util.ArrayList;
+
+/**
+ * The points of a {@link GeoTraceData} or {@link GeoShapeData}, with their coordinates packed for the geo functions.
+ * The packed array is built when it's first needed and dropped when a point is added, removed or replaced.
+ */
+class GeoPointList extends ArrayList<GeoPointData> {
+    private double[] coordinates;
+    // modCount when the coordinates were packed, as adding and removing points doesn't go through one method
+    private int packedModCount;
+
+    @Override
+    public GeoPointData set(int index, GeoPointData element) {
+        coordinates = null;
+        return super.set(index, element);
+    }
+
+    /**
+     * Returns the latitude and longitude of each point packed into one array: [lat0, lon0, lat1, lon1...]. The array
+     * is shared, so it must not be modified.
+     */
+    double[] getCoordinates() {
+        if (coordinates == null || packedModCount != modCount) {
+            coordinates = GeoPointData.packCoordinates(this);
+            packedModCount = modCount;
+        }
+        return coordinates;
+    }
+}
@@ -57,7 +57,7 @@ public class GeoShapeData implements IAnswerData, IExprDataType {
         }
     }
 
-    public final ArrayList<GeoPointData> points = new ArrayList<>();
+    public final ArrayList<GeoPointData> points = new GeoPointList();
 
 
     /**
@@ -195,6 +195,15 @@ public class GeoShapeData implements IAnswerData, IExprDataType {
         return maxValue;
     }
 
+    /**
+     * Returns the latitude and longitude of each point packed into one array: [lat0, lon0, lat1, lon1...]. The array
+     * is built once for the current points and shared, so it must not be modified. Points are replaced rather than
+     * changed in place, so the array isn't rebuilt if a point's value is set directly.
+     */
+    public double[] getCoordinates() {
+        return ((GeoPointList) points).getCoordinates();
+    }
+
     @Override
     public String toString() {
         return getDisplayText();
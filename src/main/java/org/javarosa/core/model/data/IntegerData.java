@@ -64,6 +64,19 @@ public class IntegerData implements IAnswerData {
         return n;
     }
 
+    /** Returns the value as is, where {@link #getValue()} boxes it */
+    public int getInt() {
+        return n;
+    }
+
+    public long getLong() {
+        return n;
+    }
+
+    public double getDouble() {
+        return n;
+    }
+
     @Override
     public void setValue(Object o) {
         if(o == null) {
@@ -84,7 +97,7 @@ public class IntegerData implements IAnswerData {
 
     @Override
     public UncastData uncast() {
-        return new UncastData(Integer.valueOf(n).toString());
+        return new UncastData(String.valueOf(n));
     }
 
     @Override
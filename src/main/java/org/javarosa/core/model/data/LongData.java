@@ -63,6 +63,15 @@ public class LongData implements IAnswerData {
         return n;
     }
 
+    /** Returns the value as is, where {@link #getValue()} boxes it */
+    public long getLong() {
+        return n;
+    }
+
+    public double getDouble() {
+        return n;
+    }
+
     @Override
     public void setValue(Object o) {
         if(o == null) {
@@ -83,7 +92,7 @@ public class LongData implements IAnswerData {
 
     @Override
     public UncastData uncast() {
-        return new UncastData(Long.valueOf(n).toString());
+        return new UncastData(String.valueOf(n));
     }
 
     @Override
@@ -0,0 +1,241 @@
+package org.javarosa.core.model.instance;
+
+import org.javarosa.core.model.data.IAnswerData;
+import org.javarosa.core.util.externalizable.DeserializationException;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.core.util.externalizable.ExtWrapNullable;
+import org.javarosa.core.util.externalizable.ExtWrapTagged;
+import org.javarosa.core.util.externalizable.PrototypeFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Saves an in-progress {@link FormInstance} as a full snapshot followed by an append-only journal of the nodes that
+ * changed between saves, so that saving after every answer doesn't reserialize the whole instance.
+ * <p>
+ * Each save appends one record with the nodes {@link TreeElement} flagged as changed since the previous save: the
+ * value and required, relevant and enabled state of nodes that were set, and the entire subtree of nodes that had
+ * children or attributes added or removed, e.g. when a repeat instance is added or removed. Unchanged subtrees aren't
+ * visited. The journal is compacted into a new snapshot once it's bigger than the snapshot itself.
+ * <p>
+ * Loading reads the snapshot and applies each record in order. A record that was only partly written, e.g. because
+ * the process died while saving, is ignored along with the changes it would have applied, and the next save writes a
+ * new snapshot.
+ * <p>
+ * A new snapshot is written to a temporary file and moved over the old one before the journal is emptied, so that a
+ * crash while writing it leaves the old snapshot and its journal in place. The snapshot and the journal both start
+ * with the generation of the snapshot, and a journal left over from an older snapshot is ignored on load.
+ * <p>
+ * A journal assumes it's the only thing that checkpoints the changes of the instance it saves.
+ */
+public class FormInstanceJournal {
+    private static final byte END = 0;
+    private static final byte NODE = 1;
+    private static final byte SUBTREE = 2;
+
+    private final File snapshotFile;
+    private final File journalFile;
+
+    // What the files were last written from or read into
+    private FormInstance instance;
+    private TreeElement base;
+    private long generation;
+    private long snapshotLength;
+    private long journalLength;
+    private boolean journalIntact = true;
+
+    public FormInstanceJournal(File snapshotFile, File journalFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Saves the changes to the instance since it was last saved or loaded by this journal. A new snapshot is written
+     * the first time the instance is saved, if its root was replaced or if it's time to compact the journal.
+     *
+     * @return whether a new snapshot was written
+     */
+    public boolean save(FormInstance instance) throws IOException {
+        if (instance != this.instance || instance.getBase() != base || !journalIntact || journalLength > snapshotLength) {
+            writeSnapshot(instance);
+            return true;
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        ExtUtil.write(out, new ExtWrapNullable(instance.getDateSaved()));
+        writeChanges(out, instance.getRoot());
+        out.writeByte(END);
+        out.flush();
+
+        try (DataOutputStream journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)))) {
+            if (journalLength == 0)
+                journal.writeLong(generation);
+            ExtUtil.writeBytes(journal, record.toByteArray());
+        }
+        journalLength = journalFile.length();
+        return false;
+    }
+
+    /**
+     * Writes the instance to the snapshot file, empties the journal and clears the changes of every node.
+     */
+    public void writeSnapshot(FormInstance instance) throws IOException {
+        long newGeneration = (this.instance != null ? generation : readGeneration(snapshotFile)) + 1;
+        File newSnapshot = new File(snapshotFile.getPath() + ".new");
+        try (FileOutputStream file = new FileOutputStream(newSnapshot)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeLong(newGeneration);
+            ExtUtil.write(out, instance);
+            out.flush();
+            file.getFD().sync();
+        }
+
+        replaceSnapshot(newSnapshot.toPath(), snapshotFile.toPath());
+
+        clearChanges(instance.getBase());
+        this.instance = instance;
+        base = instance.getBase();
+        generation = newGeneration;
+        snapshotLength = snapshotFile.length();
+
+        // The old journal belongs to the old snapshot and would be ignored on load, but it mustn't be appended to
+        journalIntact = false;
+        new FileOutputStream(journalFile).close();
+        journalLength = 0;
+        journalIntact = true;
+    }
+
+    /**
+     * Moves a newly written snapshot over the current one. Overridden by tests to fail at this point.
+     */
+    void replaceSnapshot(Path newSnapshot, Path snapshot) throws IOException {
+        Files.move(newSnapshot, snapshot, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private static long readGeneration(File snapshotFile) throws IOException {
+        if (snapshotFile.length() < Long.BYTES)
+            return 0;
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(snapshotFile))) {
+            return in.readLong();
+        }
+    }
+
+    /**
+     * Reads the snapshot and applies the journal to it. The instance can then be saved incrementally by this journal.
+     */
+    public FormInstance load(PrototypeFactory pf) throws IOException, DeserializationException {
+        FormInstance instance;
+        long snapshotGeneration;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            snapshotGeneration = in.readLong();
+            instance = (FormInstance) ExtUtil.read(in, FormInstance.class, pf);
+        }
+
+        journalIntact = true;
+        if (journalFile.length() > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                // A journal that isn't for this snapshot was left behind by a crash while a new snapshot was written
+                journalIntact = journalFile.length() >= Long.BYTES && in.readLong() == snapshotGeneration;
+                while (journalIntact && hasMore(in)) {
+                    byte[] record;
+                    try {
+                        record = ExtUtil.readBytes(in);
+                    } catch (EOFException e) {
+                        journalIntact = false;
+                        break;
+                    }
+                    applyChanges(new DataInputStream(new ByteArrayInputStream(record)), instance, pf);
+                }
+            }
+        }
+
+        clearChanges(instance.getBase());
+        this.instance = instance;
+        base = instance.getBase();
+        generation = snapshotGeneration;
+        snapshotLength = snapshotFile.length();
+        journalLength = journalFile.length();
+        return instance;
+    }
+
+    private static boolean hasMore(DataInputStream in) throws IOException {
+        in.mark(1);
+        boolean hasMore = in.read() != -1;
+        in.reset();
+        return hasMore;
+    }
+
+    /**
+     * Writes the changes in the subtree of the given node and clears them.
+     */
+    private static void writeChanges(DataOutputStream out, TreeElement node) throws IOException {
+        if (node.areChildrenChanged()) {
+            out.writeByte(SUBTREE);
+            ExtUtil.write(out, node.getRef());
+            ExtUtil.write(out, node);
+            clearChanges(node);
+            return;
+        }
+
+        if (node.isChanged()) {
+            out.writeByte(NODE);
+            ExtUtil.write(out, node.getRef());
+            ExtUtil.writeNumeric(out, node.getOwnState());
+            IAnswerData value = node.getValue();
+            ExtUtil.write(out, new ExtWrapNullable(value == null ? null : new ExtWrapTagged(value)));
+        }
+
+        if (node.hasChangedDescendants()) {
+            for (int i = 0; i < node.getNumChildren(); i++)
+                writeChanges(out, node.getChildAt(i));
+        }
+        node.clearChanges();
+    }
+
+    private static void applyChanges(DataInputStream in, FormInstance instance, PrototypeFactory pf) throws IOException, DeserializationException {
+        instance.setDateSaved((Date) ExtUtil.read(in, new ExtWrapNullable(Date.class), pf));
+
+        for (byte type = in.readByte(); type != END; type = in.readByte()) {
+            TreeReference ref = (TreeReference) ExtUtil.read(in, TreeReference.class, pf);
+            TreeElement node = instance.resolveReference(ref);
+            if (node == null)
+                throw new DeserializationException("Journal has changes to a node that doesn't exist: " + ref.toString(true));
+
+            if (type == SUBTREE) {
+                TreeElement subtree = (TreeElement) ExtUtil.read(in, TreeElement.class, pf);
+                ((TreeElement) node.getParent()).replaceChild(node, subtree);
+            } else if (type == NODE) {
+                node.setOwnState((int) ExtUtil.readNumeric(in));
+                IAnswerData value = (IAnswerData) ExtUtil.read(in, new ExtWrapNullable(new ExtWrapTagged()), pf);
+                if (node.isLeaf())
+                    node.setValue(value);
+            } else {
+                throw new DeserializationException("Unknown journal entry type " + type);
+            }
+        }
+    }
+
+    private static void clearChanges(TreeElement node) {
+        node.clearChanges();
+        for (int i = 0; i < node.getNumChildren(); i++)
+            clearChanges(node.getChildAt(i));
+    }
+}
@@ -59,6 +59,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -89,16 +90,16 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     private IAnswerData value;
 
     private List<FormElementStateListener> observers;
+
+    // Secondary instances can have millions of nodes, most of them leaves, so these are only created when needed
     private List<TreeElement> attributes;
-    private final TreeElementChildrenList children = new TreeElementChildrenList();
+    private TreeElementChildrenList children;
 
     /* model properties */
     protected int dataType = Constants.DATATYPE_NULL; //TODO
 
-    private Constraint constraint;
-    private String preloadHandler;
-    private String preloadParams;
-    private List<TreeElement> bindAttributes = new ArrayList<>(0);
+    /** Constraint, preload and bind attributes, which only nodes bound to questions have */
+    private BindProperties bindProperties;
 
     // TODO see what’s required here from commented-out code removed 2017-04-23
 
@@ -110,8 +111,27 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     private static final int MASK_RELEVANT_INH = 0x20;
     private static final int MASK_ENABLED_INH = 0x40;
 
+    // Changes since the last checkpoint of the instance, see FormInstanceJournal. They're never serialized.
+    private static final int MASK_CHANGED = 0x80;
+    private static final int MASK_CHILDREN_CHANGED = 0x100;
+    private static final int MASK_DESCENDANT_CHANGED = 0x200;
+    private static final int MASKS_CHANGES = MASK_CHANGED | MASK_CHILDREN_CHANGED | MASK_DESCENDANT_CHANGED;
+
+    // This node, one of its attributes or one of its descendants has state observers. It's never serialized.
+    private static final int MASK_OBSERVED = 0x400;
+
     private int flags = MASK_RELEVANT | MASK_ENABLED | MASK_RELEVANT_INH | MASK_ENABLED_INH;
 
+    /**
+     * The relevant and enabled states a node inherits from its ancestors are worked out when they're asked for and
+     * kept in MASK_RELEVANT_INH and MASK_ENABLED_INH, which are only up to date if the node's inheritedStateEpoch is
+     * the current one of its tree's epochs. The epoch moves on whenever a node with descendants in the tree changes
+     * its own state or a node is moved out of it, rather than every descendant being updated. Each tree, so each
+     * instance, has its own epochs, which a node takes from its parent when it works out its inherited states.
+     */
+    private InheritedStateEpochs inheritedStateEpochs;
+    private int inheritedStateEpoch;
+
     private String namespace;
     private String namespacePrefix;
 
@@ -133,10 +153,9 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     }
 
     public TreeElement(String name, int multiplicity) {
-        this.name = name;
+        this.name = DataUtil.name(name);
         this.multiplicity = multiplicity;
         parent = null;
-        attributes = new ArrayList<>(0);
     }
 
     /**
@@ -151,7 +170,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     public static TreeElement constructAttributeElement(String namespace, String name, String value) {
         TreeElement element = new TreeElement(name);
         element.setMaskVar(MASK_ATTRIBUTE, true);
-        element.namespace = (namespace == null) ? "" : namespace;
+        element.namespace = (namespace == null) ? "" : DataUtil.name(namespace);
         element.multiplicity = TreeReference.INDEX_ATTRIBUTE;
         element.value = new UncastData(value);
         return element;
@@ -184,6 +203,8 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
         if ( attribut != null ) {
             if (value == null) {
                 attrs.remove(attribut);
+                if (parent != null)
+                    parent.markChanged(MASK_CHILDREN_CHANGED);
             } else {
                 attribut.setValue(new UncastData(value));
             }
@@ -198,11 +219,13 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
         attr.setParent(parent);
 
         attrs.add(attr);
+        if (parent != null)
+            parent.markChanged(MASK_CHILDREN_CHANGED);
     }
 
     @Override
     public boolean isLeaf() {
-        return children.isEmpty();
+        return children == null || children.isEmpty();
     }
 
     @Override
@@ -226,6 +249,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     public void setValue(IAnswerData value) {
         if (isLeaf()) {
             this.value = value;
+            markChanged(MASK_CHANGED);
         } else {
             throw new RuntimeException("Can't set data value for node that has children!");
         }
@@ -252,21 +276,21 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     @Override
     @Nullable
     public TreeElement getChild(String name, int multiplicity) {
-        return children.get(name, multiplicity);
+        return children == null ? null : children.get(name, multiplicity);
     }
 
     @Override
     public List<TreeElement> getChildrenWithName(String name) {
-        return children.get(name);
+        return children == null ? new ArrayList<>() : children.get(name);
     }
 
     private int getNumChildrenWithName(String name) {
-        return children.getCount(name);
+        return children == null ? 0 : children.getCount(name);
     }
 
     @Override
     public int getNumChildren() {
-        return children.size();
+        return children == null ? 0 : children.size();
     }
 
     @Override
@@ -276,6 +300,8 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
 
     @Override
     public TreeElement getChildAt (int i) {
+        if (children == null)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: 0");
         return children.get(i);
     }
 
@@ -302,23 +328,53 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
             throw new RuntimeException("Cannot add child with an unbound index!");
         }
 
-        children.addInOrder(child);
+        StateObservation observation = StateObservation.of(child);
+        children().addInOrder(child);
         child.setParent(this);
-        child.setRelevant(isRelevant(), true);
-        child.setEnabled(isEnabled(), true);
         child.setInstanceName(getInstanceName());
+        if (observation != null)
+            observation.alertChanges();
+        markChanged(MASK_CHILDREN_CHANGED);
     }
 
     public void removeChild(TreeElement child) {
-        children.remove(child);
+        if (children != null)
+            children.remove(child);
+        markChanged(MASK_CHILDREN_CHANGED);
     }
 
     public void removeChild(String name, int multiplicity) {
-        children.remove(name, multiplicity);
+        if (children != null)
+            children.remove(name, multiplicity);
+        markChanged(MASK_CHILDREN_CHANGED);
     }
 
     public void removeChildAt(int i) {
-        children.remove(i);
+        children().remove(i);
+        markChanged(MASK_CHILDREN_CHANGED);
+    }
+
+    private TreeElementChildrenList children() {
+        if (children == null)
+            children = new TreeElementChildrenList();
+        return children;
+    }
+
+    /**
+     * Puts a node in place of one of this node's children, e.g. to apply a subtree recorded by a
+     * {@link FormInstanceJournal}.
+     */
+    void replaceChild(TreeElement child, TreeElement replacement) {
+        for (int i = 0; i < getNumChildren(); i++) {
+            if (children.get(i) == child) {
+                children.remove(i);
+                children.add(i, replacement);
+                replacement.setParent(this);
+                markChanged(MASK_CHILDREN_CHANGED);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Not a child of " + getName() + ": " + child.getName());
     }
 
     @Override
@@ -337,31 +393,33 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
         newNode.setMaskVar(MASK_REQUIRED, getMaskVar(MASK_REQUIRED));
         newNode.setMaskVar(MASK_ENABLED, getMaskVar(MASK_ENABLED));
 
-        newNode.constraint = constraint;
-        newNode.preloadHandler = preloadHandler;
-        newNode.preloadParams = preloadParams;
+        if (bindProperties != null)
+            newNode.bindProperties = new BindProperties(bindProperties);
         newNode.instanceName = instanceName;
         newNode.namespace = namespace;
-        newNode.bindAttributes = bindAttributes;
 
-        newNode.attributes = new ArrayList<>(attributes.size());
-        for (TreeElement attr : attributes) {
-            newNode.setAttribute(attr.getNamespace(), attr.getName(), attr.getAttributeValue());
+        if (attributes != null) {
+            newNode.attributes = new ArrayList<>(attributes.size());
+            for (TreeElement attr : attributes) {
+                newNode.setAttribute(attr.getNamespace(), attr.getName(), attr.getAttributeValue());
+            }
         }
 
         if (value != null) {
             newNode.value = value.clone();
         }
 
-        newNode.children.addAll(children);
+        if (children != null)
+            newNode.children().addAll(children);
         return newNode;
     }
 
     public TreeElement deepCopy(boolean includeTemplates) {
         TreeElement newNode = shallowCopy();
 
-        newNode.children.clear();
-        for (TreeElement child : children) {
+        newNode.children = null;
+        for (int i = 0; i < getNumChildren(); i++) {
+            TreeElement child = children.get(i);
             if (includeTemplates || child.getMult() != TreeReference.INDEX_TEMPLATE) {
                 newNode.addChild(child.deepCopy(includeTemplates));
             }
@@ -375,12 +433,64 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     // factoring inheritance rules
     @Override
     public boolean isRelevant() {
-        return getMaskVar(MASK_RELEVANT_INH) && getMaskVar(MASK_RELEVANT);
+        if (!getMaskVar(MASK_RELEVANT))
+            return false;
+
+        refreshInheritedState();
+        return getMaskVar(MASK_RELEVANT_INH);
     }
 
     // factoring in inheritance rules
     public boolean isEnabled() {
-        return getMaskVar(MASK_ENABLED_INH) && getMaskVar(MASK_ENABLED);
+        if (!getMaskVar(MASK_ENABLED))
+            return false;
+
+        refreshInheritedState();
+        return getMaskVar(MASK_ENABLED_INH);
+    }
+
+    /**
+     * Works out the relevant and enabled states inherited from the parent, unless they're still up to date.
+     * Attributes only inherit relevance.
+     */
+    private void refreshInheritedState() {
+        if (inheritedStateEpochs != null && inheritedStateEpoch == inheritedStateEpochs.current)
+            return;
+
+        boolean relevant = true;
+        boolean enabled = true;
+        InheritedStateEpochs epochs;
+        if (parent instanceof TreeElement) {
+            TreeElement parentElement = (TreeElement) parent;
+            parentElement.refreshInheritedState();
+            relevant = parentElement.getMaskVar(MASK_RELEVANT) && parentElement.getMaskVar(MASK_RELEVANT_INH);
+            enabled = isAttribute() || parentElement.getMaskVar(MASK_ENABLED) && parentElement.getMaskVar(MASK_ENABLED_INH);
+            epochs = parentElement.inheritedStateEpochs;
+        } else {
+            epochs = inheritedStateEpochs != null ? inheritedStateEpochs : new InheritedStateEpochs();
+        }
+        setMaskVar(MASK_RELEVANT_INH, relevant);
+        setMaskVar(MASK_ENABLED_INH, enabled);
+        inheritedStateEpochs = epochs;
+        inheritedStateEpoch = epochs.current;
+    }
+
+    /**
+     * Makes the inherited states of every node in this node's tree out of date, if this node has anything that
+     * inherits from it. A node whose own inherited states are out of date or were never worked out has no
+     * descendants whose states are up to date, so there's nothing to do if it doesn't have epochs yet.
+     */
+    private void expireInheritedStatesBelow() {
+        if (inheritedStateEpochs != null && (!isLeaf() || getAttributeCount() > 0))
+            inheritedStateEpochs.current++;
+    }
+
+    /**
+     * The current epoch of the inherited states in a tree. Only ever moves on, so a node whose tree changed can't
+     * mistake its old tree's epoch for its new one's: the old one is moved on when the node is moved.
+     */
+    private static final class InheritedStateEpochs {
+        int current;
     }
 
     /* ==== SPECIAL SETTERS (SETTERS WITH SIDE EFFECTS) ==== */
@@ -398,6 +508,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     public void setRequired(boolean required) {
         if (getMaskVar(MASK_REQUIRED) != required) {
             setMaskVar(MASK_REQUIRED, required);
+            markChanged(MASK_CHANGED);
             alertStateObservers(FormElementStateListener.CHANGE_REQUIRED);
         }
     }
@@ -415,31 +526,75 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     }
 
     public void setRelevant(boolean relevant) {
-        setRelevant(relevant, false);
+        if (getMaskVar(MASK_RELEVANT) == relevant)
+            return;
+
+        StateObservation observation = StateObservation.of(this);
+        setMaskVar(MASK_RELEVANT, relevant);
+        expireInheritedStatesBelow();
+        markChanged(MASK_CHANGED);
+        if (observation != null)
+            observation.alertChanges();
     }
 
-    private void setRelevant(boolean relevant, boolean inherited) {
-        boolean oldRelevancy = isRelevant();
-        if (inherited) {
-            setMaskVar(MASK_RELEVANT_INH, relevant);
-        } else {
-            setMaskVar(MASK_RELEVANT, relevant);
+    /**
+     * Flags this node as changed since the last checkpoint of its instance and each of its ancestors as having a
+     * changed descendant, so that the changes can be found without visiting unchanged subtrees. A change to an
+     * attribute is a change to the attributes of the node that has it.
+     */
+    private void markChanged(int mask) {
+        if (isAttribute()) {
+            if (parent instanceof TreeElement)
+                ((TreeElement) parent).markChanged(MASK_CHILDREN_CHANGED);
+            return;
         }
 
-        boolean newRelevant = isRelevant();
-        if (newRelevant != oldRelevancy) {
-            if(attributes != null) {
-                for (TreeElement attribute : attributes) {
-                    attribute.setRelevant(newRelevant, true);
-                }
-            }
-            for (TreeElement aChildren : children) {
-                aChildren.setRelevant(newRelevant, true);
-            }
-            alertStateObservers(FormElementStateListener.CHANGE_RELEVANT);
+        setMaskVar(mask, true);
+        AbstractTreeElement ancestor = parent;
+        while (ancestor instanceof TreeElement && !((TreeElement) ancestor).getMaskVar(MASK_DESCENDANT_CHANGED)) {
+            ((TreeElement) ancestor).setMaskVar(MASK_DESCENDANT_CHANGED, true);
+            ancestor = ancestor.getParent();
         }
     }
 
+    /**
+     * Whether the value, relevance, required or enabled state of this node changed since the last checkpoint.
+     */
+    boolean isChanged() {
+        return getMaskVar(MASK_CHANGED);
+    }
+
+    /**
+     * Whether children or attributes were added to or removed from this node since the last checkpoint.
+     */
+    boolean areChildrenChanged() {
+        return getMaskVar(MASK_CHILDREN_CHANGED);
+    }
+
+    boolean hasChangedDescendants() {
+        return getMaskVar(MASK_DESCENDANT_CHANGED);
+    }
+
+    /**
+     * Clears the changes of this node, but not those of its descendants.
+     */
+    void clearChanges() {
+        flags &= ~MASKS_CHANGES;
+    }
+
+    /**
+     * Returns the required, relevant and enabled state set on this node, as opposed to inherited from its ancestors.
+     */
+    int getOwnState() {
+        return flags & (MASK_REQUIRED | MASK_RELEVANT | MASK_ENABLED);
+    }
+
+    void setOwnState(int state) {
+        setRequired((state & MASK_REQUIRED) != 0);
+        setRelevant((state & MASK_RELEVANT) != 0);
+        setEnabled((state & MASK_ENABLED) != 0);
+    }
+
     public void setBindAttributes(List<TreeElement> bindAttributes ) {
         // create new tree elements for all the bind definitions...
         for ( TreeElement ref : bindAttributes ) {
@@ -448,35 +603,75 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     }
 
     public List<TreeElement> getBindAttributes() {
-        return bindAttributes;
+        return bindProperties == null ? Collections.emptyList() : bindProperties.bindAttributes;
     }
 
     public void setBindAttribute(String namespace, String name, String value) {
-        setAttribute(this, bindAttributes, namespace, name, value);
+        if (bindProperties == null && value == null)
+            return;
+        setAttribute(this, bindProperties().bindAttributes, namespace, name, value);
     }
 
-    public void setEnabled(boolean enabled) {
-        setEnabled(enabled, false);
+    private BindProperties bindProperties() {
+        if (bindProperties == null)
+            bindProperties = new BindProperties();
+        return bindProperties;
     }
 
-    private void setEnabled(boolean enabled, boolean inherited) {
-        boolean oldEnabled = isEnabled();
-        if (inherited) {
-            setMaskVar(MASK_ENABLED_INH, enabled);
-        } else {
-            setMaskVar(MASK_ENABLED, enabled);
+    private static final class BindProperties {
+        Constraint constraint;
+        String preloadHandler;
+        String preloadParams;
+        List<TreeElement> bindAttributes;
+
+        BindProperties() {
+            bindAttributes = new ArrayList<>(0);
         }
 
-        if (isEnabled() != oldEnabled) {
-            for (TreeElement aChildren : children) {
-                aChildren.setEnabled(isEnabled(), true);
-            }
-            alertStateObservers(FormElementStateListener.CHANGE_ENABLED);
+        // The bind attributes are shared with the copy, as they always have been
+        BindProperties(BindProperties properties) {
+            constraint = properties.constraint;
+            preloadHandler = properties.preloadHandler;
+            preloadParams = properties.preloadParams;
+            bindAttributes = properties.bindAttributes;
         }
     }
 
+    public void setEnabled(boolean enabled) {
+        if (getMaskVar(MASK_ENABLED) == enabled)
+            return;
+
+        StateObservation observation = StateObservation.of(this);
+        setMaskVar(MASK_ENABLED, enabled);
+        expireInheritedStatesBelow();
+        markChanged(MASK_CHANGED);
+        if (observation != null)
+            observation.alertChanges();
+    }
+
     /* ==== OBSERVER PATTERN ==== */
 
+    public void registerStateObserver(FormElementStateListener qsl) {
+        if (observers == null)
+            observers = new ArrayList<>(1);
+        if (!observers.contains(qsl))
+            observers.add(qsl);
+        setMaskVar(MASK_OBSERVED, true);
+        markObservedAncestors();
+    }
+
+    /**
+     * Flags the ancestors of an observed node as having observers in their subtrees, so that a change of inherited
+     * state only has to look for observers where there are some. The flags stay once the observers are gone.
+     */
+    private void markObservedAncestors() {
+        AbstractTreeElement node = parent;
+        while (node instanceof TreeElement && !((TreeElement) node).getMaskVar(MASK_OBSERVED)) {
+            ((TreeElement) node).setMaskVar(MASK_OBSERVED, true);
+            node = node.getParent();
+        }
+    }
+
     public void unregisterStateObserver(FormElementStateListener qsl) {
         if (observers != null) {
             observers.remove(qsl);
@@ -493,14 +688,61 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
         }
     }
 
+    /**
+     * The relevant and enabled states of the observed nodes of a subtree before a change, so that once the change has
+     * been made to the whole subtree the observers of the nodes whose states changed can be told in one go.
+     */
+    private static final class StateObservation {
+        private final List<TreeElement> nodes = new ArrayList<>();
+        private final List<Boolean> relevant = new ArrayList<>();
+        private final List<Boolean> enabled = new ArrayList<>();
+
+        /**
+         * @return the states of the observed nodes of the given subtree, or null if nothing in it is observed
+         */
+        static StateObservation of(TreeElement subtree) {
+            if (!subtree.getMaskVar(MASK_OBSERVED))
+                return null;
+
+            StateObservation observation = new StateObservation();
+            observation.collect(subtree);
+            return observation;
+        }
+
+        private void collect(TreeElement node) {
+            if (!node.getMaskVar(MASK_OBSERVED))
+                return;
+
+            if (node.observers != null) {
+                nodes.add(node);
+                relevant.add(node.isRelevant());
+                enabled.add(node.isEnabled());
+            }
+            for (int i = 0; i < node.getAttributeCount(); i++)
+                collect(node.attributes.get(i));
+            for (int i = 0; i < node.getNumChildren(); i++)
+                collect(node.children.get(i));
+        }
+
+        void alertChanges() {
+            for (int i = 0; i < nodes.size(); i++) {
+                TreeElement node = nodes.get(i);
+                if (node.isRelevant() != relevant.get(i))
+                    node.alertStateObservers(FormElementStateListener.CHANGE_RELEVANT);
+                if (node.isEnabled() != enabled.get(i))
+                    node.alertStateObservers(FormElementStateListener.CHANGE_ENABLED);
+            }
+        }
+    }
+
     /* ==== VISITOR PATTERN ==== */
 
      @Override
     public void accept(ITreeVisitor visitor) {
         visitor.visit(this);
 
-        for (TreeElement child : children) {
-            child.accept(visitor);
+        for (int i = 0; i < getNumChildren(); i++) {
+            children.get(i).accept(visitor);
         }
     }
 
@@ -549,7 +791,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
 
     @Override
     public TreeElement getAttribute(String namespace, String name) {
-        return getAttribute(attributes, namespace, name);
+        return attributes == null ? null : getAttribute(attributes, namespace, name);
     }
 
     @Override
@@ -559,6 +801,11 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     }
 
     public void setAttribute(String namespace, String name, String value) {
+        if (attributes == null) {
+            if (value == null)
+                return;
+            attributes = new ArrayList<>(1);
+        }
         setAttribute(this, attributes, namespace, name, value);
     }
 
@@ -578,9 +825,9 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
 
     @Override
     public void readExternal(DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
-        name = ExtUtil.nullIfEmpty(ExtUtil.readString(in));
+        name = DataUtil.name(ExtUtil.nullIfEmpty(ExtUtil.readString(in)));
         multiplicity = ExtUtil.readInt(in);
-        flags = ExtUtil.readInt(in);
+        flags = ExtUtil.readInt(in) & ~MASK_OBSERVED;
         value = (IAnswerData) ExtUtil.read(in, new ExtWrapNullable(new ExtWrapTagged()), pf);
 
         // children = ExtUtil.nullIfEmpty((List)ExtUtil.read(in, new
@@ -597,13 +844,10 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
         // directly.
         // 3.2 if read boolean false then create tagged element and deserialize
         // child
-        if (!ExtUtil.readBool(in)) {
-            // 1.
-            children.clear(); // todo is this needed?
-        } else {
+        children = null;
+        if (ExtUtil.readBool(in)) {
             // 2.
             int numChildren = (int) ExtUtil.readNumeric(in);
-            children.clear();
             // 3.
             List<TreeElement> newChildren = new ArrayList<>(numChildren);
             for (int i = 0; i < numChildren; ++i) {
@@ -621,29 +865,35 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
                 child.setParent(this);
                 newChildren.add(child);
             }
-            children.addAll(newChildren);
+            children().addAll(newChildren);
         }
 
         // end Jan 22, 2009
 
         dataType = ExtUtil.readInt(in);
         instanceName = ExtUtil.nullIfEmpty(ExtUtil.readString(in));
-        constraint = (Constraint) ExtUtil.read(in, new ExtWrapNullable(
-                Constraint.class), pf);
-        preloadHandler = ExtUtil.nullIfEmpty(ExtUtil.readString(in));
-        preloadParams = ExtUtil.nullIfEmpty(ExtUtil.readString(in));
-        namespace = ExtUtil.nullIfEmpty(ExtUtil.readString(in));
+        bindProperties = null;
+        setConstraint((Constraint) ExtUtil.read(in, new ExtWrapNullable(
+                Constraint.class), pf));
+        setPreloadHandler(ExtUtil.nullIfEmpty(ExtUtil.readString(in)));
+        setPreloadParams(ExtUtil.nullIfEmpty(ExtUtil.readString(in)));
+        namespace = DataUtil.name(ExtUtil.nullIfEmpty(ExtUtil.readString(in)));
 
-        bindAttributes = ExtUtil.readAttributes(in, this);
+        List<TreeElement> bindAttributes = ExtUtil.readAttributes(in, this);
+        if (!bindAttributes.isEmpty())
+            bindProperties().bindAttributes = bindAttributes;
 
         attributes = ExtUtil.readAttributes(in, this);
+        if (attributes.isEmpty())
+            attributes = null;
     }
 
     @Override
     public void writeExternal(DataOutputStream out) throws IOException {
         ExtUtil.writeString(out, ExtUtil.emptyIfNull(name));
         ExtUtil.writeNumeric(out, multiplicity);
-        ExtUtil.writeNumeric(out, flags);
+        refreshInheritedState();
+        ExtUtil.writeNumeric(out, flags & ~(MASKS_CHANGES | MASK_OBSERVED));
         ExtUtil.write(out, new ExtWrapNullable(value == null ? null : new ExtWrapTagged(value)));
 
         // Jan 22, 2009 - csims@dimagi.com
@@ -657,7 +907,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
         // directly.
         // 3.2 if child type != TreeElement, write boolean false, then tagged
         // child
-        if (children.isEmpty()) {
+        if (isLeaf()) {
             // 1.
             ExtUtil.writeBool(out, false);
         } else {
@@ -683,14 +933,14 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
 
         ExtUtil.writeNumeric(out, dataType);
         ExtUtil.writeString(out, ExtUtil.emptyIfNull(instanceName));
-        ExtUtil.write(out, new ExtWrapNullable(constraint)); // TODO: inefficient for repeats
-        ExtUtil.writeString(out, ExtUtil.emptyIfNull(preloadHandler));
-        ExtUtil.writeString(out, ExtUtil.emptyIfNull(preloadParams));
+        ExtUtil.write(out, new ExtWrapNullable(getConstraint())); // TODO: inefficient for repeats
+        ExtUtil.writeString(out, ExtUtil.emptyIfNull(getPreloadHandler()));
+        ExtUtil.writeString(out, ExtUtil.emptyIfNull(getPreloadParams()));
         ExtUtil.writeString(out, ExtUtil.emptyIfNull(namespace));
 
-        ExtUtil.writeAttributes(out, bindAttributes);
+        ExtUtil.writeAttributes(out, getBindAttributes());
 
-        ExtUtil.writeAttributes(out, attributes);
+        ExtUtil.writeAttributes(out, attributes == null ? Collections.emptyList() : attributes);
     }
 
     //rebuilding a node from an imported instance
@@ -753,7 +1003,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
                     }
 
                     removeChildAt(j);
-                    children.add(i, child2);
+                    children().add(i, child2);
                 }
             }
 
@@ -765,7 +1015,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
                     for (int k = 0; k < newChildren.size(); k++) {
                         TreeElement newChild = child.deepCopy(true);
                         newChild.setMult(k);
-                        children.add(i + k + 1, newChild);
+                        children().add(i + k + 1, newChild);
                         newChild.populate(newChildren.get(k), f);
                     }
                     i += newChildren.size();
@@ -860,7 +1110,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
                         TreeElement template = f.getMainInstance().getTemplate(child.getRef());
                         TreeElement newChild = template.deepCopy(false);
                         newChild.setMult(k);
-                        children.add(i + k + 1, newChild);
+                        children().add(i + k + 1, newChild);
                         newChild.populateTemplate(newChildren.get(k), f);
                     }
                     i += newChildren.size();
@@ -871,26 +1121,22 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
         }
     }
 
-    //TODO: This is probably silly because this object is likely already
-    //not thread safe in any way. Also, we should be wrapping all of the
-    //setters.
-    private final TreeReference[] refCache = new TreeReference[1];
+    // Volatile rather than locked: two threads may both build the reference, but either one's is the same
+    private volatile TreeReference refCache;
 
     private void expireReferenceCache() {
-        synchronized(refCache) {
-            refCache[0] = null;
-        }
+        refCache = null;
     }
 
     @Override
     public TreeReference getRef () {
         //TODO: Expire cache somehow;
-        synchronized(refCache) {
-            if(refCache[0] == null) {
-                refCache[0] = BuildRef(this);
-            }
-            return refCache[0];
+        TreeReference ref = refCache;
+        if (ref == null) {
+            ref = BuildRef(this);
+            refCache = ref;
         }
+        return ref;
     }
 
     static TreeReference BuildRef(AbstractTreeElement elem) {
@@ -936,27 +1182,30 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     }
 
     public String getPreloadHandler() {
-        return preloadHandler;
+        return bindProperties == null ? null : bindProperties.preloadHandler;
     }
 
     public Constraint getConstraint() {
-        return constraint;
+        return bindProperties == null ? null : bindProperties.constraint;
     }
 
     public void setPreloadHandler(String preloadHandler) {
-        this.preloadHandler = preloadHandler;
+        if (bindProperties != null || preloadHandler != null)
+            bindProperties().preloadHandler = preloadHandler;
     }
 
     public void setConstraint(Constraint constraint) {
-        this.constraint = constraint;
+        if (bindProperties != null || constraint != null)
+            bindProperties().constraint = constraint;
     }
 
     public String getPreloadParams() {
-        return preloadParams;
+        return bindProperties == null ? null : bindProperties.preloadParams;
     }
 
     public void setPreloadParams(String preloadParams) {
-        this.preloadParams = preloadParams;
+        if (bindProperties != null || preloadParams != null)
+            bindProperties().preloadParams = preloadParams;
     }
 
     @Override
@@ -966,7 +1215,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
 
     public void setName(String name) {
         expireReferenceCache();
-        this.name = name;
+        this.name = DataUtil.name(name);
     }
 
     @Override
@@ -982,6 +1231,11 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     public void setParent (AbstractTreeElement parent) {
         expireReferenceCache();
         this.parent = parent;
+        // Out of date in the tree the node leaves, and taken from the new parent when next worked out
+        if (inheritedStateEpochs != null)
+            inheritedStateEpochs.current++;
+        if (getMaskVar(MASK_OBSERVED))
+            markObservedAncestors();
     }
 
     @Override
@@ -1000,7 +1254,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
             name = this.name;
         }
 
-        return name + " - Children: " + children.size();
+        return name + " - Children: " + getNumChildren();
     }
 
     @Override
@@ -1039,7 +1293,7 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     }
 
     public void setNamespace(String namespace) {
-        this.namespace = namespace;
+        this.namespace = DataUtil.name(namespace);
     }
 
     @Override
@@ -1124,6 +1378,6 @@ import static org.javarosa.xform.util.XFormAnswerDataParser.getAnswerData;
     }
 
     public void setNamespacePrefix(String namespacePrefix) {
-        this.namespacePrefix = namespacePrefix;
+        this.namespacePrefix = DataUtil.name(namespacePrefix);
     }
 }
@@ -1,6 +1,7 @@
 package org.javarosa.core.model.instance;
 
 import org.javarosa.core.util.ArrayUtilities;
+import org.javarosa.core.util.DataUtil;
 import org.javarosa.core.util.externalizable.DeserializationException;
 import org.javarosa.core.util.externalizable.ExtUtil;
 import org.javarosa.core.util.externalizable.ExtWrapListPoly;
@@ -68,7 +69,7 @@ public class TreeReferenceLevel implements Externalizable, Serializable {
     }
 
     public void readExternal(DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
-        name = ExtUtil.nullIfEmpty(ExtUtil.readString(in));
+        name = DataUtil.name(ExtUtil.nullIfEmpty(ExtUtil.readString(in)));
         multiplicity = ExtUtil.readInt(in);
         predicates = (List<XPathExpression>) ExtUtil.nullIfEmpty((List<XPathExpression>)ExtUtil.read(in,new ExtWrapListPoly()));
     }
@@ -3,9 +3,11 @@ package org.javarosa.core.reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * <p>The reference manager is a singleton class which is responsible for deriving reference URI's into
@@ -21,21 +23,34 @@ import java.util.List;
  * environment like "jr://file/". Root Translators do not directly derive references, but rather translate them to what
  * the reference should look like in the current circumstances.</p>
  *
+ * <p>The translators and factories are copied on write, so references can be derived from several threads while
+ * they're being changed. Derived references are remembered by URI and context until the translators or factories
+ * change or the session is cleared.</p>
+ *
  * @author ctsims
  */
 public class ReferenceManager {
     private static final Logger logger = LoggerFactory.getLogger(ReferenceManager.class.getSimpleName());
-    private static ReferenceManager instance;
+    private static final ReferenceManager instance = new ReferenceManager();
+
+    /** Derivations are forgotten all at once when there are more than this many */
+    private static final int MAX_DERIVATIONS = 10_000;
 
-    private List<RootTranslator> translators;
-    private List<ReferenceFactory> factories;
-    private List<RootTranslator> sessionTranslators;
+    private final CopyOnWriteArrayList<RootTranslator> translators;
+    private final CopyOnWriteArrayList<ReferenceFactory> factories;
+    private final CopyOnWriteArrayList<RootTranslator> sessionTranslators;
+
+    /**
+     * Replaced after every change to the translators or factories. A derivation that started before a change may still
+     * finish after it, so it's added to the map it started with rather than to whatever map is current by then.
+     */
+    private volatile ConcurrentHashMap<Derivation, Reference> derivations = new ConcurrentHashMap<>();
 
     private ReferenceManager() {
         logger.debug("created");
-        translators         = new ArrayList<>();
-        factories           = new ArrayList<>();
-        sessionTranslators  = new ArrayList<>();
+        translators         = new CopyOnWriteArrayList<>();
+        factories           = new CopyOnWriteArrayList<>();
+        sessionTranslators  = new CopyOnWriteArrayList<>();
     }
 
     public void reset() {
@@ -47,18 +62,20 @@ public class ReferenceManager {
             translators.clear();
             factories.clear();
             sessionTranslators.clear();
+            forgetDerivations();
             logger.debug("reset translators ({}), session translators ({}), and factories ({})", t, st, f);
         }
     }
 
+    private void forgetDerivations() {
+        derivations = new ConcurrentHashMap<>();
+    }
+
     /**
      * @return Singleton accessor to the global
      * ReferenceManager.
      */
     public static ReferenceManager instance() {
-        if (instance == null) {
-            instance = new ReferenceManager();
-        }
         return instance;
     }
 
@@ -82,8 +99,8 @@ public class ReferenceManager {
      * Adds a new Translator to the current environment.
      */
     public void addRootTranslator(RootTranslator translator) {
-        if (!translators.contains(translator)) {
-            translators.add(translator);
+        if (translators.addIfAbsent(translator)) {
+            forgetDerivations();
             logger.debug("added root translator {}", translator);
         } else logger.debug("skipped adding already-present root translator {}", translator);
     }
@@ -95,14 +112,16 @@ public class ReferenceManager {
      *                a reference.
      */
     public void addReferenceFactory(ReferenceFactory factory) {
-        if (!factories.contains(factory)) {
-            factories.add(factory);
+        if (factories.addIfAbsent(factory)) {
+            forgetDerivations();
             logger.debug("added reference factory {}", factory);
         } else logger.debug("skipped adding already-present reference factory {}", factory);
     }
 
     public boolean removeReferenceFactory(ReferenceFactory factory) {
         boolean removed = factories.remove(factory);
+        if (removed)
+            forgetDerivations();
         logger.debug("factory {} was " + (removed ? "removed" : "not removed because it was not present"), factory);
         return removed;
     }
@@ -149,25 +168,36 @@ public class ReferenceManager {
             throw new InvalidReferenceException("Null references aren't valid", uri);
         }
 
+        ConcurrentHashMap<Derivation, Reference> derivations = this.derivations;
+        Derivation derivation = new Derivation(uri, isRelative(uri) ? context : null);
+        Reference reference = derivations.get(derivation);
+        if (reference == null) {
+            reference = derive(uri, context);
+            if (derivations.size() >= MAX_DERIVATIONS)
+                derivations.clear();
+            derivations.put(derivation, reference);
+        }
+        return reference;
+    }
+
+    private Reference derive(String uri, String context) throws InvalidReferenceException {
+        Reference reference;
         //Relative URI's need to determine their context first.
         if (isRelative(uri)) {
             //Clean up the relative reference to lack any leading separators.
-            if (uri.startsWith("./")) {
-                uri = uri.substring(2);
-            }
+            String relativeUri = uri.substring(2);
 
             if (context == null) {
                 throw new RuntimeException("Attempted to retrieve local reference with no context");
-            } else {
-                Reference reference = derivingRoot(context).derive(uri, context);
-                logger.debug("{} was derived from {}", reference.getLocalURI(), uri);
-                return reference;
             }
+            reference = derivingRoot(context).derive(relativeUri, context);
         } else {
-            Reference reference = derivingRoot(uri).derive(uri);
-            logger.debug("{} was derived from {}", reference.getLocalURI(), uri);
-            return reference;
+            reference = derivingRoot(uri).derive(uri);
         }
+
+        if (logger.isDebugEnabled())
+            logger.debug("{} was derived from {}", reference.getLocalURI(), uri);
+        return reference;
     }
 
     /**
@@ -178,6 +208,7 @@ public class ReferenceManager {
      */
     public void addSessionRootTranslator(RootTranslator translator) {
         sessionTranslators.add(translator);
+        forgetDerivations();
         logger.debug("added session root translator {}", translator);
     }
 
@@ -188,6 +219,7 @@ public class ReferenceManager {
      */
     public void clearSession() {
         sessionTranslators.clear();
+        forgetDerivations();
         logger.debug("cleared all session translators");
     }
 
@@ -283,4 +315,32 @@ public class ReferenceManager {
     public Reference DeriveReference(String uri, String context) throws InvalidReferenceException {
         return deriveReference(uri, context);
     }
+
+    /**
+     * A URI and the context it was derived in, which only matters for relative URIs.
+     */
+    private static final class Derivation {
+        private final String uri;
+        private final String context;
+
+        Derivation(String uri, String context) {
+            this.uri = uri;
+            this.context = context;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Derivation))
+                return false;
+            Derivation that = (Derivation) o;
+            return uri.equals(that.uri) && Objects.equals(context, that.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * uri.hashCode() + Objects.hashCode(context);
+        }
+    }
 }
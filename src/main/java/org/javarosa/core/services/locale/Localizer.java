@@ -24,9 +24,9 @@ import org.javarosa.core.util.externalizable.DeserializationException;
 import org.javarosa.core.util.externalizable.ExtUtil;
 import org.javarosa.core.util.externalizable.ExtWrapList;
 import org.javarosa.core.util.externalizable.ExtWrapListPoly;
-import org.javarosa.core.util.externalizable.ExtWrapMap;
 import org.javarosa.core.util.externalizable.ExtWrapNullable;
 import org.javarosa.core.util.externalizable.Externalizable;
+import org.javarosa.core.util.externalizable.LazySection;
 import org.javarosa.core.util.externalizable.PrototypeFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The Localizer object maintains mappings for locale ID's and Object
@@ -50,13 +51,26 @@ public class Localizer implements Externalizable {
 
     private List<String> locales = new ArrayList<>(0);
     private OrderedMap<String, List<LocaleDataSource>> localeResources = new OrderedMap<>();
-    private OrderedMap<String, String> currentLocaleData = new OrderedMap<>();
     private String defaultLocale = null;
     private String currentLocale = null;
     private boolean fallbackDefaultLocale;
     private boolean fallbackDefaultForm;
     private final List<Localizable> observers = new ArrayList<>(0);
 
+    // Resources of the locales read from a serialized localizer that haven't been needed yet. Their locales are
+    // already keys of localeResources, mapped to null, so that the locales keep their order.
+    private final Map<String, LazySection<List<LocaleDataSource>>> unreadLocaleResources = new HashMap<>();
+
+    // Dense index of every text handle looked up or loaded so far. Indexes are never reassigned, so that callers can
+    // hold on to them across locale switches and resource registrations.
+    private final Map<String, Integer> textIndexes = new HashMap<>();
+    private final Map<String, Map<String, Integer>> formTextIndexes = new HashMap<>();
+
+    // Text of each locale that was used so far by text index, with the default locale already overlaid. A handle
+    // indexed after a table was built is beyond its end, which is fine since it wasn't in the locale's data then.
+    private final Map<String, String[]> localeTables = new HashMap<>();
+    private String[] currentLocaleTable = new String[0];
+
     /**
      * Default constructor. Disables all fallback modes.
      */
@@ -83,6 +97,8 @@ public class Localizer implements Externalizable {
             Localizer l = (Localizer) o;
 
             //TODO: Compare all resources
+            readAllLocaleResources();
+            l.readAllLocaleResources();
             return (ExtUtil.equals(locales, locales) &&
                     ExtUtil.equals(localeResources, l.localeResources) &&
                     ExtUtil.equals(defaultLocale, l.defaultLocale) &&
@@ -218,6 +234,8 @@ public class Localizer implements Externalizable {
         if (defaultLocale != null && !hasLocale(defaultLocale))
             throw new UnregisteredLocaleException("Attempted to set default to a locale that is not defined");
 
+        if (fallbackDefaultLocale && !ExtUtil.equals(defaultLocale, this.defaultLocale))
+            localeTables.clear();
         this.defaultLocale = defaultLocale;
     }
 
@@ -249,7 +267,37 @@ public class Localizer implements Externalizable {
      * 4. For each resource file for the current locale, load each definition
      */
     private void loadCurrentLocaleResources() {
-        this.currentLocaleData = getLocaleData(currentLocale);
+        this.currentLocaleTable = currentLocale == null ? new String[0] : getLocaleTable(currentLocale);
+    }
+
+    /**
+     * Returns the text of the given defined locale by text index, building it from {@link #getLocaleData(String)} the
+     * first time the locale is used after its resources changed.
+     */
+    private String[] getLocaleTable(String locale) {
+        String[] table = localeTables.get(locale);
+        if (table == null) {
+            OrderedMap<String, String> data = getLocaleData(locale);
+            for (String textID : data.keySet())
+                getTextIndex(textID);
+
+            table = new String[textIndexes.size()];
+            for (Map.Entry<String, String> entry : data.entrySet())
+                table[textIndexes.get(entry.getKey())] = entry.getValue();
+            localeTables.put(locale, table);
+        }
+        return table;
+    }
+
+    /**
+     * Drops the tables built from the given locale's resources: only its own unless it's the default locale, which
+     * is overlaid in every table.
+     */
+    private void invalidateLocaleTables(String locale) {
+        if (fallbackDefaultLocale && locale.equals(defaultLocale))
+            localeTables.clear();
+        else
+            localeTables.remove(locale);
     }
 
     /**
@@ -268,6 +316,9 @@ public class Localizer implements Externalizable {
     /**
      * Registers a resource file as a source of locale data for the specified
      * locale.
+     * <p>
+     * The text of a locale is read from its resources the first time the locale is
+     * used after this call, so resources must be complete by then.
      *
      * @param locale   The locale of the definitions provided.
      * @param resource A LocaleDataSource containing string data for the locale provided
@@ -282,18 +333,31 @@ public class Localizer implements Externalizable {
         }
         List<LocaleDataSource> resources;
         if (localeResources.containsKey(locale)) {
-            resources = localeResources.get(locale);
+            resources = getLocaleResources(locale);
         } else {
             resources = new ArrayList<>(1);
         }
         resources.add(resource);
         localeResources.put(locale, resources);
+        invalidateLocaleTables(locale);
 
         if (locale.equals(currentLocale) || locale.equals(defaultLocale)) {
             loadCurrentLocaleResources();
         }
     }
 
+    private List<LocaleDataSource> getLocaleResources(String locale) {
+        LazySection<List<LocaleDataSource>> unread = unreadLocaleResources.remove(locale);
+        if (unread != null)
+            localeResources.put(locale, unread.get());
+        return localeResources.get(locale);
+    }
+
+    private void readAllLocaleResources() {
+        for (String locale : new ArrayList<>(unreadLocaleResources.keySet()))
+            getLocaleResources(locale);
+    }
+
     /**
      * Get the set of mappings for a locale.
      *
@@ -319,7 +383,7 @@ public class Localizer implements Externalizable {
         // If there's a default locale, we load all of its elements into memory first, then allow
         // the current locale to overwrite any differences between the two.
         if (fallbackDefaultLocale && defaultLocale != null) {
-            for (LocaleDataSource defaultResource : localeResources.get(defaultLocale)) {
+            for (LocaleDataSource defaultResource : getLocaleResources(defaultLocale)) {
                 loadTable(data, defaultResource.getLocalizedText());
             }
             for (String key : data.keySet()) {
@@ -327,7 +391,7 @@ public class Localizer implements Externalizable {
             }
         }
 
-        for (LocaleDataSource resource : localeResources.get(locale)) {
+        for (LocaleDataSource resource : getLocaleResources(locale)) {
             loadTable(data, resource.getLocalizedText());
         }
 
@@ -387,7 +451,7 @@ public class Localizer implements Externalizable {
                     "Attempted to access an undefined locale (" + locale + ") while checking for a mapping for  " +
                             textID);
         }
-        for (LocaleDataSource source : localeResources.get(locale)) {
+        for (LocaleDataSource source : getLocaleResources(locale)) {
             if (source.getLocalizedText().containsKey(textID)) {
                 return true;
             }
@@ -411,6 +475,8 @@ public class Localizer implements Externalizable {
         boolean removed = hasLocale(locale);
         locales.remove(locale);
         localeResources.remove(locale);
+        unreadLocaleResources.remove(locale);
+        invalidateLocaleTables(locale);
 
         if (locale.equals(defaultLocale))
             defaultLocale = null;
@@ -547,8 +613,67 @@ public class Localizer implements Externalizable {
         if (textID == null) {
             throw new NullPointerException("Null textId passed to localizer");
         }
-        return locale.equals(currentLocale) ? currentLocaleData.get(textID) :
-                getLocaleMap(locale).get(textID);
+        if (!locale.equals(currentLocale) && !hasLocale(locale))
+            throw new UnregisteredLocaleException("Attempted to access an undefined locale.");
+
+        String[] table = locale.equals(currentLocale) ? currentLocaleTable : getLocaleTable(locale);
+        return getText(table, getTextIndex(textID));
+    }
+
+    /**
+     * Get text for the current locale and the text handle with the given index, not using any fallbacks.
+     *
+     * @param textIndex Index of the text handle from {@link #getTextIndex(String)} or {@link #getTextIndex(String, String)}.
+     * @return Localized text. Return null if none found or if no locale is set.
+     */
+    public String getRawText(int textIndex) {
+        // Callers like FormEntryCaption fall back to the label when there's no text, including when no locale is set
+        if (currentLocale == null)
+            return null;
+        return getText(currentLocaleTable, textIndex);
+    }
+
+    private static String getText(String[] table, int textIndex) {
+        return textIndex < table.length ? table[textIndex] : null;
+    }
+
+    /**
+     * Returns the index of a text handle, to look its text up with {@link #getRawText(int)} without hashing the
+     * handle. The index stays the same for the lifetime of this localizer, whatever the current locale is.
+     *
+     * @param textID Text handle (text ID appended with optional text form). Must not be null.
+     */
+    public int getTextIndex(String textID) {
+        Integer index = textIndexes.get(textID);
+        if (index == null) {
+            index = textIndexes.size();
+            textIndexes.put(textID, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the given form of a text ID, like {@link #getTextIndex(String)} with the text ID appended
+     * with ';' and the form, but without building that text handle after the first time.
+     *
+     * @param textID Text ID. Must not be null.
+     * @param form   Text form ('long', 'short', 'audio', etc.) or null for the default form.
+     */
+    public int getTextIndex(String textID, String form) {
+        if (form == null)
+            return getTextIndex(textID);
+
+        Map<String, Integer> forms = formTextIndexes.get(textID);
+        if (forms == null) {
+            forms = new HashMap<>();
+            formTextIndexes.put(textID, forms);
+        }
+        Integer index = forms.get(form);
+        if (index == null) {
+            index = getTextIndex(textID + ";" + form);
+            forms.put(form, index);
+        }
+        return index;
     }
 
     /* === MANAGING LOCALIZABLE OBSERVERS === */
@@ -681,8 +806,18 @@ public class Localizer implements Externalizable {
             IOException, DeserializationException {
         fallbackDefaultLocale = ExtUtil.readBool(dis);
         fallbackDefaultForm = ExtUtil.readBool(dis);
-        localeResources = (OrderedMap<String, List<LocaleDataSource>>)
-                ExtUtil.read(dis, new ExtWrapMap(String.class, new ExtWrapListPoly(), ExtWrapMap.TYPE_ORDERED), pf);
+        localeTables.clear();
+        currentLocaleTable = new String[0];
+        // Each locale's resources are only deserialized when the locale is first used
+        localeResources = new OrderedMap<>();
+        unreadLocaleResources.clear();
+        int localeCount = ExtUtil.readInt(dis);
+        for (int i = 0; i < localeCount; i++) {
+            String locale = ExtUtil.readString(dis);
+            localeResources.put(locale, null);
+            unreadLocaleResources.put(locale, LazySection.read(dis, pf,
+                    (in, f) -> (List<LocaleDataSource>) ExtUtil.read(in, new ExtWrapListPoly(), f)));
+        }
         locales = (List<String>) ExtUtil.read(dis, new ExtWrapList(String.class));
         setDefaultLocale((String) ExtUtil.read(dis, new ExtWrapNullable(String.class), pf));
         String currentLocale = (String) ExtUtil.read(dis, new ExtWrapNullable(String.class), pf);
@@ -691,10 +826,16 @@ public class Localizer implements Externalizable {
         }
     }
 
+    // Written as a section of a form definition, so a change to this layout must bump FormDef.SERIALIZATION_VERSION
     @Override public void writeExternal(DataOutputStream dos) throws IOException {
         ExtUtil.writeBool(dos, fallbackDefaultLocale);
         ExtUtil.writeBool(dos, fallbackDefaultForm);
-        ExtUtil.write(dos, new ExtWrapMap(localeResources, new ExtWrapListPoly()));
+        ExtUtil.writeNumeric(dos, localeResources.size());
+        for (Map.Entry<String, List<LocaleDataSource>> entry : localeResources.entrySet()) {
+            ExtUtil.writeString(dos, entry.getKey());
+            LazySection.write(dos, unreadLocaleResources.get(entry.getKey()), entry.getValue(),
+                    (out, resources) -> ExtUtil.write(out, new ExtWrapListPoly(resources)));
+        }
         ExtUtil.write(dos, new ExtWrapList(locales));
         ExtUtil.write(dos, new ExtWrapNullable(defaultLocale));
         ExtUtil.write(dos, new ExtWrapNullable(currentLocale));
@@ -83,7 +83,7 @@ public class FauxIndexedPersistable implements Persistable, IMetaData {
      */
     public String[] getMetaDataFields() {
         if(m != null) {return m.getMetaDataFields();}
-        throw new RuntimeException("Attempt to index unindexible " + p.getClass().getName());
+        return new String[0];
     }
 
 }
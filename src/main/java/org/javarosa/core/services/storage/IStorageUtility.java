@@ -89,7 +89,7 @@ public interface IStorageUtility<E extends Externalizable> {
 
     void removeAll ();
 
-    List<Integer> removeAll (EntityFilter ef);
+    List<Integer> removeAll (EntityFilter<? super E> ef);
 
     /**
      * Return the number of records in the store
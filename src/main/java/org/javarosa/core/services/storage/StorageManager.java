@@ -20,6 +20,7 @@ import org.javarosa.core.services.storage.WrappingStorageUtility.SerializationWr
 import org.javarosa.core.util.externalizable.Externalizable;
 
 import java.util.HashMap;
+import java.util.function.Supplier;
 
 import static org.javarosa.core.services.ProgramFlow.die;
 
@@ -94,6 +95,11 @@ public class StorageManager {
         StorageManager.registerStorage(key, new WrappingStorageUtility(storeName,wrapper,storageFactory));
     }
 
+    public static void registerWrappedStorage(String key, String storeName, Supplier<SerializationWrapper> wrappers) {
+        IStorageUtility<?> storage = new WrappingStorageUtility(storeName,wrappers,storageFactory);
+        StorageManager.registerStorage(key, storage);
+    }
+
     public static IStorageUtility<? extends Externalizable> getStorage (String key) {
         if (storageRegistry.containsKey(key)) {
             return storageRegistry.get(key);
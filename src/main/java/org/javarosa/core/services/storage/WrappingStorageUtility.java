@@ -2,6 +2,8 @@ package org.javarosa.core.services.storage;
 
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.javarosa.core.util.InvalidIndexException;
 import org.javarosa.core.util.externalizable.Externalizable;
@@ -22,14 +24,20 @@ import org.javarosa.core.util.externalizable.Externalizable;
  *
  * All methods pass through to an underlying StorageUtility; you may get warnings about type mismatches
  *
+ * Records are serialized by the underlying StorageUtility while it's handed the wrapper. With a single wrapper,
+ * writes from different threads take turns for the whole of the underlying write. With a wrapper per thread, there's
+ * no lock here at all, so the underlying StorageUtility has to be safe to call from several threads at once.
+ *
  * @author Drew Roos
  *
  */
 public class WrappingStorageUtility implements IStorageUtilityIndexed {
     IStorageUtility storage;        /* underlying StorageUtility */
     SerializationWrapper wrapper;   /* wrapper that defines the alternate serialization scheme; the wrapper is set once for
-                                     * the life of the StorageUtility and is re-used all read and write calls
+                                     * the life of the StorageUtility and is re-used all read and write calls. null if
+                                     * each thread has its own wrapper
                                      */
+    ThreadLocal<SerializationWrapper> wrappers;   /* each thread's wrapper, if the wrappers aren't shared */
 
     /**
      * Defines an alternate serialization scheme. The alternate scheme is implemented in this class's
@@ -71,40 +79,77 @@ public class WrappingStorageUtility implements IStorageUtilityIndexed {
         this.wrapper = wrapper;
     }
 
+    /**
+     * Create a new wrapping StorageUtility that gives each thread that writes to it its own serialization wrapper, so
+     * that writes from different threads don't wait for each other to serialize their records
+     *
+     * Nothing here serializes calls to the underlying StorageUtility, so the factory must create storage that is itself
+     * thread-safe, as FileIndexedStorageUtility is, with add allocating an ID and storing the record atomically.
+     * Storage that isn't, such as DummyIndexedStorageUtility, should be wrapped with a single shared wrapper instead,
+     * which makes writes take turns.
+     *
+     * @param name unique name for underlying StorageUtility
+     * @param wrappers creates a serialization wrapper for each thread; the wrappers must all be of the same class
+     * @param storageFactory factory to create underlying StorageUtility
+     */
+    public WrappingStorageUtility (String name, Supplier<SerializationWrapper> wrappers, IStorageFactory storageFactory) {
+        SerializationWrapper first = wrappers.get();
+        this.storage = storageFactory.newStorage(name, first.getClass());
+        this.wrappers = ThreadLocal.withInitial(wrappers);
+        this.wrappers.set(first);
+    }
+
     public Externalizable read(int id) {
         return ((SerializationWrapper)storage.read(id)).getData();
     }
 
     public void write(final Persistable p) throws StorageFullException {
-        synchronized(wrapper) {
-            wrapper.setData(p);
-            if(wrapper instanceof IMetaData) {
-                storage.write(new FauxIndexedPersistable(p, wrapper, (IMetaData)wrapper));
-            } else {
-                storage.write(new FauxIndexedPersistable(p, wrapper));
-            }
-            wrapper.clean();
-        }
+        withWrapper(p, w -> {
+            storage.write(wrap(p, w));
+            return null;
+        });
     }
 
-
     public int add(Externalizable e) throws StorageFullException {
-        synchronized(wrapper) {
-            wrapper.setData(e);
-            int result = storage.add(wrapper);
-            wrapper.clean();
-            return result;
-        }
+        return withWrapper(e, w -> storage.add(e instanceof Persistable ? wrap((Persistable) e, w) : w));
     }
 
     public void update(int id, Externalizable e) throws StorageFullException {
-        synchronized(wrapper) {
-            wrapper.setData(e);
-            storage.update(id, wrapper);
-            wrapper.clean();
+        withWrapper(e, w -> {
+            storage.update(id, e instanceof Persistable ? wrap((Persistable) e, w) : w);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the action with a wrapper around the given object: this thread's own wrapper, or the shared wrapper once
+     * no other thread is using it.
+     */
+    private <R> R withWrapper(Externalizable e, Function<SerializationWrapper, R> action) {
+        if (wrapper == null)
+            return withWrapper(wrappers.get(), e, action);
+
+        synchronized (wrapper) {
+            return withWrapper(wrapper, e, action);
+        }
+    }
+
+    private static <R> R withWrapper(SerializationWrapper w, Externalizable e, Function<SerializationWrapper, R> action) {
+        w.setData(e);
+        try {
+            return action.apply(w);
+        } finally {
+            w.clean();
         }
     }
 
+    /**
+     * Lets the underlying StorageUtility see and set the record's ID, and see its meta data if the wrapper has any
+     */
+    private static FauxIndexedPersistable wrap(Persistable p, SerializationWrapper w) {
+        return w instanceof IMetaData ? new FauxIndexedPersistable(p, w, (IMetaData) w) : new FauxIndexedPersistable(p, w);
+    }
+
     public IStorageIterator iterate() {
         return new IStorageIterator () {
             IStorageIterator baseIterator = storage.iterate();
@@ -148,6 +193,7 @@ public class WrappingStorageUtility implements IStorageUtilityIndexed {
         storage.removeAll();
     }
 
+    @SuppressWarnings("unchecked")
     public List<Integer> removeAll(EntityFilter ef) {
         return storage.removeAll(ef);
     }
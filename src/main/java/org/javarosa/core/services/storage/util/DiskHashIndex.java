@@ -0,0 +1,145 @@
+package org.javarosa.core.services.storage.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An on-disk hash index from the hash of a value to the records that had the value when they were written. Each
+ * hash has a slot in an open addressing table pointing at the newest of its entries, and each entry points at the
+ * previous one with the same hash. Entries are only ever added: the storage skips entries for records that were
+ * since updated or removed, and for values that only share the hash, until it's repacked and the index is rebuilt.
+ */
+final class DiskHashIndex {
+    private static final int MAGIC = 0x4a524849;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Slots file: magic, capacity, number of used slots, then each slot's hash and its newest entry (0 if it's empty)
+    private static final int SLOTS_HEADER = 12;
+    private static final int SLOT_SIZE = 8;
+
+    // Entries file: magic, end, then each entry's record id, log address and previous entry with the same hash
+    private static final int ENTRIES_HEADER = 8;
+    private static final int ENTRY_SIZE = 16;
+
+    private final File slotsFile;
+    private final File entriesFile;
+    private final MappedFile slots;
+    private final MappedFile entries;
+
+    DiskHashIndex(File slotsFile, File entriesFile) throws IOException {
+        this.slotsFile = slotsFile;
+        this.entriesFile = entriesFile;
+        slots = new MappedFile(slotsFile, SLOTS_HEADER + INITIAL_CAPACITY * SLOT_SIZE);
+        entries = new MappedFile(entriesFile, ENTRIES_HEADER + INITIAL_CAPACITY * ENTRY_SIZE);
+        if (slots.buffer().getInt(0) != MAGIC || entries.buffer().getInt(0) != MAGIC)
+            clear();
+    }
+
+    void add(int hash, int id, long logAddress) throws IOException {
+        ByteBuffer slotBuffer = slots.buffer();
+        int slot = findSlot(hash);
+        int previous = slotBuffer.getInt(slot + 4);
+        if (previous == 0) {
+            if ((slotBuffer.getInt(8) + 1) * 2 > getCapacity()) {
+                grow();
+                add(hash, id, logAddress);
+                return;
+            }
+            slotBuffer.putInt(8, slotBuffer.getInt(8) + 1);
+        }
+
+        int entry = entries.buffer().getInt(4);
+        entries.ensureCapacity(entry + ENTRY_SIZE);
+        ByteBuffer entryBuffer = entries.buffer();
+        entryBuffer.putInt(entry, id);
+        entryBuffer.putLong(entry + 4, logAddress);
+        entryBuffer.putInt(entry + 12, previous);
+        entryBuffer.putInt(4, entry + ENTRY_SIZE);
+
+        slots.buffer().putInt(slot, hash);
+        slots.buffer().putInt(slot + 4, entry);
+    }
+
+    /**
+     * Returns the record ids and log addresses of the entries with the given hash as consecutive pairs, newest first.
+     */
+    long[] get(int hash) {
+        long[] found = new long[8];
+        int count = 0;
+        ByteBuffer entryBuffer = entries.buffer();
+        for (int entry = slots.buffer().getInt(findSlot(hash) + 4); entry != 0; entry = entryBuffer.getInt(entry + 12)) {
+            if (count + 2 > found.length)
+                found = Arrays.copyOf(found, 2 * found.length);
+            found[count++] = entryBuffer.getInt(entry);
+            found[count++] = entryBuffer.getLong(entry + 4);
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Returns the position of the hash's slot or of the empty slot it would take.
+     */
+    private int findSlot(int hash) {
+        ByteBuffer slotBuffer = slots.buffer();
+        int mask = getCapacity() - 1;
+        for (int i = (hash ^ (hash >>> 16)) & mask; ; i = (i + 1) & mask) {
+            int slot = SLOTS_HEADER + i * SLOT_SIZE;
+            if (slotBuffer.getInt(slot + 4) == 0 || slotBuffer.getInt(slot) == hash)
+                return slot;
+        }
+    }
+
+    private int getCapacity() {
+        return slots.buffer().getInt(4);
+    }
+
+    private void grow() throws IOException {
+        int capacity = getCapacity();
+        int[] used = new int[2 * slots.buffer().getInt(8)];
+        int count = 0;
+        for (int i = 0; i < capacity; i++) {
+            int slot = SLOTS_HEADER + i * SLOT_SIZE;
+            if (slots.buffer().getInt(slot + 4) != 0) {
+                used[count++] = slots.buffer().getInt(slot);
+                used[count++] = slots.buffer().getInt(slot + 4);
+            }
+        }
+
+        clearSlots(2 * capacity);
+        for (int i = 0; i < count; i += 2) {
+            int slot = findSlot(used[i]);
+            slots.buffer().putInt(slot, used[i]);
+            slots.buffer().putInt(slot + 4, used[i + 1]);
+        }
+        slots.buffer().putInt(8, count / 2);
+    }
+
+    private void clearSlots(int capacity) throws IOException {
+        slots.ensureCapacity(SLOTS_HEADER + (long) capacity * SLOT_SIZE);
+        ByteBuffer slotBuffer = slots.buffer();
+        for (int i = 0; i < capacity; i++)
+            slotBuffer.putInt(SLOTS_HEADER + i * SLOT_SIZE + 4, 0);
+        slotBuffer.putInt(0, MAGIC);
+        slotBuffer.putInt(4, capacity);
+        slotBuffer.putInt(8, 0);
+    }
+
+    void clear() throws IOException {
+        clearSlots(INITIAL_CAPACITY);
+        entries.buffer().putInt(0, MAGIC);
+        entries.buffer().putInt(4, ENTRIES_HEADER);
+    }
+
+    void close() throws IOException {
+        slots.close();
+        entries.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        slotsFile.delete();
+        entriesFile.delete();
+    }
+}
@@ -145,7 +145,7 @@ public class DummyIndexedStorageUtility<T extends Persistable> implements IStora
         meta.clear();
     }
 
-    public List<Integer> removeAll(EntityFilter ef) {
+    public List<Integer> removeAll(EntityFilter<? super T> ef) {
        ArrayList<Integer> removed = new ArrayList<>();
         for(Enumeration<Integer> en = data.keys(); en.hasMoreElements() ;) {
             Integer i = en.nextElement();
@@ -0,0 +1,843 @@
+package org.javarosa.core.services.storage.util;
+
+import org.javarosa.core.services.storage.EntityFilter;
+import org.javarosa.core.services.storage.IMetaData;
+import org.javarosa.core.services.storage.IStorageIterator;
+import org.javarosa.core.services.storage.IStorageUtilityIndexed;
+import org.javarosa.core.services.storage.Persistable;
+import org.javarosa.core.services.storage.StorageModifiedException;
+import org.javarosa.core.util.InvalidIndexException;
+import org.javarosa.core.util.externalizable.DeserializationException;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.core.util.externalizable.ExtWrapTagged;
+import org.javarosa.core.util.externalizable.Externalizable;
+import org.javarosa.core.util.externalizable.PrototypeFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Indexed storage in a directory of memory-mapped files, so that records and their indexes don't need to fit in
+ * memory:
+ * <ul>
+ * <li>an append-only log of record versions, each with the serialized record and its meta data values, and of
+ * removals, in {@link SegmentedLog segments} of at most 1GB so that it can hold more than 2GB of records. Records
+ * are deserialized straight from the mapping.</li>
+ * <li>the log address of the current version of each record by ID</li>
+ * <li>a {@link DiskHashIndex} for each meta data field, which is used by {@link #getIDsForValue(String, Object)} and
+ * {@link #getRecordForValue(String, Object)}. Only entries for the current version of a record whose value is the
+ * same as the one looked up are returned.</li>
+ * </ul>
+ * Updates and removals leave the old versions in the log and indexes until {@link #repack()} rewrites them with only
+ * the current versions. {@link #repair()} rebuilds the IDs and indexes from the log, e.g. after a crash.
+ * <p>
+ * Repacking writes the current versions to a new generation of the log and the IDs to a new file, which replaces the
+ * IDs file with an atomic move. Until then the storage is unchanged, and once it's done the IDs point into the new
+ * log, so a failure or crash leaves one complete generation in use. Files of the other generation are deleted when
+ * the storage is opened.
+ * <p>
+ * Meta data values are compared and hashed by their serialized form. A single record version must fit in 2GB.
+ * <p>
+ * Reads share a lock and run concurrently. Records and their meta data values are serialized before taking the
+ * exclusive lock that writes hold while they append to the log and update the IDs and indexes, so writes from
+ * different threads only wait for each other's commits.
+ */
+public class FileIndexedStorageUtility<T extends Externalizable> implements IStorageUtilityIndexed<T> {
+    private static final int MAGIC = 0x4a52534c;
+
+    private static final String RECORDS = "records-";
+    private static final String IDS = "ids";
+    private static final String REPACKED_IDS = "ids.repack";
+    private static final String INDEX_PREFIX = "index-";
+    private static final String INDEX_SLOTS = ".slots";
+    private static final String INDEX_ENTRIES = ".entries";
+
+    // Records files: records-<generation>-<segment>, each the versions of the records: ID, length, record, meta data
+    // length, meta data. Removals are an ID and REMOVED.
+    private static final int REMOVED = -1;
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    // IDs file: magic, next ID, number of records, log generation, generation the indexes were built for, then the log
+    // address of each ID's current version (0 if none)
+    private static final int IDS_HEADER = 20;
+
+    private static final int INITIAL_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final Class<T> type;
+    private final PrototypeFactory pf;
+    private final int segmentSize;
+
+    private SegmentedLog log;
+    private MappedFile ids;
+    private final Map<String, DiskHashIndex> indexes = new ConcurrentHashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    private int modCount;
+    private volatile boolean readOnly;
+
+    public FileIndexedStorageUtility(File directory, Class<T> type, PrototypeFactory pf) {
+        this(directory, type, pf, SEGMENT_SIZE);
+    }
+
+    FileIndexedStorageUtility(File directory, Class<T> type, PrototypeFactory pf, int segmentSize) {
+        this.directory = directory;
+        this.type = type;
+        this.pf = pf;
+        this.segmentSize = segmentSize;
+
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Couldn't create " + directory);
+
+            File[] files = directory.listFiles();
+            files = files != null ? files : new File[0];
+
+            ids = openIds(new File(directory, IDS));
+            if (ids.buffer().getInt(0) != MAGIC) {
+                // Without IDs, e.g. before a repair, the newest generation of the log is the one to keep
+                int generation = 0;
+                for (File file : files) {
+                    if (file.getName().startsWith(RECORDS))
+                        generation = Math.max(generation, getGeneration(file.getName()));
+                }
+                initializeIds(ids, generation);
+            }
+
+            String records = getRecordsPrefix(getGeneration());
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(RECORDS) && !name.startsWith(records) || name.equals(REPACKED_IDS))
+                    file.delete();
+                else if (name.startsWith(INDEX_PREFIX) && name.endsWith(INDEX_SLOTS))
+                    openIndex(decodeFieldName(name.substring(INDEX_PREFIX.length(), name.length() - INDEX_SLOTS.length())));
+            }
+            log = new SegmentedLog(directory, records, segmentSize);
+
+            // A repack that stopped after replacing the IDs leaves indexes of the previous generation
+            if (ids.buffer().getInt(16) != getGeneration()) {
+                rebuildIndexes();
+                ids.buffer().putInt(16, getGeneration());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't open storage in " + directory, e);
+        }
+    }
+
+    private static MappedFile openIds(File file) throws IOException {
+        return new MappedFile(file, INITIAL_SIZE);
+    }
+
+    private static void initializeIds(MappedFile ids, int generation) {
+        ids.buffer().putInt(0, MAGIC);
+        ids.buffer().putInt(4, 0);
+        ids.buffer().putInt(8, 0);
+        ids.buffer().putInt(12, generation);
+        ids.buffer().putInt(16, generation);
+    }
+
+    private static String getRecordsPrefix(int generation) {
+        return RECORDS + generation + "-";
+    }
+
+    private static int getGeneration(String recordsFileName) {
+        try {
+            return Integer.parseInt(recordsFileName.substring(RECORDS.length(), recordsFileName.indexOf('-', RECORDS.length())));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private DiskHashIndex openIndex(String fieldName) throws IOException {
+        DiskHashIndex index = indexes.get(fieldName);
+        if (index == null) {
+            String prefix = INDEX_PREFIX + encodeFieldName(fieldName);
+            index = new DiskHashIndex(new File(directory, prefix + INDEX_SLOTS), new File(directory, prefix + INDEX_ENTRIES));
+            indexes.put(fieldName, index);
+        }
+        return index;
+    }
+
+    private static String encodeFieldName(String fieldName) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : fieldName.getBytes(StandardCharsets.UTF_8))
+            encoded.append(String.format("%02x", b));
+        return encoded.toString();
+    }
+
+    private static String decodeFieldName(String encoded) {
+        byte[] bytes = new byte[encoded.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(encoded.substring(2 * i, 2 * i + 2), 16);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //region Log and IDs
+
+    private int getGeneration() {
+        return ids.buffer().getInt(12);
+    }
+
+    private int getNextId() {
+        return ids.buffer().getInt(4);
+    }
+
+    private long getOffset(int id) {
+        return id >= 0 && id < getNextId() ? ids.buffer().getLong(IDS_HEADER + 8 * id) : 0;
+    }
+
+    private void setOffset(int id, long offset) throws IOException {
+        if (id >= getNextId()) {
+            ids.ensureCapacity(IDS_HEADER + 8L * (id + 1));
+            ids.buffer().putInt(4, id + 1);
+        }
+
+        long previous = ids.buffer().getLong(IDS_HEADER + 8 * id);
+        ids.buffer().putLong(IDS_HEADER + 8 * id, offset);
+        if (previous == 0 && offset != 0)
+            ids.buffer().putInt(8, ids.buffer().getInt(8) + 1);
+        else if (previous != 0 && offset == 0)
+            ids.buffer().putInt(8, ids.buffer().getInt(8) - 1);
+    }
+
+    private int getRecordLength(long offset) {
+        return log.getInt(offset + 4);
+    }
+
+    private long getMetaDataOffset(long offset) {
+        return offset + 8 + getRecordLength(offset);
+    }
+
+    private int getVersionLength(long offset) {
+        int recordLength = getRecordLength(offset);
+        return recordLength == REMOVED ? 8 : 8 + recordLength + 4 + log.getInt(getMetaDataOffset(offset));
+    }
+
+    private long append(int id, byte[] record, byte[] metaData) throws IOException {
+        int length = record == null ? 8 : 8 + record.length + 4 + metaData.length;
+        long offset = log.reserve(length);
+
+        log.putInt(offset, id);
+        if (record == null) {
+            log.putInt(offset + 4, REMOVED);
+        } else {
+            log.putInt(offset + 4, record.length);
+            log.put(offset + 8, record);
+            log.putInt(offset + 8 + record.length, metaData.length);
+            log.put(offset + 12 + record.length, metaData);
+        }
+        log.commit(offset, length);
+        return offset;
+    }
+
+    /**
+     * Returns the serialized meta data values of the record version at the given offset by field name.
+     */
+    private Map<String, byte[]> readMetaData(long offset) {
+        long metaDataOffset = getMetaDataOffset(offset);
+        try (DataInputStream in = new DataInputStream(log.openStream(metaDataOffset + 4, log.getInt(metaDataOffset)))) {
+            int count = ExtUtil.readInt(in);
+            Map<String, byte[]> values = new LinkedHashMap<>(count);
+            for (int i = 0; i < count; i++)
+                values.put(ExtUtil.readString(in), ExtUtil.readBytes(in));
+            return values;
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read the meta data of the record at " + offset, e);
+        }
+    }
+
+    private static byte[] writeMetaData(Map<String, byte[]> values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ExtUtil.writeNumeric(out, values.size());
+        for (Map.Entry<String, byte[]> value : values.entrySet()) {
+            ExtUtil.writeString(out, value.getKey());
+            ExtUtil.writeBytes(out, value.getValue());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] serializeValue(Object value) {
+        return ExtUtil.serialize(new ExtWrapTagged(value));
+    }
+
+    private static int hash(byte[] serializedValue) {
+        return Arrays.hashCode(serializedValue);
+    }
+
+    //endregion
+
+    private void store(int id, T e, boolean mustExist) {
+        checkWritable();
+        byte[] record = ExtUtil.serialize(e);
+        Set<String> fields = new LinkedHashSet<>();
+        if (e instanceof IMetaData) {
+            fields.addAll(Arrays.asList(((IMetaData) e).getMetaDataFields()));
+            fields.addAll(indexes.keySet());
+        }
+        Map<String, byte[]> values = getMetaDataValues(e, fields);
+
+        writeLock.lock();
+        try {
+            checkWritable();
+            if (mustExist && !exists(id))
+                throw new IllegalArgumentException("No record with ID " + id);
+
+            // An index registered since the values were serialized needs the record's value too
+            if (e instanceof IMetaData && !fields.containsAll(indexes.keySet())) {
+                Set<String> registered = new LinkedHashSet<>(indexes.keySet());
+                registered.removeAll(fields);
+                values.putAll(getMetaDataValues(e, registered));
+            }
+
+            long offset = append(id, record, writeMetaData(values));
+            setOffset(id, offset);
+            for (Map.Entry<String, byte[]> value : values.entrySet())
+                openIndex(value.getKey()).add(hash(value.getValue()), id, offset);
+            modCount++;
+        } catch (IOException ex) {
+            throw new RuntimeException("Couldn't write record " + id, ex);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static Map<String, byte[]> getMetaDataValues(Object e, Set<String> fields) {
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            Object value = ((IMetaData) e).getMetaData(field);
+            if (value != null)
+                values.put(field, serializeValue(value));
+        }
+        return values;
+    }
+
+    private void checkWritable() {
+        if (readOnly)
+            throw new IllegalStateException("Storage in " + directory + " is read only");
+    }
+
+    @Override
+    public T read(int id) {
+        readLock.lock();
+        try {
+            long offset = getOffset(id);
+            if (offset == 0)
+                return null;
+
+            try (DataInputStream in = new DataInputStream(log.openStream(offset + 8, getRecordLength(offset)))) {
+                return type.cast(ExtUtil.read(in, type, pf));
+            } catch (IOException | DeserializationException e) {
+                throw new RuntimeException("Couldn't read record " + id, e);
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] readBytes(int id) {
+        readLock.lock();
+        try {
+            long offset = getOffset(id);
+            if (offset == 0)
+                return null;
+
+            byte[] bytes = new byte[getRecordLength(offset)];
+            log.get(offset + 8, bytes);
+            return bytes;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * The record isn't necessarily a T: {@link org.javarosa.core.services.storage.WrappingStorageUtility} writes a
+     * stand-in that carries the ID of the record and serializes as its wrapper.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void write(Persistable p) {
+        if (p.getID() == -1)
+            add((T) p);
+        else
+            store(p.getID(), (T) p, false);
+    }
+
+    /**
+     * Takes the next ID before serializing the record, so that the record is serialized with its ID.
+     */
+    @Override
+    public int add(T e) {
+        int id;
+        writeLock.lock();
+        try {
+            checkWritable();
+            id = getNextId();
+            ids.ensureCapacity(IDS_HEADER + 8L * (id + 1));
+            ids.buffer().putInt(4, id + 1);
+        } catch (IOException ex) {
+            throw new RuntimeException("Couldn't add a record to " + directory, ex);
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (e instanceof Persistable)
+            ((Persistable) e).setID(id);
+        store(id, e, false);
+        return id;
+    }
+
+    @Override
+    public void update(int id, T e) {
+        if (!exists(id))
+            throw new IllegalArgumentException("No record with ID " + id);
+        store(id, e, true);
+    }
+
+    @Override
+    public void remove(int id) {
+        writeLock.lock();
+        try {
+            checkWritable();
+            if (!exists(id))
+                throw new IllegalArgumentException("No record with ID " + id);
+
+            append(id, null, null);
+            setOffset(id, 0);
+            modCount++;
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't remove record " + id, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(Persistable p) {
+        remove(p.getID());
+    }
+
+    @Override
+    public void removeAll() {
+        writeLock.lock();
+        try {
+            checkWritable();
+            log.clear();
+            for (int id = 0; id < getNextId(); id++)
+                ids.buffer().putLong(IDS_HEADER + 8 * id, 0);
+            ids.buffer().putInt(8, 0);
+            for (DiskHashIndex index : indexes.values())
+                index.clear();
+            modCount++;
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't remove the records in " + directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> removeAll(EntityFilter<? super T> ef) {
+        writeLock.lock();
+        try {
+            List<Integer> removed = new ArrayList<>();
+            for (int id : getIds()) {
+                int filter = ef.preFilter(id, null);
+                if (filter == EntityFilter.PREFILTER_INCLUDE || filter == EntityFilter.PREFILTER_FILTER && ef.matches(read(id)))
+                    removed.add(id);
+            }
+
+            for (int id : removed)
+                remove(id);
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int[] getIds() {
+        int[] found = new int[getNumRecords()];
+        int count = 0;
+        for (int id = 0; id < getNextId() && count < found.length; id++) {
+            if (getOffset(id) != 0)
+                found[count++] = id;
+        }
+        return found;
+    }
+
+    @Override
+    public int getNumRecords() {
+        readLock.lock();
+        try {
+            return ids.buffer().getInt(8);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getNumRecords() == 0;
+    }
+
+    @Override
+    public boolean exists(int id) {
+        readLock.lock();
+        try {
+            return getOffset(id) != 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int getTotalSize() {
+        readLock.lock();
+        try {
+            return (int) Math.min(Integer.MAX_VALUE, log.getSize());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int getRecordSize(int id) {
+        readLock.lock();
+        try {
+            long offset = getOffset(id);
+            if (offset == 0)
+                throw new IllegalArgumentException("No record with ID " + id);
+            return getRecordLength(offset);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public IStorageIterator<T> iterate() {
+        readLock.lock();
+        try {
+            return new FileStorageIterator(getIds(), modCount);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> getIDsForValue(String fieldName, Object value) {
+        DiskHashIndex index = indexes.get(fieldName);
+        if (index == null || value == null)
+            return new ArrayList<>(0);
+
+        byte[] serializedValue = serializeValue(value);
+        readLock.lock();
+        try {
+            long[] entries = index.get(hash(serializedValue));
+            List<Integer> matches = new ArrayList<>();
+            for (int i = 0; i < entries.length; i += 2) {
+                int id = (int) entries[i];
+                long offset = entries[i + 1];
+                if (getOffset(id) == offset && Arrays.equals(readMetaData(offset).get(fieldName), serializedValue))
+                    matches.add(id);
+            }
+            Collections.sort(matches);
+            return matches;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public T getRecordForValue(String fieldName, Object value) throws NoSuchElementException, InvalidIndexException {
+        readLock.lock();
+        try {
+            List<Integer> matches = getIDsForValue(fieldName, value);
+            if (matches.isEmpty())
+                throw new NoSuchElementException("No record matching meta index " + fieldName + " with value " + value);
+            if (matches.size() > 1)
+                throw new InvalidIndexException("Multiple records matching meta index " + fieldName + " with value " + value, fieldName);
+
+            return read(matches.get(0));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Adds an index for a field that isn't one of the records' meta data fields. Every record is written again with
+     * the field's value.
+     */
+    @Override
+    public void registerIndex(String filterIndex) {
+        writeLock.lock();
+        try {
+            if (indexes.containsKey(filterIndex))
+                return;
+
+            try {
+                openIndex(filterIndex);
+            } catch (IOException e) {
+                throw new RuntimeException("Couldn't create index " + filterIndex, e);
+            }
+            for (int id : getIds())
+                store(id, read(id), false);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the current version of each record and rebuilds the indexes.
+     */
+    @Override
+    public void repack() {
+        writeLock.lock();
+        try {
+            checkWritable();
+            int generation = getGeneration() + 1;
+            SegmentedLog repacked = writeRepacked(generation);
+
+            // Replacing the IDs is what switches to the new generation of the log
+            File idsFile = new File(directory, IDS);
+            try {
+                ids.close();
+                Files.move(new File(directory, REPACKED_IDS).toPath(), idsFile.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (IOException e) {
+                repacked.delete();
+                new File(directory, REPACKED_IDS).delete();
+                throw e;
+            } finally {
+                ids = openIds(idsFile);
+            }
+
+            SegmentedLog previous = log;
+            log = repacked;
+            modCount++;
+            rebuildIndexes();
+            ids.buffer().putInt(16, generation);
+
+            // If this fails, the files are deleted the next time the storage is opened
+            previous.delete();
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't repack storage in " + directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the current version of each record to the given generation of the log, and their IDs to the repacked
+     * IDs file. The storage isn't changed, and nothing is left behind if writing fails.
+     */
+    private SegmentedLog writeRepacked(int generation) throws IOException {
+        File repackedIdsFile = new File(directory, REPACKED_IDS);
+        repackedIdsFile.delete();
+        SegmentedLog repacked = null;
+        MappedFile repackedIds = null;
+        try {
+            repacked = new SegmentedLog(directory, getRecordsPrefix(generation), segmentSize);
+            repacked.clear();
+            repackedIds = openIds(repackedIdsFile);
+            initializeIds(repackedIds, generation);
+            repackedIds.buffer().putInt(16, getGeneration());
+            repackedIds.ensureCapacity(IDS_HEADER + 8L * getNextId());
+            repackedIds.buffer().putInt(4, getNextId());
+            repackedIds.buffer().putInt(8, getNumRecords());
+
+            for (int id : getIds()) {
+                long offset = getOffset(id);
+                byte[] version = new byte[getVersionLength(offset)];
+                log.get(offset, version);
+
+                long repackedOffset = repacked.reserve(version.length);
+                repacked.put(repackedOffset, version);
+                repacked.commit(repackedOffset, version.length);
+                repackedIds.buffer().putLong(IDS_HEADER + 8 * id, repackedOffset);
+            }
+
+            repacked.force();
+            repackedIds.close();
+            return repacked;
+        } catch (IOException | RuntimeException e) {
+            if (repackedIds != null)
+                repackedIds.close();
+            repackedIdsFile.delete();
+            if (repacked != null)
+                repacked.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Rebuilds the IDs and indexes from the log, dropping anything after the first damaged version.
+     */
+    @Override
+    public void repair() {
+        writeLock.lock();
+        try {
+            for (int id = 0; id < getNextId(); id++)
+                ids.buffer().putLong(IDS_HEADER + 8 * id, 0);
+            ids.buffer().putInt(8, 0);
+
+            // The end of a segment is only moved past a version once it's written, so the versions before it are
+            // whole unless the files themselves were damaged
+            boolean damaged = false;
+            for (int segment = 0; segment < log.getSegmentCount(); segment++) {
+                int segmentEnd = log.getEnd(segment);
+                int end = SegmentedLog.HEADER;
+                while (!damaged && end + 8 <= segmentEnd) {
+                    long offset = SegmentedLog.address(segment, end);
+                    int id = log.getInt(offset);
+                    int recordLength = getRecordLength(offset);
+                    if (id < 0 || recordLength < REMOVED || recordLength != REMOVED
+                        && ((long) end + 12 + recordLength > segmentEnd
+                        || (long) end + 12 + recordLength + log.getInt(getMetaDataOffset(offset)) > segmentEnd))
+                        break;
+
+                    setOffset(id, recordLength == REMOVED ? 0 : offset);
+                    end += getVersionLength(offset);
+                }
+                damaged |= end != segmentEnd;
+                log.setEnd(segment, end);
+            }
+
+            rebuildIndexes();
+            modCount++;
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't repair storage in " + directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void rebuildIndexes() throws IOException {
+        for (DiskHashIndex index : indexes.values())
+            index.clear();
+
+        for (int id : getIds()) {
+            long offset = getOffset(id);
+            for (Map.Entry<String, byte[]> value : readMetaData(offset).entrySet())
+                openIndex(value.getKey()).add(hash(value.getValue()), id, offset);
+        }
+    }
+
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            log.close();
+            ids.close();
+            for (DiskHashIndex index : indexes.values())
+                index.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't close storage in " + directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        writeLock.lock();
+        try {
+            log.delete();
+            ids.close();
+            new File(directory, IDS).delete();
+            for (DiskHashIndex index : indexes.values())
+                index.delete();
+            indexes.clear();
+            directory.delete();
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't destroy storage in " + directory, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Object getAccessLock() {
+        return this;
+    }
+
+    @Override
+    public void setReadOnly() {
+        readOnly = true;
+    }
+
+    private class FileStorageIterator implements IStorageIterator<T> {
+        private final int[] ids;
+        private final int expectedModCount;
+        private int next;
+
+        FileStorageIterator(int[] ids, int expectedModCount) {
+            this.ids = ids;
+            this.expectedModCount = expectedModCount;
+        }
+
+        @Override
+        public int numRecords() {
+            return ids.length;
+        }
+
+        @Override
+        public int peekID() {
+            readLock.lock();
+            try {
+                if (modCount != expectedModCount)
+                    throw new StorageModifiedException();
+                if (!hasMore())
+                    throw new IllegalStateException("All records have been iterated through");
+                return ids[next];
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        @Override
+        public int nextID() {
+            int id = peekID();
+            next++;
+            return id;
+        }
+
+        @Override
+        public T nextRecord() {
+            readLock.lock();
+            try {
+                return read(nextID());
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        @Override
+        public boolean hasMore() {
+            return next < ids.length;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.javarosa.core.services.storage.util;
+
+import org.javarosa.core.services.storage.IStorageFactory;
+import org.javarosa.core.services.storage.IStorageUtility;
+import org.javarosa.core.util.externalizable.PrototypeFactory;
+
+import java.io.File;
+
+/**
+ * Creates a {@link FileIndexedStorageUtility} for each storage in a directory named after the storage under the
+ * given root directory.
+ */
+public class FileStorageFactory implements IStorageFactory {
+    private final File root;
+    private final PrototypeFactory pf;
+
+    public FileStorageFactory(File root, PrototypeFactory pf) {
+        this.root = root;
+        this.pf = pf;
+    }
+
+    @Override
+    public IStorageUtility newStorage(String name, Class type) {
+        return new FileIndexedStorageUtility<>(new File(root, name), type, pf);
+    }
+}
@@ -0,0 +1,98 @@
+package org.javarosa.core.services.storage.util;
+
+import org.javarosa.core.services.storage.StorageFullException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file that's memory-mapped in full and grown, by at least doubling, whenever more room is needed. Growing the
+ * mapping grows the file with zeros, so a new file reads as zeros. The whole file must fit in an int-addressed buffer.
+ * <p>
+ * The buffer is only ever accessed with absolute gets and puts so that it can be shared.
+ */
+final class MappedFile {
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    MappedFile(File file, int minimumCapacity) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        channel = this.file.getChannel();
+        map((int) Math.min(Integer.MAX_VALUE, Math.max(channel.size(), minimumCapacity)));
+    }
+
+    private void map(int capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    void ensureCapacity(long capacity) throws IOException {
+        if (capacity <= buffer.capacity())
+            return;
+        if (capacity > Integer.MAX_VALUE)
+            throw new StorageFullException();
+
+        map((int) Math.min(Integer.MAX_VALUE, Math.max(capacity, 2L * buffer.capacity())));
+    }
+
+    void get(int position, byte[] destination) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(destination);
+    }
+
+    void put(int position, byte[] source) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.put(source);
+    }
+
+    /**
+     * Returns a stream over the given range of the file that reads straight from the mapping.
+     */
+    InputStream openStream(int position, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.limit(position + length);
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!view.hasRemaining())
+                    return -1;
+
+                int count = Math.min(len, view.remaining());
+                view.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        force();
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,157 @@
+package org.javarosa.core.services.storage.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only log in memory-mapped segment files named with a common prefix and their number, so that the log
+ * isn't limited to what an int can address. An address in the log is the segment's number in the high int and the
+ * position in the segment in the low int, so 0 is never the address of anything written.
+ * <p>
+ * Each segment starts with magic and the end of what's been written to it. Whatever is appended is kept in one
+ * segment: if it doesn't fit in the rest of the last segment, a new segment is started. A segment only grows past
+ * the segment size when a single append is larger than that.
+ */
+final class SegmentedLog {
+    private static final int MAGIC = 0x4a52534c;
+    private static final int INITIAL_SIZE = 64 * 1024;
+
+    static final int HEADER = 8;
+
+    private final File directory;
+    private final String prefix;
+    private final int segmentSize;
+    private final List<MappedFile> segments = new ArrayList<>();
+
+    SegmentedLog(File directory, String prefix, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+
+        for (int segment = 0; segment == 0 || getFile(segment).exists(); segment++)
+            segments.add(openSegment(segment));
+    }
+
+    private File getFile(int segment) {
+        return new File(directory, prefix + segment);
+    }
+
+    private MappedFile openSegment(int segment) throws IOException {
+        MappedFile file = new MappedFile(getFile(segment), INITIAL_SIZE);
+        if (file.buffer().getInt(0) != MAGIC) {
+            file.buffer().putInt(0, MAGIC);
+            file.buffer().putInt(4, HEADER);
+        }
+        return file;
+    }
+
+    static long address(int segment, int position) {
+        return (long) segment << 32 | position;
+    }
+
+    private MappedFile segment(long address) {
+        return segments.get((int) (address >>> 32));
+    }
+
+    private static int position(long address) {
+        return (int) address;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    int getEnd(int segment) {
+        return segments.get(segment).buffer().getInt(4);
+    }
+
+    void setEnd(int segment, int end) {
+        segments.get(segment).buffer().putInt(4, end);
+    }
+
+    /**
+     * Returns the number of bytes written to all the segments, including their headers.
+     */
+    long getSize() {
+        long size = 0;
+        for (int segment = 0; segment < segments.size(); segment++)
+            size += getEnd(segment);
+        return size;
+    }
+
+    int getInt(long address) {
+        return segment(address).buffer().getInt(position(address));
+    }
+
+    void putInt(long address, int value) {
+        segment(address).buffer().putInt(position(address), value);
+    }
+
+    void get(long address, byte[] destination) {
+        segment(address).get(position(address), destination);
+    }
+
+    void put(long address, byte[] source) {
+        segment(address).put(position(address), source);
+    }
+
+    InputStream openStream(long address, int length) {
+        return segment(address).openStream(position(address), length);
+    }
+
+    /**
+     * Returns the address to write the given number of bytes at, making room for them. They're only part of the log
+     * once they're {@linkplain #commit(long, int) committed}.
+     */
+    long reserve(int length) throws IOException {
+        int segment = segments.size() - 1;
+        int end = getEnd(segment);
+        if (end > HEADER && (long) end + length > segmentSize) {
+            segments.add(openSegment(++segment));
+            end = HEADER;
+        }
+        segments.get(segment).ensureCapacity((long) end + length);
+        return address(segment, end);
+    }
+
+    /**
+     * Moves the end of the log past the given number of bytes written at a {@linkplain #reserve(int) reserved}
+     * address.
+     */
+    void commit(long address, int length) {
+        segment(address).buffer().putInt(4, position(address) + length);
+    }
+
+    /**
+     * Empties the log, deleting all but its first segment.
+     */
+    void clear() throws IOException {
+        while (segments.size() > 1) {
+            segments.remove(segments.size() - 1).close();
+            getFile(segments.size()).delete();
+        }
+        setEnd(0, HEADER);
+    }
+
+    /**
+     * Writes what's been written to the segments through to their files.
+     */
+    void force() {
+        for (MappedFile segment : segments)
+            segment.force();
+    }
+
+    void close() throws IOException {
+        for (MappedFile segment : segments)
+            segment.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        for (int segment = 0; segment < segments.size(); segment++)
+            getFile(segment).delete();
+    }
+}
@@ -3,6 +3,8 @@
  */
 package org.javarosa.core.util;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * @author ctsims
  *
@@ -24,4 +26,26 @@ public class DataUtil {
         return ivalue < high && ivalue >= low ? iarray[ivalue + offset] : Integer.valueOf(ivalue);
     }
 
+    /** Names are forgotten all at once when there are more than this many */
+    private static final int MAX_NAMES = 10_000;
+
+    private static final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the shared copy of an element name, namespace or prefix, so that the many nodes of large instances
+     * don't each keep their own and comparing two equal names stops at the identity check in {@link String#equals}.
+     */
+    public static String name(String name) {
+        if (name == null)
+            return null;
+
+        String shared = names.get(name);
+        if (shared != null)
+            return shared;
+        if (names.size() >= MAX_NAMES)
+            names.clear();
+        shared = names.putIfAbsent(name, name);
+        return shared != null ? shared : name;
+    }
+
 }
@@ -28,7 +28,6 @@ import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 import static java.lang.Math.toRadians;
 
-import java.util.ArrayList;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +39,7 @@ import org.slf4j.LoggerFactory;
  */
 public final class GeoUtils {
     private static final Logger logger = LoggerFactory.getLogger(GeoUtils.class);
-    static final double EARTH_EQUATORIAL_RADIUS_METERS = 6_378_100;
+    public static final double EARTH_EQUATORIAL_RADIUS_METERS = 6_378_100;
     static final double EARTH_EQUATORIAL_CIRCUMFERENCE_METERS = 2 * EARTH_EQUATORIAL_RADIUS_METERS * PI;
 
     /**
@@ -50,27 +49,36 @@ public final class GeoUtils {
      * @return the enclosed area in square meters (with a double precision).
      */
     public static double calculateAreaOfGPSPolygonOnEarthInSquareMeters(final List<LatLong> latLongs) {
-        if (latLongs.size() < 3) {
-            return 0;
-        }
+        return calculateAreaOfGPSPolygonOnEarthInSquareMeters(toCoordinates(latLongs));
+    }
 
-        final List<Double> listY = new ArrayList<>();
-        final List<Double> listX = new ArrayList<>();
-
-        // calculate segment x and y in degrees for each point
-        final double latitudeRef = latLongs.get(0).latitude;
-        final double longitudeRef = latLongs.get(0).longitude;
-        for (int i = 1; i < latLongs.size(); i++) {
-            double latitude = latLongs.get(i).latitude;
-            double longitude = latLongs.get(i).longitude;
-            listY.add(calculateYSegment(latitudeRef, latitude));
-            listX.add(calculateXSegment(longitudeRef, longitude, latitude));
+    /**
+     * Calculates the enclosed area that is defined by gps coordinates on earth.
+     *
+     * @param coordinates the latitude and longitude of each point, packed: [lat0, lon0, lat1, lon1...].
+     * @return the enclosed area in square meters (with a double precision).
+     */
+    public static double calculateAreaOfGPSPolygonOnEarthInSquareMeters(final double[] coordinates) {
+        if (coordinates.length < 6) {
+            return 0;
         }
 
-        // sum areas of all triangle segments
+        // calculate segment x and y in degrees for each point and sum areas of all triangle segments
+        final double latitudeRef = coordinates[0];
+        final double longitudeRef = coordinates[1];
+        double previousX = 0;
+        double previousY = 0;
         double areasSum = 0;
-        for (int i = 1; i < listX.size(); i++) {
-            areasSum += calculateAreaInSquareMeters(listX.get(i - 1), listX.get(i), listY.get(i - 1), listY.get(i));
+        for (int i = 2; i + 1 < coordinates.length; i += 2) {
+            double latitude = coordinates[i];
+            double longitude = coordinates[i + 1];
+            double y = calculateYSegment(latitudeRef, latitude);
+            double x = calculateXSegment(longitudeRef, longitude, latitude);
+            if (i > 2) {
+                areasSum += calculateAreaInSquareMeters(previousX, x, previousY, y);
+            }
+            previousX = x;
+            previousY = y;
         }
 
         return abs(areasSum); // Area can‘t be negative
@@ -82,29 +90,42 @@ public final class GeoUtils {
      * @return the sum of the distances, in meters
      */
     public static double calculateDistance(List<LatLong> points) {
+        return calculateDistance(toCoordinates(points));
+    }
+
+    /**
+     * Returns the sum of the distances between each point and the one before it
+     * @param coordinates the latitude and longitude of each point, packed: [lat0, lon0, lat1, lon1...]
+     * @return the sum of the distances, in meters
+     */
+    public static double calculateDistance(double[] coordinates) {
         double totalDistance = 0;
 
-        if (points.size() >= 2) {
-            for (int i = 1; i < points.size(); ++i) {
-                LatLong p1 = points.get(i - 1);
-                LatLong p2 = points.get(i);
-                double distance = distanceBetween(p1, p2);
-                totalDistance += distance;
-                logDistance(p1, p2, distance, totalDistance);
+        boolean trace = logger.isTraceEnabled();
+        for (int i = 2; i + 1 < coordinates.length; i += 2) {
+            double distance = distanceBetween(coordinates[i - 2], coordinates[i - 1], coordinates[i], coordinates[i + 1]);
+            totalDistance += distance;
+            if (trace) {
+                logger.trace("\t{}\t{}\t{}\t{}\t{}\t{}",
+                    coordinates[i - 2], coordinates[i - 1],
+                    coordinates[i], coordinates[i + 1],
+                    distance, totalDistance);
             }
         }
 
         return totalDistance;
     }
 
-    private static void logDistance(LatLong p1, LatLong p2, double distance, double totalDistance) {
-        logger.trace("\t{}\t{}\t{}\t{}\t{}\t{}",
-            p1.latitude, p1.longitude,
-            p2.latitude, p2.longitude,
-            distance, totalDistance);
+    private static double[] toCoordinates(List<LatLong> latLongs) {
+        double[] coordinates = new double[2 * latLongs.size()];
+        for (int i = 0; i < latLongs.size(); i++) {
+            coordinates[2 * i] = latLongs.get(i).latitude;
+            coordinates[2 * i + 1] = latLongs.get(i).longitude;
+        }
+        return coordinates;
     }
 
-    private static Double calculateAreaInSquareMeters(double x1, double x2, double y1, double y2) {
+    private static double calculateAreaInSquareMeters(double x1, double x2, double y1, double y2) {
         return (y1 * x2 - x1 * y2) / 2;
     }
 
@@ -125,10 +146,20 @@ public final class GeoUtils {
      * @param p2 the second point
      * @return the distance between the two points, in meters
      */
-    private static double distanceBetween(LatLong p1, LatLong p2) {
-        double Δλ = toRadians(p1.longitude - p2.longitude);
-        double φ1 = toRadians(p1.latitude);
-        double φ2 = toRadians(p2.latitude);
+    public static double distanceBetween(LatLong p1, LatLong p2) {
+        return distanceBetween(p1.latitude, p1.longitude, p2.latitude, p2.longitude);
+    }
+
+    /**
+     * Returns the distance between two points given by their latitudes and longitudes.
+     *
+     * @return the distance between the two points, in meters
+     * @see #distanceBetween(LatLong, LatLong)
+     */
+    public static double distanceBetween(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double Δλ = toRadians(longitude1 - longitude2);
+        double φ1 = toRadians(latitude1);
+        double φ2 = toRadians(latitude2);
         return acos(sin(φ1) * sin(φ2) + cos(φ1) * cos(φ2) * cos(Δλ)) * EARTH_EQUATORIAL_RADIUS_METERS;
     }
 
@@ -140,5 +171,13 @@ public final class GeoUtils {
             this.latitude = latitude;
             this.longitude = longitude;
         }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
     }
 }
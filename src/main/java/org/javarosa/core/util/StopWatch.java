@@ -37,6 +37,10 @@ public class StopWatch {
      * @return a string containing the log line
      */
     public String logLine(String operation) {
-        return String.format("%s finished in %.3f ms", operation, (System.nanoTime() - startTime) / 1e6);
+        return String.format("%s finished in %.3f ms", operation, getElapsedNanos() / 1e6);
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startTime;
     }
 }
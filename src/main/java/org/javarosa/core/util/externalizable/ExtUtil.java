@@ -262,12 +262,7 @@ public class ExtUtil {
     public static byte[] readBytes(DataInputStream in) throws IOException {
         int size = (int) readNumeric(in);
         byte[] bytes = new byte[size];
-        int read = 0;
-        int toread = size;
-        while (read != size) {
-            read = in.read(bytes, 0, toread);
-            toread -= read;
-        }
+        in.readFully(bytes);
         return bytes;
     }
 
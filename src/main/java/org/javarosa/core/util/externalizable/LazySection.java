@@ -0,0 +1,73 @@
+package org.javarosa.core.util.externalizable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A part of a serialized object that's written as a length-prefixed block of bytes so that reading the object only
+ * copies the block. Its value is deserialized from the block when it's first needed, if it ever is, and a block
+ * that was never deserialized can be written back out as it was read.
+ * <p>
+ * Because a block is written back out without being read, the object it's part of has to version its own layout and
+ * reject a stream written with another one (see {@link org.javarosa.core.model.FormDef#readExternal}). Otherwise a
+ * block in an old layout could be carried over into a new stream and only fail when it's first needed.
+ */
+public final class LazySection<T> {
+    public interface Reader<T> {
+        T read(DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException;
+    }
+
+    public interface Writer<T> {
+        void write(DataOutputStream out, T value) throws IOException;
+    }
+
+    private final byte[] bytes;
+    private final Reader<T> reader;
+    private final PrototypeFactory pf;
+
+    private LazySection(byte[] bytes, Reader<T> reader, PrototypeFactory pf) {
+        this.bytes = bytes;
+        this.reader = reader;
+        this.pf = pf;
+    }
+
+    /**
+     * Reads a section written by {@link #write(DataOutputStream, LazySection, Object, Writer)} without
+     * deserializing its value.
+     */
+    public static <T> LazySection<T> read(DataInputStream in, PrototypeFactory pf, Reader<T> reader) throws IOException {
+        return new LazySection<>(ExtUtil.readBytes(in), reader, pf);
+    }
+
+    /**
+     * Writes the given section as it was read or, if it's null, a section with the given value.
+     */
+    public static <T> void write(DataOutputStream out, LazySection<T> unread, T value, Writer<T> writer) throws IOException {
+        if (unread != null) {
+            ExtUtil.writeBytes(out, unread.bytes);
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream section = new DataOutputStream(bytes);
+        writer.write(section, value);
+        section.flush();
+        ExtUtil.writeBytes(out, bytes.toByteArray());
+    }
+
+    /**
+     * Deserializes the section's value. Each call returns a new copy.
+     *
+     * @throws RuntimeException if the section can't be deserialized
+     */
+    public T get() {
+        try {
+            return reader.read(new DataInputStream(new ByteArrayInputStream(bytes)), pf);
+        } catch (IOException | DeserializationException e) {
+            throw new RuntimeException("Couldn't deserialize a section of a serialized object", e);
+        }
+    }
+}
@@ -34,9 +34,9 @@ public class PrototypeFactory {
     private final Vector<Class> classes = new Vector<>();
     private final Vector<byte[]> hashes = new Vector<>();
 
-    //lazy evaluation
+    //lazy evaluation; other threads only see the factory as initialized once all of its classes have been added
     private List<String> classNames;
-    private boolean initialized;
+    private volatile boolean initialized;
 
     public PrototypeFactory () {
         this(null);
@@ -47,21 +47,25 @@ public class PrototypeFactory {
         initialized = false;
     }
 
-    private void lazyInit () {
-        initialized = true;
+    private synchronized void lazyInit () {
+        if (initialized) {
+            return;
+        }
 
         addDefaultClasses();
 
         if (classNames != null) {
             for (String className : classNames) {
                 try {
-                    addClass(Class.forName(className));
+                    registerClass(Class.forName(className));
                 } catch (ClassNotFoundException cnfe) {
                     throw new CannotCreateObjectException(className + ": not found");
                 }
             }
             classNames = null;
         }
+
+        initialized = true;
     }
 
     private void addDefaultClasses () {
@@ -80,7 +84,7 @@ public class PrototypeFactory {
         };
 
         for (Class baseType : baseTypes) {
-            addClass(baseType);
+            registerClass(baseType);
         }
     }
 
@@ -89,19 +93,24 @@ public class PrototypeFactory {
             lazyInit();
         }
 
+        registerClass(c);
+    }
+
+    private synchronized void registerClass (Class<?> c) {
         byte[] hash = getClassHash(c);
 
         if (compareHash(hash, ExtWrapTagged.WRAPPER_TAG)) {
             throw new Error("Hash collision! " + c.getName() + " and reserved wrapper tag");
         }
 
-        Class d = getClass(hash);
+        Class<?> d = findClass(hash);
         if (d != null && d != c) {
             throw new Error("Hash collision! " + c.getName() + " and " + d.getName());
         }
 
-        classes.addElement(c);
+        // the hash goes in first so that a lookup that sees the class also sees its hash
         hashes.addElement(hash);
+        classes.addElement(c);
     }
 
     public Class getClass (byte[] hash) {
@@ -109,6 +118,10 @@ public class PrototypeFactory {
             lazyInit();
         }
 
+        return findClass(hash);
+    }
+
+    private Class<?> findClass (byte[] hash) {
         for (int i = 0; i < classes.size(); i++) {
             if (compareHash(hash, hashes.elementAt(i))) {
                 return classes.elementAt(i);
@@ -27,4 +27,11 @@ package org.javarosa.debug;
 public interface EventNotifier {
 
   void publishEvent(Event event);
+
+  /**
+   * Whether published events are used at all. Publishers can skip building events when they're not.
+   */
+  default boolean isEnabled() {
+    return true;
+  }
 }
@@ -30,4 +30,9 @@ public class EventNotifierSilent implements EventNotifier {
   public void publishEvent(Event event) {
     // shallow the event by default
   }
+
+  @Override
+  public boolean isEnabled() {
+    return false;
+  }
 }
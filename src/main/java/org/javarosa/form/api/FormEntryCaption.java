@@ -185,15 +185,11 @@ public class FormEntryCaption implements FormElementStateListener {
     protected String getIText(String textID,String form){
         String returnText = null;
         if(textID == null || textID.length() == 0) return null;
-        if(form != null && form.length() > 0){
-            try{
-                returnText = localizer().getRawText(localizer().getLocale(), textID + ";" + form);
-            }catch(NullPointerException npe){}
-        }else{
-            try{
-                returnText = localizer().getRawText(localizer().getLocale(), textID);
-            }catch(NullPointerException npe){}
-        }
+        if (form != null && form.length() == 0) form = null;
+        try{
+            Localizer localizer = localizer();
+            returnText = localizer.getRawText(localizer.getTextIndex(textID, form));
+        }catch(NullPointerException npe){}
         return returnText;
     }
 
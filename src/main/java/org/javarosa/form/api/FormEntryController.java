@@ -24,11 +24,14 @@ import org.javarosa.core.model.QuestionDef;
 import org.javarosa.core.model.data.IAnswerData;
 import org.javarosa.core.model.instance.InvalidReferenceException;
 import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.model.instance.TreeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class is used to navigate through an xform and appropriately manipulate
@@ -125,6 +128,27 @@ public class FormEntryController {
     }
 
 
+    /**
+     * Saves many answers into the data model without doing any constraint checking, like {@link #saveAnswer} does,
+     * but evaluates the combined DAG cascade of all of them once instead of once per answer. Meant for importing,
+     * prefilling or replaying answers. The resulting instance is the same as the one produced by calling
+     * {@link #saveAnswer} for each answer in the iteration order of the given map.
+     *
+     * @param answers the answers to save keyed by the index of their question.
+     * @see FormDef#setValues(Map)
+     */
+    public void saveAnswers(Map<FormIndex, IAnswerData> answers) {
+        Map<TreeReference, IAnswerData> values = new LinkedHashMap<>();
+        for (Map.Entry<FormIndex, IAnswerData> answer : answers.entrySet()) {
+            if (model.getEvent(answer.getKey()) != FormEntryController.EVENT_QUESTION) {
+                throw new RuntimeException("Non-Question object at the form index.");
+            }
+            values.put(answer.getKey().getReference(), answer.getValue());
+        }
+        model.getForm().setValues(values);
+    }
+
+
     private void commitAnswer(TreeElement element, FormIndex index, IAnswerData data, boolean midSurvey) {
         if (data != null || element.getValue() != null) {
             // we should check if the data to be saved is already the same as
@@ -165,14 +189,11 @@ public class FormEntryController {
 
     private int stepEvent(boolean forward) {
         FormIndex index = model.getFormIndex();
-
-        do {
-            if (forward) {
-                index = model.incrementIndex(index);
-            } else {
-                index = model.decrementIndex(index);
-            }
-        } while (index.isInForm() && !model.isIndexRelevant(index));
+        if (forward) {
+            index = model.getNextRelevantIndex(index);
+        } else {
+            index = model.getPreviousRelevantIndex(index);
+        }
 
         return jumpToIndex(index);
     }
@@ -205,6 +226,18 @@ public class FormEntryController {
         newRepeat(model.getFormIndex());
     }
 
+    /**
+     * Creates the given number of new repeated instances of the group
+     * referenced by the current FormIndex, updating the form only once.
+     */
+    public void newRepeats(int count) {
+        try {
+            model.getForm().createNewRepeats(model.getFormIndex(), count);
+        } catch (InvalidReferenceException ire) {
+            throw new RuntimeException("Invalid reference while creating repeat instances: " + ire.getMessage());
+        }
+    }
+
     public void setLanguage(String language) {
         model.setLanguage(language);
     }
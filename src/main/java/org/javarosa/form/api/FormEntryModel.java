@@ -72,6 +72,8 @@ public class FormEntryModel {
 
     private final Extras<Object> extras = new Extras<>();
 
+    private FormNavigationPlan navigationPlan;
+
     public FormEntryModel(FormDef form) {
         this(form, REPEAT_STRUCTURE_LINEAR);
     }
@@ -117,7 +119,7 @@ public class FormEntryModel {
         if (element instanceof GroupDef) {
             if (((GroupDef) element).getRepeat()) {
                 if (REPEAT_STRUCTURE_NON_LINEAR != repeatStructure
-                        && null == form.getMainInstance().resolveReference(form.getChildInstanceRef(index))) {
+                        && null == form.getMainInstance().resolveReference(getNavigationPlan().getChildInstanceRef(index))) {
                     return EVENT_PROMPT_NEW_REPEAT;
                 } else if (REPEAT_STRUCTURE_NON_LINEAR == repeatStructure && INDEX_REPEAT_JUNCTURE == index.getElementMultiplicity()) {
                     return EVENT_REPEAT_JUNCTURE;
@@ -280,7 +282,7 @@ public class FormEntryModel {
         if (index.isBeginningOfFormIndex() || index.isEndOfFormIndex())
             return true;
 
-        TreeReference ref = form.getChildInstanceRef(index);
+        TreeReference ref = getNavigationPlan().getChildInstanceRef(index);
         boolean isAskNewRepeat = (EVENT_PROMPT_NEW_REPEAT == getEvent(index) ||
                 EVENT_REPEAT_JUNCTURE == getEvent(index));
 
@@ -300,7 +302,7 @@ public class FormEntryModel {
      * @return true if current element at FormIndex is relevant
      */
     public boolean isIndexRelevant(FormIndex index) {
-        TreeReference ref = form.getChildInstanceRef(index);
+        TreeReference ref = getNavigationPlan().getChildInstanceRef(index);
         boolean isAskNewRepeat = (EVENT_PROMPT_NEW_REPEAT == getEvent(index));
         boolean isRepeatJuncture = (EVENT_REPEAT_JUNCTURE == getEvent(index));
 
@@ -438,217 +440,60 @@ public class FormEntryModel {
     }
 
     public FormIndex incrementIndex(FormIndex index, boolean descend) {
-        List<Integer> indexes = new ArrayList<>();
-        List<Integer> multiplicities = new ArrayList<>();
-        List<IFormElement> elements = new ArrayList<>();
-
-        if (index.isEndOfFormIndex()) {
-            return index;
-        } else if (index.isBeginningOfFormIndex()) {
-            if (null == form.getChildren() || form.getChildren().isEmpty()) {
-                return FormIndex.createEndOfFormIndex();
-            }
-        } else {
-            form.collapseIndex(index, indexes, multiplicities, elements);
-        }
-
-        incrementHelper(indexes, multiplicities, elements, descend);
-
-        if (indexes.isEmpty()) {
-            return FormIndex.createEndOfFormIndex();
-        } else {
-            return form.buildIndex(indexes, multiplicities, elements);
-        }
+        return getNavigationPlan().increment(index, descend);
     }
 
-    private void incrementHelper(List<Integer> indexes, List<Integer> multiplicities, List<IFormElement> elements, boolean descend) {
-        int i = indexes.size() - 1;
-        boolean exitRepeat = false; //if exiting a repetition? (i.e., go to next repetition instead of one level up)
-
-        if (i == -1 || elements.get(i) instanceof GroupDef) {
-            // current index is group or repeat or the top-level form
-
-            if (i >= 0) {
-                // find out whether we're on a repeat, and if so, whether the
-                // specified instance actually exists
-                GroupDef group = (GroupDef) elements.get(i);
-                if (group.getRepeat()) {
-                    if (REPEAT_STRUCTURE_NON_LINEAR == repeatStructure) {
-                        if (INDEX_REPEAT_JUNCTURE == multiplicities.get(multiplicities.size() - 1)) {
-                            descend = false;
-                            exitRepeat = true;
-                        }
-                    } else {
-                        if (null == form.getMainInstance().resolveReference(form.getChildInstanceRef(elements, multiplicities))) {
-                            descend = false; // repeat instance does not exist; do not descend into it
-                            exitRepeat = true;
-                        }
-                    }
-                }
-            }
-
-            if (descend) {
-                IFormElement ife = (i == -1) ? null : elements.get(i);
-                if ((-1 == i)
-                        || ((null != ife)
-                        && null != ife.getChildren()
-                        && !ife.getChildren().isEmpty())) {
-                    indexes.add(0);
-                    multiplicities.add(0);
-                    elements.add((i == -1 ? form : elements.get(i)).getChild(0));
-
-                    if (REPEAT_STRUCTURE_NON_LINEAR == repeatStructure) {
-                        if (elements.get(elements.size() - 1) instanceof GroupDef && ((GroupDef) elements.get(elements.size() - 1)).getRepeat()) {
-                            multiplicities.set(multiplicities.size() - 1, INDEX_REPEAT_JUNCTURE);
-                        }
-                    }
-                    return;
-                }
-            }
-        }
-
-        while (i >= 0) {
-            // if on repeat, increment to next repeat EXCEPT when we're on a
-            // repeat instance that does not exist and was not created
-            // (repeat-not-existing can only happen at lowest level; exitRepeat
-            // will be true)
-            if (!exitRepeat && elements.get(i) instanceof GroupDef && ((GroupDef) elements.get(i)).getRepeat()) {
-                if (REPEAT_STRUCTURE_NON_LINEAR == repeatStructure) {
-                    multiplicities.set(i, INDEX_REPEAT_JUNCTURE);
-                } else {
-                    multiplicities.set(i, multiplicities.get(i) + 1);
-                }
-                return;
-            }
+    public FormIndex decrementIndex(FormIndex index) {
+        return getNavigationPlan().decrement(index, false);
+    }
 
-            IFormElement parent = (i == 0 ? form : elements.get(i - 1));
-            int curIndex = indexes.get(i);
-
-            // increment to the next element on the current level
-            if (curIndex + 1 >= parent.getChildren().size()) {
-                // at the end of the current level; move up one level and start
-                // over
-                indexes.remove(i);
-                multiplicities.remove(i);
-                elements.remove(i);
-                i--;
-                exitRepeat = false;
+    /**
+     * Returns the first relevant index after the given one, or the end of the form. A group whose node isn't
+     * relevant is stepped over along with everything in it if everything in it is bound under that node, so it can't
+     * be relevant either. Otherwise each index in the group is checked.
+     */
+    public FormIndex getNextRelevantIndex(FormIndex index) {
+        boolean descend = true;
+        while (true) {
+            index = getNavigationPlan().increment(index, descend);
+            if (!index.isInForm())
+                return index;
+
+            int event = getEvent(index);
+            if (event == EVENT_GROUP || event == EVENT_REPEAT) {
+                TreeElement node = form.getMainInstance().resolveReference(getNavigationPlan().getChildInstanceRef(index));
+                if (node != null && node.isRelevant())
+                    return index;
+                descend = node == null || !getNavigationPlan().isSubtreeUnderRef(index);
+            } else if (isIndexRelevant(index)) {
+                return index;
             } else {
-                indexes.set(i, curIndex + 1);
-                multiplicities.set(i, 0);
-                elements.set(i, parent.getChild(curIndex + 1));
-
-                if (REPEAT_STRUCTURE_NON_LINEAR == repeatStructure) {
-                    if (elements.get(elements.size() - 1) instanceof GroupDef && ((GroupDef) elements.get(elements.size() - 1)).getRepeat()) {
-                        multiplicities.set(multiplicities.size() - 1, INDEX_REPEAT_JUNCTURE);
-                    }
-                }
-                return;
+                descend = true;
             }
         }
     }
 
-    public FormIndex decrementIndex(FormIndex index) {
-        List<Integer> indexes = new ArrayList<>();
-        List<Integer> multiplicities = new ArrayList<>();
-        List<IFormElement> elements = new ArrayList<>();
-
-        if (index.isBeginningOfFormIndex()) {
-            return index;
-        } else if (index.isEndOfFormIndex()) {
-            if (null == form.getChildren() || form.getChildren().isEmpty()) {
-                return FormIndex.createBeginningOfFormIndex();
-            }
-        } else {
-            form.collapseIndex(index, indexes, multiplicities, elements);
-        }
-
-        decrementHelper(indexes, multiplicities, elements);
+    /**
+     * Returns the last relevant index before the given one, or the beginning of the form. Irrelevant groups are
+     * stepped over as in {@link #getNextRelevantIndex(FormIndex)}.
+     */
+    public FormIndex getPreviousRelevantIndex(FormIndex index) {
+        do {
+            index = getNavigationPlan().decrement(index, true);
+        } while (index.isInForm() && !isIndexRelevant(index));
+        return index;
+    }
 
-        if (indexes.isEmpty()) {
-            return FormIndex.createBeginningOfFormIndex();
-        } else {
-            return form.buildIndex(indexes, multiplicities, elements);
-        }
+    private FormNavigationPlan getNavigationPlan() {
+        if (navigationPlan == null)
+            navigationPlan = new FormNavigationPlan(form, repeatStructure);
+        return navigationPlan;
     }
 
     public Extras<Object> getExtras() {
         return extras;
     }
 
-    private void decrementHelper(List<Integer> indexes, List<Integer> multiplicities, List<IFormElement> elements) {
-        int i = indexes.size() - 1;
-
-        if (i != -1) {
-            int curIndex = indexes.get(i);
-            int curMult = multiplicities.get(i);
-
-            if (REPEAT_STRUCTURE_NON_LINEAR == repeatStructure
-                    && elements.get(elements.size() - 1) instanceof GroupDef && ((GroupDef) elements.get(elements.size() - 1)).getRepeat()
-                    && INDEX_REPEAT_JUNCTURE != multiplicities.get(multiplicities.size() - 1)) {
-                multiplicities.set(i, INDEX_REPEAT_JUNCTURE);
-                return;
-            } else if (REPEAT_STRUCTURE_NON_LINEAR != repeatStructure && curMult > 0) {
-                multiplicities.set(i, curMult - 1);
-            } else if (curIndex > 0) {
-                // set node to previous element
-                indexes.set(i, curIndex - 1);
-                multiplicities.set(i, 0);
-                elements.set(i, (0 == i ? form : elements.get(i - 1)).getChild(curIndex - 1));
-
-                if (setRepeatNextMultiplicity(elements, multiplicities))
-                    return;
-            } else {
-                // at absolute beginning of current level; index to parent
-                indexes.remove(i);
-                multiplicities.remove(i);
-                elements.remove(i);
-                return;
-            }
-        }
-
-        IFormElement element = (i < 0 ? form : elements.get(i));
-        while (!(element instanceof QuestionDef)) {
-            if (null == element.getChildren() || element.getChildren().isEmpty()) {
-                //if there are no children we just return the current index (the group itself)
-                return;
-            }
-            int subIndex = element.getChildren().size() - 1;
-            element = element.getChild(subIndex);
-
-            indexes.add(subIndex);
-            multiplicities.add(0);
-            elements.add(element);
-
-            if (setRepeatNextMultiplicity(elements, multiplicities))
-                return;
-        }
-    }
-
-    private boolean setRepeatNextMultiplicity(List<IFormElement> elements, List<Integer> multiplicities) {
-        // find out if node is repeatable
-        TreeReference nodeRef = form.getChildInstanceRef(elements, multiplicities);
-        TreeElement node = form.getMainInstance().resolveReference(nodeRef);
-        if (null != node && !node.isRepeatable()) {
-            return false;
-        }
-        // node == null if there are no instances of the repeat
-        IFormElement lastElement = elements.get(elements.size() - 1);
-        if (lastElement instanceof GroupDef
-                && !((GroupDef) lastElement).getRepeat() ) {
-            return false; // It's a regular group inside a repeatable group. This case takes place when the nested group doesn't have the ref attribute.
-        }
-
-        int mult = 0; // no repeats; next is 0
-        if (null != node) {
-            String name = node.getName();
-            TreeElement parentNode = form.getMainInstance().resolveReference(nodeRef.getParentRef());
-            mult = parentNode.getChildMultiplicity(name);
-        }
-        multiplicities.set(multiplicities.size() - 1, REPEAT_STRUCTURE_NON_LINEAR == repeatStructure ? INDEX_REPEAT_JUNCTURE : mult);
-        return true;
-    }
-
     /**
      * This method does a recursive check of whether there are any repeat guesses
      * in the element or its subtree. This is a necessary step when initializing
@@ -0,0 +1,404 @@
+package org.javarosa.form.api;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.GroupDef;
+import org.javarosa.core.model.IFormElement;
+import org.javarosa.core.model.QuestionDef;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.model.instance.TreeReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.javarosa.core.model.instance.TreeReference.INDEX_REPEAT_JUNCTURE;
+import static org.javarosa.form.api.FormEntryModel.REPEAT_STRUCTURE_NON_LINEAR;
+
+/**
+ * The elements of a form flattened in document order, so that {@link FormEntryModel} can step from one index to the
+ * next or previous one without exploding the index into lists and rebuilding it level by level. Each element knows
+ * the element after its subtree and the innermost repeat that its subtree closes, so moving past a subtree is a
+ * single step however many levels it leaves. Each element's reference with its multiplicities cleared is kept, so
+ * an index's references only need the multiplicities of the repeats along the way filled in.
+ * <p>
+ * Stepping can also stop at a group whose node isn't relevant rather than going into it, so that callers that skip
+ * irrelevant indexes can skip the whole subtree at once. That's only done for a group whose descendants are all
+ * bound to nodes under the group's own node, since those inherit its relevance. A question in a group can be bound
+ * anywhere in the instance, and so be relevant when the group's node isn't.
+ * <p>
+ * A position is an element's place in document order. The form's structure must not change once the plan is built.
+ */
+final class FormNavigationPlan {
+    private final FormDef form;
+    private final int repeatStructure;
+
+    private final IFormElement[] elements;
+    private final boolean[] repeat;
+    private final int[] parent;
+    private final int[] localIndex;
+    private final int[] depth;
+    /** The position after each element's subtree */
+    private final int[] end;
+    /** The innermost repeat around each element whose subtree ends with the element's, or -1 */
+    private final int[] closingRepeat;
+    private final int[] previousSibling;
+    private final int[] lastChild;
+    private final int[][] children;
+    private final int[] topLevel;
+
+    /** Each element's bound reference, and that reference with its multiplicities cleared */
+    private final TreeReference[] bindRefs;
+    private final TreeReference[] genericRefs;
+    /** Whether every descendant of each element is bound to its node or a node under it */
+    private final boolean[] subtreeUnderRef;
+
+    FormNavigationPlan(FormDef form, int repeatStructure) {
+        this.form = form;
+        this.repeatStructure = repeatStructure;
+
+        List<IFormElement> flattened = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        List<Integer> localIndexes = new ArrayList<>();
+        flatten(form, -1, flattened, parents, localIndexes);
+
+        int count = flattened.size();
+        elements = flattened.toArray(new IFormElement[count]);
+        repeat = new boolean[count];
+        parent = new int[count];
+        localIndex = new int[count];
+        depth = new int[count];
+        end = new int[count];
+        closingRepeat = new int[count];
+        previousSibling = new int[count];
+        lastChild = new int[count];
+        children = new int[count][];
+        bindRefs = new TreeReference[count];
+        genericRefs = new TreeReference[count];
+        subtreeUnderRef = new boolean[count];
+
+        int[] childCounts = new int[count];
+        int topLevelCount = 0;
+        for (int p = 0; p < count; p++) {
+            parent[p] = parents.get(p);
+            localIndex[p] = localIndexes.get(p);
+            repeat[p] = elements[p] instanceof GroupDef && ((GroupDef) elements[p]).getRepeat();
+            depth[p] = parent[p] == -1 ? 0 : depth[parent[p]] + 1;
+            if (parent[p] == -1)
+                topLevelCount++;
+            else
+                childCounts[parent[p]]++;
+
+            if (elements[p].getBind() != null) {
+                bindRefs[p] = FormInstance.unpackReference(elements[p].getBind());
+                genericRefs[p] = bindRefs[p].clone();
+                for (int i = 0; i < genericRefs[p].size(); i++) {
+                    if (genericRefs[p].getMultiplicity(i) != TreeReference.INDEX_ATTRIBUTE)
+                        genericRefs[p].setMultiplicity(i, 0);
+                }
+            }
+        }
+
+        topLevel = new int[topLevelCount];
+        for (int p = 0; p < count; p++)
+            children[p] = new int[childCounts[p]];
+        for (int p = 0; p < count; p++) {
+            int[] siblings = parent[p] == -1 ? topLevel : children[parent[p]];
+            siblings[localIndex[p]] = p;
+            previousSibling[p] = localIndex[p] == 0 ? -1 : siblings[localIndex[p] - 1];
+        }
+
+        for (int p = count - 1; p >= 0; p--) {
+            lastChild[p] = children[p].length == 0 ? -1 : children[p][children[p].length - 1];
+            end[p] = lastChild[p] == -1 ? p + 1 : end[lastChild[p]];
+        }
+        for (int p = count - 1; p >= 0; p--) {
+            subtreeUnderRef[p] = genericRefs[p] != null;
+            for (int c : children[p]) {
+                if (!subtreeUnderRef[p])
+                    break;
+                subtreeUnderRef[p] = genericRefs[c] != null && genericRefs[p].isAncestorOf(genericRefs[c], false) && subtreeUnderRef[c];
+            }
+        }
+        for (int p = 0; p < count; p++) {
+            closingRepeat[p] = -1;
+            for (int a = parent[p]; a != -1 && end[a] == end[p]; a = parent[a]) {
+                if (repeat[a]) {
+                    closingRepeat[p] = a;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void flatten(IFormElement element, int position, List<IFormElement> flattened, List<Integer> parents, List<Integer> localIndexes) {
+        List<IFormElement> elementChildren = element.getChildren();
+        if (elementChildren == null)
+            return;
+
+        for (int i = 0; i < elementChildren.size(); i++) {
+            int childPosition = flattened.size();
+            flattened.add(elementChildren.get(i));
+            parents.add(position);
+            localIndexes.add(i);
+            flatten(elementChildren.get(i), childPosition, flattened, parents, localIndexes);
+        }
+    }
+
+    /**
+     * The positions and multiplicities of the levels of an index, top level first.
+     */
+    private final class Cursor {
+        int[] positions;
+        int[] multiplicities;
+        int size;
+
+        Cursor(FormIndex index) {
+            int levels = index.isInForm() ? index.getDepth() : 0;
+            positions = new int[Math.max(levels, 4)];
+            multiplicities = new int[positions.length];
+            if (!index.isInForm())
+                return;
+
+            for (FormIndex level = index; level != null; level = level.getNextLevel()) {
+                int[] siblings = size == 0 ? topLevel : children[positions[size - 1]];
+                push(siblings[level.getLocalIndex()], level.getInstanceIndex() == -1 ? 0 : level.getInstanceIndex());
+            }
+        }
+
+        void push(int position, int multiplicity) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, 2 * size);
+                multiplicities = Arrays.copyOf(multiplicities, 2 * size);
+            }
+            positions[size] = position;
+            multiplicities[size] = multiplicity;
+            size++;
+        }
+
+        /**
+         * Moves to the given position, which is after the current one's subtree, leaving the levels it's not in.
+         */
+        void moveTo(int position) {
+            size = depth[position];
+            push(position, isNonLinear() && repeat[position] ? INDEX_REPEAT_JUNCTURE : 0);
+        }
+
+        int last() {
+            return positions[size - 1];
+        }
+
+        /**
+         * The instance reference of the given level, as {@link FormDef#getChildInstanceRef(List, List)} gives it.
+         */
+        TreeReference getInstanceRef(int level) {
+            return instanceRef(positions, multiplicities, level);
+        }
+
+        TreeElement resolve(int level) {
+            return form.getMainInstance().resolveReference(getInstanceRef(level));
+        }
+
+        /**
+         * An index for the current levels, whose references are only worked out if they're asked for.
+         */
+        FormIndex toIndex() {
+            if (size == 0)
+                return null;
+
+            int[] levels = new int[2 * size];
+            for (int i = 0; i < size; i++) {
+                int p = positions[i];
+                levels[2 * i] = localIndex[p];
+                levels[2 * i + 1] = repeat[p] ? multiplicities[i] : -1;
+            }
+            int[] indexPositions = Arrays.copyOf(positions, size);
+            int[] indexMultiplicities = Arrays.copyOf(multiplicities, size);
+            return FormIndex.fromLevels(levels, level -> instanceRef(indexPositions, indexMultiplicities, level));
+        }
+    }
+
+    /**
+     * The instance reference of the given level of the given positions and multiplicities, as
+     * {@link FormDef#getChildInstanceRef(List, List)} gives it.
+     */
+    private TreeReference instanceRef(int[] positions, int[] multiplicities, int level) {
+        TreeReference ref = genericRefs[positions[level]].clone();
+        for (int i = 0; i <= level; i++) {
+            int p = positions[i];
+            if (repeat[p]) {
+                if (bindRefs[p].isAncestorOf(ref, false))
+                    ref.setMultiplicity(bindRefs[p].size() - 1, multiplicities[i]);
+                else
+                    return null;
+            }
+        }
+        return ref;
+    }
+
+    private boolean isNonLinear() {
+        return repeatStructure == REPEAT_STRUCTURE_NON_LINEAR;
+    }
+
+    TreeReference getChildInstanceRef(FormIndex index) {
+        if (!index.isInForm())
+            return null;
+
+        Cursor cursor = new Cursor(index);
+        return cursor.getInstanceRef(cursor.size - 1);
+    }
+
+    /**
+     * Returns whether every index in the subtree of the given one is bound to the index's node or a node under it,
+     * so that they're all irrelevant if that node is.
+     */
+    boolean isSubtreeUnderRef(FormIndex index) {
+        return index.isInForm() && subtreeUnderRef[new Cursor(index).last()];
+    }
+
+    /**
+     * Steps to the next index, as {@link FormEntryModel#incrementIndex(FormIndex, boolean)} does.
+     */
+    FormIndex increment(FormIndex index, boolean descend) {
+        if (index.isEndOfFormIndex())
+            return index;
+        if (index.isBeginningOfFormIndex() && topLevel.length == 0)
+            return FormIndex.createEndOfFormIndex();
+
+        Cursor cursor = new Cursor(index);
+        increment(cursor, descend);
+        return cursor.size == 0 ? FormIndex.createEndOfFormIndex() : cursor.toIndex();
+    }
+
+    private void increment(Cursor cursor, boolean descend) {
+        int i = cursor.size - 1;
+        boolean exitRepeat = false; // if exiting a repetition, go to the next repetition instead of one level up
+
+        if (i == -1 || elements[cursor.last()] instanceof GroupDef) {
+            if (i >= 0 && repeat[cursor.last()]) {
+                // on a repeat: don't descend into a juncture, or into an instance that doesn't exist
+                if (isNonLinear() ? cursor.multiplicities[i] == INDEX_REPEAT_JUNCTURE : cursor.resolve(i) == null) {
+                    descend = false;
+                    exitRepeat = true;
+                }
+            }
+
+            if (descend) {
+                int first = i == -1 ? topLevel[0] : lastChild[cursor.last()] == -1 ? -1 : children[cursor.last()][0];
+                if (first != -1) {
+                    cursor.push(first, isNonLinear() && repeat[first] ? INDEX_REPEAT_JUNCTURE : 0);
+                    return;
+                }
+            }
+        }
+
+        if (i == -1)
+            return;
+
+        int p = cursor.last();
+        if (!exitRepeat && repeat[p]) {
+            cursor.multiplicities[i] = isNonLinear() ? INDEX_REPEAT_JUNCTURE : cursor.multiplicities[i] + 1;
+            return;
+        }
+
+        int closing = closingRepeat[p];
+        if (closing != -1) {
+            // the next repetition of the innermost repeat this element is at the end of
+            cursor.size = depth[closing] + 1;
+            cursor.multiplicities[depth[closing]] = isNonLinear() ? INDEX_REPEAT_JUNCTURE : cursor.multiplicities[depth[closing]] + 1;
+        } else if (end[p] == elements.length) {
+            cursor.size = 0;
+        } else {
+            cursor.moveTo(end[p]);
+        }
+    }
+
+    /**
+     * Steps to the previous index, as {@link FormEntryModel#decrementIndex(FormIndex)} does, except that if
+     * skipIrrelevantGroups is set, it stops at a group whose node isn't relevant instead of going to the last index in
+     * it, if everything in the group is bound under that node.
+     */
+    FormIndex decrement(FormIndex index, boolean skipIrrelevantGroups) {
+        if (index.isBeginningOfFormIndex())
+            return index;
+        if (index.isEndOfFormIndex() && topLevel.length == 0)
+            return FormIndex.createBeginningOfFormIndex();
+
+        Cursor cursor = new Cursor(index);
+        decrement(cursor, skipIrrelevantGroups);
+        return cursor.size == 0 ? FormIndex.createBeginningOfFormIndex() : cursor.toIndex();
+    }
+
+    private void decrement(Cursor cursor, boolean skipIrrelevantGroups) {
+        int i = cursor.size - 1;
+
+        if (i != -1) {
+            int p = cursor.last();
+            int curMult = cursor.multiplicities[i];
+
+            if (isNonLinear() && repeat[p] && curMult != INDEX_REPEAT_JUNCTURE) {
+                cursor.multiplicities[i] = INDEX_REPEAT_JUNCTURE;
+                return;
+            } else if (!isNonLinear() && curMult > 0) {
+                cursor.multiplicities[i] = curMult - 1;
+            } else if (localIndex[p] > 0) {
+                // set node to previous element
+                cursor.positions[i] = previousSibling[p];
+                cursor.multiplicities[i] = 0;
+
+                if (setRepeatNextMultiplicity(cursor))
+                    return;
+            } else {
+                // at absolute beginning of current level; index to parent
+                cursor.size--;
+                return;
+            }
+        }
+
+        int element = i < 0 ? -1 : cursor.last();
+        while (element == -1 || !(elements[element] instanceof QuestionDef)) {
+            if (skipIrrelevantGroups && element != -1) {
+                TreeElement node = cursor.resolve(cursor.size - 1);
+                if (node != null && !node.isRelevant() && subtreeUnderRef[element])
+                    return;
+            }
+
+            int last = element == -1 ? topLevel[topLevel.length - 1] : lastChild[element];
+            if (last == -1) {
+                // if there are no children we just return the current index (the group itself)
+                return;
+            }
+            cursor.push(last, 0);
+            element = last;
+
+            if (setRepeatNextMultiplicity(cursor))
+                return;
+        }
+    }
+
+    /**
+     * If the last level is a repeat, moves it past the last existing repetition, as
+     * FormEntryModel.setRepeatNextMultiplicity does.
+     */
+    private boolean setRepeatNextMultiplicity(Cursor cursor) {
+        int level = cursor.size - 1;
+        TreeReference nodeRef = cursor.getInstanceRef(level);
+        TreeElement node = form.getMainInstance().resolveReference(nodeRef);
+        if (null != node && !node.isRepeatable())
+            return false;
+
+        // node == null if there are no instances of the repeat
+        int p = cursor.last();
+        if (elements[p] instanceof GroupDef && !repeat[p])
+            return false; // a regular group without a ref inside a repeat
+
+        int mult = 0; // no repeats; next is 0
+        if (null != node) {
+            TreeElement parentNode = form.getMainInstance().resolveReference(nodeRef.getParentRef());
+            mult = parentNode.getChildMultiplicity(node.getName());
+        }
+        cursor.multiplicities[level] = isNonLinear() ? INDEX_REPEAT_JUNCTURE : mult;
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+package org.javarosa.form.api;
+
+import org.javarosa.core.model.CoreModelModule;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.ValidateOutcome;
+import org.javarosa.core.model.condition.IFunctionHandler;
+import org.javarosa.core.model.instance.InstanceInitializationFactory;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.services.PrototypeManager;
+import org.javarosa.core.util.JavaRosaCoreModule;
+import org.javarosa.core.util.externalizable.DeserializationException;
+import org.javarosa.core.util.externalizable.PrototypeFactory;
+import org.javarosa.model.xform.XFormsModule;
+import org.javarosa.xform.parse.XFormParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validates many submitted instances of the same form, e.g. to re-validate submissions on a server, without parsing
+ * or deserializing the form for every submission.
+ * <p>
+ * The form is serialized once and every worker thread deserializes its own copy the first time it needs it, since a
+ * {@link FormDef} can't be shared between threads. Each submission is then loaded into the worker's copy with
+ * {@link XFormParser#loadXmlInstance(FormDef, TreeElement, TreeElement)}, the form is initialized to recompute it and
+ * {@link FormDef#validate(boolean)} is run on it.
+ */
+public class SubmissionValidator implements Closeable {
+    private final byte[] serializedForm;
+    private final Collection<IFunctionHandler> functionHandlers;
+    private final boolean markCompleted;
+    private final ExecutorService executor;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(this::createWorker);
+
+    /**
+     * @param formDef       a freshly loaded form with no answers. It isn't modified and can still be used afterwards.
+     * @param threadCount   the number of submissions to validate in parallel.
+     * @param markCompleted passed to {@link FormDef#validate(boolean)}.
+     */
+    public SubmissionValidator(FormDef formDef, int threadCount, boolean markCompleted) throws IOException {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be at least 1 but was " + threadCount);
+
+        PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+        PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+        new XFormsModule().registerModule();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        formDef.writeExternal(new DataOutputStream(bytes));
+        serializedForm = bytes.toByteArray();
+
+        // Function handlers aren't serialized with the form
+        functionHandlers = new ArrayList<>(formDef.getEvaluationContext().getFunctionHandlers().values());
+
+        this.markCompleted = markCompleted;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "submission-validator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the validation of one submission.
+     *
+     * @param instanceXml the submitted instance, as UTF-8 encoded XML.
+     */
+    public Future<Result> submit(byte[] instanceXml) {
+        return executor.submit(() -> workers.get().validate(instanceXml));
+    }
+
+    /**
+     * Validates all the given submissions in parallel and returns their results in the same order.
+     */
+    public List<Result> validateAll(Iterable<byte[]> instancesXml) throws InterruptedException {
+        List<Future<Result>> futures = new ArrayList<>();
+        for (byte[] instanceXml : instancesXml)
+            futures.add(submit(instanceXml));
+
+        List<Result> results = new ArrayList<>(futures.size());
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                // Workers catch everything that's specific to a submission
+                throw new RuntimeException("Submission validation failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private Worker createWorker() {
+        try {
+            FormDef formDef = new FormDef();
+            formDef.readExternal(new DataInputStream(new ByteArrayInputStream(serializedForm)), new PrototypeFactory(PrototypeManager.getPrototypes()));
+            // The form's own handlers (e.g. jr:itext) are bound to the FormDef that created them so only the missing
+            // ones are copied
+            for (IFunctionHandler functionHandler : functionHandlers)
+                if (!formDef.getEvaluationContext().getFunctionHandlers().containsKey(functionHandler.getName()))
+                    formDef.getEvaluationContext().addFunctionHandler(functionHandler);
+            return new Worker(formDef);
+        } catch (IOException | DeserializationException e) {
+            throw new RuntimeException("Unable to deserialize form for validation: " + e.getMessage(), e);
+        }
+    }
+
+    private class Worker {
+        private final FormDef formDef;
+        private final TreeElement templateRoot;
+
+        Worker(FormDef formDef) {
+            this.formDef = formDef;
+            this.templateRoot = formDef.getMainInstance().getRoot().deepCopy(true);
+        }
+
+        Result validate(byte[] instanceXml) {
+            try {
+                // The form's main instance holds the previous submission, so a blank copy is kept to load into
+                TreeElement savedRoot = XFormParser.restoreDataModel(instanceXml).getRoot();
+                XFormParser.loadXmlInstance(formDef, templateRoot.deepCopy(true), savedRoot);
+                formDef.initialize(false, new InstanceInitializationFactory());
+
+                return new Result(formDef.validate(markCompleted), null);
+            } catch (Exception e) {
+                return new Result(null, e);
+            }
+        }
+    }
+
+    /**
+     * The result of validating one submission.
+     */
+    public static final class Result {
+        private final ValidateOutcome outcome;
+        private final Exception error;
+
+        Result(ValidateOutcome outcome, Exception error) {
+            this.outcome = outcome;
+            this.error = error;
+        }
+
+        /**
+         * Returns true if the submission could be loaded and all of its answers are valid.
+         */
+        public boolean isValid() {
+            return error == null && outcome == null;
+        }
+
+        /**
+         * Returns the first invalid answer as reported by {@link FormDef#validate(boolean)} or null if there's none.
+         */
+        public ValidateOutcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Returns the reason why the submission couldn't be loaded or recomputed or null if it could.
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+}
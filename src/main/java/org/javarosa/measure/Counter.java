@@ -0,0 +1,26 @@
+package org.javarosa.measure;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that can be incremented from many threads without contention.
+ */
+public final class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long delta) {
+        count.add(delta);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    void reset() {
+        count.reset();
+    }
+}
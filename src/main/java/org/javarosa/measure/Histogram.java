@@ -0,0 +1,86 @@
+package org.javarosa.measure;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The distribution of a non-negative value (e.g. a duration in nanoseconds or the size of a cascade) that can be
+ * recorded from many threads without contention.
+ * <p>
+ * Values are counted in power of two buckets so percentiles are approximate: they are reported as the upper bound
+ * of the bucket the percentile falls in, which is at most twice the actual value.
+ */
+public final class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void record(long value) {
+        long nonNegative = Math.max(0, value);
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nonNegative)].increment();
+        count.increment();
+        total.add(nonNegative);
+        max.accumulate(nonNegative);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getTotal() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the upper bound of the bucket the given percentile of the recorded values falls in, capped at the
+     * biggest recorded value, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100 but was " + percentile);
+
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(getMax(), (1L << i) - 1);
+        }
+        return getMax();
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets)
+            bucket.reset();
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+}
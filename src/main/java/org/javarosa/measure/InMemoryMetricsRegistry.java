@@ -0,0 +1,65 @@
+package org.javarosa.measure;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the reported metrics in memory in {@link Counter}s and {@link Histogram}s so they can be read back, e.g. to
+ * be logged periodically or checked in a test.
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void count(String name, long delta) {
+        getCounter(name).add(delta);
+    }
+
+    @Override
+    public void record(String name, long value) {
+        getHistogram(name).record(value);
+    }
+
+    /**
+     * Returns the named counter, creating it if nothing was counted under that name yet.
+     */
+    public Counter getCounter(String name) {
+        Counter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Returns the named histogram, creating it if nothing was recorded under that name yet.
+     */
+    public Histogram getHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Returns all the counters by name, sorted by name.
+     */
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(new TreeMap<>(counters));
+    }
+
+    /**
+     * Returns all the histograms by name, sorted by name.
+     */
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(new TreeMap<>(histograms));
+    }
+
+    /**
+     * Sets every counter and histogram back to zero.
+     */
+    public void reset() {
+        for (Counter counter : counters.values())
+            counter.reset();
+        for (Histogram histogram : histograms.values())
+            histogram.reset();
+    }
+}
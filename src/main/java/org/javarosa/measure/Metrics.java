@@ -0,0 +1,150 @@
+package org.javarosa.measure;
+
+/**
+ * Reports metrics from JavaRosa's hot spots to the installed {@link MetricsRegistry}.
+ * <p>
+ * Nothing is installed by default, in which case every call returns after reading a volatile field, timers don't
+ * even read the clock, and the metric names are never built. It's therefore fine to leave the hooks in place and
+ * only install a registry, such as {@link InMemoryMetricsRegistry}, when metrics are wanted.
+ * <p>
+ * Times are in nanoseconds.
+ */
+public final class Metrics {
+    //region Metric names
+    /**
+     * Histogram of the time spent evaluating the DAG cascade after one or more answers are saved.
+     */
+    public static final String DAG_CASCADE_TIME = "dag.cascade.time";
+
+    /**
+     * Histogram of the number of triggerables evaluated in the DAG cascade after one or more answers are saved.
+     */
+    public static final String DAG_CASCADE_SIZE = "dag.cascade.size";
+
+    /**
+     * Histogram of the time spent evaluating all triggerables when a form is initialized.
+     */
+    public static final String DAG_INITIALIZATION_TIME = "dag.initialization.time";
+
+    /**
+     * Counter of DAGs built by sorting a form's triggerables, i.e. that weren't restored from a serialized form.
+     */
+    public static final String DAG_BUILDS = "dag.builds";
+
+    /**
+     * Counter of predicates evaluated against a single node, i.e. that no filter could answer without evaluation.
+     */
+    public static final String PREDICATE_EVALUATIONS = "predicate.evaluations";
+
+    /**
+     * Counter of predicates evaluated against a single node to build a predicate index.
+     */
+    public static final String PREDICATE_INDEX_EVALUATIONS = "predicate.index.evaluations";
+
+    /**
+     * Counter of nodeset references expanded to the references of the nodes they match.
+     */
+    public static final String REFERENCE_EXPANSIONS = "reference.expansions";
+
+    /**
+     * Histogram of the time spent evaluating the choices of itemsets.
+     */
+    public static final String ITEMSET_EVALUATION_TIME = "itemset.evaluation.time";
+
+    /**
+     * Counter of output fragments evaluated to fill labels and hints, i.e. whose value wasn't cached.
+     */
+    public static final String OUTPUT_FRAGMENT_EVALUATIONS = "output.fragment.evaluations";
+
+    /**
+     * Histogram of the time spent reading form XML into a DOM.
+     */
+    public static final String PARSE_XML_TIME = "parse.xml.time";
+
+    /**
+     * Histogram of the time spent consolidating the text of a form's DOM.
+     */
+    public static final String PARSE_CONSOLIDATE_TIME = "parse.consolidate.time";
+
+    /**
+     * Histogram of the time spent building a form definition from its DOM.
+     */
+    public static final String PARSE_FORM_TIME = "parse.form.time";
+
+    /**
+     * Histogram of the time spent deserializing a form definition, e.g. from a cache.
+     */
+    public static final String FORM_DESERIALIZATION_TIME = "form.deserialization.time";
+    //endregion
+
+    private static volatile MetricsRegistry registry;
+
+    private Metrics() {
+    }
+
+    /**
+     * Installs the registry that will receive all metrics from now on, or stops reporting metrics if it is null.
+     */
+    public static void setRegistry(MetricsRegistry registry) {
+        Metrics.registry = registry;
+    }
+
+    public static MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    public static boolean isEnabled() {
+        return registry != null;
+    }
+
+    public static void increment(String name) {
+        MetricsRegistry registry = Metrics.registry;
+        if (registry != null)
+            registry.count(name, 1);
+    }
+
+    public static void count(String name, long delta) {
+        MetricsRegistry registry = Metrics.registry;
+        if (registry != null)
+            registry.count(name, delta);
+    }
+
+    public static void record(String name, long value) {
+        MetricsRegistry registry = Metrics.registry;
+        if (registry != null)
+            registry.record(name, value);
+    }
+
+    /**
+     * Returns the start time to pass to {@link #stopTimer} or 0 without reading the clock if metrics are disabled.
+     */
+    public static long startTimer() {
+        return registry != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since the given start time from {@link #startTimer}, unless the timer was started
+     * while metrics were disabled.
+     */
+    public static void stopTimer(String name, long startTime) {
+        MetricsRegistry registry = Metrics.registry;
+        if (registry != null && startTime != 0)
+            registry.record(name, System.nanoTime() - startTime);
+    }
+
+    //region Predicate filters
+    /**
+     * Returns the name of the counter of predicates a filter of the given type answered itself, e.g. from its cache.
+     */
+    public static String predicateFilterHits(Class<?> filterType) {
+        return "predicate.filter." + filterType.getSimpleName() + ".hits";
+    }
+
+    /**
+     * Returns the name of the counter of predicates a filter of the given type had to pass down the filter chain.
+     */
+    public static String predicateFilterMisses(Class<?> filterType) {
+        return "predicate.filter." + filterType.getSimpleName() + ".misses";
+    }
+    //endregion
+}
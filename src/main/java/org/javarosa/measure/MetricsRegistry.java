@@ -0,0 +1,18 @@
+package org.javarosa.measure;
+
+/**
+ * Receives the metrics reported by JavaRosa through {@link Metrics}. Implementations must be thread-safe and should
+ * be cheap since they are called from hot paths (e.g. once per predicate evaluation). They can keep the values
+ * themselves, like {@link InMemoryMetricsRegistry}, or forward them to an application's own metrics library.
+ */
+public interface MetricsRegistry {
+    /**
+     * Adds the given amount to the named counter.
+     */
+    void count(String name, long delta);
+
+    /**
+     * Adds a value, e.g. a duration in nanoseconds, to the named distribution.
+     */
+    void record(String name, long value);
+}
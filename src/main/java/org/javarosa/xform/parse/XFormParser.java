@@ -45,6 +45,7 @@ import org.javarosa.core.model.osm.OSMTagItem;
 import org.javarosa.core.services.locale.Localizer;
 import org.javarosa.core.services.locale.TableLocaleSource;
 import org.javarosa.core.util.StopWatch;
+import org.javarosa.measure.Metrics;
 import org.javarosa.model.xform.XPathReference;
 import org.javarosa.xform.util.XFormUtils;
 import org.javarosa.xml.util.InvalidStructureException;
@@ -330,10 +331,12 @@ public class XFormParser implements IXFormParserFunctions {
                         logger.error("Error closing reader", e);
                     }
                     logger.info(ctParse.logLine("Reading XML and parsing with kXML2"));
+                    Metrics.record(Metrics.PARSE_XML_TIME, ctParse.getElapsedNanos());
 
                     StopWatch ctConsolidate = StopWatch.start();
                     XmlTextConsolidator.consolidateText(doc.getRootElement());
                     logger.info(ctConsolidate.logLine("Consolidating text"));
+                    Metrics.record(Metrics.PARSE_CONSOLIDATE_TIME, ctConsolidate.getElapsedNanos());
 
                     _xmldoc = doc;
                 } catch (IOException e) {
@@ -428,10 +431,12 @@ public class XFormParser implements IXFormParserFunctions {
             logger.error("Error closing reader", e);
         }
         logger.info(ctParse.logLine("Reading XML and parsing with kXML2"));
+        Metrics.record(Metrics.PARSE_XML_TIME, ctParse.getElapsedNanos());
 
         StopWatch ctConsolidate = StopWatch.start();
         XmlTextConsolidator.consolidateText(doc.getRootElement());
         logger.info(ctConsolidate.logLine("Consolidating text"));
+        Metrics.record(Metrics.PARSE_CONSOLIDATE_TIME, ctConsolidate.getElapsedNanos());
 
         return doc;
     }
@@ -516,6 +521,7 @@ public class XFormParser implements IXFormParserFunctions {
         _f.getMainInstance().getRoot().clearCaches();
 
         logger.info(codeTimer.logLine("Creating FormDef from parsed XML"));
+        Metrics.record(Metrics.PARSE_FORM_TIME, codeTimer.getElapsedNanos());
     }
 
     private String parseInstanceSrc(Element instance, String lastSavedSrc) {
@@ -2115,9 +2121,18 @@ public class XFormParser implements IXFormParserFunctions {
      * call before f.initialize()!
      */
     private static void loadXmlInstance(FormDef f, Document xmlInst) throws ParseException {
-        TreeElement savedRoot = restoreDataModel(xmlInst).getRoot();
-        TreeElement templateRoot = f.getMainInstance().getRoot().deepCopy(true);
+        loadXmlInstance(f, f.getMainInstance().getRoot().deepCopy(true), restoreDataModel(xmlInst).getRoot());
+    }
 
+    /**
+     * Populates the given copy of the form's blank main instance root with a saved instance and makes it the form's
+     * main instance.
+     *
+     * @param templateRoot a deep copy of the main instance root before any answers were loaded into it. It's modified
+     *                     and becomes part of the form.
+     * @param savedRoot    the root of the saved instance, as returned by {@link #restoreDataModel(byte[])}
+     */
+    public static void loadXmlInstance(FormDef f, TreeElement templateRoot, TreeElement savedRoot) {
         // weak check for matching forms
         // TODO: should check that namespaces match?
         if (!savedRoot.getName().equals(templateRoot.getName()) || savedRoot.getMult() != 0) {
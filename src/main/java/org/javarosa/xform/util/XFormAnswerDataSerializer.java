@@ -188,15 +188,15 @@ public class XFormAnswerDataSerializer implements IAnswerDataSerializer {
     }
 
     public Object serializeAnswerData(IntegerData data) {
-        return ((Integer)data.getValue()).toString();
+        return String.valueOf(data.getInt());
     }
 
     public Object serializeAnswerData(LongData data) {
-        return ((Long)data.getValue()).toString();
+        return String.valueOf(data.getLong());
     }
 
     public Object serializeAnswerData(DecimalData data) {
-        return ((Double)data.getValue()).toString();
+        return String.valueOf(data.getDouble());
     }
 
     public Object serializeAnswerData(GeoPointData data) {
@@ -212,7 +212,7 @@ public class XFormAnswerDataSerializer implements IAnswerDataSerializer {
      }
 
     public Object serializeAnswerData(BooleanData data) {
-        return (Boolean) data.getValue() ? "1" : "0";
+        return data.getBoolean() ? "1" : "0";
     }
 
     public Object serializeAnswerData(IAnswerData data, int dataType) {
@@ -148,7 +148,7 @@ public class XPathConditional implements IConditionExpr {
     }
 
     public void readExternal(DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
-        expr = (XPathExpression)ExtUtil.read(in, new ExtWrapTagged(), pf);
+        expr = XPathExpressionCache.intern((XPathExpression)ExtUtil.read(in, new ExtWrapTagged(), pf));
         hasNow = ExtUtil.readBool(in);
     }
 
@@ -0,0 +1,210 @@
+package org.javarosa.xpath;
+
+import org.javarosa.xform.parse.XFormParser;
+import org.javarosa.xpath.expr.XPathBinaryOpExpr;
+import org.javarosa.xpath.expr.XPathExpression;
+import org.javarosa.xpath.expr.XPathFilterExpr;
+import org.javarosa.xpath.expr.XPathFuncExpr;
+import org.javarosa.xpath.expr.XPathNumericLiteral;
+import org.javarosa.xpath.expr.XPathPathExpr;
+import org.javarosa.xpath.expr.XPathStep;
+import org.javarosa.xpath.expr.XPathStringLiteral;
+import org.javarosa.xpath.expr.XPathUnaryOpExpr;
+import org.javarosa.xpath.expr.XPathVariableReference;
+import org.javarosa.xpath.parser.Lexer;
+import org.javarosa.xpath.parser.Parser;
+import org.javarosa.xpath.parser.XPathSyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers parsed XPath expressions by their source so that an expression that appears many times, within a form or
+ * across forms, is only lexed and parsed once. Equal subexpressions are also shared, so that {@code . != ''} in one
+ * expression and in another are the same object.
+ * <p>
+ * Expressions returned from here may be shared between forms and threads and must not be modified.
+ */
+public final class XPathExpressionCache {
+    /** Parsed expressions are forgotten all at once when there are more than this many */
+    private static final int MAX_EXPRESSIONS = 10_000;
+
+    /** Shared subexpressions are forgotten all at once when there are more than this many */
+    private static final int MAX_SUBEXPRESSIONS = 50_000;
+
+    private static final ConcurrentHashMap<String, Parsed> expressions = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Subexpression, Subexpression> subexpressions = new ConcurrentHashMap<>();
+
+    private XPathExpressionCache() {
+    }
+
+    /**
+     * Returns the expression for the given source, parsing it if it hasn't been seen before. Syntax errors are not
+     * remembered, and neither are expressions that may evaluate differently each time, such as
+     * {@code concat('uuid:', uuid())}: each occurrence has to stay a separate expression, as equal expressions are
+     * evaluated once for all the binds that use them.
+     */
+    public static XPathExpression parse(String xpath) throws XPathSyntaxException {
+        Parsed parsed = expressions.get(xpath);
+        if (parsed == null) {
+            List<String> instanceIds = new ArrayList<>();
+            Subexpression subexpression = intern(Parser.parse(Lexer.lex(xpath)), instanceIds);
+            if (!subexpression.shareable)
+                return subexpression.expression;
+            parsed = new Parsed(subexpression.expression, instanceIds.toArray(new String[0]));
+            if (expressions.size() >= MAX_EXPRESSIONS)
+                expressions.clear();
+            Parsed previous = expressions.putIfAbsent(xpath, parsed);
+            if (previous != null)
+                parsed = previous;
+        } else {
+            // Building the expression records the instances it refers to. Expressions that are remembered aren't
+            // built again, so their instances have to be recorded here.
+            for (String instanceId : parsed.instanceIds)
+                XFormParser.recordInstanceFunctionCall(instanceId);
+        }
+        return parsed.expression;
+    }
+
+    /**
+     * Returns the shared expression equal to the given one, which must not be in use anywhere else yet. Its
+     * subexpressions are replaced by shared ones too. Used for expressions that weren't parsed from source, such as
+     * those read from a serialized form.
+     */
+    public static XPathExpression intern(XPathExpression expression) {
+        return intern(expression, null).expression;
+    }
+
+    /**
+     * Forgets all remembered expressions.
+     */
+    public static void clear() {
+        expressions.clear();
+        subexpressions.clear();
+    }
+
+    /**
+     * Interns the subexpressions of the given expression first, so that its hash can be worked out from theirs
+     * rather than from its whole string form.
+     */
+    private static Subexpression intern(XPathExpression expression, List<String> instanceIds) {
+        Structure structure = new Structure(expression.getClass().hashCode());
+        if (expression instanceof XPathBinaryOpExpr) {
+            XPathBinaryOpExpr binaryOp = (XPathBinaryOpExpr) expression;
+            binaryOp.a = structure.add(intern(binaryOp.a, instanceIds));
+            binaryOp.b = structure.add(intern(binaryOp.b, instanceIds));
+        } else if (expression instanceof XPathUnaryOpExpr) {
+            XPathUnaryOpExpr unaryOp = (XPathUnaryOpExpr) expression;
+            unaryOp.a = structure.add(intern(unaryOp.a, instanceIds));
+        } else if (expression instanceof XPathFuncExpr) {
+            XPathFuncExpr func = (XPathFuncExpr) expression;
+            structure.add(func.id.hashCode());
+            structure.addAll(func.args, instanceIds);
+            if (instanceIds != null && func.id.name.equals("instance") && func.args.length > 0
+                && func.args[0] instanceof XPathStringLiteral)
+                instanceIds.add(((XPathStringLiteral) func.args[0]).s);
+        } else if (expression instanceof XPathFilterExpr) {
+            XPathFilterExpr filter = (XPathFilterExpr) expression;
+            filter.x = structure.add(intern(filter.x, instanceIds));
+            structure.addAll(filter.predicates, instanceIds);
+        } else if (expression instanceof XPathPathExpr) {
+            XPathPathExpr path = (XPathPathExpr) expression;
+            structure.add(path.init_context);
+            if (path.filtExpr != null)
+                path.filtExpr = (XPathFilterExpr) structure.add(intern(path.filtExpr, instanceIds));
+            for (XPathStep step : path.steps) {
+                structure.add(step.axis);
+                structure.add(step.test);
+                structure.add(Objects.hashCode(step.name) + Objects.hashCode(step.namespace) + Objects.hashCode(step.literal));
+                structure.addAll(step.predicates, instanceIds);
+            }
+        } else if (expression instanceof XPathStringLiteral) {
+            structure.add(((XPathStringLiteral) expression).s.hashCode());
+        } else if (expression instanceof XPathNumericLiteral) {
+            structure.add(Double.hashCode(((XPathNumericLiteral) expression).d));
+        } else if (expression instanceof XPathVariableReference) {
+            structure.add(((XPathVariableReference) expression).id.hashCode());
+        }
+
+        // Functions like now() and random() aren't equal to themselves, so they can't be shared, and neither can
+        // anything that contains them: an expression is equal to itself, so its copies would be evaluated once
+        Subexpression subexpression = new Subexpression(expression, structure.hash,
+            structure.shareable && expression.equals(expression));
+        if (!subexpression.shareable)
+            return subexpression;
+
+        Subexpression shared = subexpressions.get(subexpression);
+        if (shared != null)
+            return shared;
+        if (subexpressions.size() >= MAX_SUBEXPRESSIONS)
+            subexpressions.clear();
+        shared = subexpressions.putIfAbsent(subexpression, subexpression);
+        return shared != null ? shared : subexpression;
+    }
+
+    /**
+     * Accumulates the hash of an expression from its parts and whether all of its subexpressions can be shared.
+     */
+    private static final class Structure {
+        int hash;
+        boolean shareable = true;
+
+        Structure(int hash) {
+            this.hash = hash;
+        }
+
+        void add(int value) {
+            hash = 31 * hash + value;
+        }
+
+        XPathExpression add(Subexpression subexpression) {
+            add(subexpression.hash);
+            shareable &= subexpression.shareable;
+            return subexpression.expression;
+        }
+
+        void addAll(XPathExpression[] expressions, List<String> instanceIds) {
+            for (int i = 0; i < expressions.length; i++)
+                expressions[i] = add(intern(expressions[i], instanceIds));
+        }
+    }
+
+    /**
+     * An expression with a hash that's worked out from its structure once, as {@link XPathExpression#hashCode()}
+     * builds the expression's whole string form every time.
+     */
+    private static final class Subexpression {
+        final XPathExpression expression;
+        final int hash;
+        final boolean shareable;
+
+        Subexpression(XPathExpression expression, int hash, boolean shareable) {
+            this.expression = expression;
+            this.hash = hash;
+            this.shareable = shareable;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Subexpression && hash == ((Subexpression) o).hash
+                && expression.equals(((Subexpression) o).expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Parsed {
+        final XPathExpression expression;
+        final String[] instanceIds;
+
+        Parsed(XPathExpression expression, String[] instanceIds) {
+            this.expression = expression;
+            this.instanceIds = instanceIds;
+        }
+    }
+}
@@ -118,6 +118,11 @@ public class XPathLazyNodeset extends XPathNodeset {
         return super.toArgList();
     }
 
+    public double[] toNumericArgList() {
+        performEvaluation();
+        return super.toNumericArgList();
+    }
+
     public List<TreeReference> getReferences() {
         performEvaluation();
         return super.getReferences();
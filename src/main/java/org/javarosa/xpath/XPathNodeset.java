@@ -1,6 +1,7 @@
 package org.javarosa.xpath;
 
 import org.javarosa.core.model.condition.EvaluationContext;
+import org.javarosa.core.model.data.IAnswerData;
 import org.javarosa.core.model.instance.AbstractTreeElement;
 import org.javarosa.core.model.instance.DataInstance;
 import org.javarosa.core.model.instance.TreeReference;
@@ -136,6 +137,22 @@ public class XPathNodeset {
         return args;
     }
 
+    /**
+     * Returns the values of the nodes converted to numbers, as {@link org.javarosa.xpath.expr.XPathFuncExpr#toNumeric(Object)} would convert
+     * {@link #toArgList()}'s, without boxing numeric answers on the way.
+     */
+    public double[] toNumericArgList() {
+        if(nodes == null) {
+            throw getInvalidNodesetException();
+        }
+
+        double[] args = new double[size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = XPathPathExpr.unpackNumericValue(getAnswerAt(i));
+        }
+        return args;
+    }
+
     public int size () {
         if(nodes == null) {
             return 0;
@@ -174,6 +191,14 @@ public class XPathNodeset {
         return XPathPathExpr.getRefValue(instance, ec, getRefAt(i));
     }
 
+    /**
+     * Returns the answer at the given position, before it's unpacked into a value, or null if the node is empty or
+     * not relevant.
+     */
+    public IAnswerData getAnswerAt(int i) {
+        return XPathPathExpr.getRefAnswer(instance, ec, getRefAt(i));
+    }
+
     private XPathTypeMismatchException getInvalidNodesetException() {
         throw new XPathTypeMismatchException("Location " + null + " was not found");
     }
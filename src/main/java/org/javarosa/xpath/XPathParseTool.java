@@ -17,8 +17,6 @@
 package org.javarosa.xpath;
 
 import org.javarosa.xpath.expr.XPathExpression;
-import org.javarosa.xpath.parser.Lexer;
-import org.javarosa.xpath.parser.Parser;
 import org.javarosa.xpath.parser.XPathSyntaxException;
 
 public class XPathParseTool {
@@ -37,7 +35,11 @@ public class XPathParseTool {
             "org.javarosa.xpath.expr.XPathVariableReference"
     };
 
+    /**
+     * Parses the given expression, or returns the one that was parsed from the same source before. The expression may
+     * be shared and must not be modified.
+     */
     public static XPathExpression parseXPath (String xpath) throws XPathSyntaxException {
-        return Parser.parse(Lexer.lex(xpath));
+        return XPathExpressionCache.parse(xpath);
     }
 }
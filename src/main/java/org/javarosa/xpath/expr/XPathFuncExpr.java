@@ -342,19 +342,19 @@ public class XPathFuncExpr extends XPathExpression {
         } else if (name.equals("sum")) {
             assertArgsCount(name, args, 1);
             if (argVals[0] instanceof XPathNodeset) {
-                return sum(((XPathNodeset) argVals[0]).toArgList());
+                return sum(((XPathNodeset) argVals[0]).toNumericArgList());
             } else {
                 throw new XPathTypeMismatchException("not a nodeset");
             }
         } else if (name.equals("max")) {
             if (args.length == 1 && argVals[0] instanceof XPathNodeset) {
-                return max(((XPathNodeset) argVals[0]).toArgList());
+                return max(((XPathNodeset) argVals[0]).toNumericArgList());
             } else {
                 return max(argVals);
             }
         } else if (name.equals("min")) {
             if (args.length == 1 && argVals[0] instanceof XPathNodeset) {
-                return min(((XPathNodeset) argVals[0]).toArgList());
+                return min(((XPathNodeset) argVals[0]).toNumericArgList());
             } else {
                 return min(argVals);
             }
@@ -494,12 +494,17 @@ public class XPathFuncExpr extends XPathExpression {
             return Math.pow(a, b);
         } else if (name.equals("enclosed-area") || name.equals("area")) {
             assertArgsCount(name, args, 1);
-            List<GeoUtils.LatLong> latLongs = new XPathFuncExprGeo().getGpsCoordinatesFromNodeset(name, argVals[0]);
-            return GeoUtils.calculateAreaOfGPSPolygonOnEarthInSquareMeters(latLongs);
+            double[] coordinates = new XPathFuncExprGeo().getGpsCoordinatesFromNodeset(name, argVals[0]);
+            return GeoUtils.calculateAreaOfGPSPolygonOnEarthInSquareMeters(coordinates);
         } else if (name.equals("distance")) {
-            assertArgsCount(name, args, 1);
-            List<GeoUtils.LatLong> latLongs = new XPathFuncExprGeo().getGpsCoordinatesFromNodeset(name, argVals[0]);
-            return GeoUtils.calculateDistance(latLongs);
+            if (args.length == 0)
+                throw new XPathUnhandledException("function 'distance' requires at least one argument.");
+
+            // A geotrace, geoshape or nodeset of geopoints, or the geopoints themselves as separate arguments
+            double[] coordinates = args.length == 1
+                ? new XPathFuncExprGeo().getGpsCoordinatesFromNodeset(name, argVals[0])
+                : new XPathFuncExprGeo().getGpsCoordinatesFromPoints(name, argVals);
+            return GeoUtils.calculateDistance(coordinates);
         } else if (name.equals("digest") && (args.length == 2 || args.length == 3)) {
             return DigestAlgorithm.from(toString(argVals[1])).digest(
                     toString(argVals[0]),
@@ -1115,16 +1120,27 @@ public class XPathFuncExpr extends XPathExpression {
      * sum the values in a nodeset; each element is coerced to a numeric value
      */
     public static Double sum(Object[] argVals) {
+        return sum(toNumericArgList(argVals));
+    }
+
+    private static Double sum(double[] values) {
         double sum = 0.0;
-        for (Object argVal : argVals) {
-            Double dargVal = toNumeric(argVal);
-            if (!dargVal.isNaN()) {
-                sum += dargVal;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                sum += value;
             }
         }
         return sum;
     }
 
+    private static double[] toNumericArgList(Object[] argVals) {
+        double[] values = new double[argVals.length];
+        for (int i = 0; i < argVals.length; i++) {
+            values[i] = toNumeric(argVals[i]);
+        }
+        return values;
+    }
+
     /**
      * round function like in Excel.
      */
@@ -1168,16 +1184,19 @@ public class XPathFuncExpr extends XPathExpression {
         return numRounded.scaleByPowerOfTen(-numDecimals).doubleValue();
     }
 
+    private static Object max(Object[] argVals) {
+        return max(toNumericArgList(argVals));
+    }
+
     /**
      * Identify the largest value from the list of provided values.
      */
-    private static Object max(Object[] argVals) {
-        double max = Double.MIN_VALUE;
+    private static Object max(double[] values) {
+        double max = Double.NEGATIVE_INFINITY;
         boolean returnNaN = true;
-        for (Object argVal : argVals) {
-            Double dargVal = toNumeric(argVal);
-            if (!dargVal.isNaN()) {
-                max = Math.max(max, dargVal);
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                max = Math.max(max, value);
                 returnNaN = false;
             }
         }
@@ -1185,12 +1204,18 @@ public class XPathFuncExpr extends XPathExpression {
     }
 
     private static Object min(Object[] argVals) {
-        double min = Double.MAX_VALUE;
+        return min(toNumericArgList(argVals));
+    }
+
+    /**
+     * Identify the smallest value from the list of provided values.
+     */
+    private static Object min(double[] values) {
+        double min = Double.POSITIVE_INFINITY;
         boolean returnNaN = true;
-        for (Object argVal : argVals) {
-            Double dargVal = toNumeric(argVal);
-            if (!dargVal.isNaN()) {
-                min = Math.min(min, dargVal);
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                min = Math.min(min, value);
                 returnNaN = false;
             }
         }
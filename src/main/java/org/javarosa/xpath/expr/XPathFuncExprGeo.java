@@ -2,53 +2,100 @@ package org.javarosa.xpath.expr;
 
 import org.javarosa.core.model.data.GeoPointData;
 import org.javarosa.core.model.data.GeoShapeData;
-import org.javarosa.core.model.data.UncastData;
-import org.javarosa.core.util.GeoUtils;
+import org.javarosa.core.model.data.GeoTraceData;
+import org.javarosa.core.model.data.IAnswerData;
 import org.javarosa.xpath.XPathNodeset;
 import org.javarosa.xpath.XPathTypeMismatchException;
 import org.javarosa.xpath.XPathUnhandledException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
 
-/** XPath function expression geographic logic */
+import static org.javarosa.core.model.utils.StringUtils.split;
+
+/**
+ * XPath function expression geographic logic. Coordinates are returned packed into one array, [lat0, lon0, lat1,
+ * lon1...], and read from the coordinates cached on geo answers when there are some, instead of from their text.
+ */
 class XPathFuncExprGeo {
     private static final Logger logger = LoggerFactory.getLogger(XPathFuncExprGeo.class.getSimpleName());
 
-    List<GeoUtils.LatLong> getGpsCoordinatesFromNodeset(String name, Object argVal) {
+    // The most parts a geopoint can have: latitude, longitude, altitude and accuracy
+    private static final int MAX_POINT_PARTS = 4;
+
+    double[] getGpsCoordinatesFromNodeset(String name, Object argVal) {
         if (!(argVal instanceof XPathNodeset)) {
             throw new XPathUnhandledException("function \'" + name + "\' requires a field as the parameter.");
         }
-        Object[] argList = ((XPathNodeset) argVal).toArgList();
-        int repeatSize = argList.length;
-
-        final List<GeoUtils.LatLong> latLongs = new ArrayList<>();
+        XPathNodeset nodeset = (XPathNodeset) argVal;
+        int repeatSize = nodeset.size();
 
         if (repeatSize == 1) {
             // Try to determine if the argument is of type GeoShapeData
-            try {
-                GeoShapeData geoShapeData = new GeoShapeData().cast(new UncastData(XPathFuncExpr.toString(argList[0])));
-                for (GeoPointData point : geoShapeData.points) {
-                    latLongs.add(new GeoUtils.LatLong(point.getPart(0), point.getPart(1)));
-                }
-            } catch (Exception e) {
-                throwMismatch(name);
+            IAnswerData answer = nodeset.getAnswerAt(0);
+            if (answer instanceof GeoShapeData) {
+                return ((GeoShapeData) answer).getCoordinates();
+            } else if (answer instanceof GeoTraceData) {
+                return ((GeoTraceData) answer).getCoordinates();
+            } else if (answer instanceof GeoPointData) {
+                return new double[]{((GeoPointData) answer).getLatitude(), ((GeoPointData) answer).getLongitude()};
             }
-        } else if (repeatSize >= 2) {
+
+            String[] parts = XPathFuncExpr.toString(XPathPathExpr.unpackValue(answer)).split(";");
+            double[] coordinates = new double[2 * parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                // allow for arbitrary surrounding whitespace
+                parsePoint(name, parts[i].trim(), coordinates, 2 * i);
+            }
+            return coordinates;
+        } else {
             // treat the input as a series of GeoPointData
+            double[] coordinates = new double[2 * repeatSize];
+            for (int i = 0; i < repeatSize; i++) {
+                IAnswerData answer = nodeset.getAnswerAt(i);
+                if (answer instanceof GeoPointData) {
+                    coordinates[2 * i] = ((GeoPointData) answer).getLatitude();
+                    coordinates[2 * i + 1] = ((GeoPointData) answer).getLongitude();
+                } else {
+                    parsePoint(name, XPathFuncExpr.toString(XPathPathExpr.unpackValue(answer)), coordinates, 2 * i);
+                }
+            }
+            return coordinates;
+        }
+    }
+
+    /**
+     * Returns the coordinates of each argument, which must all be single geopoints.
+     */
+    double[] getGpsCoordinatesFromPoints(String name, Object[] argVals) {
+        double[] coordinates = new double[2 * argVals.length];
+        for (int i = 0; i < argVals.length; i++) {
+            parsePoint(name, XPathFuncExpr.toString(argVals[i]), coordinates, 2 * i);
+        }
+        return coordinates;
+    }
+
+    /**
+     * Parses a geopoint the same way {@link GeoPointData#cast} does and stores its latitude and longitude in the
+     * given array.
+     */
+    private void parsePoint(String name, String value, double[] coordinates, int offset) {
+        List<String> parts = split(value, " ", true);
+        if (parts.size() > MAX_POINT_PARTS) {
+            throwMismatch(name);
+        }
 
-            for (Object arg : argList) {
-                try {
-                    GeoPointData geoPointData = new GeoPointData().cast(new UncastData(XPathFuncExpr.toString(arg)));
-                    latLongs.add(new GeoUtils.LatLong(geoPointData.getPart(0), geoPointData.getPart(1)));
-                } catch (Exception e) {
-                    throwMismatch(name);
+        try {
+            for (int i = 0; i < parts.size(); i++) {
+                double part = Double.parseDouble(parts.get(i));
+                if (i < 2) {
+                    coordinates[offset + i] = part;
                 }
             }
+        } catch (NumberFormatException e) {
+            throwMismatch(name);
         }
-        return latLongs;
     }
 
     private void throwMismatch(String name) {
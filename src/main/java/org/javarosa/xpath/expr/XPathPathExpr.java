@@ -67,7 +67,7 @@ public class XPathPathExpr extends XPathExpression {
     public XPathStep[] steps;
 
     //for INIT_CONTEXT_EXPR only
-    XPathFilterExpr filtExpr;
+    public XPathFilterExpr filtExpr;
 
     public XPathPathExpr() {
     } //for deserialization
@@ -213,11 +213,26 @@ public class XPathPathExpr extends XPathExpression {
     }
 
     public static Object getRefValue(DataInstance model, EvaluationContext ec, TreeReference ref) {
+        IAnswerData answer = getRefAnswer(model, ec, ref);
+        Object result = unpackValue(answer);
+        if (answer == null) {
+            logger.trace("getRefValue returning empty node value for {}", ref);
+        } else if (answer == ec.candidateValue && ec.isConstraint) {
+            logger.trace("getRefValue returning candidate value {} for {}", result, ref);
+        } else {
+            logger.trace("getRefValue returning node value {} for {}", result, ref);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the answer {@link #getRefValue(DataInstance, EvaluationContext, TreeReference)} unpacks, or null if
+     * the node is empty or not relevant.
+     */
+    public static IAnswerData getRefAnswer(DataInstance model, EvaluationContext ec, TreeReference ref) {
         if (ec.isConstraint && ref.equals(ec.getContextRef())) {
             //ITEMSET TODO: need to update this; for itemset/copy constraints, need to simulate a whole xml sub-tree here
-            Object result = unpackValue(ec.candidateValue);
-            logger.trace("getRefValue returning candidate value {} for {}", result, ref);
-            return result;
+            return ec.candidateValue;
         }
         AbstractTreeElement node = model.resolveReference(ref);
         if (node == null) {
@@ -225,14 +240,25 @@ public class XPathPathExpr extends XPathExpression {
             throw new XPathTypeMismatchException("Node " + ref + " does not exist!");
         }
 
-        IAnswerData maybeNodeValue = node.isRelevant() ? node.getValue() : null;
-        Object result = unpackValue(maybeNodeValue);
-        if (maybeNodeValue == null) {
-            logger.trace("getRefValue returning empty node value for {}", ref);
+        return node.isRelevant() ? node.getValue() : null;
+    }
+
+    /**
+     * Returns the number {@link #unpackValue(IAnswerData)} would be converted to, reading numeric and boolean answers
+     * without boxing them.
+     */
+    public static double unpackNumericValue(IAnswerData val) {
+        if (val instanceof IntegerData) {
+            return ((IntegerData) val).getDouble();
+        } else if (val instanceof LongData) {
+            return ((LongData) val).getDouble();
+        } else if (val instanceof DecimalData) {
+            return ((DecimalData) val).getDouble();
+        } else if (val instanceof BooleanData) {
+            return ((BooleanData) val).getBoolean() ? 1 : 0;
         } else {
-            logger.trace("getRefValue returning node value {} for {}", result, ref);
+            return XPathFuncExpr.toNumeric(unpackValue(val));
         }
-        return result;
     }
 
     public static Object unpackValue(IAnswerData val) {
@@ -241,9 +267,9 @@ public class XPathPathExpr extends XPathExpression {
         } else if (val instanceof UncastData) {
             return val.getValue();
         } else if (val instanceof IntegerData) {
-            return ((Integer) val.getValue()).doubleValue();
+            return ((IntegerData) val).getDouble();
         } else if (val instanceof LongData) {
-            return ((Long) val.getValue()).doubleValue();
+            return ((LongData) val).getDouble();
         } else if (val instanceof DecimalData) {
             return val.getValue();
         } else if (val instanceof StringData) {
@@ -20,6 +20,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.javarosa.core.util.DataUtil;
 import org.javarosa.core.util.externalizable.DeserializationException;
 import org.javarosa.core.util.externalizable.ExtUtil;
 import org.javarosa.core.util.externalizable.ExtWrapNullable;
@@ -55,8 +56,8 @@ public class XPathQName implements Externalizable {
                 (namespace != null && namespace.length() == 0))
             throw new IllegalArgumentException("Invalid QName");
 
-        this.namespace = namespace;
-        this.name = name;
+        this.namespace = DataUtil.name(namespace);
+        this.name = DataUtil.name(name);
     }
 
     public String toString () {
@@ -73,8 +74,8 @@ public class XPathQName implements Externalizable {
     }
 
     public void readExternal(DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
-        namespace = (String)ExtUtil.read(in, new ExtWrapNullable(String.class));
-        name = ExtUtil.readString(in);
+        namespace = DataUtil.name((String)ExtUtil.read(in, new ExtWrapNullable(String.class)));
+        name = DataUtil.name(ExtUtil.readString(in));
     }
 
     public void writeExternal(DataOutputStream out) throws IOException {
@@ -101,6 +101,23 @@ public class TextFormTests {
 
     }
 
+    @Test
+    public void testTextWithNoLocaleSet() {
+        FormEntryController fec = fpi.getFormEntryController();
+        fec.jumpToIndex(FormIndex.createBeginningOfFormIndex());
+        fpi.getFormDef().setLocalizer(new Localizer());
+
+        int state = -99;
+        while(state != FormEntryController.EVENT_QUESTION){
+            state = fec.stepToNextEvent();
+        }
+        fep = fec.getModel().getQuestionPrompt();
+
+        assertNull(fep.getLongText());
+        assertNull(fep.getShortText());
+        assertNull(fep.getAudioText());
+    }
+
     @Test
     public void testNonLocalizedText(){
         FormEntryController fec = fpi.getFormEntryController();
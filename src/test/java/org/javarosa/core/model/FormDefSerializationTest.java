@@ -19,6 +19,7 @@ package org.javarosa.core.model;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.fail;
 import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
 import static org.javarosa.core.util.XFormsElement.body;
 import static org.javarosa.core.util.XFormsElement.head;
@@ -26,12 +27,23 @@ import static org.javarosa.core.util.XFormsElement.html;
 import static org.javarosa.core.util.XFormsElement.input;
 import static org.javarosa.core.util.XFormsElement.mainInstance;
 import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.repeat;
 import static org.javarosa.core.util.XFormsElement.t;
 import static org.javarosa.core.util.XFormsElement.title;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import org.javarosa.core.services.PrototypeManager;
 import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.JavaRosaCoreModule;
 import org.javarosa.core.util.externalizable.DeserializationException;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.measure.InMemoryMetricsRegistry;
+import org.javarosa.measure.Metrics;
+import org.javarosa.model.xform.XFormsModule;
 import org.javarosa.xform.parse.ParseException;
 import org.junit.Test;
 
@@ -77,6 +89,111 @@ public class FormDefSerializationTest {
         assertThat(deserialized.getFormDef().getMainInstance().getBase().getInstanceName(), is(nullValue()));
     }
 
+    @Test public void dag_isRestored_insteadOfBeingBuiltAgain() throws IOException, DeserializationException, ParseException {
+        Scenario scenario = getCascadesScenario();
+
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        Metrics.setRegistry(registry);
+        try {
+            Scenario deserialized = scenario.serializeAndDeserializeForm();
+            assertThat(registry.getCounter(Metrics.DAG_BUILDS).getCount(), is(0L));
+
+            deserialized.createNewRepeat("/data/repeat");
+            assertThat(deserialized.answerOf("/data/c").getDisplayText(), is("7"));
+            assertThat(deserialized.answerOf("/data/repeat[0]/d").getDisplayText(), is("70"));
+
+            deserialized.answer("/data/a", 1);
+            assertThat(deserialized.answerOf("/data/b").getDisplayText(), is("2"));
+            assertThat(deserialized.answerOf("/data/c").getDisplayText(), is("3"));
+            assertThat(deserialized.getAnswerNode("/data/repeat[0]").isRelevant(), is(false));
+        } finally {
+            Metrics.setRegistry(null);
+        }
+    }
+
+    @Test public void formDef_serializedWithAnotherFormatVersion_isRejected() throws IOException, ParseException {
+        byte[] form = serialize(getCascadesScenario().getFormDef());
+
+        // The header is followed by the version
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(form));
+        long header = ExtUtil.readNumeric(in);
+        ExtUtil.readNumeric(in);
+        byte[] rest = new byte[in.available()];
+        in.readFully(rest);
+
+        ByteArrayOutputStream otherVersion = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(otherVersion);
+        ExtUtil.writeNumeric(dos, header);
+        ExtUtil.writeNumeric(dos, 0);
+        dos.write(rest);
+        dos.flush();
+
+        assertRejected(otherVersion.toByteArray());
+    }
+
+    @Test public void formDef_serializedBeforeTheFormatWasVersioned_isRejected() throws IOException, ParseException {
+        FormDef formDef = getCascadesScenario().getFormDef();
+        byte[] form = serialize(formDef);
+
+        // Older versions started with the form ID
+        ByteArrayOutputStream older = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(older);
+        ExtUtil.writeNumeric(dos, formDef.getID());
+        ExtUtil.writeString(dos, ExtUtil.emptyIfNull(formDef.getName()));
+        dos.flush();
+        older.write(form, 0, form.length);
+
+        assertRejected(older.toByteArray());
+    }
+
+    private static byte[] serialize(FormDef formDef) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        formDef.writeExternal(dos);
+        dos.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void assertRejected(byte[] form) throws IOException {
+        PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+        PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+        new XFormsModule().registerModule();
+        try {
+            new FormDef().readExternal(new DataInputStream(new ByteArrayInputStream(form)), PrototypeManager.getDefault());
+            fail("Expected the form definition to be rejected");
+        } catch (DeserializationException e) {
+            // Expected
+        }
+    }
+
+    private static Scenario getCascadesScenario() throws IOException, ParseException {
+        return Scenario.init("Cascades", html(
+            head(
+                title("Cascades"),
+                model(
+                    mainInstance(t("data id=\"cascades\"",
+                        t("a", "3"),
+                        t("b"),
+                        t("c"),
+                        t("repeat jr:template=\"\"",
+                            t("d")
+                        )
+                    )),
+                    bind("/data/a").type("int"),
+                    bind("/data/b").type("int").calculate("/data/a * 2"),
+                    bind("/data/c").type("int").calculate("/data/b + 1"),
+                    bind("/data/repeat").relevant("/data/c > 5"),
+                    bind("/data/repeat/d").type("int").calculate("/data/c * 10")
+                )
+            ),
+            body(
+                input("/data/a"),
+                repeat("/data/repeat",
+                    input("/data/repeat/d")
+                )
+            )));
+    }
+
     private static Scenario getSimplestFormScenario() throws IOException, ParseException {
         return Scenario.init("Simplest", html(
             head(
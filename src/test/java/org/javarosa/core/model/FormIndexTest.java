@@ -2,10 +2,20 @@ package org.javarosa.core.model;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.nullValue;
 import static org.javarosa.core.model.FormIndex.createBeginningOfFormIndex;
+import static org.javarosa.core.model.FormIndex.createEndOfFormIndex;
 import static org.javarosa.core.test.Scenario.getRef;
 
 public class FormIndexTest {
@@ -97,4 +107,113 @@ public class FormIndexTest {
         );
         assertThat(repeatThenRepeatThenQuestionIndex.getPreviousLevel(), is(innerRepeatIndex));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fromLevels_isTheSameAsTheChainOfLevels() {
+        FormIndex chain = new FormIndex(
+            new FormIndex(
+                new FormIndex(4, getRef("/data/group/repeat[2]/question")),
+                1,
+                2,
+                getRef("/data/group/repeat[2]")),
+            3,
+            getRef("/data/group")
+        );
+
+        FormIndex flat = FormIndex.fromLevels(new int[]{3, -1, 1, 2, 4, -1}, level -> chain.getReference());
+
+        assertThat(flat, is(chain));
+        assertThat(flat.hashCode(), is(chain.hashCode()));
+        assertThat(flat.toString(), is("3, 1_2, 4, "));
+        assertThat(flat.getDepth(), is(3));
+        assertThat(flat.getNextLevel().getLocalIndex(), is(1));
+        assertThat(flat.getNextLevel().getInstanceIndex(), is(2));
+        assertThat(flat.getTerminal().getLocalIndex(), is(4));
+        assertThat(flat.getElementMultiplicity(), is(-1));
+    }
+
+    @Test
+    public void fromLevels_onlyAsksForTheReferencesThatAreUsed() {
+        List<Integer> asked = new ArrayList<>();
+        FormIndex index = FormIndex.fromLevels(new int[]{3, -1, 1, 2, 4, -1}, level -> {
+            asked.add(level);
+            return getRef("/data/level" + level);
+        });
+
+        assertThat(index.getNextLevel().getLocalIndex(), is(1));
+        assertThat(asked.size(), is(0));
+
+        assertThat(index.getReference(), is(getRef("/data/level2")));
+        assertThat(index.getPreviousLevel().getReference(), is(getRef("/data/level1")));
+        assertThat(index.getReference(), is(getRef("/data/level2")));
+        assertThat(asked.size(), is(2));
+    }
+
+    @Test
+    public void compareTo_ordersIndexesInDocumentOrder() {
+        FormIndex group = FormIndex.fromLevels(new int[]{1, -1}, level -> null);
+        FormIndex firstInGroup = FormIndex.fromLevels(new int[]{1, -1, 0, -1}, level -> null);
+        FormIndex firstRepeat = FormIndex.fromLevels(new int[]{1, -1, 1, 0}, level -> null);
+        FormIndex inFirstRepeat = FormIndex.fromLevels(new int[]{1, -1, 1, 0, 0, -1}, level -> null);
+        FormIndex secondRepeat = FormIndex.fromLevels(new int[]{1, -1, 1, 1}, level -> null);
+        FormIndex afterGroup = FormIndex.fromLevels(new int[]{2, -1}, level -> null);
+
+        FormIndex[] ordered = {createBeginningOfFormIndex(), group, firstInGroup, firstRepeat, inFirstRepeat,
+            secondRepeat, afterGroup, createEndOfFormIndex()};
+        for (int i = 0; i < ordered.length; i++) {
+            for (int j = 0; j < ordered.length; j++) {
+                int comparison = ordered[i].compareTo(ordered[j]);
+                if (i < j)
+                    assertThat(comparison, lessThan(0));
+                else if (i > j)
+                    assertThat(comparison, greaterThan(0));
+                else
+                    assertThat(comparison, is(0));
+            }
+        }
+    }
+
+    @Test
+    public void diff_returnsTheLevelsBeforeTheSubIndex() {
+        FormIndex index = FormIndex.fromLevels(new int[]{1, 0, 2, -1, 1, -1, 3, -1}, level -> getRef("/data/level" + level));
+
+        FormIndex diff = index.diff(FormIndex.fromLevels(new int[]{1, -1, 3, -1}, level -> null));
+
+        assertThat(diff, is(FormIndex.fromLevels(new int[]{1, 0, 2, -1}, level -> null)));
+        assertThat(diff.getReference(), is(getRef("/data/level1")));
+        assertThat(index.diff(index), is(nullValue()));
+        assertThat(index.diff(null), is(index));
+        assertThat(index.diff(FormIndex.fromLevels(new int[]{2, -1}, level -> null)), is(nullValue()));
+        assertThat(FormIndex.isSubIndex(index, index.getNextLevel().getNextLevel()), is(true));
+        assertThat(FormIndex.isSubIndex(index, index.getPreviousLevel()), is(false));
+    }
+
+    @Test
+    public void isSubElement_isTrueForIndexesInTheParentElement() {
+        FormIndex repeat = FormIndex.fromLevels(new int[]{1, -1, 2, 1}, level -> null);
+        FormIndex anyRepeat = FormIndex.fromLevels(new int[]{1, -1, 2, -1}, level -> null);
+
+        assertThat(FormIndex.isSubElement(repeat, FormIndex.fromLevels(new int[]{1, -1, 2, 1, 0, -1}, level -> null)), is(true));
+        assertThat(FormIndex.isSubElement(repeat, FormIndex.fromLevels(new int[]{1, -1, 2, 0, 0, -1}, level -> null)), is(false));
+        assertThat(FormIndex.isSubElement(anyRepeat, FormIndex.fromLevels(new int[]{1, -1, 2, 0, 0, -1}, level -> null)), is(true));
+        assertThat(FormIndex.isSubElement(repeat, FormIndex.fromLevels(new int[]{1, -1}, level -> null)), is(false));
+    }
+
+    @Test
+    public void serializing_keepsTheReferencesOfLazyIndexes() throws Exception {
+        FormIndex index = FormIndex.fromLevels(new int[]{1, -1, 2, 0}, level -> getRef("/data/level" + level));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(index);
+        }
+        FormIndex deserialized;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = (FormIndex) in.readObject();
+        }
+
+        assertThat(deserialized, is(index));
+        assertThat(deserialized.getReference(), is(getRef("/data/level1")));
+        assertThat(deserialized.getPreviousLevel().getReference(), is(getRef("/data/level0")));
+    }
+}
@@ -0,0 +1,135 @@
+package org.javarosa.core.model;
+
+import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.GeoUtils;
+import org.javarosa.core.util.GeoUtils.LatLong;
+import org.javarosa.core.util.XFormsElement;
+import org.javarosa.measure.InMemoryMetricsRegistry;
+import org.javarosa.measure.Metrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.StringJoiner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.instance;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.select1Dynamic;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+
+public class GeoDistancePredicateFilterTest {
+    private static final int FACILITIES = 500;
+
+    private final LatLong[] facilities = new LatLong[FACILITIES];
+
+    @After
+    public void tearDown() {
+        Metrics.setRegistry(null);
+    }
+
+    @Test
+    public void distancePredicates_areAnsweredFromTheIndex_withTheSameResultsAsEvaluation() throws Exception {
+        Scenario scenario = Scenario.init("Nearby facilities", form());
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        Metrics.setRegistry(registry);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            LatLong location = new LatLong(random.nextDouble(), 30 + random.nextDouble());
+            double radius = random.nextDouble() * 20_000;
+            scenario.answer("/data/radius", String.valueOf(radius));
+            scenario.answer("/data/location", location.getLatitude() + " " + location.getLongitude() + " 0 0");
+
+            assertThat(getText(scenario, "/data/within"), is(expectedWithin(location, radius, true)));
+            assertThat(getText(scenario, "/data/within_reversed"), is(expectedWithin(location, radius, false)));
+        }
+
+        assertThat(registry.getCounter(Metrics.predicateFilterMisses(GeoDistancePredicateFilter.class)).getCount(), is(0L));
+        assertThat(registry.getCounter(Metrics.PREDICATE_EVALUATIONS).getCount(), is(0L));
+    }
+
+    @Test
+    public void distancePredicates_inItemsets_areAnsweredFromTheIndex() throws Exception {
+        Scenario scenario = Scenario.init("Nearby facilities", form());
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        Metrics.setRegistry(registry);
+
+        Random random = new Random(43);
+        for (int i = 0; i < 20; i++) {
+            LatLong location = new LatLong(random.nextDouble(), 30 + random.nextDouble());
+            double radius = random.nextDouble() * 20_000;
+            scenario.answer("/data/radius", String.valueOf(radius));
+            scenario.answer("/data/location", location.getLatitude() + " " + location.getLongitude() + " 0 0");
+
+            StringJoiner choices = new StringJoiner(" ");
+            for (SelectChoice choice : scenario.choicesOf("/data/facility"))
+                choices.add(choice.getValue());
+            assertThat(choices.toString(), is(expectedWithin(location, radius, true)));
+        }
+
+        assertThat(registry.getCounter(Metrics.predicateFilterMisses(GeoDistancePredicateFilter.class)).getCount(), is(0L));
+        assertThat(registry.getCounter(Metrics.PREDICATE_EVALUATIONS).getCount(), is(0L));
+    }
+
+    private static String getText(Scenario scenario, String xpath) {
+        return scenario.answerOf(xpath) == null ? "" : scenario.answerOf(xpath).getDisplayText();
+    }
+
+    private String expectedWithin(LatLong location, double radius, boolean facilityFirst) {
+        StringJoiner ids = new StringJoiner(" ");
+        for (int i = 0; i < FACILITIES; i++) {
+            double distance = facilityFirst
+                ? GeoUtils.distanceBetween(facilities[i], location)
+                : GeoUtils.distanceBetween(location, facilities[i]);
+            if (facilityFirst ? distance < radius : distance <= radius)
+                ids.add(String.valueOf(i));
+        }
+        return ids.toString();
+    }
+
+    private XFormsElement form() {
+        Random random = new Random(7);
+        XFormsElement[] items = new XFormsElement[FACILITIES];
+        for (int i = 0; i < FACILITIES; i++) {
+            facilities[i] = new LatLong(random.nextDouble(), 30 + random.nextDouble());
+            items[i] = t("item",
+                t("id", String.valueOf(i)),
+                t("geometry", facilities[i].getLatitude() + " " + facilities[i].getLongitude() + " 0 0"));
+        }
+
+        return html(
+            head(
+                title("Nearby facilities"),
+                model(
+                    mainInstance(t("data id=\"nearby-facilities\"",
+                        t("radius", "0"),
+                        t("location", "0 30 0 0"),
+                        t("within"),
+                        t("within_reversed"),
+                        t("facility")
+                    )),
+                    instance("facilities", items),
+                    bind("/data/radius").type("string"),
+                    bind("/data/location").type("string"),
+                    bind("/data/within").type("string")
+                        .calculate("join(' ', instance('facilities')/root/item[distance(geometry, /data/location) < /data/radius]/id)"),
+                    bind("/data/within_reversed").type("string")
+                        .calculate("join(' ', instance('facilities')/root/item[/data/radius >= distance(/data/location, geometry)]/id)")
+                )),
+            body(
+                input("/data/radius"),
+                input("/data/location"),
+                select1Dynamic("/data/facility", "instance('facilities')/root/item[distance(geometry,/data/location)&lt;/data/radius]", "id", "id")
+            )
+        );
+    }
+}
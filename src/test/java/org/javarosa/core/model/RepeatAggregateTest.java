@@ -0,0 +1,212 @@
+package org.javarosa.core.model;
+
+import org.javarosa.core.model.data.IAnswerData;
+import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.XFormsElement;
+import org.javarosa.xform.parse.ParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static java.util.stream.IntStream.range;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.javarosa.core.test.AnswerDataMatchers.intAnswer;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.repeat;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+
+/**
+ * Each form binds an aggregate that is maintained incrementally next to the same aggregate wrapped in an expression
+ * that can't be, so that every step can be checked against the full evaluation.
+ */
+public class RepeatAggregateTest {
+    @Test
+    public void sum_isUpdated_whenRepeatInstancesAreAddedChangedAndRemoved() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("Repeat aggregates", form("int", "sum"));
+
+        range(0, 5).forEach(n -> {
+            scenario.createNewRepeat("/data/repeat");
+            scenario.answer("/data/repeat[" + n + "]/number", n + 1);
+        });
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(15)));
+        assertMatchesFullEvaluation(scenario);
+
+        scenario.answer("/data/repeat[2]/number", 10);
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(22)));
+        assertMatchesFullEvaluation(scenario);
+
+        scenario.removeRepeat("/data/repeat[1]");
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(20)));
+        assertMatchesFullEvaluation(scenario);
+
+        // The instance that used to be /data/repeat[2] is now /data/repeat[1]
+        scenario.answer("/data/repeat[1]/number", 1);
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(11)));
+        assertMatchesFullEvaluation(scenario);
+    }
+
+    @Test
+    public void count_isUpdated_whenRepeatInstancesAreAddedAndRemoved() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("Repeat aggregates", form("int", "count"));
+
+        range(0, 5).forEach(n -> scenario.createNewRepeat("/data/repeat"));
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(5)));
+        assertMatchesFullEvaluation(scenario);
+
+        scenario.removeRepeat("/data/repeat[0]");
+        scenario.removeRepeat("/data/repeat[0]");
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(3)));
+        assertMatchesFullEvaluation(scenario);
+    }
+
+    @Test
+    public void maxAndMin_areUpdated_whenTheExtremeValueIsChangedOrRemoved() throws IOException, ParseException {
+        for (String function : new String[]{"max", "min"}) {
+            Scenario scenario = Scenario.init("Repeat aggregates", form("int", function));
+
+            range(0, 5).forEach(n -> {
+                scenario.createNewRepeat("/data/repeat");
+                scenario.answer("/data/repeat[" + n + "]/number", n * 3 % 5);
+            });
+            assertMatchesFullEvaluation(scenario);
+
+            scenario.answer("/data/repeat[0]/number", 7);
+            assertMatchesFullEvaluation(scenario);
+
+            scenario.removeRepeat("/data/repeat[0]");
+            assertMatchesFullEvaluation(scenario);
+
+            // All negative
+            range(0, 4).forEach(n -> scenario.answer("/data/repeat[" + n + "]/number", -1 - n));
+            assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(function.equals("max") ? -1 : -4)));
+            assertMatchesFullEvaluation(scenario);
+
+            range(0, 4).forEach(n -> scenario.removeRepeat("/data/repeat[0]"));
+            assertMatchesFullEvaluation(scenario);
+        }
+    }
+
+    @Test
+    public void nonRelevantValues_areLeftOut() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("Repeat aggregates", form("int", "sum"));
+
+        range(0, 3).forEach(n -> {
+            scenario.createNewRepeat("/data/repeat");
+            scenario.answer("/data/repeat[" + n + "]/number", 5);
+        });
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(15)));
+
+        scenario.answer("/data/repeat[1]/include", "no");
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(10)));
+        assertMatchesFullEvaluation(scenario);
+
+        scenario.answer("/data/repeat[1]/include", "yes");
+        assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(15)));
+        assertMatchesFullEvaluation(scenario);
+    }
+
+    @Test
+    public void nonRelevantRepeatInstances_areLeftOut_likeInFullEvaluation() throws IOException, ParseException {
+        for (String function : new String[]{"count", "sum", "max", "min"}) {
+            Scenario scenario = Scenario.init("Repeat aggregates", form("int", function, "/data/repeat", "/data/skip != 'yes'"));
+
+            range(0, 3).forEach(n -> {
+                scenario.createNewRepeat("/data/repeat");
+                scenario.answer("/data/repeat[" + n + "]/number", n + 1);
+            });
+            assertMatchesFullEvaluation(scenario);
+
+            scenario.answer("/data/skip", "yes");
+            assertThat(scenario.getAnswerNode("/data/repeat[1]/number").isRelevant(), is(false));
+            if (function.equals("count")) {
+                assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(0)));
+            }
+            assertMatchesFullEvaluation(scenario);
+
+            scenario.answer("/data/skip", "no");
+            if (function.equals("count")) {
+                assertThat(scenario.answerOf("/data/aggregate"), is(intAnswer(3)));
+            }
+            assertMatchesFullEvaluation(scenario);
+        }
+    }
+
+    @Test
+    public void sumOfDecimals_matchesFullEvaluation() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("Repeat aggregates", form("decimal", "sum"));
+
+        range(0, 10).forEach(n -> {
+            scenario.createNewRepeat("/data/repeat");
+            scenario.answer("/data/repeat[" + n + "]/number", "0.1");
+        });
+        assertMatchesFullEvaluation(scenario);
+
+        scenario.removeRepeat("/data/repeat[4]");
+        scenario.answer("/data/repeat[2]/number", "3");
+        assertMatchesFullEvaluation(scenario);
+    }
+
+    @Test
+    public void aggregate_isRebuilt_afterFormIsDeserialized() throws Exception {
+        Scenario scenario = Scenario.init("Repeat aggregates", form("int", "sum"));
+
+        range(0, 3).forEach(n -> {
+            scenario.createNewRepeat("/data/repeat");
+            scenario.answer("/data/repeat[" + n + "]/number", 2);
+        });
+
+        Scenario deserialized = scenario.serializeAndDeserializeForm();
+        deserialized.createNewRepeat("/data/repeat");
+        deserialized.answer("/data/repeat[3]/number", 2);
+        assertThat(deserialized.answerOf("/data/aggregate"), is(intAnswer(8)));
+        assertMatchesFullEvaluation(deserialized);
+    }
+
+    private static void assertMatchesFullEvaluation(Scenario scenario) {
+        assertThat(displayText(scenario.answerOf("/data/aggregate")), is(displayText(scenario.answerOf("/data/reference"))));
+    }
+
+    private static String displayText(IAnswerData answer) {
+        return answer == null ? null : answer.getDisplayText();
+    }
+
+    private static XFormsElement form(String type, String function) {
+        return form(type, function, "/data/repeat/number", "../include = 'yes'");
+    }
+
+    private static XFormsElement form(String type, String function, String relevantRef, String relevant) {
+        String aggregate = function + "(/data/repeat/number)";
+        return html(
+            head(
+                title("Repeat aggregates"),
+                model(
+                    mainInstance(t("data id=\"repeat-aggregates\"",
+                        t("aggregate"),
+                        t("reference"),
+                        t("skip"),
+                        t("repeat jr:template=\"\"",
+                            t("include", "yes"),
+                            t("number"))
+                    )),
+                    bind("/data/aggregate").type(type).calculate(aggregate),
+                    // Not a top level function call so it's always fully evaluated
+                    bind("/data/reference").type(type).calculate(aggregate + " + 0"),
+                    bind("/data/repeat/number").type(type),
+                    bind(relevantRef).relevant(relevant)
+                )),
+            body(
+                input("/data/skip"),
+                repeat("/data/repeat",
+                    input("/data/repeat/include"),
+                    input("/data/repeat/number"))
+            ));
+    }
+}
@@ -1,6 +1,7 @@
 package org.javarosa.core.model;
 
 import static org.hamcrest.Matchers.is;
+import static org.javarosa.core.test.AnswerDataMatchers.intAnswer;
 import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
 import static org.javarosa.core.util.XFormsElement.body;
 import static org.javarosa.core.util.XFormsElement.head;
@@ -11,12 +12,18 @@ import static org.javarosa.core.util.XFormsElement.mainInstance;
 import static org.javarosa.core.util.XFormsElement.model;
 import static org.javarosa.core.util.XFormsElement.repeat;
 import static org.javarosa.core.util.XFormsElement.select1;
+import static org.javarosa.core.util.XFormsElement.setvalue;
 import static org.javarosa.core.util.XFormsElement.t;
 import static org.javarosa.core.util.XFormsElement.title;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.XFormsElement;
+import org.javarosa.debug.Event;
 import org.javarosa.form.api.FormEntryController;
+import org.javarosa.model.xform.XFormSerializingVisitor;
 import org.junit.Test;
 
 public class RepeatTest {
@@ -104,4 +111,113 @@ public class RepeatTest {
 
         assertThat(event, is(FormEntryController.EVENT_END_OF_FORM));
     }
+
+    @Test
+    public void createNewRepeats_producesTheSameInstanceAsCreatingTheRepeatsOneByOne() throws Exception {
+        Scenario oneByOne = Scenario.init("Bulk repeat creation", bulkRepeatForm());
+        Scenario bulk = Scenario.init("Bulk repeat creation", bulkRepeatForm());
+
+        for (int i = 0; i < 5; i++)
+            oneByOne.createNewRepeat("/data/repeat");
+
+        bulk.next();
+        bulk.createNewRepeats(5);
+
+        assertThat(bulk.countRepeatInstancesOf("/data/repeat"), is(5));
+        assertThat(bulk.answerOf("/data/count"), is(intAnswer(5)));
+        assertThat(bulk.answerOf("/data/repeat[2]/position"), is(intAnswer(3)));
+        assertThat(bulk.answerOf("/data/repeat[4]/inner-count"), is(intAnswer(5)));
+        assertThat(serialize(bulk), is(serialize(oneByOne)));
+    }
+
+    @Test
+    public void createNewRepeats_evaluatesTriggerablesAffectingAllInstancesOnce() throws Exception {
+        List<Event> dagEvents = new ArrayList<>();
+        Scenario scenario = Scenario.init("Bulk repeat creation", bulkRepeatForm()).onDagEvent(dagEvents::add);
+
+        scenario.next();
+        dagEvents.clear();
+        scenario.createNewRepeats(10);
+
+        // Once when the instances are created and once when they are initialized, like for a single instance
+        long positionEvaluations = dagEvents.stream().filter(event -> event.getDisplayMessage().contains("position")).count();
+        assertThat(positionEvaluations, is(2L));
+        assertThat(scenario.answerOf("/data/repeat[9]/position"), is(intAnswer(10)));
+    }
+
+    @Test
+    public void createNewRepeats_runsNewRepeatActions_likeCreatingTheRepeatsOneByOne() throws Exception {
+        Scenario oneByOne = Scenario.init("Bulk repeat creation", bulkRepeatFormWithNewRepeatAction());
+        Scenario bulk = Scenario.init("Bulk repeat creation", bulkRepeatFormWithNewRepeatAction());
+
+        for (int i = 0; i < 5; i++)
+            oneByOne.createNewRepeat("/data/repeat");
+
+        bulk.next();
+        bulk.createNewRepeats(5);
+
+        // The action sees the count as updated for the instances created before
+        assertThat(bulk.answerOf("/data/repeat[0]/count-before"), is(intAnswer(0)));
+        assertThat(bulk.answerOf("/data/repeat[4]/count-before"), is(intAnswer(4)));
+        assertThat(serialize(bulk), is(serialize(oneByOne)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createNewRepeats_rejectsANegativeCount() throws Exception {
+        Scenario scenario = Scenario.init("Bulk repeat creation", bulkRepeatForm());
+
+        scenario.next();
+        scenario.createNewRepeats(-1);
+    }
+
+    private static XFormsElement bulkRepeatForm() {
+        return html(
+            head(
+                title("Bulk repeat creation"),
+                model(
+                    mainInstance(t("data id=\"bulk-repeat-creation\"",
+                        t("count"),
+                        t("repeat jr:template=\"\"",
+                            t("position"),
+                            t("inner-count"),
+                            t("question"))
+                    )),
+                    bind("/data/count").type("int").calculate("count(/data/repeat)"),
+                    bind("/data/repeat/position").type("int").calculate("position(..)"),
+                    bind("/data/repeat/inner-count").type("int").calculate("/data/count"),
+                    bind("/data/repeat/question").type("int").relevant("../position mod 2 = 0")
+                )),
+            body(
+                repeat("/data/repeat",
+                    input("/data/repeat/question")
+                )
+            ));
+    }
+
+    private static XFormsElement bulkRepeatFormWithNewRepeatAction() {
+        return html(
+            head(
+                title("Bulk repeat creation"),
+                model(
+                    mainInstance(t("data id=\"bulk-repeat-creation\"",
+                        t("count"),
+                        t("repeat jr:template=\"\"",
+                            t("count-before"),
+                            t("position"))
+                    )),
+                    bind("/data/count").type("int").calculate("count(/data/repeat)"),
+                    bind("/data/repeat/count-before").type("int"),
+                    bind("/data/repeat/position").type("int").calculate("position(..)")
+                )),
+            body(
+                repeat("/data/repeat",
+                    setvalue("odk-new-repeat", "/data/repeat/count-before", "/data/count"),
+                    input("/data/repeat/count-before")
+                )
+            ));
+    }
+
+    private static String serialize(Scenario scenario) {
+        return new String(new XFormSerializingVisitor().serializeInstance(scenario.getFormDef().getMainInstance()));
+    }
 }
@@ -5,6 +5,7 @@ import org.javarosa.core.test.Scenario;
 import org.javarosa.core.util.BindBuilderXFormsElement;
 import org.javarosa.core.util.XFormsElement;
 import org.javarosa.debug.Event;
+import org.javarosa.debug.EventNotifier;
 import org.javarosa.form.api.FormEntryController;
 import org.javarosa.xform.parse.ParseException;
 import org.javarosa.xpath.expr.XPathPathExpr;
@@ -1913,6 +1914,48 @@ public class TriggerableDagTest {
         assertThat(dagEvents.stream().map(Event::getDisplayMessage).collect(joining("\n")), is(join("\n", lines)));
     }
 
+    @Test
+    public void events_areNotPublished_whenTheEventNotifierIsDisabled() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("Some form", html(
+            head(
+                title("Some form"),
+                model(
+                    mainInstance(t("data id=\"some-form\"",
+                        t("count"),
+                        t("repeat jr:template=\"\"", t("number"), t("big"))
+                    )),
+                    bind("/data/count").type("int").calculate("count(/data/repeat)"),
+                    bind("/data/repeat/number").type("int").calculate("position(..)"),
+                    bind("/data/repeat/big").relevant("../number > 1")
+                )
+            ),
+            body(repeat("/data/repeat", input("/data/repeat/number"), input("/data/repeat/big")))
+        ));
+        scenario.getFormDef().setEventNotifier(new EventNotifier() {
+            @Override
+            public void publishEvent(Event event) {
+                dagEvents.add(event);
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+        });
+
+        scenario.next();
+        scenario.createNewRepeat();
+        scenario.next();
+        scenario.next();
+        scenario.createNewRepeat();
+
+        assertThat(scenario.answerOf("/data/count"), is(intAnswer(2)));
+        assertThat(scenario.answerOf("/data/repeat[1]/number"), is(intAnswer(2)));
+        assertThat(scenario.getAnswerNode("/data/repeat[0]/big").isRelevant(), is(false));
+        assertThat(scenario.getAnswerNode("/data/repeat[1]/big").isRelevant(), is(true));
+        assertThat(dagEvents, hasSize(0));
+    }
+
     private XFormsElement buildFormForDagCyclesCheck(BindBuilderXFormsElement... binds) {
         return buildFormForDagCyclesCheck(null, binds);
     }
@@ -0,0 +1,134 @@
+package org.javarosa.core.model;
+
+import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.XFormsElement;
+import org.javarosa.debug.Event;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.instance;
+import static org.javarosa.core.util.XFormsElement.item;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+
+public class TriggerableProfilerTest {
+    private static final int ROWS = 50;
+
+    // The last filter of the chain, which evaluates the predicate against every node
+    private static final String FULL_SCAN = "XPathEvalPredicateFilter";
+
+    @Test
+    public void profile_recordsWhichFilterServedEachPredicate() throws Exception {
+        Scenario scenario = Scenario.init("Profiler", form());
+        TriggerableProfiler profiler = new TriggerableProfiler();
+        scenario.getFormDef().setProfiler(profiler);
+
+        scenario.answer("/data/choice", "3");
+
+        TriggerableProfiler.Profile indexed = getProfile(profiler, "/data/matching");
+        assertThat(indexed.getEvaluationCount(), is(1));
+        assertThat(indexed.getQualifiedReferenceCount(), is(1L));
+        assertThat(indexed.getPredicateFilters().get(IndexPredicateFilter.class.getSimpleName()).getPredicateCount(), is(1));
+
+        TriggerableProfiler.Profile scanned = getProfile(profiler, "/data/others");
+        TriggerableProfiler.PredicateFilterProfile scan = scanned.getPredicateFilters().get(FULL_SCAN);
+        assertThat(scan.getPredicateCount(), is(1));
+        assertThat(scan.getCandidateCount(), is((long) ROWS));
+        assertThat(profiler.explain(), containsString(FULL_SCAN + ": 1 predicates over " + ROWS + " nodes"));
+
+        // The same comparison is now cached
+        scenario.answer("/data/choice", "4");
+        scenario.answer("/data/choice", "3");
+        scanned = getProfile(profiler, "/data/others");
+        assertThat(scanned.getEvaluationCount(), is(3));
+        assertThat(scanned.getPredicateFilters().get(FULL_SCAN).getPredicateCount(), is(2));
+        assertThat(scanned.getPredicateFilters().get(CompareChildToAbsoluteExpressionFilter.class.getSimpleName()).getPredicateCount(), is(1));
+    }
+
+    @Test
+    public void profiles_areSortedByTotalTime() throws Exception {
+        Scenario scenario = Scenario.init("Profiler", form());
+        TriggerableProfiler profiler = new TriggerableProfiler();
+        scenario.getFormDef().setProfiler(profiler);
+
+        scenario.answer("/data/choice", "3");
+
+        List<TriggerableProfiler.Profile> profiles = profiler.getProfiles();
+        assertThat(profiles, hasSize(3));
+        for (int i = 1; i < profiles.size(); i++)
+            assertThat(profiles.get(i - 1).getTotalNanos(), greaterThanOrEqualTo(profiles.get(i).getTotalNanos()));
+    }
+
+    @Test
+    public void publish_sendsOneEventPerProfile() throws Exception {
+        Scenario scenario = Scenario.init("Profiler", form());
+        TriggerableProfiler profiler = new TriggerableProfiler();
+        scenario.getFormDef().setProfiler(profiler);
+        scenario.answer("/data/choice", "3");
+
+        List<Event> events = new ArrayList<>();
+        profiler.publish(events::add);
+
+        assertThat(events, hasSize(3));
+        assertThat(events.get(0).getMessage(), is(profiler.getProfiles().get(0).toString()));
+    }
+
+    @Test
+    public void nothingIsRecorded_afterTheProfilerIsRemoved() throws Exception {
+        Scenario scenario = Scenario.init("Profiler", form());
+        TriggerableProfiler profiler = new TriggerableProfiler();
+        scenario.getFormDef().setProfiler(profiler);
+        scenario.getFormDef().setProfiler(null);
+
+        scenario.answer("/data/choice", "3");
+
+        assertThat(profiler.getProfiles(), is(empty()));
+    }
+
+    private static TriggerableProfiler.Profile getProfile(TriggerableProfiler profiler, String target) {
+        for (TriggerableProfiler.Profile profile : profiler.getProfiles())
+            if (profile.getTriggerable().contains(target))
+                return profile;
+        throw new AssertionError("No profile for " + target + " in\n" + profiler.explain());
+    }
+
+    private static XFormsElement form() {
+        XFormsElement[] items = new XFormsElement[ROWS];
+        for (int i = 0; i < ROWS; i++)
+            items[i] = item(i, "Item " + i);
+
+        return html(
+            head(
+                title("Profiler"),
+                model(
+                    mainInstance(t("data id=\"profiler\"",
+                        t("choice"),
+                        t("matching"),
+                        t("others"),
+                        t("label")
+                    )),
+                    instance("items", items),
+                    bind("/data/choice").type("string"),
+                    bind("/data/matching").type("int").calculate("count(instance('items')/root/item[value = /data/choice])"),
+                    bind("/data/others").type("int").calculate("count(instance('items')/root/item[value != /data/choice])"),
+                    bind("/data/label").type("string").calculate("concat('Label ', /data/choice)")
+                )),
+            body(input("/data/choice"))
+        );
+    }
+}
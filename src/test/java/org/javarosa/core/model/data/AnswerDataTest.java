@@ -12,7 +12,9 @@ import static org.javarosa.core.model.DataType.BOOLEAN;
 import static org.javarosa.core.model.DataType.DECIMAL;
 import static org.javarosa.core.model.DataType.INTEGER;
 import static org.javarosa.core.model.DataType.LONG;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class AnswerDataTest {
 
@@ -57,6 +59,33 @@ public class AnswerDataTest {
         IAnswerData answerData = IAnswerData.wrapData(LocalDate.now(), DataType.DATE.value);
         assertEquals(expected, answerData);
     }
+    @Test
+    public void geoTraceCoordinatesFollowTheTraceValue() {
+        GeoTraceData trace = new GeoTraceData().cast(new UncastData("1 2 3 4; 5 6"));
+        assertArrayEquals(new double[]{1, 2, 5, 6}, trace.getCoordinates(), 0);
+
+        trace.setValue("7 8; 9 10 11 12; 13 14");
+        assertArrayEquals(new double[]{7, 8, 9, 10, 13, 14}, trace.getCoordinates(), 0);
+    }
+
+    @Test
+    public void geoCoordinatesFollowChangesToThePoints() {
+        GeoShapeData shape = new GeoShapeData().cast(new UncastData("1 2; 3 4; 1 2"));
+        double[] coordinates = shape.getCoordinates();
+        assertArrayEquals(new double[]{1, 2, 3, 4, 1, 2}, coordinates, 0);
+        assertSame(coordinates, shape.getCoordinates());
+
+        shape.points.set(1, new GeoPointData(new double[]{5, 6}));
+        assertArrayEquals(new double[]{1, 2, 5, 6, 1, 2}, shape.getCoordinates(), 0);
+
+        GeoTraceData trace = new GeoTraceData().cast(new UncastData("1 2; 3 4"));
+        assertArrayEquals(new double[]{1, 2, 3, 4}, trace.getCoordinates(), 0);
+
+        trace.points.remove(0);
+        trace.points.add(new GeoPointData(new double[]{7, 8}));
+        assertArrayEquals(new double[]{3, 4, 7, 8}, trace.getCoordinates(), 0);
+    }
+
     @Test
     public void canWrapAroundLocalDateTimeAndDATEtype() {
         LocalTime time = LocalTime.now();
@@ -56,6 +56,13 @@ public class IntegerDataTests {
 
     }
     @Test
+    public void testTypedAccessors() {
+        IntegerData data = new IntegerData(-1234567);
+        assertEquals(-1234567, data.getInt());
+        assertEquals(-1234567L, data.getLong());
+        assertEquals(-1234567.0, data.getDouble(), 0);
+    }
+    @Test
     public void testNullData() {
         boolean exceptionThrown = false;
         IntegerData data = new IntegerData();
@@ -2,8 +2,11 @@ package org.javarosa.core.model.instance.test;
 
 
 import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.FormElementStateListener;
+import org.javarosa.core.model.IFormElement;
 import org.javarosa.core.model.instance.TreeElement;
 import org.javarosa.core.test.FormParseInit;
+import org.javarosa.core.util.externalizable.ExtUtil;
 import org.javarosa.form.api.FormEntryController;
 import org.javarosa.xform.parse.ParseException;
 import org.javarosa.xform.parse.XFormParser;
@@ -11,10 +14,16 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.javarosa.test.utils.ResourcePathHelper.r;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class TreeElementTests {
 
@@ -66,4 +75,158 @@ public class TreeElementTests {
         assertEquals("xyz3", customAttr2.getAttributeValue());
     }
 
+    @Test
+    public void inheritedState_followsTheAncestorsStates() {
+        TreeElement root = new TreeElement("data");
+        TreeElement group = new TreeElement("group");
+        TreeElement question = new TreeElement("question");
+        root.addChild(group);
+        group.addChild(question);
+        question.setAttribute(null, "attr", "value");
+        TreeElement attribute = question.getAttribute(null, "attr");
+
+        root.setRelevant(false);
+        root.setEnabled(false);
+        assertFalse(question.isRelevant());
+        assertFalse(attribute.isRelevant());
+        assertFalse(question.isEnabled());
+        assertTrue(attribute.isEnabled());
+
+        question.setRelevant(false);
+        root.setRelevant(true);
+        root.setEnabled(true);
+        assertTrue(group.isRelevant());
+        assertFalse(question.isRelevant());
+        assertFalse(attribute.isRelevant());
+        assertTrue(question.isEnabled());
+
+        question.setRelevant(true);
+        assertTrue(attribute.isRelevant());
+
+        TreeElement irrelevantGroup = new TreeElement("irrelevant_group");
+        irrelevantGroup.setRelevant(false);
+        root.addChild(irrelevantGroup);
+        group.removeChild(question);
+        irrelevantGroup.addChild(question);
+        assertFalse(question.isRelevant());
+        assertFalse(attribute.isRelevant());
+    }
+
+    @Test
+    public void inheritedState_ofASubtreeMovedToAnotherInstance_followsItsNewAncestors() {
+        TreeElement first = new TreeElement("data");
+        TreeElement second = new TreeElement("data");
+        TreeElement group = new TreeElement("group");
+        TreeElement question = new TreeElement("question");
+        first.addChild(group);
+        group.addChild(question);
+        assertTrue(question.isRelevant());
+
+        first.removeChild(group);
+        second.addChild(group);
+        assertTrue(question.isRelevant());
+
+        // Changes in the instance the subtree left no longer reach it, and changes in its new one do
+        first.setRelevant(false);
+        assertTrue(question.isRelevant());
+        second.setRelevant(false);
+        assertFalse(question.isRelevant());
+        second.setRelevant(true);
+        assertTrue(question.isRelevant());
+    }
+
+    @Test
+    public void observers_areToldWhenTheStateTheyInheritChanges() {
+        TreeElement root = new TreeElement("data");
+        TreeElement group = new TreeElement("group");
+        TreeElement question = new TreeElement("question");
+        root.addChild(group);
+        group.addChild(question);
+        List<Integer> changes = new ArrayList<>();
+        question.registerStateObserver(new FormElementStateListener() {
+            @Override
+            public void formElementStateChanged(IFormElement question, int changeFlags) {
+            }
+
+            @Override
+            public void formElementStateChanged(TreeElement question, int changeFlags) {
+                changes.add(changeFlags);
+            }
+        });
+
+        root.setRelevant(false);
+        assertEquals(1, changes.size());
+        assertEquals(FormElementStateListener.CHANGE_RELEVANT, (int) changes.get(0));
+
+        // Still not relevant because of its ancestor
+        question.setRelevant(false);
+        group.setRelevant(false);
+        root.setRelevant(true);
+        assertEquals(1, changes.size());
+
+        group.setEnabled(false);
+        assertEquals(2, changes.size());
+        assertEquals(FormElementStateListener.CHANGE_ENABLED, (int) changes.get(1));
+
+        TreeElement enabledGroup = new TreeElement("enabled_group");
+        root.addChild(enabledGroup);
+        group.removeChild(question);
+        enabledGroup.addChild(question);
+        assertEquals(3, changes.size());
+        assertEquals(FormElementStateListener.CHANGE_ENABLED, (int) changes.get(2));
+    }
+
+    @Test
+    public void nodesWithoutChildrenOrAttributes_canBeQueriedAndCopied() {
+        TreeElement leaf = new TreeElement("leaf");
+        leaf.setAttribute(null, "removed", null);
+        leaf.setBindAttribute(null, "removed", null);
+        leaf.removeChild("missing", 0);
+
+        TreeElement copy = leaf.deepCopy(true);
+
+        assertTrue(copy.isLeaf());
+        assertEquals(0, copy.getNumChildren());
+        assertEquals(0, copy.getChildrenWithName("missing").size());
+        assertEquals(0, copy.getAttributeCount());
+        assertNull(copy.getAttribute(null, "removed"));
+        assertEquals(0, copy.getBindAttributes().size());
+        assertNull(copy.getConstraint());
+    }
+
+    @Test
+    public void attributesAndBindProperties_surviveCopyingAndSerialization() throws Exception {
+        TreeElement root = new TreeElement("data");
+        TreeElement question = new TreeElement("question");
+        root.addChild(question);
+        question.setAttribute(null, "custom", "a");
+        question.setBindAttribute(null, "requiredMsg", "b");
+        question.setPreloadHandler("timestamp");
+        question.setPreloadParams("start");
+
+        TreeElement copy = (TreeElement) ExtUtil.deserialize(ExtUtil.serialize(root.deepCopy(true)), TreeElement.class);
+
+        TreeElement copiedQuestion = copy.getChildAt(0);
+        assertEquals("a", copiedQuestion.getAttributeValue(null, "custom"));
+        assertEquals("b", copiedQuestion.getBindAttributes().get(0).getAttributeValue());
+        assertEquals("timestamp", copiedQuestion.getPreloadHandler());
+        assertEquals("start", copiedQuestion.getPreloadParams());
+        assertEquals(0, copy.getAttributeCount());
+        assertEquals(0, copy.getBindAttributes().size());
+    }
+
+    @Test
+    public void nodesWithEqualNames_shareTheirNames() throws Exception {
+        TreeElement root = new TreeElement(new String("data"));
+        root.addChild(new TreeElement(new String("item"), 0));
+        root.addChild(new TreeElement(new String("item"), 1));
+        root.getChildAt(0).setNamespacePrefix(new String("jr"));
+        root.getChildAt(1).setNamespacePrefix(new String("jr"));
+
+        TreeElement copy = (TreeElement) ExtUtil.deserialize(ExtUtil.serialize(root), TreeElement.class);
+
+        assertSame(root.getChildAt(0).getName(), root.getChildAt(1).getName());
+        assertSame(root.getChildAt(0).getName(), copy.getChildAt(1).getName());
+        assertSame(root.getChildAt(0).getNamespacePrefix(), root.getChildAt(1).getNamespacePrefix());
+    }
 }
@@ -44,6 +44,8 @@ import org.javarosa.core.model.FormDef;
 import org.javarosa.core.test.Scenario;
 import org.javarosa.core.util.XFormsElement;
 import org.javarosa.form.api.FormEntryCaption;
+import org.javarosa.measure.InMemoryMetricsRegistry;
+import org.javarosa.measure.Metrics;
 import org.javarosa.xform.parse.ParseException;
 import org.junit.Test;
 /**
@@ -371,4 +373,42 @@ public class FormDefTest {
         caption = new FormEntryCaption(scenario.getFormDef(), scenario.getCurrentIndex());
         MatcherAssert.assertThat(caption.getQuestionText(), is("Position: 2"));
     }
+
+    @Test
+    public void fillTemplateString_reusesOutputValues_untilTheirTriggersChange() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("Cached outputs", html(
+            head(
+                title("Cached outputs"),
+                model(
+                    mainInstance(t("data id=\"cached-outputs\"",
+                        t("name"),
+                        t("greeting")
+                    )),
+                    bind("/data/name").type("string"),
+                    bind("/data/greeting").type("string")
+                )
+            ),
+            body(
+                input("/data/name"),
+                input("/data/greeting", label("Hello <output value=\"/data/name\"/>, <output value=\"if(/data/name = '', 'stranger', 'friend')\"/>!")))
+        ));
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        Metrics.setRegistry(registry);
+        try {
+            scenario.next();
+            scenario.next();
+            FormEntryCaption caption = new FormEntryCaption(scenario.getFormDef(), scenario.getCurrentIndex());
+
+            MatcherAssert.assertThat(caption.getQuestionText(), is("Hello , stranger!"));
+            MatcherAssert.assertThat(caption.getQuestionText(), is("Hello , stranger!"));
+            // The path is only evaluated once, but if() isn't cached
+            MatcherAssert.assertThat(registry.getCounter(Metrics.OUTPUT_FRAGMENT_EVALUATIONS).getCount(), is(3L));
+
+            scenario.answer("/data/name", "Ada");
+            MatcherAssert.assertThat(caption.getQuestionText(), is("Hello Ada, friend!"));
+            MatcherAssert.assertThat(registry.getCounter(Metrics.OUTPUT_FRAGMENT_EVALUATIONS).getCount(), is(5L));
+        } finally {
+            Metrics.setRegistry(null);
+        }
+    }
 }
@@ -1,10 +1,10 @@
 package org.javarosa.core.model.test;
 
 import org.javarosa.core.test.Scenario;
-import org.javarosa.measure.Measure;
+import org.javarosa.measure.InMemoryMetricsRegistry;
+import org.javarosa.measure.Metrics;
 import org.junit.Test;
 
-import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
@@ -23,6 +23,8 @@ import static org.javarosa.core.util.XFormsElement.model;
 import static org.javarosa.core.util.XFormsElement.repeat;
 import static org.javarosa.core.util.XFormsElement.t;
 import static org.javarosa.core.util.XFormsElement.title;
+import static org.javarosa.measure.Metrics.PREDICATE_EVALUATIONS;
+import static org.javarosa.measure.Metrics.PREDICATE_INDEX_EVALUATIONS;
 
 public class PredicateCachingTest {
 
@@ -53,7 +55,7 @@ public class PredicateCachingTest {
             )
         ));
 
-        int evaluations = Measure.withMeasure(asList("PredicateEvaluation", "IndexEvaluation"), ()
+        int evaluations = countPredicateEvaluations(()
                 -> scenario.answer("/data/choice", "a"));
 
         // Check that we do less than (size of secondary instance) * (number of calculates with a filter)
@@ -87,7 +89,7 @@ public class PredicateCachingTest {
             )
         ));
 
-        int evaluations = Measure.withMeasure(asList("PredicateEvaluation", "IndexEvaluation"), ()
+        int evaluations = countPredicateEvaluations(()
                 -> scenario.answer("/data/choice", "2"));
 
         // Check that we do less than (size of secondary instance) * (number of calculates with a filter)
@@ -121,7 +123,7 @@ public class PredicateCachingTest {
             )
         ));
 
-        int evaluations = Measure.withMeasure(asList("PredicateEvaluation", "IndexEvaluation"), ()
+        int evaluations = countPredicateEvaluations(()
                 -> scenario.answer("/data/choice", "1"));
 
         // Check that we do less than (size of secondary instance) * (number of calculates with a filter)
@@ -155,7 +157,7 @@ public class PredicateCachingTest {
             )
         ));
 
-        int evaluations = Measure.withMeasure(asList("PredicateEvaluation", "IndexEvaluation"), () -> {
+        int evaluations = countPredicateEvaluations(() -> {
             scenario.answer("/data/choice", "a");
             scenario.answer("/data/choice", "b");
         });
@@ -204,7 +206,7 @@ public class PredicateCachingTest {
             )
         ));
 
-        int evaluations = Measure.withMeasure(asList("PredicateEvaluation", "IndexEvaluation"), () -> {
+        int evaluations = countPredicateEvaluations(() -> {
             scenario.answer("/data/input1", "A");
             scenario.answer("/data/input2", "3");
 
@@ -243,7 +245,7 @@ public class PredicateCachingTest {
             )
         ));
 
-        int evaluations = Measure.withMeasure(asList("PredicateEvaluation", "IndexEvaluation"), () -> {
+        int evaluations = countPredicateEvaluations(() -> {
             scenario.answer("/data/choice", "2");
             scenario.answer("/data/choice", "2");
         });
@@ -570,7 +572,7 @@ public class PredicateCachingTest {
 
     @Test
     public void eqPredicatesDoNotIncreaseLoadTime() {
-        int evaluations = Measure.withMeasure(asList("PredicateEvaluation", "IndexEvaluation"), () -> {
+        int evaluations = countPredicateEvaluations(() -> {
                 try {
                     Scenario.init("Some form", html(
                         head(
@@ -602,4 +604,16 @@ public class PredicateCachingTest {
 
         assertThat(evaluations, not(greaterThan(2)));
     }
+
+    private static int countPredicateEvaluations(Runnable work) {
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        Metrics.setRegistry(registry);
+        try {
+            work.run();
+        } finally {
+            Metrics.setRegistry(null);
+        }
+
+        return (int) (registry.getCounter(PREDICATE_EVALUATIONS).getCount() + registry.getCounter(PREDICATE_INDEX_EVALUATIONS).getCount());
+    }
 }
@@ -23,11 +23,16 @@ import org.javarosa.core.services.locale.TableLocaleSource;
 import org.javarosa.core.util.NoLocalizedTextException;
 import org.javarosa.core.util.OrderedMap;
 import org.javarosa.core.util.UnregisteredLocaleException;
+import org.javarosa.core.util.externalizable.DeserializationException;
+import org.javarosa.core.util.externalizable.ExtUtil;
 import org.javarosa.core.util.externalizable.Externalizable;
 import org.javarosa.core.util.externalizable.PrototypeFactory;
 import org.javarosa.core.util.test.ExternalizableTest;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Objects;
 
@@ -915,4 +920,114 @@ public class LocalizerTest {
         assertNull("Localizer didn't return null value", shouldBeNull);
         assertNull("Localizer didn't return null value", shouldBeNull);
     }
+
+    @Test
+    public void textIndexes_resolveInTheCurrentLocale() {
+        Localizer localizer = new Localizer(true, true);
+        localizer.addAvailableLocale("one");
+        localizer.addAvailableLocale("two");
+        localizer.setDefaultLocale("one");
+
+        TableLocaleSource firstLocale = new TableLocaleSource();
+        firstLocale.setLocaleMapping("q1", "one q1");
+        firstLocale.setLocaleMapping("q1;audio", "one.mp3");
+        firstLocale.setLocaleMapping("q2", "one q2");
+        localizer.registerLocaleResource("one", firstLocale);
+
+        TableLocaleSource secondLocale = new TableLocaleSource();
+        secondLocale.setLocaleMapping("q1", "two q1");
+        localizer.registerLocaleResource("two", secondLocale);
+
+        int q1 = localizer.getTextIndex("q1");
+        int q1Audio = localizer.getTextIndex("q1", "audio");
+        int q2 = localizer.getTextIndex("q2");
+        int unknown = localizer.getTextIndex("unknown");
+        assertEquals(q1Audio, localizer.getTextIndex("q1;audio"));
+        assertEquals(q1, localizer.getTextIndex("q1", null));
+
+        localizer.setLocale("one");
+        assertEquals("one q1", localizer.getRawText(q1));
+        assertEquals("one.mp3", localizer.getRawText(q1Audio));
+        assertEquals("one q2", localizer.getRawText(q2));
+        assertNull(localizer.getRawText(unknown));
+
+        localizer.setLocale("two");
+        assertEquals("two q1", localizer.getRawText(q1));
+        // The default locale is overlaid
+        assertEquals("one q2", localizer.getRawText(q2));
+        assertEquals("two q1", localizer.getRawText(localizer.getTextIndex("q1")));
+        assertEquals("one q1", localizer.getRawText("one", "q1"));
+    }
+
+    @Test
+    public void textIndexes_seeResourcesRegisteredLater() {
+        Localizer localizer = new Localizer(true, true);
+        localizer.addAvailableLocale("one");
+        localizer.addAvailableLocale("two");
+        localizer.setDefaultLocale("one");
+        localizer.setLocale("two");
+
+        int q1 = localizer.getTextIndex("q1");
+        assertNull(localizer.getRawText(q1));
+
+        TableLocaleSource firstLocale = new TableLocaleSource();
+        firstLocale.setLocaleMapping("q1", "one q1");
+        localizer.registerLocaleResource("one", firstLocale);
+        assertEquals("one q1", localizer.getRawText(q1));
+
+        TableLocaleSource secondLocale = new TableLocaleSource();
+        secondLocale.setLocaleMapping("q1", "two q1");
+        localizer.registerLocaleResource("two", secondLocale);
+        assertEquals("two q1", localizer.getRawText(q1));
+    }
+
+    @Test
+    public void textIndexes_haveNoText_withoutACurrentLocale() {
+        Localizer localizer = new Localizer();
+        localizer.addAvailableLocale("one");
+
+        assertNull(localizer.getRawText(localizer.getTextIndex("q1")));
+    }
+
+    @Test
+    public void localeResources_areOnlyDeserializedWhenTheirLocaleIsUsed() throws IOException, DeserializationException {
+        Localizer l = new Localizer(false, false);
+        for (String locale : new String[]{"one", "two"}) {
+            l.addAvailableLocale(locale);
+            CountingLocaleSource source = new CountingLocaleSource();
+            source.setLocaleMapping("q1", locale + " q1");
+            l.registerLocaleResource(locale, source);
+        }
+        l.setLocale("one");
+
+        PrototypeFactory pf = new PrototypeFactory();
+        pf.addClass(CountingLocaleSource.class);
+        CountingLocaleSource.reads = 0;
+        Localizer deserialized = roundTrip(l, pf);
+        // Only the current locale is needed
+        assertEquals(1, CountingLocaleSource.reads);
+        assertEquals("one q1", deserialized.getText("q1"));
+        assertEquals(1, CountingLocaleSource.reads);
+
+        // Locales that were never used are written out as they were read
+        Localizer reserialized = roundTrip(deserialized, pf);
+        reserialized.setLocale("two");
+        assertEquals("two q1", reserialized.getText("q1"));
+        l.setLocale("two");
+        assertEquals(l, reserialized);
+    }
+
+    private static Localizer roundTrip(Localizer l, PrototypeFactory pf) throws IOException, DeserializationException {
+        return (Localizer) ExtUtil.read(new DataInputStream(new ByteArrayInputStream(ExtUtil.serialize(l))), Localizer.class, pf);
+    }
+
+    public static class CountingLocaleSource extends TableLocaleSource {
+        static int reads;
+
+        @Override
+        public void readExternal(DataInputStream in, PrototypeFactory pf) throws IOException, DeserializationException {
+            reads++;
+            super.readExternal(in, pf);
+        }
+    }
 }
@@ -65,4 +65,36 @@ public class ReferenceManagerTest {
             is("/some/path/forms/some-form-media/some-file.xml")
         );
     }
+
+    @Test
+    public void remembers_derived_references_until_the_factories_change() throws InvalidReferenceException {
+        int[] derivations = {0};
+        refManager.addReferenceFactory(new PrefixedRootFactory(new String[]{"file/"}) {
+            @Override
+            protected Reference factory(String terminal, String URI) {
+                derivations[0]++;
+                return new ResourceReference("/some/path/" + terminal);
+            }
+        });
+
+        Reference reference = refManager.deriveReference("jr://file/some-file.jpg");
+        assertThat(refManager.deriveReference("jr://file/some-file.jpg"), is(reference));
+        assertThat(derivations[0], is(1));
+
+        refManager.addReferenceFactory(buildReferenceFactory("image", "/other/path"));
+        refManager.deriveReference("jr://file/some-file.jpg");
+        assertThat(derivations[0], is(2));
+    }
+
+    @Test
+    public void forgets_derived_references_when_a_session_root_translator_is_added() throws InvalidReferenceException {
+        refManager.addReferenceFactory(buildReferenceFactory("file", "/some/path"));
+        assertThat(refManager.deriveReference("jr://file/some-file.jpg").getLocalURI(), is("/some/path/some-file.jpg"));
+
+        refManager.addSessionRootTranslator(new RootTranslator("jr://file/", "jr://file/forms/some-form-media/"));
+        assertThat(
+            refManager.deriveReference("jr://file/some-file.jpg").getLocalURI(),
+            is("/some/path/forms/some-form-media/some-file.jpg")
+        );
+    }
 }
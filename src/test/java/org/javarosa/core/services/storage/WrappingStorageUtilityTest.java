@@ -0,0 +1,118 @@
+package org.javarosa.core.services.storage;
+
+import org.javarosa.core.model.CoreModelModule;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.services.PrototypeManager;
+import org.javarosa.core.services.storage.util.FileStorageFactory;
+import org.javarosa.core.util.JavaRosaCoreModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class WrappingStorageUtilityTest {
+    private static final int THREADS = 4;
+    private static final int RECORDS_PER_THREAD = 200;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FileStorageFactory storageFactory;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+        PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+        storageFactory = new FileStorageFactory(temporaryFolder.getRoot(), PrototypeManager.getDefault());
+        executor = Executors.newFixedThreadPool(2 * THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentWrites_withAWrapperPerThread_canAllBeReadBack() throws Exception {
+        WrappingStorageUtility storage = new WrappingStorageUtility("FORMDATA", TaggedSerializationWrapper::new, storageFactory);
+
+        writeConcurrently(storage);
+
+        storage.close();
+    }
+
+    @Test
+    public void concurrentWrites_withASharedWrapper_canAllBeReadBack() throws Exception {
+        WrappingStorageUtility storage = new WrappingStorageUtility("FORMDATA", new TaggedSerializationWrapper(), storageFactory);
+
+        writeConcurrently(storage);
+
+        storage.close();
+    }
+
+    @Test
+    public void add_setsTheIdOfPersistableRecords() {
+        WrappingStorageUtility storage = new WrappingStorageUtility("FORMDATA", TaggedSerializationWrapper::new, storageFactory);
+        storage.add(instance("uuid:a"));
+        FormInstance second = instance("uuid:b");
+
+        int id = storage.add(second);
+
+        assertThat(second.getID(), is(id));
+        assertThat(((FormInstance) storage.read(id)).getID(), is(id));
+        storage.close();
+    }
+
+    /**
+     * Writes records from several threads while other threads read back the records that have been written so far.
+     */
+    private void writeConcurrently(WrappingStorageUtility storage) throws Exception {
+        List<Future<List<FormInstance>>> writers = new ArrayList<>();
+        List<Future<?>> readers = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int writer = thread;
+            writers.add(executor.submit(() -> {
+                List<FormInstance> written = new ArrayList<>();
+                for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+                    FormInstance instance = instance("uuid:" + writer + "-" + i);
+                    storage.write(instance);
+                    written.add(instance);
+                }
+                return written;
+            }));
+            readers.add(executor.submit((Callable<Void>) () -> {
+                for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+                    int id = i * THREADS;
+                    if (storage.exists(id))
+                        assertThat(((FormInstance) storage.read(id)).getID(), is(id));
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> reader : readers)
+            reader.get();
+        for (Future<List<FormInstance>> writer : writers) {
+            for (FormInstance written : writer.get())
+                assertThat(((FormInstance) storage.read(written.getID())).getInstanceId(), is(written.getInstanceId()));
+        }
+        assertThat(storage.getNumRecords(), is(THREADS * RECORDS_PER_THREAD));
+    }
+
+    private static FormInstance instance(String instanceId) {
+        return new FormInstance(new TreeElement("data"), instanceId);
+    }
+}
@@ -0,0 +1,252 @@
+package org.javarosa.core.services.storage.util;
+
+import org.javarosa.core.model.CoreModelModule;
+import org.javarosa.core.model.instance.FormInstance;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.services.PrototypeManager;
+import org.javarosa.core.services.storage.IStorageIterator;
+import org.javarosa.core.services.storage.StorageModifiedException;
+import org.javarosa.core.util.InvalidIndexException;
+import org.javarosa.core.util.JavaRosaCoreModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+public class FileIndexedStorageUtilityTest {
+    private static final String XMLNS = "XMLNS";
+    private static final String INSTANCE_ID = "instance_id";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private FileIndexedStorageUtility<FormInstance> storage;
+
+    @Before
+    public void setUp() throws Exception {
+        PrototypeManager.registerPrototypes(JavaRosaCoreModule.classNames);
+        PrototypeManager.registerPrototypes(CoreModelModule.classNames);
+        directory = new File(temporaryFolder.getRoot(), "FORMDATA");
+        storage = open();
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+    }
+
+    private FileIndexedStorageUtility<FormInstance> open() {
+        return (FileIndexedStorageUtility<FormInstance>) new FileStorageFactory(temporaryFolder.getRoot(), PrototypeManager.getDefault())
+            .newStorage("FORMDATA", FormInstance.class);
+    }
+
+    private void reopen() {
+        storage.close();
+        storage = open();
+    }
+
+    @Test
+    public void records_canBeReadBackAfterReopening() {
+        FormInstance first = instance("uuid:1", "form-a");
+        storage.write(first);
+        int second = storage.add(instance("uuid:2", "form-b"));
+
+        reopen();
+
+        assertThat(storage.getNumRecords(), is(2));
+        assertThat(storage.read(first.getID()).getInstanceId(), is("uuid:1"));
+        assertThat(storage.read(second).schema, is("form-b"));
+        assertThat(storage.getRecordForValue(INSTANCE_ID, "uuid:2").getID(), is(second));
+        assertThat(storage.getIDsForValue(XMLNS, "form-a"), is(Arrays.asList(first.getID())));
+    }
+
+    @Test
+    public void lookups_onlySeeTheCurrentVersionOfRecords() {
+        int a = storage.add(instance("uuid:a", "form-a"));
+        int b = storage.add(instance("uuid:b", "form-a"));
+        int c = storage.add(instance("uuid:c", "form-b"));
+
+        storage.update(b, instance("uuid:b", "form-b"));
+        storage.remove(c);
+
+        assertThat(storage.getIDsForValue(XMLNS, "form-a"), is(Arrays.asList(a)));
+        assertThat(storage.getIDsForValue(XMLNS, "form-b"), is(Arrays.asList(b)));
+        assertThat(storage.getIDsForValue(INSTANCE_ID, "uuid:c"), is(emptyList()));
+        assertThat(storage.getIDsForValue("unknown", "form-a"), is(emptyList()));
+        assertThat(storage.read(c), is(nullValue()));
+        assertThat(storage.exists(c), is(false));
+        assertThat(storage.getNumRecords(), is(2));
+    }
+
+    @Test(expected = InvalidIndexException.class)
+    public void getRecordForValue_throws_whenSeveralRecordsMatch() {
+        storage.add(instance("uuid:a", "form-a"));
+        storage.add(instance("uuid:b", "form-a"));
+
+        storage.getRecordForValue(XMLNS, "form-a");
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void getRecordForValue_throws_whenNoRecordMatches() {
+        storage.add(instance("uuid:a", "form-a"));
+
+        storage.getRecordForValue(XMLNS, "form-b");
+    }
+
+    @Test
+    public void indexes_growToManyRecords() {
+        for (int i = 0; i < 5000; i++)
+            storage.add(instance("uuid:" + i, "form-" + (i % 7)));
+
+        reopen();
+
+        assertThat(storage.getRecordForValue(INSTANCE_ID, "uuid:4321").getID(), is(4321));
+        assertThat(storage.getIDsForValue(XMLNS, "form-3").size(), is(714));
+    }
+
+    @Test
+    public void repack_dropsOldVersions() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            ids.add(storage.add(instance("uuid:" + i, "form-a")));
+        for (int i = 0; i < 100; i += 2)
+            storage.update(ids.get(i), instance("uuid:" + i, "form-b"));
+        for (int i = 1; i < 100; i += 4)
+            storage.remove(ids.get(i));
+
+        int size = storage.getTotalSize();
+        storage.repack();
+        reopen();
+
+        assertThat(storage.getTotalSize(), lessThan(size / 2));
+        assertThat(storage.getNumRecords(), is(75));
+        assertThat(storage.getIDsForValue(XMLNS, "form-b").size(), is(50));
+        assertThat(storage.getIDsForValue(XMLNS, "form-a").size(), is(25));
+        assertThat(storage.read(ids.get(3)).getInstanceId(), is("uuid:3"));
+    }
+
+    @Test
+    public void records_canSpanManySegmentsOfTheLog() {
+        storage.close();
+        storage = new FileIndexedStorageUtility<>(directory, FormInstance.class, PrototypeManager.getDefault(), 4096);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            ids.add(storage.add(instance("uuid:" + i, "form-" + (i % 2))));
+        for (int i = 0; i < 500; i += 2)
+            storage.update(ids.get(i), instance("uuid:" + i, "form-1"));
+
+        storage.repack();
+        reopen();
+
+        assertThat(directory.list((dir, name) -> name.startsWith("records-")).length, greaterThan(10));
+        assertThat(storage.getNumRecords(), is(500));
+        assertThat(storage.getIDsForValue(XMLNS, "form-1").size(), is(500));
+        assertThat(storage.read(ids.get(321)).getInstanceId(), is("uuid:321"));
+        assertThat(storage.getRecordForValue(INSTANCE_ID, "uuid:499").getID(), is(ids.get(499)));
+    }
+
+    @Test
+    public void repack_thatFails_leavesTheStorageAsItWas() throws Exception {
+        int a = storage.add(instance("uuid:a", "form-a"));
+        storage.update(a, instance("uuid:a", "form-b"));
+        File blocking = new File(directory, "ids.repack");
+        assertThat(new File(blocking, "file").getParentFile().mkdirs() && new File(blocking, "file").createNewFile(), is(true));
+
+        try {
+            storage.repack();
+            fail("Expected repacking to fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        int b = storage.add(instance("uuid:b", "form-b"));
+        assertThat(storage.getIDsForValue(XMLNS, "form-b"), is(Arrays.asList(a, b)));
+        reopen();
+        assertThat(storage.read(a).schema, is("form-b"));
+        assertThat(storage.getIDsForValue(XMLNS, "form-b"), is(Arrays.asList(a, b)));
+    }
+
+    @Test
+    public void opening_deletesWhatARepackThatDidNotFinishLeftBehind() throws Exception {
+        int a = storage.add(instance("uuid:a", "form-a"));
+        storage.close();
+        assertThat(new File(directory, "records-1-0").createNewFile(), is(true));
+        assertThat(new File(directory, "ids.repack").createNewFile(), is(true));
+
+        storage = open();
+
+        assertThat(new File(directory, "records-1-0").exists(), is(false));
+        assertThat(new File(directory, "ids.repack").exists(), is(false));
+        assertThat(storage.read(a).getInstanceId(), is("uuid:a"));
+    }
+
+    @Test
+    public void repair_rebuildsTheIdsAndIndexesFromTheRecords() {
+        int a = storage.add(instance("uuid:a", "form-a"));
+        int b = storage.add(instance("uuid:b", "form-b"));
+        storage.remove(a);
+        storage.close();
+
+        for (File file : directory.listFiles()) {
+            if (!file.getName().startsWith("records-"))
+                file.delete();
+        }
+        storage = open();
+        storage.repair();
+
+        assertThat(storage.getNumRecords(), is(1));
+        assertThat(storage.exists(a), is(false));
+        assertThat(storage.getRecordForValue(XMLNS, "form-b").getID(), is(b));
+    }
+
+    @Test
+    public void repair_afterARepack_rebuildsFromTheRepackedRecords() {
+        int a = storage.add(instance("uuid:a", "form-a"));
+        storage.update(a, instance("uuid:a", "form-b"));
+        storage.repack();
+        storage.close();
+
+        for (File file : directory.listFiles()) {
+            if (!file.getName().startsWith("records-"))
+                file.delete();
+        }
+        storage = open();
+        storage.repair();
+
+        assertThat(storage.getIDsForValue(XMLNS, "form-b"), is(Arrays.asList(a)));
+        assertThat(storage.getIDsForValue(XMLNS, "form-a"), is(emptyList()));
+    }
+
+    @Test(expected = StorageModifiedException.class)
+    public void iterating_afterAModification_throws() {
+        storage.add(instance("uuid:a", "form-a"));
+        storage.add(instance("uuid:b", "form-a"));
+
+        IStorageIterator<FormInstance> iterator = storage.iterate();
+        assertThat(iterator.nextRecord().getInstanceId(), is("uuid:a"));
+        storage.add(instance("uuid:c", "form-a"));
+        iterator.nextRecord();
+    }
+
+    private static FormInstance instance(String instanceId, String schema) {
+        FormInstance instance = new FormInstance(new TreeElement("data"), instanceId);
+        instance.schema = schema;
+        return instance;
+    }
+}
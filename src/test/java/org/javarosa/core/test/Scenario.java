@@ -521,6 +521,21 @@ public class Scenario {
         return answer(value);
     }
 
+    /**
+     * Answers with the given answer data the question at the form index
+     * corresponding to the provided reference.
+     * <p>
+     * This method has side effects:
+     * - It will create all the required middle and end repeat group instances
+     * - It changes the current form index
+     */
+    public AnswerResult answer(String xPath, IAnswerData data) {
+        createMissingRepeats(xPath);
+        TreeReference ref = getRef(xPath);
+        silentJump(getIndexOf(ref));
+        return answer(data);
+    }
+
     // endregion
 
     // region Answer the question at the form index
@@ -596,6 +611,16 @@ public class Scenario {
         return this;
     }
 
+    /**
+     * Creates the given number of new repeat group instances at once. The
+     * form index must be at a create new repeat group question
+     */
+    public Scenario createNewRepeats(int count) {
+        log.info("Create {} repeat instances {}", count, model.getFormIndex().getReference());
+        controller.newRepeats(count);
+        return this;
+    }
+
     /**
      * Creates a new repeat group instance in the group corresponding
      * to the provided xPath reference
@@ -33,6 +33,8 @@ import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
 import org.hamcrest.number.IsCloseTo;
+import org.javarosa.core.model.data.GeoTraceData;
+import org.javarosa.core.model.data.UncastData;
 import org.javarosa.core.test.Scenario;
 import org.javarosa.xform.parse.ParseException;
 import org.junit.Test;
@@ -93,6 +95,35 @@ public class GeoDistanceTest {
             closeTo(NINETY_DEGREES_ON_EQUATOR_KM, 1e-7));
     }
 
+    @Test
+    public void distance_isRecomputed_whenGeotraceIsAnswered() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("geotrace distance", html(
+            head(
+                title("Geotrace distance"),
+                model(
+                    mainInstance(t("data id=\"geotrace-distance\"",
+                        t("line", "0 1 0 0; 0 91 0 0;"),
+                        t("distance")
+                    )),
+                    bind("/data/line").type("geotrace"),
+                    bind("/data/distance").type("decimal").calculate("distance(/data/line)")
+                )
+            ),
+            body(
+                input("/data/line")
+            )
+        ));
+
+        scenario.answer("/data/line", new GeoTraceData().cast(new UncastData("0 1 0 0; 0 91 0 0")));
+        assertThat(Double.parseDouble(scenario.answerOf("/data/distance").getDisplayText()),
+            closeTo(NINETY_DEGREES_ON_EQUATOR_KM, 1e-7));
+
+        scenario.answer("/data/line", new GeoTraceData().cast(new UncastData("0 1 0 0; 0 91 0 0; 0 181 0 0")));
+
+        assertThat(Double.parseDouble(scenario.answerOf("/data/distance").getDisplayText()),
+            closeTo(NINETY_DEGREES_ON_EQUATOR_KM * 2, 1e-7));
+    }
+
     @Test
     public void distance_isComputedForGeoshape() throws IOException, ParseException {
         Scenario scenario = Scenario.init("geoshape distance", html(
@@ -170,4 +201,27 @@ public class GeoDistanceTest {
 
         assertThat(Double.parseDouble(scenario.answerOf("/data/distance").getDisplayText()), is(0.0));
     }
+
+    @Test
+    public void distance_isComputedBetweenGeopointArguments() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("geopoint arguments distance", html(
+            head(
+                title("Geopoint arguments distance"),
+                model(
+                    mainInstance(t("data id=\"geopoint-arguments-distance\"",
+                        t("point", "0 1 0 0"),
+                        t("distance")
+                    )),
+                    bind("/data/point").type("geopoint"),
+                    bind("/data/distance").type("decimal").calculate("distance(/data/point, '0 91 0 0')")
+                )
+            ),
+            body(
+                input("/data/point")
+            )
+        ));
+
+        assertThat(Double.parseDouble(scenario.answerOf("/data/distance").getDisplayText()),
+            closeTo(NINETY_DEGREES_ON_EQUATOR_KM, 1e-7));
+    }
 }
@@ -117,6 +117,14 @@ public class GeoUtilsTest {
         logger.info("Area: {} square meters; perimeter: {} meters", area, distance);
         assertEquals("Area", expectedArea, area, 0.5);
         assertEquals("Distance", expectedDistance, distance, 0.5);
+
+        double[] coordinates = new double[2 * points.length];
+        for (int i = 0; i < points.length; i++) {
+            coordinates[2 * i] = points[i][0];
+            coordinates[2 * i + 1] = points[i][1];
+        }
+        assertEquals("Packed area", area, GeoUtils.calculateAreaOfGPSPolygonOnEarthInSquareMeters(coordinates), 0);
+        assertEquals("Packed distance", distance, GeoUtils.calculateDistance(coordinates), 0);
     }
 
     private List<GeoUtils.LatLong> getLatLongs(double[][] points) {
@@ -1,10 +1,23 @@
 package org.javarosa.form.api;
 
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.data.IAnswerData;
+import org.javarosa.core.model.data.IntegerData;
 import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.XFormsElement;
+import org.javarosa.model.xform.XFormSerializingVisitor;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.javarosa.core.test.AnswerDataMatchers.intAnswer;
 import static org.javarosa.core.test.Scenario.getRef;
 import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
 import static org.javarosa.core.util.XFormsElement.body;
@@ -15,6 +28,7 @@ import static org.javarosa.core.util.XFormsElement.input;
 import static org.javarosa.core.util.XFormsElement.mainInstance;
 import static org.javarosa.core.util.XFormsElement.model;
 import static org.javarosa.core.util.XFormsElement.repeat;
+import static org.javarosa.core.util.XFormsElement.setvalue;
 import static org.javarosa.core.util.XFormsElement.t;
 import static org.javarosa.core.util.XFormsElement.title;
 import static org.javarosa.form.api.FormEntryController.EVENT_GROUP;
@@ -230,4 +244,98 @@ public class FormEntryControllerTest {
         controller.jumpToNewRepeatPrompt();
         assertThat(controller.getModel().getFormIndex().getReference(), is(getRef("/data/question1[0]")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void saveAnswers_producesTheSameInstanceAsSavingTheAnswersOneByOne() throws Exception {
+        Scenario oneByOne = Scenario.init("batch", batchForm());
+        Scenario batched = Scenario.init("batch", batchForm());
+
+        Map<String, IAnswerData> answers = new LinkedHashMap<>();
+        answers.put("/data/a", new IntegerData(1));
+        // Set after the calculate is triggered by /data/a so the answer must win
+        answers.put("/data/a_x10", new IntegerData(7));
+        answers.put("/data/b", new IntegerData(20));
+        // Triggers a value changed action that copies the total at this point
+        answers.put("/data/c", new IntegerData(300));
+        answers.put("/data/repeat[0]/x", new IntegerData(4));
+        answers.put("/data/repeat[1]/x", new IntegerData(5));
+
+        for (Scenario scenario : Arrays.asList(oneByOne, batched)) {
+            scenario.createNewRepeat("/data/repeat");
+            scenario.createNewRepeat("/data/repeat");
+        }
+
+        answers.forEach((xPath, answer) -> oneByOne.getFormEntryController().saveAnswer(oneByOne.indexOf(xPath), answer, true));
+
+        Map<FormIndex, IAnswerData> indexedAnswers = new LinkedHashMap<>();
+        answers.forEach((xPath, answer) -> indexedAnswers.put(batched.indexOf(xPath), answer));
+        batched.getFormEntryController().saveAnswers(indexedAnswers);
+
+        assertThat(batched.answerOf("/data/snapshot"), is(intAnswer(321)));
+        assertThat(batched.answerOf("/data/repeat[1]/y"), is(intAnswer(1605)));
+        assertThat(batched.answerOf("/data/a_x10"), is(intAnswer(7)));
+        assertThat(serialize(batched), is(serialize(oneByOne)));
+    }
+
+    @Test
+    public void saveAnswers_evaluatesSharedCascadesOnce() throws Exception {
+        List<String> totalEvaluations = new ArrayList<>();
+        Scenario scenario = Scenario.init("batch", batchForm()).onDagEvent(event -> {
+            if (event.getDisplayMessage().contains("total"))
+                totalEvaluations.add(event.getDisplayMessage());
+        });
+
+        Map<FormIndex, IAnswerData> answers = new LinkedHashMap<>();
+        answers.put(scenario.indexOf("/data/a"), new IntegerData(1));
+        answers.put(scenario.indexOf("/data/b"), new IntegerData(2));
+        answers.put(scenario.indexOf("/data/c"), new IntegerData(3));
+        scenario.getFormEntryController().saveAnswers(answers);
+
+        assertThat(totalEvaluations, hasSize(1));
+        assertThat(scenario.answerOf("/data/total"), is(intAnswer(6)));
+    }
+
+    private static XFormsElement batchForm() {
+        return html(
+            head(
+                title("form"),
+                model(
+                    mainInstance(
+                        t("data id=\"batch\"",
+                            t("a"),
+                            t("a_x10"),
+                            t("b"),
+                            t("c"),
+                            t("total"),
+                            t("snapshot"),
+                            t("repeat jr:template=\"\"",
+                                t("x"),
+                                t("y"))
+                        )
+                    ),
+                    bind("/data/a").type("int"),
+                    bind("/data/a_x10").type("int").calculate("/data/a * 10"),
+                    bind("/data/b").type("int"),
+                    bind("/data/c").type("int"),
+                    bind("/data/total").type("int").calculate("/data/a + /data/b + /data/c"),
+                    bind("/data/snapshot").type("int"),
+                    bind("/data/repeat/x").type("int"),
+                    bind("/data/repeat/y").type("int").calculate("../x * /data/total").relevant("/data/total > 10")
+                )
+            ),
+            body(
+                input("/data/a"),
+                input("/data/a_x10"),
+                input("/data/b"),
+                input("/data/c",
+                    setvalue("xforms-value-changed", "/data/snapshot", "/data/total")),
+                repeat("/data/repeat",
+                    input("/data/repeat/x"))
+            )
+        );
+    }
+
+    private static String serialize(Scenario scenario) {
+        return new String(new XFormSerializingVisitor().serializeInstance(scenario.getFormDef().getMainInstance()));
+    }
+}
@@ -25,11 +25,14 @@ import static org.javarosa.core.util.XFormsElement.html;
 import static org.javarosa.core.util.XFormsElement.input;
 import static org.javarosa.core.util.XFormsElement.mainInstance;
 import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.repeat;
 import static org.javarosa.core.util.XFormsElement.t;
 import static org.javarosa.core.util.XFormsElement.title;
 import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.javarosa.core.model.FormDef;
 import org.javarosa.core.model.FormIndex;
 import org.javarosa.core.test.Scenario;
@@ -75,4 +78,148 @@ public class FormEntryModelTest {
         scenario.answer("/data/outerYesNo", "yes");
         assertThat(formEntryModel.isIndexRelevant(q1Index), is(true));
     }
+
+    @Test
+    public void relevantIndexes_skippingIrrelevantGroups_areTheOnesFoundByCheckingEveryIndex() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("Irrelevant groups", html(
+            head(
+                title("Irrelevant groups"),
+                model(
+                    mainInstance(t("data id=\"irrelevant_groups\"",
+                        t("show", "no"),
+                        t("outer",
+                            t("q1"),
+                            t("inner",
+                                t("q2")),
+                            t("rep",
+                                t("q3"))),
+                        t("rep2",
+                            t("group",
+                                t("q4")),
+                            t("q5")),
+                        t("q6")
+                    )),
+                    bind("/data/outer").relevant("/data/show = 'yes'"),
+                    bind("/data/rep2/group").relevant("/data/show = 'yes'")
+                )),
+            body(
+                input("/data/show"),
+                group("/data/outer",
+                    input("/data/outer/q1"),
+                    group("/data/outer/inner",
+                        input("/data/outer/inner/q2")
+                    ),
+                    repeat("/data/outer/rep",
+                        input("/data/outer/rep/q3")
+                    )
+                ),
+                repeat("/data/rep2",
+                    group("/data/rep2/group",
+                        input("/data/rep2/group/q4")
+                    ),
+                    input("/data/rep2/q5")
+                ),
+                input("/data/q6")
+            )));
+        scenario.createNewRepeat("/data/rep2");
+        scenario.createNewRepeat("/data/rep2");
+        FormEntryModel formEntryModel = new FormEntryModel(scenario.getFormDef());
+
+        assertThat(relevantIndexesForward(formEntryModel).toString(), is(everyRelevantIndexForward(formEntryModel).toString()));
+        assertThat(relevantIndexesBackward(formEntryModel).toString(), is(everyRelevantIndexBackward(formEntryModel).toString()));
+
+        scenario.answer("/data/show", "yes");
+        assertThat(relevantIndexesForward(formEntryModel).toString(), is(everyRelevantIndexForward(formEntryModel).toString()));
+        assertThat(relevantIndexesBackward(formEntryModel).toString(), is(everyRelevantIndexBackward(formEntryModel).toString()));
+    }
+
+    @Test
+    public void relevantQuestionsBoundOutsideAnIrrelevantGroup_areNotSkipped() throws IOException, ParseException {
+        Scenario scenario = Scenario.init("Questions bound outside their group", html(
+            head(
+                title("Questions bound outside their group"),
+                model(
+                    mainInstance(t("data id=\"bound_outside\"",
+                        t("show", "no"),
+                        t("outer",
+                            t("q1"),
+                            t("inner",
+                                t("q2"))),
+                        t("elsewhere1"),
+                        t("elsewhere2")
+                    )),
+                    bind("/data/outer").relevant("/data/show = 'yes'")
+                )),
+            body(
+                input("/data/show"),
+                group("/data/outer",
+                    input("/data/outer/q1"),
+                    input("/data/elsewhere1"),
+                    group("/data/outer/inner",
+                        input("/data/outer/inner/q2"),
+                        input("/data/elsewhere2")
+                    )
+                )
+            )));
+        FormEntryModel formEntryModel = new FormEntryModel(scenario.getFormDef());
+
+        List<FormIndex> forward = relevantIndexesForward(formEntryModel);
+        assertThat(forward.toString(), is(everyRelevantIndexForward(formEntryModel).toString()));
+        assertThat(forward.contains(scenario.indexOf("/data/elsewhere1")), is(true));
+        assertThat(forward.contains(scenario.indexOf("/data/elsewhere2")), is(true));
+        assertThat(forward.contains(scenario.indexOf("/data/outer/q1")), is(false));
+        assertThat(relevantIndexesBackward(formEntryModel).toString(), is(everyRelevantIndexBackward(formEntryModel).toString()));
+    }
+
+    @Test
+    public void relevantIndexes_ofALargeForm_areTheOnesFoundByCheckingEveryIndex() throws ParseException {
+        // Has non-relevant groups with questions bound outside of them
+        Scenario scenario = Scenario.init("eIMCI-by-D-Tree.xml");
+        FormEntryModel formEntryModel = new FormEntryModel(scenario.getFormDef());
+
+        assertThat(relevantIndexesForward(formEntryModel).toString(), is(everyRelevantIndexForward(formEntryModel).toString()));
+        assertThat(relevantIndexesBackward(formEntryModel).toString(), is(everyRelevantIndexBackward(formEntryModel).toString()));
+    }
+
+    private static List<FormIndex> relevantIndexesForward(FormEntryModel formEntryModel) {
+        List<FormIndex> indexes = new ArrayList<>();
+        FormIndex index = FormIndex.createBeginningOfFormIndex();
+        do {
+            index = formEntryModel.getNextRelevantIndex(index);
+            indexes.add(index);
+        } while (index.isInForm());
+        return indexes;
+    }
+
+    private static List<FormIndex> everyRelevantIndexForward(FormEntryModel formEntryModel) {
+        List<FormIndex> indexes = new ArrayList<>();
+        FormIndex index = FormIndex.createBeginningOfFormIndex();
+        do {
+            index = formEntryModel.incrementIndex(index);
+            if (!index.isInForm() || formEntryModel.isIndexRelevant(index))
+                indexes.add(index);
+        } while (index.isInForm());
+        return indexes;
+    }
+
+    private static List<FormIndex> relevantIndexesBackward(FormEntryModel formEntryModel) {
+        List<FormIndex> indexes = new ArrayList<>();
+        FormIndex index = FormIndex.createEndOfFormIndex();
+        do {
+            index = formEntryModel.getPreviousRelevantIndex(index);
+            indexes.add(index);
+        } while (index.isInForm());
+        return indexes;
+    }
+
+    private static List<FormIndex> everyRelevantIndexBackward(FormEntryModel formEntryModel) {
+        List<FormIndex> indexes = new ArrayList<>();
+        FormIndex index = FormIndex.createEndOfFormIndex();
+        do {
+            index = formEntryModel.decrementIndex(index);
+            if (!index.isInForm() || formEntryModel.isIndexRelevant(index))
+                indexes.add(index);
+        } while (index.isInForm());
+        return indexes;
+    }
 }
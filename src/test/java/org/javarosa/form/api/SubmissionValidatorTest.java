@@ -0,0 +1,118 @@
+package org.javarosa.form.api;
+
+import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.XFormsElement;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.javarosa.core.test.Scenario.getRef;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.repeat;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+import static org.javarosa.form.api.FormEntryController.ANSWER_CONSTRAINT_VIOLATED;
+import static org.javarosa.form.api.FormEntryController.ANSWER_REQUIRED_BUT_EMPTY;
+
+public class SubmissionValidatorTest {
+    @Test
+    public void validateAll_reportsTheOutcomeOfEverySubmissionInOrder() throws Exception {
+        byte[] valid = submission(5, 0, 1);
+        byte[] constraintViolated = submission(50);
+        byte[] requiredMissing = submission(null, 0);
+
+        List<byte[]> submissions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            submissions.add(valid);
+            submissions.add(constraintViolated);
+            submissions.add(requiredMissing);
+        }
+
+        List<SubmissionValidator.Result> results;
+        try (SubmissionValidator validator = new SubmissionValidator(Scenario.init("Submissions", form()).getFormDef(), 4, true)) {
+            results = validator.validateAll(submissions);
+        }
+
+        assertThat(results, hasSize(60));
+        for (int i = 0; i < 60; i += 3) {
+            assertThat(results.get(i).isValid(), is(true));
+
+            assertThat(results.get(i + 1).isValid(), is(false));
+            assertThat(results.get(i + 1).getOutcome().outcome, is(ANSWER_CONSTRAINT_VIOLATED));
+            assertThat(results.get(i + 1).getOutcome().failedPrompt.getReference(), is(getRef("/data/age[0]")));
+
+            assertThat(results.get(i + 2).isValid(), is(false));
+            assertThat(results.get(i + 2).getOutcome().outcome, is(ANSWER_REQUIRED_BUT_EMPTY));
+        }
+    }
+
+    @Test
+    public void validateAll_recomputesCalculatesFromTheSubmittedAnswers() throws Exception {
+        try (SubmissionValidator validator = new SubmissionValidator(Scenario.init("Submissions", form()).getFormDef(), 2, true)) {
+            assertThat(validator.validateAll(singleton(submission(20, 0, 1, 2))).get(0).isValid(), is(true));
+            assertThat(validator.validateAll(singleton(submission(5, 0, 1, 2))).get(0).getOutcome().failedPrompt.getReference(), is(getRef("/data/repeat[2]/value[0]")));
+        }
+    }
+
+    @Test
+    public void validateAll_reportsSubmissionsThatDoNotMatchTheForm() throws Exception {
+        try (SubmissionValidator validator = new SubmissionValidator(Scenario.init("Submissions", form()).getFormDef(), 1, true)) {
+            SubmissionValidator.Result result = validator.validateAll(singleton("<other/>".getBytes())).get(0);
+
+            assertThat(result.isValid(), is(false));
+            assertThat(result.getOutcome(), is(nullValue()));
+            assertThat(result.getError(), is(notNullValue()));
+        }
+    }
+
+    private static List<byte[]> singleton(byte[] submission) {
+        List<byte[]> submissions = new ArrayList<>();
+        submissions.add(submission);
+        return submissions;
+    }
+
+    private static byte[] submission(Integer age, int... values) {
+        StringBuilder xml = new StringBuilder("<data id=\"submissions\">");
+        xml.append(age == null ? "<age/>" : "<age>" + age + "</age>");
+        // Always submitted empty so that it has to be recomputed
+        xml.append("<double/>");
+        for (int value : values)
+            xml.append("<repeat><value>").append(value).append("</value></repeat>");
+        return xml.append("</data>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static XFormsElement form() {
+        return html(
+            head(
+                title("Submissions"),
+                model(
+                    mainInstance(t("data id=\"submissions\"",
+                        t("age"),
+                        t("double"),
+                        t("repeat jr:template=\"\"",
+                            t("value"))
+                    )),
+                    bind("/data/age").type("int").required().constraint(". < 30"),
+                    bind("/data/double").type("int").calculate("/data/age * 2"),
+                    bind("/data/repeat/value").type("int").constraint(". < /data/double div 5")
+                )),
+            body(
+                input("/data/age"),
+                repeat("/data/repeat",
+                    input("/data/repeat/value"))
+            ));
+    }
+}
@@ -0,0 +1,140 @@
+package org.javarosa.measure;
+
+import org.javarosa.core.model.CompareChildToAbsoluteExpressionFilter;
+import org.javarosa.core.test.Scenario;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.instance;
+import static org.javarosa.core.util.XFormsElement.item;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+import static org.javarosa.measure.Metrics.DAG_CASCADE_SIZE;
+import static org.javarosa.measure.Metrics.DAG_CASCADE_TIME;
+import static org.javarosa.measure.Metrics.DAG_INITIALIZATION_TIME;
+import static org.javarosa.measure.Metrics.PARSE_CONSOLIDATE_TIME;
+import static org.javarosa.measure.Metrics.PARSE_FORM_TIME;
+import static org.javarosa.measure.Metrics.PARSE_XML_TIME;
+
+public class MetricsTest {
+    @After
+    public void tearDown() {
+        Metrics.setRegistry(null);
+    }
+
+    @Test
+    public void nothingIsRecorded_whenNoRegistryIsInstalled() {
+        assertThat(Metrics.isEnabled(), is(false));
+        assertThat(Metrics.startTimer(), is(0L));
+
+        // Must not fail
+        Metrics.increment("counter");
+        Metrics.record("histogram", 1);
+        Metrics.stopTimer("timer", 0);
+        assertThat(Metrics.getRegistry(), is(nullValue()));
+    }
+
+    @Test
+    public void counters_addUpIncrementsFromManyThreads() throws InterruptedException {
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        Metrics.setRegistry(registry);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++)
+                    Metrics.increment("counter");
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertThat(registry.getCounter("counter").getCount(), is(80_000L));
+    }
+
+    @Test
+    public void histogram_reportsCountTotalMaxAndApproximatePercentiles() {
+        Histogram histogram = new InMemoryMetricsRegistry().getHistogram("histogram");
+        for (int value = 1; value <= 100; value++)
+            histogram.record(value);
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getTotal(), is(5050L));
+        assertThat(histogram.getMax(), is(100L));
+        assertThat(histogram.getMean(), is(50.5));
+        // 50 falls in the [32, 63] bucket and 99 in the [64, 127] bucket, which is capped at the maximum
+        assertThat(histogram.getPercentile(50), is(63L));
+        assertThat(histogram.getPercentile(99), is(100L));
+        assertThat(histogram.getPercentile(0), is(1L));
+    }
+
+    @Test
+    public void reset_setsEverythingBackToZero() {
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        registry.count("counter", 3);
+        registry.record("histogram", 3);
+
+        registry.reset();
+
+        assertThat(registry.getCounter("counter").getCount(), is(0L));
+        assertThat(registry.getHistogram("histogram").getCount(), is(0L));
+        assertThat(registry.getHistogram("histogram").getPercentile(50), is(0L));
+    }
+
+    @Test
+    public void formLoadingAndAnswering_areMeasured() throws Exception {
+        InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+        Metrics.setRegistry(registry);
+
+        Scenario scenario = Scenario.init("Metrics", html(
+            head(
+                title("Metrics"),
+                model(
+                    mainInstance(t("data id=\"metrics\"",
+                        t("choice"),
+                        t("label"),
+                        t("upper")
+                    )),
+                    instance("choices",
+                        item("a", "A"),
+                        item("b", "B")
+                    ),
+                    bind("/data/choice").type("string"),
+                    bind("/data/label").type("string").calculate("instance('choices')/root/item[value < /data/choice]/label"),
+                    bind("/data/upper").type("string").calculate("concat(/data/label, '!')")
+                )),
+            body(input("/data/choice"))
+        ));
+
+        assertThat(registry.getHistogram(PARSE_XML_TIME).getCount(), is(1L));
+        assertThat(registry.getHistogram(PARSE_CONSOLIDATE_TIME).getCount(), is(1L));
+        assertThat(registry.getHistogram(PARSE_FORM_TIME).getCount(), is(1L));
+        assertThat(registry.getHistogram(DAG_INITIALIZATION_TIME).getCount(), greaterThan(0L));
+
+        registry.reset();
+        scenario.answer("/data/choice", "b");
+        scenario.answer("/data/choice", "a");
+        scenario.answer("/data/choice", "b");
+
+        assertThat(registry.getHistogram(DAG_CASCADE_TIME).getCount(), is(3L));
+        assertThat(registry.getHistogram(DAG_CASCADE_SIZE).getMax(), is(2L));
+        assertThat(registry.getCounter(Metrics.predicateFilterMisses(CompareChildToAbsoluteExpressionFilter.class)).getCount(), is(2L));
+        assertThat(registry.getCounter(Metrics.predicateFilterHits(CompareChildToAbsoluteExpressionFilter.class)).getCount(), is(1L));
+    }
+}
@@ -0,0 +1,126 @@
+package org.javarosa.xpath;
+
+import org.javarosa.core.test.Scenario;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.xpath.expr.XPathArithExpr;
+import org.javarosa.xpath.expr.XPathEqExpr;
+import org.javarosa.xpath.expr.XPathExpression;
+import org.javarosa.xpath.expr.XPathFuncExpr;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.instance;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+
+public class XPathExpressionCacheTest {
+    @Test
+    public void parsingTheSameSourceTwice_returnsTheSameExpression() throws Exception {
+        XPathExpression first = XPathParseTool.parseXPath("selected(/data/choice, 'yes')");
+
+        assertThat(XPathParseTool.parseXPath("selected(/data/choice, 'yes')"), sameInstance(first));
+    }
+
+    @Test
+    public void equalSubexpressionsOfDifferentExpressions_areShared() throws Exception {
+        XPathEqExpr first = (XPathEqExpr) XPathParseTool.parseXPath("/data/meta/instanceID = 'a'");
+        XPathEqExpr second = (XPathEqExpr) XPathParseTool.parseXPath("/data/meta/instanceID != 'b'");
+
+        assertThat(second.a, sameInstance(first.a));
+    }
+
+    @Test
+    public void subexpressionsThatMayEvaluateDifferentlyEachTime_areNotShared() throws Exception {
+        XPathArithExpr first = (XPathArithExpr) XPathParseTool.parseXPath("random() + 1");
+        XPathArithExpr second = (XPathArithExpr) XPathParseTool.parseXPath("random() + 2");
+
+        assertThat(second.a, not(sameInstance(first.a)));
+        assertThat(((XPathFuncExpr) second.a).id.name, equalTo("random"));
+    }
+
+    @Test
+    public void expressionsContainingFunctionsThatMayEvaluateDifferentlyEachTime_areNotShared() throws Exception {
+        XPathEqExpr first = (XPathEqExpr) XPathParseTool.parseXPath("concat('uuid:', uuid()) = /data/id");
+        XPathEqExpr second = (XPathEqExpr) XPathParseTool.parseXPath("concat('uuid:', uuid()) = /data/id");
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.a, not(sameInstance(first.a)));
+        assertThat(second.b, sameInstance(first.b));
+    }
+
+    @Test
+    public void bindsWithTheSameCalculateThatMayEvaluateDifferentlyEachTime_getSeparateValues() throws Exception {
+        Scenario scenario = Scenario.init("Some form", html(
+            head(
+                title("Some form"),
+                model(
+                    mainInstance(t("data id=\"some-form\"",
+                        t("a"),
+                        t("b"),
+                        t("c"),
+                        t("d"),
+                        t("input")
+                    )),
+                    bind("/data/a").type("string").calculate("concat('uuid:', uuid())"),
+                    bind("/data/b").type("string").calculate("concat('uuid:', uuid())"),
+                    bind("/data/c").type("int").calculate("int(random() * 1000000000)"),
+                    bind("/data/d").type("int").calculate("int(random() * 1000000000)"),
+                    bind("/data/input").type("string")
+                )
+            ),
+            body(input("/data/input"))
+        ));
+
+        assertThat(scenario.answerOf("/data/b"), not(equalTo(scenario.answerOf("/data/a"))));
+        assertThat(scenario.answerOf("/data/d"), not(equalTo(scenario.answerOf("/data/c"))));
+    }
+
+    @Test
+    public void deserializedConditions_shareTheParsedExpressions() throws Exception {
+        XPathConditional condition = new XPathConditional("/data/age > 18 and /data/consent = 'yes'");
+
+        XPathConditional deserialized = (XPathConditional) ExtUtil.deserialize(ExtUtil.serialize(condition),
+            XPathConditional.class);
+
+        assertThat(deserialized.getExpr(), sameInstance(condition.getExpr()));
+    }
+
+    @Test
+    public void secondaryInstances_areLoaded_whenTheExpressionsReferringToThemWereParsedBefore() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Scenario scenario = Scenario.init("Some form", html(
+                head(
+                    title("Some form"),
+                    model(
+                        mainInstance(t("data id=\"some-form\"",
+                            t("calc"),
+                            t("input")
+                        )),
+                        instance("choices",
+                            t("item", t("value", "a"), t("label", "A")),
+                            t("item", t("value", "b"), t("label", "B"))
+                        ),
+                        bind("/data/calc").type("string")
+                            .calculate("instance('choices')/root/item[value = /data/input]/label"),
+                        bind("/data/input").type("string")
+                    )
+                ),
+                body(input("/data/input"))
+            ));
+
+            scenario.answer("/data/input", "b");
+
+            assertThat(scenario.answerOf("/data/calc").getValue(), equalTo("B"));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.javarosa.xpath.expr;
+
+import org.javarosa.core.model.data.BooleanData;
+import org.javarosa.core.model.data.DecimalData;
+import org.javarosa.core.model.data.IAnswerData;
+import org.javarosa.core.model.data.IntegerData;
+import org.javarosa.core.model.data.LongData;
+import org.javarosa.core.model.data.StringData;
+import org.javarosa.core.test.Scenario;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static java.util.stream.IntStream.range;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.javarosa.core.test.AnswerDataMatchers.intAnswer;
+import static org.javarosa.core.util.BindBuilderXFormsElement.bind;
+import static org.javarosa.core.util.XFormsElement.body;
+import static org.javarosa.core.util.XFormsElement.group;
+import static org.javarosa.core.util.XFormsElement.head;
+import static org.javarosa.core.util.XFormsElement.html;
+import static org.javarosa.core.util.XFormsElement.input;
+import static org.javarosa.core.util.XFormsElement.mainInstance;
+import static org.javarosa.core.util.XFormsElement.model;
+import static org.javarosa.core.util.XFormsElement.repeat;
+import static org.javarosa.core.util.XFormsElement.t;
+import static org.javarosa.core.util.XFormsElement.title;
+
+public class XPathPathExprTest {
+    @Test
+    public void unpackNumericValue_convertsAnswersLikeUnpackValueAndToNumeric() {
+        for (IAnswerData answer : Arrays.asList(null, new IntegerData(-7), new LongData(1L << 40),
+            new DecimalData(2.5), new BooleanData(true), new BooleanData(false), new StringData("3.25"),
+            new StringData("not a number"))) {
+            assertThat(String.valueOf(answer), XPathPathExpr.unpackNumericValue(answer),
+                equalTo(XPathFuncExpr.toNumeric(XPathPathExpr.unpackValue(answer))));
+        }
+    }
+
+    @Test
+    public void sumMinAndMax_ofNumericAnswers_skipEmptyNodes() throws Exception {
+        Scenario scenario = Scenario.init("Some form", html(
+            head(
+                title("Some form"),
+                model(
+                    mainInstance(t("data id=\"some-form\"",
+                        t("item jr:template=\"\"", t("value")),
+                        t("sum"),
+                        t("min"),
+                        t("max")
+                    )),
+                    bind("/data/item/value").type("int"),
+                    bind("/data/sum").type("int").calculate("sum(/data/item/value)"),
+                    bind("/data/min").type("int").calculate("min(/data/item/value)"),
+                    bind("/data/max").type("int").calculate("max(/data/item/value)")
+                )
+            ),
+            body(group("/data/item", repeat("/data/item", input("value"))))
+        ));
+
+        range(0, 3).forEach(n -> {
+            scenario.next();
+            scenario.createNewRepeat();
+            scenario.next();
+        });
+        scenario.answer("/data/item[1]/value", 3);
+        scenario.answer("/data/item[2]/value", -10);
+
+        assertThat(scenario.answerOf("/data/sum"), is(intAnswer(-7)));
+        assertThat(scenario.answerOf("/data/min"), is(intAnswer(-10)));
+        assertThat(scenario.answerOf("/data/max"), is(intAnswer(3)));
+    }
+}
@@ -97,6 +97,16 @@ public class XPathEvalTest {
         testEval("count-non-empty(/data/path)", buildInstance(), null, 3.0);
     }
 
+    @Test
+    public void min_and_max() {
+        testEval("max(-3, -1, -2)", -1.0);
+        testEval("min(3, 1, 2)", 1.0);
+        testEval("max(-3, 'a')", -3.0);
+        testEval("min('a', 'b')", Double.NaN);
+        testEval("max(1, 1 div 0)", Double.POSITIVE_INFINITY);
+        testEval("min(-1 div 0, 1)", Double.NEGATIVE_INFINITY);
+    }
+
     @Test
     public void unsupported_functions() {
         testEval("/union | /expr", new XPathUnsupportedException("TEST"));